@@ -0,0 +1,148 @@
+package com.appland.tasks
+
+import groovy.io.FileType
+
+import javassist.bytecode.AccessFlag
+import javassist.bytecode.AnnotationsAttribute
+import javassist.bytecode.ClassFile
+import javassist.bytecode.MethodInfo
+import javassist.bytecode.annotation.Annotation
+import javassist.bytecode.annotation.BooleanMemberValue
+import javassist.bytecode.annotation.ClassMemberValue
+import javassist.bytecode.annotation.EnumMemberValue
+import javassist.bytecode.annotation.MemberValue
+import javassist.bytecode.annotation.StringMemberValue
+
+import org.gradle.api.GradleException
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.FileCollection
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.TaskAction
+
+/**
+ * Writes an index of the hook methods declared in the compiled classes of a package. The agent
+ * reads it at startup instead of scanning its own classpath and loading the hook classes. Each line
+ * holds a class name, a method name and a method descriptor, followed by a field for each hook
+ * annotation of the method or its class, separated by tabs. An annotation is written as its simple
+ * name, followed by the members set explicitly, if any, e.g.
+ * {@code HookClass(value=javax.servlet.Filter,method=doFilter)}.
+ */
+class GenerateHookIndex extends DefaultTask {
+  static final String ANNOTATION_PACKAGE = 'com.appland.appmap.transform.annotations.'
+
+  // A behavior is a hook if it or its class carries one of these
+  static final Set<String> SOURCE_ANNOTATIONS = [
+    ANNOTATION_PACKAGE + 'HookClass',
+    ANNOTATION_PACKAGE + 'HookAnnotated',
+    ANNOTATION_PACKAGE + 'HookCondition'
+  ] as Set<String>
+
+  @InputFiles
+  FileCollection classesDirs
+
+  @Input
+  String packageName = 'com.appland.appmap.process'
+
+  @OutputFile
+  File indexFile
+
+  @TaskAction
+  void generate() {
+    def packagePath = packageName.replace('.', '/')
+    def classFiles = []
+    classesDirs.each { dir ->
+      def root = new File(dir, packagePath)
+      if (root.directory) {
+        root.eachFileRecurse(FileType.FILES) { file ->
+          if (file.name.endsWith('.class')) {
+            classFiles << file
+          }
+        }
+      }
+    }
+
+    def lines = []
+    classFiles.sort { it.path }.each { file ->
+      ClassFile classFile = file.withInputStream { new ClassFile(new DataInputStream(it)) }
+      def isHookClass = isHook(classFile.attributes)
+
+      classFile.methods.each { MethodInfo method ->
+        if (!method.isMethod() || (method.accessFlags & AccessFlag.SYNTHETIC) != 0) {
+          return
+        }
+
+        if (!isHookClass && !isHook(method.attributes)) {
+          return
+        }
+
+        // The method's own annotations take precedence over those of its class
+        def annotations = hookAnnotations(classFile.attributes) + hookAnnotations(method.attributes)
+        def fields = [ classFile.name, method.name, method.descriptor ]
+        annotations.each { name, members -> fields << format(name, members, classFile, method) }
+        lines << fields.join('\t')
+      }
+    }
+
+    indexFile.parentFile.mkdirs()
+    indexFile.setText(lines.collect { it + '\n' }.join(''), 'UTF-8')
+    logger.info("indexed ${lines.size()} hooks in ${packageName}")
+  }
+
+  private static boolean isHook(List attributes) {
+    annotations(attributes).any { SOURCE_ANNOTATIONS.contains(it.typeName) }
+  }
+
+  private static List<Annotation> annotations(List attributes) {
+    attributes
+      .findAll { it instanceof AnnotationsAttribute && it.name == AnnotationsAttribute.visibleTag }
+      .collectMany { AnnotationsAttribute attribute -> attribute.annotations as List }
+  }
+
+  /**
+   * Collects the members set explicitly for each annotation in the annotation package, keyed by
+   * the simple name of the annotation.
+   */
+  private static Map<String, Map<String, String>> hookAnnotations(List attributes) {
+    def hookAnnotations = new LinkedHashMap<String, Map<String, String>>()
+    annotations(attributes)
+      .findAll { it.typeName.startsWith(ANNOTATION_PACKAGE) }
+      .each { Annotation annotation ->
+        def members = new LinkedHashMap<String, String>()
+        annotation.memberNames?.sort()?.each { String memberName ->
+          members[memberName] = valueOf(annotation.getMemberValue(memberName))
+        }
+        hookAnnotations[annotation.typeName.substring(ANNOTATION_PACKAGE.length())] = members
+      }
+    hookAnnotations
+  }
+
+  private static String valueOf(MemberValue value) {
+    switch (value) {
+      case StringMemberValue: return ((StringMemberValue) value).value
+      case BooleanMemberValue: return String.valueOf(((BooleanMemberValue) value).value)
+      case EnumMemberValue: return ((EnumMemberValue) value).value
+      case ClassMemberValue: return ((ClassMemberValue) value).value
+      default: return value.toString()
+    }
+  }
+
+  private static String format(String name,
+                               Map<String, String> members,
+                               ClassFile classFile,
+                               MethodInfo method) {
+    if (members.isEmpty()) {
+      return name
+    }
+
+    members.each { memberName, value ->
+      if (value =~ /[\t\n(),=]/) {
+        throw new GradleException("can't index ${name}.${memberName} = '${value}' "
+          + "of hook ${classFile.name}.${method.name}")
+      }
+    }
+    name + '(' + members.collect { memberName, value -> "${memberName}=${value}" }.join(',') + ')'
+  }
+}
@@ -0,0 +1,70 @@
+package com.appland.appmap.output.v1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link EventIdAllocator} with the previous scheme, a synchronized
+ * method incrementing a boxed {@code Integer}, as more threads issue IDs concurrently.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventIdBenchmark {
+  private static Integer globalEventId = 0;
+
+  private static synchronized Integer legacyIssueId() {
+    return ++globalEventId;
+  }
+
+  private final EventIdAllocator allocator = new EventIdAllocator(EventIdAllocator.DEFAULT_BLOCK_SIZE);
+
+  @Benchmark
+  @Threads(1)
+  public Integer legacySingleThread() {
+    return legacyIssueId();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Integer legacyEightThreads() {
+    return legacyIssueId();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Integer legacyMaxThreads() {
+    return legacyIssueId();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long allocatorSingleThread() {
+    return this.allocator.next();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long allocatorEightThreads() {
+    return this.allocator.next();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public long allocatorMaxThreads() {
+    return this.allocator.next();
+  }
+}
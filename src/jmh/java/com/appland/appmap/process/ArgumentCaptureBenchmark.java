@@ -0,0 +1,65 @@
+package com.appland.appmap.process;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.Parameters;
+import com.appland.appmap.output.v1.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares recording the arguments of a {@code (int, long, double)} method the way the generated
+ * code does for an {@code @ArgumentArray} hook, boxing each into an array copied into the event,
+ * with the {@code @CaptureArguments} path storing each into the event unboxed. Run with
+ * {@code -prof gc} to compare allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArgumentCaptureBenchmark {
+  private final Event event = new Event();
+  private int intArgument = 1000;
+  private long longArgument = 1L << 40;
+  private double doubleArgument = Math.PI;
+
+  public ArgumentCaptureBenchmark() {
+    this.event.setParameters(new Parameters());
+    this.event.parameters.add(new Value().setName("x"));
+    this.event.parameters.add(new Value().setName("y"));
+    this.event.parameters.add(new Value().setName("z"));
+  }
+
+  @Benchmark
+  public Event argumentArray() {
+    final Object[] args = new Object[]{
+        RuntimeUtil.boxValue(this.intArgument),
+        RuntimeUtil.boxValue(this.longArgument),
+        RuntimeUtil.boxValue(this.doubleArgument) };
+    for (int i = 0; i < args.length; i++) {
+      this.event.parameters.get(i).set(args[i]);
+    }
+    return this.event;
+  }
+
+  @Benchmark
+  public Event captureArguments() {
+    return RuntimeUtil.captureArgument(
+        RuntimeUtil.captureArgument(
+            RuntimeUtil.captureArgument(this.event, 0, this.intArgument),
+            1,
+            this.longArgument),
+        2,
+        this.doubleArgument);
+  }
+}
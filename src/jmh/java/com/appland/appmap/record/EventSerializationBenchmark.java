@@ -0,0 +1,181 @@
+package com.appland.appmap.record;
+
+import com.alibaba.fastjson.JSONWriter;
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing a recording's events with fastjson's {@code JSONWriter.writeObject}, as
+ * {@link AppMapSerializer} used to, with {@link EventJsonWriter}. The events are a mix of method
+ * calls and returns with arguments, HTTP server requests, SQL queries and exceptions. Scores are
+ * events per second. Run with {@code -prof gc} to compare allocation rates.
+ *
+ * <p>With {@code staticFieldsEncoded}, method events carry the fields they share with their
+ * template pre-encoded, as they do when cloned from the {@link EventTemplateRegistry}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventSerializationBenchmark {
+  private static final int EVENT_COUNT = 1000;
+
+  @Param({"false", "true"})
+  public boolean staticFieldsEncoded;
+
+  private final List<Event> events = new ArrayList<Event>();
+
+  private final Writer nullWriter = new Writer() {
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  @Setup
+  public void setup() {
+    for (int i = 0; this.events.size() < EVENT_COUNT; i++) {
+      switch (i % 10) {
+        case 0:
+          this.addHttpRequest(i);
+          break;
+        case 1:
+          this.addSqlQuery(i);
+          break;
+        case 2:
+          this.addException(i);
+          break;
+        default:
+          this.addMethodCall(i);
+          break;
+      }
+    }
+
+    for (Event event : this.events) {
+      event.freeze();
+      if (this.staticFieldsEncoded && event.definedClass != null) {
+        event.setStaticFields(EventJsonWriter.encodeStaticFields(event, event.event));
+      }
+    }
+  }
+
+  /**
+   * @return The events written by each invocation
+   */
+  List<Event> getEvents() {
+    return this.events;
+  }
+
+  private Event newCall(int i) {
+    return new Event()
+        .setEvent("call")
+        .setDefinedClass("org.springframework.samples.petclinic.owner.OwnerController")
+        .setMethodId("processFindForm")
+        .setPath("org/springframework/samples/petclinic/owner/OwnerController.java")
+        .setLineNumber(80 + i % 50)
+        .setStatic(false)
+        .setThreadId(1L);
+  }
+
+  private Event newReturn(Event call) {
+    return new Event(call)
+        .setEvent("return")
+        .setParentId(call.id)
+        .setThreadId(call.threadId);
+  }
+
+  private void addMethodCall(int i) {
+    final Event call = this.newCall(i)
+        .setReceiver(this)
+        .addParameter("Franklin", "lastName")
+        .addParameter(i, "page");
+    call.addParameter(new Value().setClassType("boolean").setName("paged").setKind("req"));
+    this.events.add(call);
+    this.events.add(this.newReturn(call).setReturnValue("owners/ownersList"));
+  }
+
+  private void addHttpRequest(int i) {
+    final Event request = new Event()
+        .setEvent("call")
+        .setThreadId(1L)
+        .setHttpServerRequest("GET", "/owners/" + i, "HTTP/1.1")
+        .addMessageParam("ownerId", String.valueOf(i));
+    request.httpServerRequest.setNormalizedPath("/owners/{ownerId}");
+    this.events.add(request);
+    this.events.add(new Event()
+        .setEvent("return")
+        .setThreadId(1L)
+        .setParentId(request.id)
+        .setHttpServerResponse(200, "text/html;charset=UTF-8"));
+  }
+
+  private void addSqlQuery(int i) {
+    final Event query = new Event()
+        .setEvent("call")
+        .setThreadId(1L)
+        .setSqlQuery("H2", "SELECT DISTINCT owner0_.id AS id1_0_0_ FROM owners owner0_ "
+            + "WHERE owner0_.last_name LIKE ? ORDER BY owner0_.id LIMIT " + i);
+    this.events.add(query);
+    this.events.add(new Event()
+        .setEvent("return")
+        .setThreadId(1L)
+        .setParentId(query.id));
+  }
+
+  private void addException(int i) {
+    final Event call = this.newCall(i).setReceiver(this);
+    this.events.add(call);
+    this.events.add(this.newReturn(call)
+        .setException(new IllegalStateException("Expected: controller used to showcase what "
+            + "happens when an exception is thrown", new RuntimeException())));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENT_COUNT)
+  public void fastjson() throws IOException {
+    final JSONWriter json = new JSONWriter(this.nullWriter);
+    json.startArray();
+    for (Event event : this.events) {
+      json.writeObject(event);
+    }
+    json.endArray();
+    json.flush();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENT_COUNT)
+  public void eventJsonWriter() throws IOException {
+    final EventJsonWriter writer = new EventJsonWriter(this.nullWriter);
+    for (Event event : this.events) {
+      writer.write(event);
+    }
+    writer.flush();
+  }
+}
@@ -0,0 +1,191 @@
+package com.appland.appmap.record;
+
+import com.appland.appmap.config.Properties;
+import com.appland.appmap.output.v1.Event;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing a recording to disk through a {@code FileWriter}, as
+ * {@link RecordingSessionFileStream} used to, with {@link Utf8ChannelWriter} and
+ * {@link BinaryRecordingWriter}. Events are written
+ * in batches of 32, as the recording session does. Scores are events per second.
+ *
+ * <p>The {@code writes} counter is the number of writes made to the file, each of which is a
+ * {@code write(2)} call, reported as a rate in the same unit as the score. The writes made per
+ * event are its ratio to the score. Pass {@code -jvmArgs -Dappmap.output.bufferSize=...} to try
+ * other buffer sizes.
+ *
+ * <p>{@code utf8ChannelWriterGzip} gzips the recording with {@link GzipChannel}. Its writes are
+ * the chunks handed to the compressing thread, and its score includes waiting for compression to
+ * finish when the recording is closed.
+ *
+ * <p>{@code binary} writes the recording in the binary format, as {@link RecordingSessionBinary}
+ * does. The {@code bytes} counter is the size of each recording on disk, so its ratio to the score
+ * is the bytes written per event.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordingOutputBenchmark {
+  private static final int BATCH_SIZE = 32;
+  private static final int REPEAT = 10;
+  private static final int EVENT_COUNT = 1000 * REPEAT;
+
+  private final List<List<Event>> batches = new ArrayList<List<Event>>();
+  private Path path;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class WriteCounter {
+    public long writes;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.writes = 0;
+      this.bytes = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    final EventSerializationBenchmark events = new EventSerializationBenchmark();
+    events.setup();
+
+    List<Event> batch = new ArrayList<Event>();
+    for (int i = 0; i < REPEAT; i++) {
+      for (Event event : events.getEvents()) {
+        batch.add(event);
+        if (batch.size() == BATCH_SIZE) {
+          this.batches.add(batch);
+          batch = new ArrayList<Event>();
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      this.batches.add(batch);
+    }
+
+    this.path = Files.createTempFile("appmap", ".appmap.json");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(this.path);
+  }
+
+  private void writeRecording(Writer writer) throws IOException {
+    final AppMapSerializer serializer = new AppMapSerializer(writer);
+    for (List<Event> batch : this.batches) {
+      serializer.write(batch);
+    }
+    serializer.finalize();
+    writer.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENT_COUNT)
+  public void fileWriter(final WriteCounter counter) throws IOException {
+    // What FileWriter does, with each write of the underlying stream counted
+    final FileOutputStream out = new FileOutputStream(this.path.toFile()) {
+      @Override
+      public void write(byte[] bytes, int offset, int length) throws IOException {
+        counter.writes++;
+        super.write(bytes, offset, length);
+      }
+    };
+    this.writeRecording(new OutputStreamWriter(out, Charset.defaultCharset()));
+    counter.bytes += Files.size(this.path);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENT_COUNT)
+  public void utf8ChannelWriter(WriteCounter counter) throws IOException {
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(this.path,
+        Properties.OutputBufferSize,
+        Properties.OutputFlushBytes,
+        Properties.OutputFlushInterval);
+    this.writeRecording(writer);
+    counter.writes += writer.getWriteCount();
+    counter.bytes += Files.size(this.path);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENT_COUNT)
+  public void utf8ChannelWriterGzip(WriteCounter counter) throws IOException {
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(
+        new GzipChannel(Files.newOutputStream(this.path),
+            Properties.OutputGzipLevel,
+            Properties.OutputBufferSize),
+        Properties.OutputBufferSize,
+        Properties.OutputFlushBytes,
+        Properties.OutputFlushInterval);
+    this.writeRecording(writer);
+    counter.writes += writer.getWriteCount();
+    counter.bytes += Files.size(this.path);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENT_COUNT)
+  public void binary(final WriteCounter counter) throws IOException {
+    final FileChannel file = Utf8ChannelWriter.open(this.path);
+    final WritableByteChannel channel = new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer bytes) throws IOException {
+        counter.writes++;
+        return file.write(bytes);
+      }
+
+      @Override
+      public boolean isOpen() {
+        return file.isOpen();
+      }
+
+      @Override
+      public void close() throws IOException {
+        file.close();
+      }
+    };
+    final BinaryRecordingWriter writer =
+        new BinaryRecordingWriter(channel, Properties.OutputFlushBytes);
+    writer.writeHeader(new IRecordingSession.Metadata(), "app", "1.8", "vm");
+    for (List<Event> batch : this.batches) {
+      for (Event event : batch) {
+        writer.write(event);
+      }
+    }
+    writer.writeClassMap("[]");
+    writer.close();
+    counter.bytes += Files.size(this.path);
+  }
+}
@@ -0,0 +1,125 @@
+package com.appland.appmap.transform;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Measures the time per class spent parsing a class and resolving its supertypes, the work done
+ * by {@link ClassFileTransformer} before matching hooks. Compares a pool shared by every class
+ * from the same loader with a fresh pool for each class. Each invocation loads
+ * {@value #CLASS_COUNT} classes read from the jars on the classpath, starting with empty pools.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassPoolBenchmark {
+  static final int CLASS_COUNT = 2000;
+
+  @Param({ "shared", "fresh" })
+  public String pools;
+
+  private final ClassLoader loader = ClassPoolBenchmark.class.getClassLoader();
+  private final List<byte[]> classBytes = new ArrayList<byte[]>();
+  private ClassPools classPools;
+
+  @Setup(Level.Trial)
+  public void readClasses() throws IOException {
+    for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if (!path.endsWith(".jar")) {
+        continue;
+      }
+
+      try (JarFile jar = new JarFile(path)) {
+        final Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements() && this.classBytes.size() < CLASS_COUNT) {
+          final String name = entries.nextElement().getName();
+          // Skips module-info and package-info
+          if (!name.endsWith(".class") || name.contains("-")) {
+            continue;
+          }
+
+          final String className = name.substring(0, name.length() - ".class".length())
+              .replace('/', '.');
+          this.classBytes.add(InstrumentingClassLoader.readClassBytes(this.loader, className));
+        }
+      }
+    }
+
+    if (this.classBytes.size() < CLASS_COUNT) {
+      throw new IllegalStateException("found only " + this.classBytes.size() + " classes");
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void resetPools() {
+    this.classPools = new ClassPools();
+  }
+
+  private ClassPool getPool() {
+    if (this.pools.equals("shared")) {
+      return this.classPools.get(this.loader);
+    }
+
+    final ClassPool classPool = new ClassPool();
+    classPool.appendClassPath(new LoaderClassPath(this.loader));
+    return classPool;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CLASS_COUNT)
+  public int parseAndResolve() throws IOException {
+    int resolved = 0;
+    for (byte[] bytes : this.classBytes) {
+      final ClassPool classPool = this.getPool();
+      final CtClass ctClass = classPool.makeClass(new ByteArrayInputStream(bytes));
+      resolved += countSupertypes(ctClass);
+    }
+    return resolved;
+  }
+
+  private static int countSupertypes(CtClass ctClass) {
+    int count = 0;
+    try {
+      for (CtClass superType : ctClass.getInterfaces()) {
+        count += 1 + countSupertypes(superType);
+      }
+
+      final CtClass superClass = ctClass.getSuperclass();
+      if (superClass != null) {
+        count += 1 + countSupertypes(superClass);
+      }
+    } catch (NotFoundException e) {
+      // Unresolvable supertypes are skipped, as they are when matching hooks
+    }
+    return count;
+  }
+}
@@ -0,0 +1,66 @@
+package com.appland.appmap.transform;
+
+import com.appland.appmap.config.AppMapConfig;
+import com.appland.appmap.config.AppMapPackage;
+import com.appland.appmap.record.Recorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Measures the cost of calling an instrumented method while no recording session is active,
+ * compared with the same method uninstrumented. Run with {@code -prof gc} (the default for the
+ * {@code jmh} task) to confirm the idle path doesn't allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdleHookBenchmark {
+  private LongUnaryOperator original;
+  private LongUnaryOperator instrumented;
+  private long value = 1;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    final AppMapPackage pkg = new AppMapPackage();
+    pkg.path = IdleTarget.class.getName();
+    AppMapConfig.get().packages = new AppMapPackage[] { pkg };
+
+    if (Recorder.getInstance().hasActiveSession()) {
+      throw new IllegalStateException("benchmark requires an idle recorder");
+    }
+
+    final ClassLoader loader = new InstrumentingClassLoader(IdleTarget.class.getName(),
+        new ClassFileTransformer());
+    this.original = new IdleTarget();
+    this.instrumented = (LongUnaryOperator) loader
+        .loadClass(IdleTarget.class.getName())
+        .getConstructor()
+        .newInstance();
+  }
+
+  @Benchmark
+  public long uninstrumented() {
+    return this.value = this.original.applyAsLong(this.value);
+  }
+
+  @Benchmark
+  public long instrumentedIdle() {
+    return this.value = this.instrumented.applyAsLong(this.value);
+  }
+}
@@ -0,0 +1,13 @@
+package com.appland.appmap.transform;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A small, hot method for measuring hook overhead. Loaded both as-is and instrumented.
+ */
+public class IdleTarget implements LongUnaryOperator {
+  @Override
+  public long applyAsLong(long value) {
+    return value * 31 + 7;
+  }
+}
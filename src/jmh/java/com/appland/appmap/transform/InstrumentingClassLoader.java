@@ -0,0 +1,74 @@
+package com.appland.appmap.transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads a single class through the agent's {@link ClassFileTransformer}, leaving the copy in the
+ * parent loader untouched. Lets a benchmark compare instrumented and uninstrumented versions of the
+ * same class in one JVM without {@code -javaagent}.
+ */
+public class InstrumentingClassLoader extends ClassLoader {
+  private final String className;
+  private final ClassFileTransformer transformer;
+
+  public InstrumentingClassLoader(String className, ClassFileTransformer transformer) {
+    super(InstrumentingClassLoader.class.getClassLoader());
+    this.className = className;
+    this.transformer = transformer;
+  }
+
+  /**
+   * Reads the original bytecode of a class from the classpath.
+   * @param loader The loader to read the class file from
+   * @param className The fully qualified class name
+   * @return The class file bytes
+   * @throws IOException If the class file can't be read
+   */
+  public static byte[] readClassBytes(ClassLoader loader, String className) throws IOException {
+    final String resource = className.replace('.', '/') + ".class";
+    try (InputStream in = loader.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IOException("class file not found for " + className);
+      }
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    if (!name.equals(this.className)) {
+      return super.loadClass(name, resolve);
+    }
+
+    synchronized (getClassLoadingLock(name)) {
+      Class<?> loadedClass = findLoadedClass(name);
+      if (loadedClass == null) {
+        try {
+          final byte[] original = readClassBytes(getParent(), name);
+          final byte[] transformed = this.transformer.transform(this,
+              name.replace('.', '/'),
+              null,
+              null,
+              original);
+          loadedClass = defineClass(name, transformed, 0, transformed.length);
+        } catch (Exception e) {
+          throw new ClassNotFoundException(name, e);
+        }
+      }
+
+      if (resolve) {
+        resolveClass(loadedClass);
+      }
+      return loadedClass;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.appland.appmap.transform;
+
+import com.appland.appmap.config.AppMapConfig;
+import com.appland.appmap.config.AppMapPackage;
+import com.appland.appmap.record.Recorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Compares calling a small instrumented method with its hook code compiled inline, the default,
+ * against the same method with its hook code outlined into helper methods
+ * ({@code appmap.hooks.outline}). Each variant runs in its own fork, as the setting is read once
+ * at startup. No recording is active.
+ *
+ * <p>Pass {@code -PjmhPrintInlining} to the {@code jmh} task to log the JIT's inlining decisions for
+ * both forks, then compare the lines for {@code IdleTarget::applyAsLong}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class OutlinedHookBenchmark {
+  private LongUnaryOperator instrumented;
+  private long value = 1;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    final AppMapPackage pkg = new AppMapPackage();
+    pkg.path = IdleTarget.class.getName();
+    AppMapConfig.get().packages = new AppMapPackage[] { pkg };
+
+    if (Recorder.getInstance().hasActiveSession()) {
+      throw new IllegalStateException("benchmark requires an idle recorder");
+    }
+
+    final ClassLoader loader = new InstrumentingClassLoader(IdleTarget.class.getName(),
+        new ClassFileTransformer());
+    this.instrumented = (LongUnaryOperator) loader
+        .loadClass(IdleTarget.class.getName())
+        .getConstructor()
+        .newInstance();
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsPrepend = "-Dappmap.hooks.outline=false")
+  public long inlineHooks() {
+    return this.value = this.instrumented.applyAsLong(this.value);
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsPrepend = "-Dappmap.hooks.outline=true")
+  public long outlinedHooks() {
+    return this.value = this.instrumented.applyAsLong(this.value);
+  }
+}
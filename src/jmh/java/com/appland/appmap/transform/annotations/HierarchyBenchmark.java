@@ -0,0 +1,89 @@
+package com.appland.appmap.transform.annotations;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the hierarchy checks made by {@link HookClassSystem} while transforming one class, for a
+ * class deep in a framework hierarchy. Spring's DispatcherServlet, for example, sits five classes
+ * below Object and implements a handful of interfaces along the way. The class has
+ * {@value #METHOD_COUNT} methods, each checked against {@value #HOOK_COUNT} hooks. Every
+ * invocation parses the class again, as the transformer does, while its supertypes stay cached in
+ * the pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HierarchyBenchmark {
+  static final int METHOD_COUNT = 40;
+  static final int HOOK_COUNT = 30;
+
+  @Param({ "4", "8", "16" })
+  public int depth;
+
+  private ClassPool classPool;
+  private byte[] leafBytes;
+  private final String[] hookTargets = new String[HOOK_COUNT];
+
+  @Setup(Level.Trial)
+  public void buildHierarchy() throws Exception {
+    this.classPool = new ClassPool(true);
+
+    CtClass superClass = this.classPool.get("java.lang.Object");
+    for (int i = 0; i < this.depth; i++) {
+      final CtClass marker = this.classPool.makeInterface("HierarchyBenchmark.Marker" + i);
+      final CtClass aware = this.classPool.makeInterface("HierarchyBenchmark.Aware" + i, marker);
+      final CtClass level = this.classPool.makeClass("HierarchyBenchmark.Level" + i, superClass);
+      level.addInterface(aware);
+      superClass = level;
+    }
+
+    final CtClass leaf = this.classPool.makeClass("HierarchyBenchmark.Leaf", superClass);
+    for (int i = 0; i < METHOD_COUNT; i++) {
+      leaf.addMethod(CtNewMethod.make("public void method" + i + "() {}", leaf));
+    }
+    this.leafBytes = leaf.toBytecode();
+    leaf.detach();
+
+    // Half of the hooks target a type in the hierarchy, as a hook on a servlet or filter would
+    for (int i = 0; i < HOOK_COUNT; i++) {
+      this.hookTargets[i] = i % 2 == 0
+          ? "HierarchyBenchmark.Marker" + (i / 2 % this.depth)
+          : "HierarchyBenchmark.Unrelated" + i;
+    }
+  }
+
+  @Benchmark
+  public int transformLeaf() throws Exception {
+    final CtClass leaf = this.classPool.makeClass(new ByteArrayInputStream(this.leafBytes));
+    int matches = 0;
+    for (int method = 0; method < METHOD_COUNT; method++) {
+      for (String hookTarget : this.hookTargets) {
+        if (CtClassUtil.isChildOf(leaf, hookTarget)) {
+          matches++;
+        }
+      }
+    }
+    return matches;
+  }
+}
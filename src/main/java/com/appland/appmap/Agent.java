@@ -6,12 +6,19 @@ import com.appland.appmap.record.ActiveSessionException;
 import com.appland.appmap.record.Recorder;
 import com.appland.appmap.record.IRecordingSession.Metadata;
 import com.appland.appmap.transform.ClassFileTransformer;
+import com.appland.appmap.transform.LazyInstrumentation;
+import com.appland.appmap.transform.Retransformer;
+import com.appland.appmap.transform.TransformCache;
+import com.appland.appmap.transform.TrivialMethods;
 import com.appland.appmap.util.Logger;
 
 import java.io.File;
 import java.lang.instrument.Instrumentation;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Agent is a JVM agent which instruments, records, and prints appmap files
@@ -22,8 +29,15 @@ import java.util.Date;
  * JVM. As instrumented classes are used by the program, the activity is recorded by the agent.
  * In some cases, such as JUnit, AppMap files will be printed as the program executes.
  * When the agent exits, any un-printed data will be written to the file <code>appmap.json</code>.
+ *
+ * <p>The agent can also be attached to a JVM which is already running, see {@link Attach}. Classes
+ * loaded before the agent was attached are retransformed in the background.
  */
 public class Agent {
+  private static final String TRANSFORM_CACHE_DIRECTORY = ".transform-cache";
+
+  private static boolean initialized = false;
+
   /**
    * premain is the entry point for the AppMap Java agent.
    * @param agentArgs agent options
@@ -31,6 +45,40 @@ public class Agent {
    * @see <a href="https://docs.oracle.com/javase/7/docs/api/java/lang/instrument/package-summary.html">Package java.lang.instrument</a>
    */
   public static void premain(String agentArgs, Instrumentation inst) {
+    if (!initialize(inst, false)) {
+      return;
+    }
+
+    startAutoRecording();
+  }
+
+  /**
+   * agentmain is the entry point for the AppMap Java agent when attached to a running JVM.
+   * @param agentArgs A comma-separated list of {@code name=value} system properties to be set
+   *                  before the agent loads, e.g. {@code appmap.config.file=/path/to/appmap.yml}
+   * @param inst services needed to instrument Java programming language code
+   */
+  public static void agentmain(String agentArgs, Instrumentation inst) {
+    setSystemProperties(agentArgs);
+
+    if (!initialize(inst, true)) {
+      return;
+    }
+
+    final Thread thread = new Thread(() -> retransformLoadedClasses(inst), "appmap-attach");
+    thread.setDaemon(true);
+    thread.start();
+
+    startAutoRecording();
+  }
+
+  private static synchronized boolean initialize(Instrumentation inst, boolean attached) {
+    if (initialized) {
+      Logger.error("agent is already loaded");
+      return false;
+    }
+    initialized = true;
+
     final File dir = new File(Properties.OutputDirectory);
     if (!dir.exists()) {
       if (!dir.mkdirs()) {
@@ -40,38 +88,122 @@ public class Agent {
 
     Logger.printf("agent loaded using config %s\n", Properties.ConfigFile);
 
-    inst.addTransformer(new ClassFileTransformer());
+    TransformCache transformCache = null;
+    if (Properties.TransformCache) {
+      transformCache = TransformCache.open(
+          new File(Properties.OutputDirectory, TRANSFORM_CACHE_DIRECTORY),
+          new File(Properties.ConfigFile),
+          Properties.HookDispatch + (Properties.HookOutline ? "+outline" : ""));
+    }
+
+    LazyInstrumentation lazyInstrumentation = null;
+    if (Properties.InstrumentationLazy) {
+      if (inst.isRetransformClassesSupported()) {
+        lazyInstrumentation = new LazyInstrumentation(inst);
+        Recorder.getInstance().addListener(lazyInstrumentation);
+      } else {
+        Logger.println("retransforming classes is not supported, instrumenting at load time");
+      }
+    }
+
+    final TrivialMethods trivialMethods = new TrivialMethods();
+    Recorder.getInstance().addListener(trivialMethods);
+
+    inst.addTransformer(
+        new ClassFileTransformer(lazyInstrumentation, transformCache, trivialMethods),
+        lazyInstrumentation != null || attached);
 
     if (AppMapConfig.load(new File(Properties.ConfigFile)) == null) {
       Logger.printf("failed to load config %s\n", Properties.ConfigFile);
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Parses agent arguments given on attach. System properties are only read once, so these must be
+   * set before {@link Properties} is first accessed.
+   */
+  private static void setSystemProperties(String agentArgs) {
+    if (agentArgs == null) {
       return;
     }
 
-    if (Properties.RecordingAuto) {
-      final Date date = new Date();
-      final SimpleDateFormat dateFormat = new SimpleDateFormat("yyMMddHHmmss");
-      final String timestamp = dateFormat.format(date);
-      final Metadata metadata = new Metadata();
-      final Recorder recorder = Recorder.getInstance();
-      String fileName = Properties.RecordingFile;
-      String appmapName = Properties.RecordingName;
-
-      if (fileName == null || fileName.trim().isEmpty()) {
-        fileName = String.format("%s.appmap.json", timestamp);
+    for (String arg : agentArgs.split(",")) {
+      final int separator = arg.indexOf('=');
+      if (separator < 0) {
+        if (!arg.trim().isEmpty()) {
+          System.setProperty(arg.trim(), "");
+        }
+        continue;
       }
 
-      if (appmapName == null || appmapName.trim().isEmpty()) {
-        appmapName = timestamp;
-      }
+      System.setProperty(arg.substring(0, separator).trim(), arg.substring(separator + 1));
+    }
+  }
+
+  /**
+   * Retransforms classes which were loaded before the agent was attached and are included by the
+   * configuration. Batches are kept within {@link Properties#AttachBudget} milliseconds, so that
+   * the application stays responsive while it's being instrumented.
+   */
+  private static void retransformLoadedClasses(Instrumentation inst) {
+    if (!inst.isRetransformClassesSupported()) {
+      Logger.error("retransforming classes is not supported, only classes loaded from now on "
+          + "will be instrumented");
+      return;
+    }
 
-      metadata.recorderName = "remote_recording";
-      metadata.scenarioName = appmapName;
+    final long startTime = System.currentTimeMillis();
+    final AppMapConfig config = AppMapConfig.get();
+    final Class<?>[] loadedClasses = inst.getAllLoadedClasses();
+    final List<Class<?>> classes = Arrays.stream(loadedClasses)
+        .filter(classType -> config.includes(classType.getName()))
+        .filter(inst::isModifiableClass)
+        .collect(Collectors.toList());
 
-      recorder.start(fileName, metadata);
+    try {
+      new Retransformer(inst).retransform(classes, Properties.AttachBudget);
+    } catch (InterruptedException e) {
+      Logger.println("interrupted while retransforming loaded classes");
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    Logger.printf("retransformed %d loaded classes in %d ms\n",
+        classes.size(),
+        System.currentTimeMillis() - startTime);
+  }
 
-      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-        recorder.stop();
-      }));
+  private static void startAutoRecording() {
+    if (!Properties.RecordingAuto) {
+      return;
     }
+
+    final Date date = new Date();
+    final SimpleDateFormat dateFormat = new SimpleDateFormat("yyMMddHHmmss");
+    final String timestamp = dateFormat.format(date);
+    final Metadata metadata = new Metadata();
+    final Recorder recorder = Recorder.getInstance();
+    String fileName = Properties.RecordingFile;
+    String appmapName = Properties.RecordingName;
+
+    if (fileName == null || fileName.trim().isEmpty()) {
+      fileName = String.format("%s.appmap.json", timestamp);
+    }
+
+    if (appmapName == null || appmapName.trim().isEmpty()) {
+      appmapName = timestamp;
+    }
+
+    metadata.recorderName = "remote_recording";
+    metadata.scenarioName = appmapName;
+
+    recorder.start(fileName, metadata);
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      recorder.stop();
+    }));
   }
 }
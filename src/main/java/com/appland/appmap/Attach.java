@@ -0,0 +1,70 @@
+package com.appland.appmap;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+/**
+ * Attach loads the AppMap agent into a JVM which is already running, using the Attach API. This is
+ * the entry point of the agent jar:
+ *
+ * <pre>
+ * java -jar appmap.jar &lt;pid&gt; [name=value ...]
+ * </pre>
+ *
+ * <p>Each {@code name=value} argument is set as a system property in the target JVM before the
+ * agent loads, e.g. {@code appmap.config.file=/path/to/appmap.yml}.
+ *
+ * <p>The Attach API is loaded reflectively, as it ships in {@code tools.jar} rather than the
+ * runtime on Java 8.
+ */
+public class Attach {
+  private static final String VIRTUAL_MACHINE_CLASS = "com.sun.tools.attach.VirtualMachine";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("usage: java -jar appmap.jar <pid> [name=value ...]");
+      System.exit(1);
+    }
+
+    final String pid = args[0];
+    final String agentArgs = String.join(",", Arrays.copyOfRange(args, 1, args.length));
+    final File agentJar = new File(Attach.class
+        .getProtectionDomain()
+        .getCodeSource()
+        .getLocation()
+        .toURI());
+
+    final Class<?> vmClass = loadVirtualMachineClass();
+    try {
+      final Object vm = vmClass.getMethod("attach", String.class).invoke(null, pid);
+      try {
+        vmClass.getMethod("loadAgent", String.class, String.class)
+            .invoke(vm, agentJar.getPath(), agentArgs);
+      } finally {
+        vmClass.getMethod("detach").invoke(vm);
+      }
+    } catch (InvocationTargetException e) {
+      System.err.printf("failed to attach to %s: %s\n", pid, e.getCause());
+      System.exit(1);
+    }
+
+    System.out.printf("attached AppMap agent to %s\n", pid);
+  }
+
+  private static Class<?> loadVirtualMachineClass() throws Exception {
+    try {
+      return Class.forName(VIRTUAL_MACHINE_CLASS);
+    } catch (ClassNotFoundException e) {
+      final File toolsJar = new File(System.getProperty("java.home"), "../lib/tools.jar");
+      if (!toolsJar.exists()) {
+        throw e;
+      }
+
+      final ClassLoader loader = new URLClassLoader(new URL[] { toolsJar.toURI().toURL() });
+      return Class.forName(VIRTUAL_MACHINE_CLASS, true, loader);
+    }
+  }
+}
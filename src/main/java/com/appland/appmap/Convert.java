@@ -0,0 +1,64 @@
+package com.appland.appmap;
+
+import com.appland.appmap.record.BinaryRecordingReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Convert turns a recording made with {@code appmap.output.format=binary} into AppMap JSON:
+ *
+ * <pre>
+ * java -cp appmap.jar com.appland.appmap.Convert &lt;recording.appmap.bin&gt; [output.appmap.json]
+ * </pre>
+ *
+ * <p>The output defaults to the name of the recording with {@code .bin} replaced by
+ * {@code .json}. A recording named {@code .gz} is decompressed first. Events are converted as
+ * they're read, so memory use depends on the code that was recorded, its symbols, event templates
+ * and class map, rather than on the number of events.
+ */
+public class Convert {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  public static void main(String[] args) {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println(
+          "usage: java -cp appmap.jar com.appland.appmap.Convert <recording.appmap.bin> [output.appmap.json]");
+      System.exit(1);
+    }
+
+    final Path input = Paths.get(args[0]);
+    final Path output = Paths.get(args.length > 1 ? args[1] : defaultOutput(args[0]));
+    try (InputStream in = open(input);
+         Writer out = new OutputStreamWriter(Files.newOutputStream(output),
+             StandardCharsets.UTF_8)) {
+      BinaryRecordingReader.convert(in, out);
+    } catch (IOException e) {
+      System.err.printf("failed to convert %s: %s\n", input, e.getMessage());
+      System.exit(1);
+    }
+
+    System.out.printf("wrote %s\n", output);
+  }
+
+  private static InputStream open(Path input) throws IOException {
+    final InputStream in = Files.newInputStream(input);
+    return input.toString().endsWith(".gz") ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+  }
+
+  private static String defaultOutput(String input) {
+    if (input.endsWith(".gz")) {
+      input = input.substring(0, input.length() - ".gz".length());
+    }
+    return input.endsWith(".bin")
+        ? input.substring(0, input.length() - ".bin".length()) + ".json"
+        : input + ".json";
+  }
+}
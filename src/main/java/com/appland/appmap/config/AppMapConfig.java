@@ -1,6 +1,7 @@
 package com.appland.appmap.config;
 
 import com.appland.appmap.util.Logger;
+import com.appland.appmap.util.StringUtil;
 
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
@@ -13,8 +14,12 @@ import java.io.InputStream;
 public class AppMapConfig {
   public String name;
   public AppMapPackage[] packages = new AppMapPackage[0];
+  public AppMapTrivialMethods trivial = new AppMapTrivialMethods();
   private static AppMapConfig singleton = new AppMapConfig();
 
+  // Compiled from packages on first use, and again whenever packages is replaced
+  private volatile PackageMatcher matcher;
+
   /**
    * Populate the configuration from a file.
    * @param configFile The file to be loaded
@@ -51,6 +56,15 @@ public class AppMapConfig {
     return singleton;
   }
 
+  private PackageMatcher getMatcher() {
+    PackageMatcher matcher = this.matcher;
+    if (matcher == null || matcher.getPackages() != this.packages) {
+      matcher = new PackageMatcher(this.packages);
+      this.matcher = matcher;
+    }
+    return matcher;
+  }
+
   /**
    * Check if a class/method is included in the configuration.
    * @param canonicalName the canonical name of the class/method to be checked
@@ -58,17 +72,35 @@ public class AppMapConfig {
    *         is not included or otherwise explicitly excluded.
    */
   public Boolean includes(String canonicalName) {
-    if (this.packages == null) {
-      return false;
-    }
+    return this.getMatcher().includes(canonicalName);
+  }
 
-    for (AppMapPackage pkg : this.packages) {
-      if (pkg.includes(canonicalName)) {
-        return true;
-      }
+  /**
+   * Check if a method is included in the configuration. Classes included or excluded as a whole
+   * are decided once, without checking each of their methods.
+   * @param className the fully qualified name of the declaring class
+   * @param isStatic whether the method is static
+   * @param methodName the name of the method
+   * @return {@code true} if the method is included in the configuration. {@code false} if it is
+   *         not included or otherwise explicitly excluded.
+   * @see StringUtil#canonicalName(String, boolean, String)
+   */
+  public Boolean includes(String className, boolean isStatic, String methodName) {
+    final PackageMatcher matcher = this.getMatcher();
+    final Boolean includes = matcher.matchClass(className).includes;
+    if (includes != null) {
+      return includes;
     }
+    return matcher.includes(StringUtil.canonicalName(className, isStatic, methodName));
+  }
 
-    return false;
+  /**
+   * Check if any method of a class could be included in the configuration.
+   * @param className the fully qualified name of the class
+   * @return {@code false} if no method of the class is included. Otherwise, {@code true}.
+   */
+  public Boolean mayInclude(String className) {
+    return !Boolean.FALSE.equals(this.getMatcher().matchClass(className).includes);
   }
 
   /**
@@ -77,16 +109,24 @@ public class AppMapConfig {
    * @return {@code true} if the class/method is explicitly excluded in the configuration. Otherwise, {@code false}.
    */
   public Boolean excludes(String canonicalName) {
-    if (this.packages == null) {
-      return false;
-    }
+    return this.getMatcher().excludes(canonicalName);
+  }
 
-    for (AppMapPackage pkg : this.packages) {
-      if (pkg.excludes(canonicalName)) {
-        return true;
-      }
+  /**
+   * Check if a method is explicitly excluded in the configuration. Classes excluded as a whole are
+   * decided once, without checking each of their methods.
+   * @param className the fully qualified name of the declaring class
+   * @param isStatic whether the method is static
+   * @param methodName the name of the method
+   * @return {@code true} if the method is explicitly excluded in the configuration. Otherwise,
+   *         {@code false}.
+   */
+  public Boolean excludes(String className, boolean isStatic, String methodName) {
+    final PackageMatcher matcher = this.getMatcher();
+    final Boolean excludes = matcher.matchClass(className).excludes;
+    if (excludes != null) {
+      return excludes;
     }
-
-    return false;
+    return matcher.excludes(StringUtil.canonicalName(className, isStatic, methodName));
   }
 }
@@ -0,0 +1,76 @@
+package com.appland.appmap.config;
+
+import com.appland.appmap.util.Logger;
+
+/**
+ * The {@code trivial} section of appmap.yml. Sets how each category of trivial method in an
+ * included package is handled: {@code record} (the default) records its calls as events like any
+ * other method, {@code count} only counts its calls, and {@code skip} leaves it alone.
+ */
+public class AppMapTrivialMethods {
+  public enum Policy {
+    RECORD,
+    COUNT,
+    SKIP
+  }
+
+  public String getters = "record";
+  public String setters = "record";
+  public String delegates = "record";
+  public String boilerplate = "record";
+
+  /**
+   * @return {@code true} if every category is recorded, as if this section were left out
+   */
+  public Boolean recordsAll() {
+    return isRecord(this.getters)
+        && isRecord(this.setters)
+        && isRecord(this.delegates)
+        && isRecord(this.boilerplate);
+  }
+
+  private static boolean isRecord(String policy) {
+    return policy == null || policy.equals("record");
+  }
+
+  /**
+   * Gets the policy for a category of trivial method.
+   * @param category The name of the category, e.g. {@code getters}
+   * @return The policy. {@link Policy#RECORD} if the category or its policy is unknown.
+   */
+  public Policy getPolicy(String category) {
+    String policy = null;
+    switch (category) {
+      case "getters":
+        policy = this.getters;
+        break;
+      case "setters":
+        policy = this.setters;
+        break;
+      case "delegates":
+        policy = this.delegates;
+        break;
+      case "boilerplate":
+        policy = this.boilerplate;
+        break;
+      default:
+        break;
+    }
+
+    if (policy == null) {
+      return Policy.RECORD;
+    }
+
+    switch (policy) {
+      case "record":
+        return Policy.RECORD;
+      case "count":
+        return Policy.COUNT;
+      case "skip":
+        return Policy.SKIP;
+      default:
+        Logger.printf("unknown policy %s for trivial %s, recording them\n", policy, category);
+        return Policy.RECORD;
+    }
+  }
+}
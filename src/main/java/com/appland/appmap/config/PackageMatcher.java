@@ -0,0 +1,177 @@
+package com.appland.appmap.config;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers include and exclude queries for a set of {@link AppMapPackage}s in a single pass over a
+ * name. Package paths and exclusions are compiled into a trie of characters, so that a name is
+ * matched against every prefix at once. Matching is by string prefix, exactly as
+ * {@link AppMapPackage#includes} and {@link AppMapPackage#excludes} do.
+ *
+ * <p>Decisions which hold for every method of a class are cached by class name.
+ */
+class PackageMatcher {
+  private static class Node {
+    private final Map<Character, Node> children = new HashMap<Character, Node>();
+    // Indexes of the packages whose path ends here
+    private final BitSet includes = new BitSet();
+    // Indexes of the packages with an exclusion ending here
+    private final BitSet excludes = new BitSet();
+    // Whether any path ends below this node
+    private boolean includesBelow = false;
+    // Whether any exclusion ends below this node
+    private boolean excludesBelow = false;
+
+    Node child(char c) {
+      return this.children.get(c);
+    }
+  }
+
+  /**
+   * The decisions that can be made for a class as a whole. {@code null} means each method has to
+   * be checked by name.
+   */
+  static class ClassMatch {
+    final Boolean includes;
+    final Boolean excludes;
+
+    ClassMatch(Boolean includes, Boolean excludes) {
+      this.includes = includes;
+      this.excludes = excludes;
+    }
+  }
+
+  private final AppMapPackage[] packages;
+  private final Node root = new Node();
+  private final Map<String, ClassMatch> classMatches = new ConcurrentHashMap<String, ClassMatch>();
+
+  PackageMatcher(AppMapPackage[] packages) {
+    this.packages = packages;
+    if (packages == null) {
+      return;
+    }
+
+    for (int i = 0; i < packages.length; i++) {
+      final AppMapPackage pkg = packages[i];
+      if (pkg == null || pkg.path == null) {
+        continue;
+      }
+
+      this.insert(pkg.path, false).includes.set(i);
+      if (pkg.exclude != null) {
+        for (String exclusion : pkg.exclude) {
+          if (exclusion != null) {
+            this.insert(exclusion, true).excludes.set(i);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The packages this matcher was compiled from
+   */
+  AppMapPackage[] getPackages() {
+    return this.packages;
+  }
+
+  private Node insert(String prefix, boolean isExclusion) {
+    Node node = this.root;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (isExclusion) {
+        node.excludesBelow = true;
+      } else {
+        node.includesBelow = true;
+      }
+      node = node.children.computeIfAbsent(prefix.charAt(i), k -> new Node());
+    }
+    return node;
+  }
+
+  /**
+   * Check if a class/method is included by any package, and not excluded by that package.
+   * @param canonicalName the canonical name of the class/method to be checked
+   */
+  boolean includes(String canonicalName) {
+    final BitSet included = new BitSet();
+    final BitSet excluded = new BitSet();
+    this.walk(canonicalName, included, excluded);
+    included.andNot(excluded);
+    return !included.isEmpty();
+  }
+
+  /**
+   * Check if a class/method is explicitly excluded by any package.
+   * @param canonicalName the canonical name of the class/method to be checked
+   */
+  boolean excludes(String canonicalName) {
+    final BitSet excluded = new BitSet();
+    this.walk(canonicalName, new BitSet(), excluded);
+    return !excluded.isEmpty();
+  }
+
+  /**
+   * Collects the packages whose path, and whose exclusions, are prefixes of a name.
+   * @return The node reached by the whole name, or {@code null} if no path or exclusion continues
+   *         past the portion of the name matched
+   */
+  private Node walk(String name, BitSet included, BitSet excluded) {
+    Node node = this.root;
+    for (int i = 0; ; i++) {
+      included.or(node.includes);
+      excluded.or(node.excludes);
+      if (i == name.length()) {
+        return node;
+      }
+
+      node = node.child(name.charAt(i));
+      if (node == null) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Decides, where possible, whether every method of a class is included or excluded. A method's
+   * canonical name starts with its class name, so packages and exclusions matching the class name
+   * match each of its methods. Only those continuing past the class name need to be checked
+   * against each method.
+   * @param className The fully qualified name of the class
+   */
+  ClassMatch matchClass(String className) {
+    ClassMatch classMatch = this.classMatches.get(className);
+    if (classMatch != null) {
+      return classMatch;
+    }
+
+    final BitSet included = new BitSet();
+    final BitSet excluded = new BitSet();
+    final Node node = this.walk(className, included, excluded);
+    final boolean includesBelow = node != null && node.includesBelow;
+    final boolean excludesBelow = node != null && node.excludesBelow;
+
+    final boolean anyExcluded = !excluded.isEmpty();
+    included.andNot(excluded);
+
+    Boolean includes = null;
+    if (!included.isEmpty() && !excludesBelow) {
+      includes = true;
+    } else if (included.isEmpty() && !includesBelow) {
+      includes = false;
+    }
+
+    Boolean excludes = null;
+    if (anyExcluded) {
+      excludes = true;
+    } else if (!excludesBelow) {
+      excludes = false;
+    }
+
+    classMatch = new ClassMatch(includes, excludes);
+    this.classMatches.put(className, classMatch);
+    return classMatch;
+  }
+}
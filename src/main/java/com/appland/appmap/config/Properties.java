@@ -22,6 +22,26 @@ public class Properties {
   public static final String OutputDirectory = resolveProperty(
       "appmap.output.directory", DefaultOutputDirectory);
 
+  public static final Integer DefaultOutputBufferSize = 256 * 1024;
+  public static final Integer OutputBufferSize = resolveProperty(
+      "appmap.output.bufferSize", Integer::valueOf, DefaultOutputBufferSize);
+  public static final Integer OutputFlushBytes = resolveProperty(
+      "appmap.output.flushBytes", Integer::valueOf, OutputBufferSize);
+  public static final Long DefaultOutputFlushInterval = 1000L;
+  public static final Long OutputFlushInterval = resolveProperty(
+      "appmap.output.flushInterval", Long::valueOf, DefaultOutputFlushInterval);
+
+  public static final Boolean OutputGzip = resolveProperty(
+      "appmap.output.gzip", Boolean::valueOf, false);
+  public static final Integer DefaultOutputGzipLevel = 6;
+  public static final Integer OutputGzipLevel = resolveProperty(
+      "appmap.output.gzipLevel", Integer::valueOf, DefaultOutputGzipLevel);
+
+  public static final String OutputFormatJson = "json";
+  public static final String OutputFormatBinary = "binary";
+  public static final String OutputFormat = resolveProperty(
+      "appmap.output.format", OutputFormatJson);
+
   public static final String DefaultConfigFile = "appmap.yml";
   public static final String ConfigFile = resolveProperty(
       "appmap.config.file", DefaultConfigFile);
@@ -30,6 +50,24 @@ public class Properties {
   public static final Integer MaxValueSize = resolveProperty(
       "appmap.event.valueSize", Integer::valueOf, DefaultMaxValueSize);
 
+  public static final Boolean InstrumentationLazy = resolveProperty(
+      "appmap.instrumentation.lazy", Boolean::valueOf, false);
+
+  public static final Boolean TransformCache = resolveProperty(
+      "appmap.transform.cache", Boolean::valueOf, false);
+
+  public static final Integer DefaultAttachBudget = 10;
+  public static final Integer AttachBudget = resolveProperty(
+      "appmap.attach.budget", Integer::valueOf, DefaultAttachBudget);
+
+  public static final String DispatchStatic = "static";
+  public static final String DispatchInvokeDynamic = "indy";
+  public static final String HookDispatch = resolveProperty(
+      "appmap.hooks.dispatch", DispatchStatic);
+
+  public static final Boolean HookOutline = resolveProperty(
+      "appmap.hooks.outline", Boolean::valueOf, false);
+
   public static final String[] DefaultRecords = new String[0];
   public static final String[] Records = resolveProperty(
        "appmap.record", DefaultRecords);
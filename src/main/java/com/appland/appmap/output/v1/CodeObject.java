@@ -8,6 +8,8 @@ import javassist.bytecode.SourceFileAttribute;
 
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 
 /**
@@ -71,7 +73,8 @@ public class CodeObject {
     return this;
   }
 
-  private ArrayList<CodeObject> children = null;
+  // Copied on write, so that it can be iterated without locking while children are added
+  private volatile CopyOnWriteArrayList<CodeObject> children = null;
   public List<CodeObject> getChildren() {
     return this.children;
   }
@@ -104,6 +107,56 @@ public class CodeObject {
     return this;
   }
 
+  // Indexes children by ChildKey. Written while holding this, read without locking.
+  @JSONField(serialize = false, deserialize = false)
+  private volatile Map<ChildKey, CodeObject> childIndex = null;
+
+  /**
+   * Identifies a child among its siblings: packages and classes by name, functions by name, flags
+   * and line number.
+   */
+  private static final class ChildKey {
+    private final String type;
+    private final String name;
+    private final Boolean isStatic;
+    private final Integer lineno;
+
+    ChildKey(String type, String name, Boolean isStatic, Integer lineno) {
+      this.type = type;
+      this.name = name;
+      this.isStatic = isStatic;
+      this.lineno = lineno;
+    }
+
+    static ChildKey of(CodeObject codeObject) {
+      if ("function".equals(codeObject.type)) {
+        return new ChildKey(codeObject.type,
+            codeObject.name,
+            codeObject.isStatic,
+            codeObject.lineno);
+      }
+      return new ChildKey(codeObject.type, codeObject.name, null, null);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ChildKey)) {
+        return false;
+      }
+
+      final ChildKey key = (ChildKey) obj;
+      return Objects.equals(this.type, key.type)
+          && Objects.equals(this.name, key.name)
+          && Objects.equals(this.isStatic, key.isStatic)
+          && Objects.equals(this.lineno, key.lineno);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.type, this.name, this.isStatic, this.lineno);
+    }
+  }
+
 
   @Override
   public boolean equals(Object obj) {
@@ -190,23 +243,34 @@ public class CodeObject {
    * @return An estimated source file path
    */
   public static String getSourceFilePath(CtClass classType) {
-    String sourceFilePath = getSourceFilePathWithDebugInfo(classType);
+    return getSourceFilePath(classType.getName(),
+        classType.getPackageName(),
+        classType.getClassFile2().getSourceFile());
+  }
+
+  /**
+   * Guesses the source file path for a class, given its names rather than the class itself.
+   * @param className The fully qualified name of the class
+   * @param packageName The package of the class, or {@code null}
+   * @param sourceFile The SourceFile attribute of the class, or {@code null} if it has none
+   * @return An estimated source file path
+   */
+  public static String getSourceFilePath(String className, String packageName, String sourceFile) {
+    String sourceFilePath = getSourceFilePathWithDebugInfo(packageName, sourceFile);
     
     if (sourceFilePath == null) {
-      sourceFilePath = guessSourceFilePath(classType);
+      sourceFilePath = guessSourceFilePath(className);
     }
 
     return sourceFilePath;
   }
 
-  private static String getSourceFilePathWithDebugInfo(CtClass classType) {
-    final String sourceFile = classType.getClassFile2().getSourceFile();
+  private static String getSourceFilePathWithDebugInfo(String packageName, String sourceFile) {
     if (sourceFile == null) {
       return null;
     }
 
     final List<String> tokens = new ArrayList<>();
-    final String packageName = classType.getPackageName();
 
     if (packageName != null) {
       for(String token : packageName.split("\\.")) {
@@ -218,9 +282,8 @@ public class CodeObject {
     return String.join("/", tokens);
   }
 
-  private static String guessSourceFilePath(CtClass classType) {
-    return classType
-      .getName()
+  private static String guessSourceFilePath(String className) {
+    return className
       .replaceAll("\\.", Matcher.quoteReplacement("/"))
       .replaceAll("\\$\\w+", "") + ".java";
   }
@@ -310,6 +373,41 @@ public class CodeObject {
     return rootObject;
   }
 
+  /**
+   * Create a tree of CodeObjects for a method from its {@link Event} template. This is equivalent to
+   * {@link CodeObject#createTree(CtBehavior)}, for use when the behavior is no longer available.
+   * @param template The event template of the method
+   * @param packageName The package name of the declaring class, or {@code null}
+   * @param className The simple name of the declaring class
+   * @param classIsStatic Whether or not the declaring class is static
+   * @return The root of the CodeObject tree
+   */
+  public static CodeObject createTree(Event template,
+                                      String packageName,
+                                      String className,
+                                      Boolean classIsStatic) {
+    final CodeObject classObject = new CodeObject()
+        .setType("class")
+        .setFile(template.path)
+        .setName(className)
+        .setStatic(classIsStatic);
+
+    classObject.addChild(new CodeObject()
+        .setType("function")
+        .setName(template.methodId)
+        .setFile(template.path)
+        .setLineno(template.lineNumber)
+        .setStatic(template.isStatic));
+
+    final CodeObject rootObject = CodeObject.createTree(packageName);
+    if (rootObject == null) {
+      return classObject;
+    }
+
+    rootObject.get(packageName).addChild(classObject);
+    return rootObject;
+  }
+
   private CodeObject get(ArrayDeque<String> tokens) {
     final String currentToken = tokens.peek();
     if (currentToken == null) {
@@ -345,22 +443,29 @@ public class CodeObject {
   }
 
   /**
-   * Finds an immediate child that matches parameters.
+   * Finds an immediate function that matches parameters.
    * @param name The name of the child
    * @param isStatic Whether or not the child is static
    * @param lineNumber The line number of the child
    * @return The child CodeObject, if found. Otherwise, {@code null}.
    */
   public CodeObject findChild(String name, Boolean isStatic, int lineNumber) {
-    for (CodeObject child : this.safeGetChildren()) {
-      if (child.name.equals(name)
-          && child.isStatic == isStatic
-          && child.lineno == lineNumber) {
-        return child;
-      }
-    }
+    return this.findChild(new ChildKey("function", name, isStatic, lineNumber));
+  }
 
-    return null;
+  /**
+   * Finds an immediate package or class by name.
+   * @param type The type of the child, {@code package} or {@code class}
+   * @param name The name of the child
+   * @return The child CodeObject, if found. Otherwise, {@code null}.
+   */
+  public CodeObject findChild(String type, String name) {
+    return this.findChild(new ChildKey(type, name, null, null));
+  }
+
+  private CodeObject findChild(ChildKey key) {
+    final Map<ChildKey, CodeObject> childIndex = this.childIndex;
+    return childIndex == null ? null : childIndex.get(key);
   }
 
   /**
@@ -378,46 +483,54 @@ public class CodeObject {
     return null;
   }
 
-  private boolean equalBySubstring(String s1, String s2, int start, int end) {
-    int sublen = end - start;
-    if (s1.length() != sublen)
-      return false;
-
-    for (int idx = 0; idx < sublen; idx++) {
-      if (s1.charAt(idx) != s2.charAt(start + idx))
-        return false;
+  /**
+   * Add an immediate child to this CodeObject.
+   * @param child The child to be added
+   * @return {@code this}
+   */
+  public synchronized CodeObject addChild(CodeObject child) {
+    if (child == null) {
+      return this;
     }
 
-    return true;
-  }
-
-  public CodeObject findChildBySubstring(String name, int start, int end) {
-    for (CodeObject child : this.safeGetChildren()) {
-      if (equalBySubstring(child.name, name, start, end)) {
-        return child;
-      }
-    }
+    this.appendChild(child);
+    this.childIndex.putIfAbsent(ChildKey.of(child), child);
 
-    return null;
+    return this;
   }
 
   /**
-   * Add an immediate child to this CodeObject.
+   * Adds an immediate child unless an equivalent one exists: a package or class of the same name,
+   * or a function of the same name, flags and line number. Safe to call concurrently.
    * @param child The child to be added
-   * @return {@code this}
+   * @return The existing child, or {@code child} if it was added
    */
-  public CodeObject addChild(CodeObject child) {
-    if (child == null) {
-      return this;
+  public CodeObject addChildIfAbsent(CodeObject child) {
+    final ChildKey key = ChildKey.of(child);
+    final CodeObject existing = this.findChild(key);
+    if (existing != null) {
+      return existing;
     }
 
+    synchronized (this) {
+      final CodeObject added = this.findChild(key);
+      if (added != null) {
+        return added;
+      }
+
+      this.appendChild(child);
+      this.childIndex.put(key, child);
+      return child;
+    }
+  }
+
+  private void appendChild(CodeObject child) {
     if (this.children == null) {
-      this.children = new ArrayList<CodeObject>();
+      this.childIndex = new ConcurrentHashMap<ChildKey, CodeObject>();
+      this.children = new CopyOnWriteArrayList<CodeObject>();
     }
 
     this.children.add(child);
-
-    return this;
   }
 
   /*
@@ -13,9 +13,9 @@ import java.util.ArrayList;
  * @see <a href="https://github.com/applandinc/appmap#events">GitHub: AppMap - events</a>
  */
 public class Event {
-  private static Integer globalEventId = 0;
+  private static final EventIdAllocator idAllocator = EventIdAllocator.get();
 
-  public Integer id;
+  public Long id;
   public String event;
   public String path;
   public Value receiver;
@@ -34,7 +34,7 @@ public class Event {
   public Long threadId;
 
   @JSONField(name = "parent_id")
-  public Integer parentId;
+  public Long parentId;
 
   @JSONField(name = "static")
   public Boolean isStatic;
@@ -61,8 +61,11 @@ public class Event {
   @JSONField(name = "sql_query")
   public SqlQuery sqlQuery;
 
-  private synchronized Integer issueId() {
-    return ++globalEventId;
+  // The fields shared with the event template, pre-encoded as JSON, or null if not encoded
+  private char[] staticFields;
+
+  private static Long issueId() {
+    return idAllocator.next();
   }
 
   /**
@@ -112,7 +115,29 @@ public class Event {
         .setParameters(new Parameters(behavior));
   }
 
-  private Event setId(Integer id) {
+  /**
+   * Gets the {@code defined_class}, {@code event}, {@code lineno}, {@code method_id},
+   * {@code path} and {@code static} fields pre-encoded as JSON, if they were encoded along with
+   * the event template. Setting any of them discards the encoded fields.
+   * @return The encoded fields, or {@code null}
+   */
+  @JSONField(serialize = false, deserialize = false)
+  public char[] getStaticFields() {
+    return this.staticFields;
+  }
+
+  /**
+   * Sets the pre-encoded JSON of the fields copied from the event template.
+   * @param staticFields The encoded fields, which must match this event's
+   * @return {@code this}
+   * @see Event#getStaticFields
+   */
+  public Event setStaticFields(char[] staticFields) {
+    this.staticFields = staticFields;
+    return this;
+  }
+
+  private Event setId(Long id) {
     this.id = id;
     return this;
   }
@@ -125,6 +150,7 @@ public class Event {
    */
   public Event setEvent(String event) {
     this.event = event;
+    this.staticFields = null;
     return this;
   }
 
@@ -136,6 +162,7 @@ public class Event {
    */
   public Event setPath(String path) {
     this.path = path;
+    this.staticFields = null;
     return this;
   }
 
@@ -147,6 +174,7 @@ public class Event {
    */
   public Event setDefinedClass(String definedClass) {
     this.definedClass = definedClass;
+    this.staticFields = null;
     return this;
   }
 
@@ -158,6 +186,7 @@ public class Event {
    */
   public Event setMethodId(String methodId) {
     this.methodId = methodId;
+    this.staticFields = null;
     return this;
   }
 
@@ -169,6 +198,7 @@ public class Event {
    */
   public Event setLineNumber(Integer lineNumber) {
     this.lineNumber = lineNumber;
+    this.staticFields = null;
     return this;
   }
 
@@ -190,7 +220,7 @@ public class Event {
    * @return {@code this}
    * @see <a href="https://github.com/applandinc/appmap#common-attributes-1">GitHub: AppMap - Common attributes</a>
    */
-  public Event setParentId(Integer parentId) {
+  public Event setParentId(Long parentId) {
     this.parentId = parentId;
     return this;
   }
@@ -203,6 +233,7 @@ public class Event {
    */
   public Event setStatic(Boolean val) {
     this.isStatic = val;
+    this.staticFields = null;
     return this;
   }
 
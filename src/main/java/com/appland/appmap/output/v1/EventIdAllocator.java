@@ -0,0 +1,53 @@
+package com.appland.appmap.output.v1;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues unique 64-bit {@link Event} IDs. Each thread reserves a block of IDs from a shared atomic
+ * counter and then hands them out without further synchronization. IDs are unique across threads
+ * and increase monotonically within a single thread.
+ */
+public class EventIdAllocator {
+  public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+  private final AtomicLong nextBlockStart = new AtomicLong(1);
+  private final int blockSize;
+  private final ThreadLocal<long[]> threadBlock = ThreadLocal.withInitial(() -> new long[2]);
+
+  private static final EventIdAllocator instance = new EventIdAllocator(DEFAULT_BLOCK_SIZE);
+
+  /**
+   * Constructor. Most callers should use the global instance via {@link EventIdAllocator#get}.
+   * @param blockSize The number of IDs reserved by a thread at a time
+   */
+  public EventIdAllocator(int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("block size must be positive");
+    }
+
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Get the global EventIdAllocator instance.
+   * @return The global allocator
+   */
+  public static EventIdAllocator get() {
+    return EventIdAllocator.instance;
+  }
+
+  /**
+   * Issue the next ID for the current thread, reserving a new block when the current one is spent.
+   * @return A unique, positive ID
+   */
+  public long next() {
+    // block[0] is the next ID to issue, block[1] is the end of the block (exclusive)
+    final long[] block = this.threadBlock.get();
+    if (block[0] == block[1]) {
+      block[0] = this.nextBlockStart.getAndAdd(this.blockSize);
+      block[1] = block[0] + this.blockSize;
+    }
+
+    return block[0]++;
+  }
+}
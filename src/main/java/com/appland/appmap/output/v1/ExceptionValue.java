@@ -27,6 +27,11 @@ public class ExceptionValue {
   @JSONField(name = "object_id")
   public Integer objectId;
 
+  /**
+   * Constructs an empty exception, to be filled in field by field.
+   */
+  public ExceptionValue() { }
+
   /**
    * Constructs from an existing object. Saves the exception class and message.
    */
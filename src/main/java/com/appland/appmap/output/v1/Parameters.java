@@ -7,6 +7,7 @@ import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.NotFoundException;
 import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.Descriptor;
 import javassist.bytecode.LocalVariableAttribute;
 import javassist.bytecode.MethodParametersAttribute;
 import javassist.bytecode.MethodInfo;
@@ -40,19 +41,7 @@ public class Parameters implements Iterable<Value> {
    * @see <a href="https://github.com/applandinc/appmap#function-call-attributes">GitHub: AppMap - Function call attributes</a>
    */
   public Parameters(CtBehavior behavior) {
-    MethodInfo methodInfo = behavior.getMethodInfo();
-    String fqn = behavior.getDeclaringClass().getName() +
-      "." + behavior.getName() +
-      methodInfo.getDescriptor();
-
-    CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
-    if (codeAttribute == null) {
-      throw new NoSourceAvailableException("No code attribute for " + fqn);
-    }
-           
-    LocalVariableAttribute locals = (LocalVariableAttribute) codeAttribute.getAttribute(
-        javassist.bytecode.LocalVariableAttribute.tag);
-
+    final String[] paramNames = getParameterNames(behavior);
 
     CtClass[] paramTypes = null;
     try {
@@ -60,68 +49,96 @@ public class Parameters implements Iterable<Value> {
     } catch (NotFoundException e) {
       throw new NoSourceAvailableException(
         String.format("Failed to get parameter types for %s: %s",
-                      fqn, e.getMessage()));
+                      getFullyQualifiedName(behavior), e.getMessage()));
     }
 
-    String[] paramNames = null;
-    int numParams = paramTypes.length;
-    if (locals != null && numParams > 0) {
-      int numLocals = locals.tableLength();
-      
-      // This is handy when debugging this code, but produces too much
-      // noise for general use.
-      if (Properties.DebugLocals) {
-        Logger.println("local variables for " + fqn);
-        for (int idx = 0; idx < numLocals; idx++) {
-          Logger.printf("  %d %s %d\n", idx, locals.variableName(idx), locals.index(idx));
-        }
-      }
-
-      paramNames = new String[numParams];
-      Boolean isStatic = (behavior.getModifiers() & Modifier.STATIC) != 0;
-      int firstParamIdx = isStatic ? 0 : 1; // ignore `this`
-      int localVarIdx = 0;
-      
-      // Scan the local variables until we find the one with an index
-      // that matches the first parameter index.
-      //
-      // In some cases, though, there aren't local variables for the
-      // parameters. For example, the class file for
-      // org.springframework.samples.petclinic.owner.PetTypeFormatter,
-      // has the method
-      // print(Ljava/lang/Object;Ljava/util/Locale;)Ljava/lang/String
-      // in it, which only has a local variable for `this`. This
-      // method isn't in the source file, so I'm not sure where it's
-      // coming from.
-      for (; localVarIdx < numLocals; localVarIdx++) {
-        if (locals.index(localVarIdx) == firstParamIdx)
-          break;
-      }
-
-      if (localVarIdx < numLocals) {
-        // Assume the rest of the parameters follow the first.
-        paramNames[0] = locals.variableName(localVarIdx);
-        for (int idx = 1; idx < numParams; idx++)
-          paramNames[idx] = locals.variableName(localVarIdx + idx);
-      }
-    }
-
-    Value[] paramValues = new Value[numParams];
     for (int i = 0; i < paramTypes.length; ++i) {
       // Use a real parameter name if we have it, a fake one if we
       // don't.
       String paramName = paramNames != null? paramNames[i] : "p" + i;
-      Value param = new Value()
+      this.add(new Value()
           .setClassType(paramTypes[i].getName())
           .setName(paramName)
-          .setKind("req");
+          .setKind("req"));
+    }
+  }
 
-      paramValues[i] = param;
+  /**
+   * Reads the names of a behavior's parameters from its local variable table. Unlike
+   * {@link #Parameters(CtBehavior)}, doesn't look up the parameter types.
+   *
+   * @param behavior The behavior
+   * @return The name of each parameter, which is {@code null} if not found in the local variable
+   *         table. {@code null} if the behavior has parameters but no local variable table.
+   * @throws NoSourceAvailableException If the behavior has no code
+   */
+  public static String[] getParameterNames(CtBehavior behavior) {
+    MethodInfo methodInfo = behavior.getMethodInfo();
+    CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+    if (codeAttribute == null) {
+      throw new NoSourceAvailableException("No code attribute for "
+          + getFullyQualifiedName(behavior));
+    }
+
+    LocalVariableAttribute locals = (LocalVariableAttribute) codeAttribute.getAttribute(
+        javassist.bytecode.LocalVariableAttribute.tag);
+
+    int numParams = Descriptor.numOfParameters(methodInfo.getDescriptor());
+    if (numParams == 0) {
+      return new String[0];
+    }
+
+    if (locals == null) {
+      return null;
     }
 
-    for (int i = 0; i < paramValues.length; ++i) {
-      this.add(paramValues[i]);
+    int numLocals = locals.tableLength();
+
+    // This is handy when debugging this code, but produces too much
+    // noise for general use.
+    if (Properties.DebugLocals) {
+      Logger.println("local variables for " + getFullyQualifiedName(behavior));
+      for (int idx = 0; idx < numLocals; idx++) {
+        Logger.printf("  %d %s %d\n", idx, locals.variableName(idx), locals.index(idx));
+      }
+    }
+
+    Boolean isStatic = (behavior.getModifiers() & Modifier.STATIC) != 0;
+    int firstParamIdx = isStatic ? 0 : 1; // ignore `this`
+    int localVarIdx = 0;
+
+    // Scan the local variables until we find the one with an index
+    // that matches the first parameter index.
+    //
+    // In some cases, though, there aren't local variables for the
+    // parameters. For example, the class file for
+    // org.springframework.samples.petclinic.owner.PetTypeFormatter,
+    // has the method
+    // print(Ljava/lang/Object;Ljava/util/Locale;)Ljava/lang/String
+    // in it, which only has a local variable for `this`. This
+    // method isn't in the source file, so I'm not sure where it's
+    // coming from.
+    for (; localVarIdx < numLocals; localVarIdx++) {
+      if (locals.index(localVarIdx) == firstParamIdx)
+        break;
     }
+
+    String[] paramNames = new String[numParams];
+    if (localVarIdx >= numLocals) {
+      return paramNames;
+    }
+
+    // Assume the rest of the parameters follow the first.
+    paramNames[0] = locals.variableName(localVarIdx);
+    for (int idx = 1; idx < numParams; idx++)
+      paramNames[idx] = locals.variableName(localVarIdx + idx);
+    return paramNames;
+  }
+
+  private static String getFullyQualifiedName(CtBehavior behavior) {
+    return behavior.getDeclaringClass().getName()
+        + "." + behavior.getName()
+        + behavior.getMethodInfo().getDescriptor();
   }
 
   /**
@@ -28,12 +28,19 @@ public class Value {
   @JSONField(name = "object_id")
   public Integer objectId;
 
+  // The descriptor of a primitive value held unboxed, e.g. 'I' for int, or 0 if there is none
+  private char primitiveType;
+
+  // The bits of a primitive value held unboxed, boxed by freeze()
+  private long primitiveBits;
+
   /**
    * Store an Object in this value. Does not set the name of this Value. If given null, the value
    * will be null and the object ID will be set to zero.
    * @param val The object to be stored.
    */
   public void set(Object val) {
+    this.primitiveType = 0;
     if (val != null) {
       this.classType = val.getClass().getName();
       this.objectId = System.identityHashCode(val);
@@ -44,6 +51,97 @@ public class Value {
     }
   }
 
+  /**
+   * Store a primitive value in this Value, without boxing it. The class type is that of the boxed
+   * value. The value is boxed by {@link #freeze()}, which gives it the same object ID
+   * {@link #set(Object)} would have given the autoboxed value.
+   * @param val The value to be stored.
+   */
+  public void set(int val) {
+    this.setPrimitive("java.lang.Integer", 'I', val);
+  }
+
+  /**
+   * @see #set(int)
+   */
+  public void set(long val) {
+    this.setPrimitive("java.lang.Long", 'J', val);
+  }
+
+  /**
+   * @see #set(int)
+   */
+  public void set(short val) {
+    this.setPrimitive("java.lang.Short", 'S', val);
+  }
+
+  /**
+   * @see #set(int)
+   */
+  public void set(byte val) {
+    this.setPrimitive("java.lang.Byte", 'B', val);
+  }
+
+  /**
+   * @see #set(int)
+   */
+  public void set(char val) {
+    this.setPrimitive("java.lang.Character", 'C', val);
+  }
+
+  /**
+   * @see #set(int)
+   */
+  public void set(boolean val) {
+    this.setPrimitive("java.lang.Boolean", 'Z', val ? 1 : 0);
+  }
+
+  /**
+   * @see #set(int)
+   */
+  public void set(float val) {
+    this.setPrimitive("java.lang.Float", 'F', Float.floatToRawIntBits(val));
+  }
+
+  /**
+   * @see #set(int)
+   */
+  public void set(double val) {
+    this.setPrimitive("java.lang.Double", 'D', Double.doubleToRawLongBits(val));
+  }
+
+  private void setPrimitive(String classType, char primitiveType, long primitiveBits) {
+    this.classType = classType;
+    this.objectId = null;
+    this.value = null;
+    this.primitiveType = primitiveType;
+    this.primitiveBits = primitiveBits;
+  }
+
+  /**
+   * Boxes the primitive value held by this Value the way autoboxing would.
+   */
+  private Object boxPrimitive() {
+    switch (this.primitiveType) {
+      case 'I':
+        return Integer.valueOf((int) this.primitiveBits);
+      case 'J':
+        return Long.valueOf(this.primitiveBits);
+      case 'S':
+        return Short.valueOf((short) this.primitiveBits);
+      case 'B':
+        return Byte.valueOf((byte) this.primitiveBits);
+      case 'C':
+        return Character.valueOf((char) this.primitiveBits);
+      case 'Z':
+        return Boolean.valueOf(this.primitiveBits != 0);
+      case 'F':
+        return Float.valueOf(Float.intBitsToFloat((int) this.primitiveBits));
+      default:
+        return Double.valueOf(Double.longBitsToDouble(this.primitiveBits));
+    }
+  }
+
   public Value() { }
 
   /**
@@ -115,6 +213,12 @@ public class Value {
    * @return {@code this}
    */
   public Value freeze() {
+    if (this.primitiveType != 0) {
+      this.value = this.boxPrimitive();
+      this.objectId = System.identityHashCode(this.value);
+      this.primitiveType = 0;
+    }
+
     if (this.value != null) {
       try {
         this.value = this.value.toString();
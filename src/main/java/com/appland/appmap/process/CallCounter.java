@@ -0,0 +1,41 @@
+package com.appland.appmap.process;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts calls to methods which are instrumented to be counted rather than recorded. Called from
+ * hook-generated bytecode.
+ */
+public class CallCounter {
+  private static final Map<String, LongAdder> counts = new ConcurrentHashMap<String, LongAdder>();
+
+  /**
+   * Counts a call to a method.
+   * @param methodKey The canonical name of the method
+   */
+  public static void count(String methodKey) {
+    LongAdder count = counts.get(methodKey);
+    if (count == null) {
+      count = counts.computeIfAbsent(methodKey, k -> new LongAdder());
+    }
+    count.increment();
+  }
+
+  /**
+   * Takes the calls counted so far, starting a new count for each method.
+   * @return The number of calls by the canonical name of each method called
+   */
+  public static Map<String, Long> drain() {
+    final Map<String, Long> drained = new HashMap<String, Long>();
+    for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+      final long count = entry.getValue().sumThenReset();
+      if (count > 0) {
+        drained.put(entry.getKey(), count);
+      }
+    }
+    return drained;
+  }
+}
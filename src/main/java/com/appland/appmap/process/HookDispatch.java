@@ -0,0 +1,122 @@
+package com.appland.appmap.process;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * Bootstrap methods for hook sites compiled as {@code invokedynamic} instructions. Each call site
+ * is linked according to whether or not a recording session is active, guarded by a
+ * {@link SwitchPoint}. Starting or stopping a recording invalidates the SwitchPoint, causing every
+ * call site to relink on its next invocation. Until then, the JIT compiles the current target as a
+ * constant and can drop the inactive path entirely.
+ */
+public class HookDispatch {
+  private static class State {
+    final boolean recording;
+    final SwitchPoint switchPoint = new SwitchPoint();
+
+    State(boolean recording) {
+      this.recording = recording;
+    }
+  }
+
+  /**
+   * A call site switching between two targets. Once the current {@link SwitchPoint} is
+   * invalidated, the fallback path relinks the call site to the target for the new state.
+   */
+  private static class SwitchingCallSite extends MutableCallSite {
+    private final MethodHandle whenRecording;
+    private final MethodHandle whenIdle;
+    private final MethodHandle fallback;
+
+    SwitchingCallSite(MethodHandle whenRecording, MethodHandle whenIdle) {
+      super(whenRecording.type());
+      this.whenRecording = whenRecording;
+      this.whenIdle = whenIdle;
+
+      final MethodType type = whenRecording.type();
+      final MethodHandle relink = MethodHandles.dropArguments(RELINK.bindTo(this),
+          0,
+          type.parameterList());
+      this.fallback = MethodHandles.foldArguments(MethodHandles.exactInvoker(type), relink);
+
+      this.relink();
+    }
+
+    MethodHandle relink() {
+      final State state = HookDispatch.state;
+      final MethodHandle target = state.recording ? this.whenRecording : this.whenIdle;
+      this.setTarget(state.switchPoint.guardWithTest(target, this.fallback));
+      return target;
+    }
+  }
+
+  private static final MethodHandle RELINK;
+  private static final MethodHandle NOOP;
+
+  static {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      RELINK = lookup.findVirtual(SwitchingCallSite.class,
+          "relink",
+          MethodType.methodType(MethodHandle.class));
+      NOOP = lookup.findStatic(HookDispatch.class, "noop", MethodType.methodType(void.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static volatile State state = new State(false);
+
+  private HookDispatch() { }
+
+  private static void noop() { }
+
+  /**
+   * Updates the recording state, invalidating every linked call site if the state has changed.
+   * @param recording {@code true} if a recording session is now active
+   */
+  public static synchronized void setRecording(boolean recording) {
+    final State previousState = HookDispatch.state;
+    if (previousState.recording == recording) {
+      return;
+    }
+
+    HookDispatch.state = new State(recording);
+    SwitchPoint.invalidateAll(new SwitchPoint[] { previousState.switchPoint });
+  }
+
+  /**
+   * Bootstraps a call site with the type {@code ()Z}, returning {@code true} while a recording
+   * session is active. This replaces calls to
+   * {@link com.appland.appmap.record.Recorder#isRecording}.
+   */
+  public static CallSite bootstrapRecording(MethodHandles.Lookup lookup,
+                                            String name,
+                                            MethodType type) {
+    return new SwitchingCallSite(MethodHandles.constant(boolean.class, true),
+        MethodHandles.constant(boolean.class, false));
+  }
+
+  /**
+   * Bootstraps a call site invoking a hook. The call site links to the hook while a recording
+   * session is active and to a no-op otherwise.
+   * @param hook A handle to the static hook method
+   */
+  public static CallSite bootstrapHook(MethodHandles.Lookup lookup,
+                                       String name,
+                                       MethodType type,
+                                       MethodHandle hook) {
+    final MethodHandle whenRecording = hook.asType(type);
+    MethodHandle whenIdle = whenRecording;
+    if (type.returnType() == void.class) {
+      whenIdle = MethodHandles.dropArguments(NOOP, 0, type.parameterList());
+    }
+
+    return new SwitchingCallSite(whenRecording, whenIdle);
+  }
+}
@@ -1,7 +1,16 @@
 package com.appland.appmap.process;
 
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.Value;
+
 /**
  * Runtime utility methods to be called from hook-generated bytecode.
+ *
+ * <p>{@code boxValue} goes through the {@code valueOf} caches of the boxed types, so that common
+ * small values don't allocate. {@code captureArgument} and {@code captureReturnValue} avoid boxing
+ * altogether, storing values straight into an event for hooks annotated with
+ * {@link com.appland.appmap.transform.annotations.CaptureArguments}. Each returns the event, so
+ * that calls for every argument can be nested in place of the event passed to the hook.
  */
 public class RuntimeUtil {
   /**
@@ -10,7 +19,7 @@ public class RuntimeUtil {
    * @return The value as an Object
    */
   public static Object boxValue(byte value) {
-    return new Byte(value);
+    return Byte.valueOf(value);
   }
 
   /**
@@ -19,7 +28,7 @@ public class RuntimeUtil {
    * @return The value as an Object
    */
   public static Object boxValue(char value) {
-    return new Character(value);
+    return Character.valueOf(value);
   }
 
   /**
@@ -28,7 +37,7 @@ public class RuntimeUtil {
    * @return The value as an Object
    */
   public static Object boxValue(short value) {
-    return new Short(value);
+    return Short.valueOf(value);
   }
 
   /**
@@ -37,7 +46,7 @@ public class RuntimeUtil {
    * @return The value as an Object
    */
   public static Object boxValue(long value) {
-    return new Long(value);
+    return Long.valueOf(value);
   }
 
   /**
@@ -46,7 +55,7 @@ public class RuntimeUtil {
    * @return The value as an Object
    */
   public static Object boxValue(float value) {
-    return new Float(value);
+    return Float.valueOf(value);
   }
 
   /**
@@ -55,7 +64,7 @@ public class RuntimeUtil {
    * @return The value as an Object
    */
   public static Object boxValue(double value) {
-    return new Double(value);
+    return Double.valueOf(value);
   }
 
   /**
@@ -64,7 +73,7 @@ public class RuntimeUtil {
    * @return The value as an Object
    */
   public static Object boxValue(int value) {
-    return new Integer(value);
+    return Integer.valueOf(value);
   }
 
   /**
@@ -73,7 +82,7 @@ public class RuntimeUtil {
    * @return The value as an Object
    */
   public static Object boxValue(boolean value) {
-    return new Boolean(value);
+    return Boolean.valueOf(value);
   }
 
   /**
@@ -82,4 +91,217 @@ public class RuntimeUtil {
   public static Object boxValue(Object value) {
     return value;
   }
+
+  /**
+   * Stores a primitive byte as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, byte value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive char as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, char value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive short as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, short value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive long as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, long value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive float as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, float value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive double as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, double value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive int as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, int value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive boolean as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, boolean value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores an Object as the value of a parameter of an event.
+   * @param event The event
+   * @param index The index of the parameter
+   * @param value The value
+   * @return {@code event}
+   */
+  public static Event captureArgument(Event event, int index, Object value) {
+    event.parameters.get(index).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive byte as the return value of an event.
+   * @param event The event
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, byte value) {
+    newReturnValue(event).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive char as the return value of an event.
+   * @param event The event
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, char value) {
+    newReturnValue(event).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive short as the return value of an event.
+   * @param event The event
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, short value) {
+    newReturnValue(event).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive long as the return value of an event.
+   * @param event The event
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, long value) {
+    newReturnValue(event).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive float as the return value of an event.
+   * @param event The event
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, float value) {
+    newReturnValue(event).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive double as the return value of an event.
+   * @param event The event
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, double value) {
+    newReturnValue(event).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive int as the return value of an event.
+   * @param event The event
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, int value) {
+    newReturnValue(event).set(value);
+    return event;
+  }
+
+  /**
+   * Stores a primitive boolean as the return value of an event.
+   * @param event The event
+   * @param value The primitive value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, boolean value) {
+    newReturnValue(event).set(value);
+    return event;
+  }
+
+  /**
+   * Stores an Object as the return value of an event. A {@code null} return value isn't recorded,
+   * as with {@link Event#setReturnValue}.
+   * @param event The event
+   * @param value The value
+   * @return {@code event}
+   */
+  public static Event captureReturnValue(Event event, Object value) {
+    return event.setReturnValue(value);
+  }
+
+  private static Value newReturnValue(Event event) {
+    final Value returnValue = new Value();
+    event.returnValue = returnValue;
+    return returnValue;
+  }
 }
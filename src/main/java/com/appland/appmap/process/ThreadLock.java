@@ -1,67 +1,66 @@
 package com.appland.appmap.process;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Single-threaded locking mechanisms. This class provides behavior to restrict hooks within a
  * single thread from running while another hook is already in progress.
+ *
+ * <p>Execution contexts are tracked as a depth counter rather than a stack of objects. The global
+ * lock and each unique key can only be held by one context at a time, so it's enough to remember
+ * the depth of the context holding it. Unique keys are interned to bit indexes via
+ * {@link ThreadLock#uniqueKeyIndex}, letting hook-generated bytecode lock them without hashing a
+ * string. None of the per-call methods allocate.
  */
 public class ThreadLock {
-  private class ThreadLockStatus {
-    public Boolean globalLock = false;
-    public HashSet<String> uniqueKeys;
-
-    ThreadLockStatus() { }
-
-    public boolean addUniqueKey(String key) {
-      if (this.uniqueKeys == null) {
-        this.uniqueKeys = new HashSet<String>();
-      }
-
-      return this.uniqueKeys.add(key);
-    }
-
-    public boolean contains(String key) {
-      if (this.uniqueKeys == null) {
-        return false;
-      }
+  /**
+   * The maximum number of distinct unique keys. Keys are tracked in a {@code long} bitmask.
+   */
+  public static final int MAX_UNIQUE_KEYS = Long.SIZE;
 
-      return this.uniqueKeys.contains(key);
-    }
+  private static final ConcurrentHashMap<String, Integer> uniqueKeyIndexes =
+      new ConcurrentHashMap<String, Integer>();
 
-    public boolean hasGlobalLock() {
-      return this.globalLock;
-    }
+  private static final ThreadLocal<ThreadLock> instances =
+      ThreadLocal.withInitial(ThreadLock::new);
 
-    public void setGlobalLock(Boolean globalLock) {
-      this.globalLock = globalLock;
-    }
-  }
-
-  private static final HashMap<Thread, ThreadLock> instances =
-      new HashMap<Thread, ThreadLock>();
-
-  private final Stack<ThreadLockStatus> statusStack = new Stack<ThreadLockStatus>();
+  private int depth = 0;
+  private int globalLockDepth = 0;
+  private long uniqueLockMask = 0;
+  private final int[] uniqueLockDepths = new int[MAX_UNIQUE_KEYS];
 
   private ThreadLock() { }
 
   /**
-   * Get the ThreadLock instance for this thread.
+   * Get the ThreadLock instance for this thread. The instance is released when the thread dies.
    * @return A ThreadLock instance unique to the current thread
    */
   public static ThreadLock current() {
-    Thread currentThread = Thread.currentThread();
-    ThreadLock instance = null;
+    return ThreadLock.instances.get();
+  }
 
-    instance = ThreadLock.instances.get(currentThread);
-    if (instance == null) {
-      instance = new ThreadLock();
-      ThreadLock.instances.put(currentThread, instance);
+  /**
+   * Interns a unique key, returning the bit index used to track it. This is intended to be called
+   * at transform time so that hooks can refer to keys by index.
+   * @param key The unique key
+   * @return The index of the key
+   * @throws IllegalStateException If more than {@link ThreadLock#MAX_UNIQUE_KEYS} keys are interned
+   */
+  public static int uniqueKeyIndex(String key) {
+    final Integer index = ThreadLock.uniqueKeyIndexes.get(key);
+    if (index != null) {
+      return index;
     }
 
-    return instance;
+    synchronized (ThreadLock.uniqueKeyIndexes) {
+      return ThreadLock.uniqueKeyIndexes.computeIfAbsent(key, k -> {
+        final int nextIndex = ThreadLock.uniqueKeyIndexes.size();
+        if (nextIndex >= MAX_UNIQUE_KEYS) {
+          throw new IllegalStateException("too many unique keys, failed to intern " + k);
+        }
+        return nextIndex;
+      });
+    }
   }
 
   /**
@@ -69,13 +68,7 @@ public class ThreadLock {
    * @return {@code true} if the global lock is locked. Otherwise, {@code false}.
    */
   public boolean isLocked() {
-    for (ThreadLockStatus status : this.statusStack) {
-      if (status.hasGlobalLock()) {
-        return true;
-      }
-    }
-
-    return false;
+    return this.globalLockDepth != 0;
   }
 
   /**
@@ -83,11 +76,7 @@ public class ThreadLock {
    * @return {@code true} if the global lock is locked. Otherwise, {@code false}.
    */
   public boolean hasLock() {
-    if (this.statusStack.isEmpty()) {
-      return false;
-    }
-
-    return this.statusStack.peek().hasGlobalLock();
+    return this.depth != 0 && this.globalLockDepth == this.depth;
   }
 
   /**
@@ -96,21 +85,29 @@ public class ThreadLock {
    * @return {@code true} if the global lock is locked. Otherwise, {@code false}.
    */
   public boolean hasUniqueLock(String key) {
-    if (this.statusStack.isEmpty()) {
+    return this.hasUniqueLock(uniqueKeyIndex(key));
+  }
+
+  /**
+   * Checks if the current execution context holds a lock on a unique key.
+   * @param keyIndex The index of the unique key, as returned by {@link ThreadLock#uniqueKeyIndex}
+   * @return {@code true} if the global lock is locked. Otherwise, {@code false}.
+   */
+  public boolean hasUniqueLock(int keyIndex) {
+    if (this.depth == 0 || (this.uniqueLockMask & (1L << keyIndex)) == 0) {
       return false;
     }
 
-    return this.statusStack.peek().contains(key);
+    return this.uniqueLockDepths[keyIndex] == this.depth;
   }
 
   /**
    * Pushes a new execution context on the stack. This should be called when first entering a
    * method, before acquiring any locks.
-   * @return {@code true} if the global lock is locked. Otherwise, {@code false}.
    * @see ThreadLock#exit
    */
   public void enter() {
-    this.statusStack.push(new ThreadLockStatus());
+    this.depth++;
   }
 
   /**
@@ -119,11 +116,24 @@ public class ThreadLock {
    * @see ThreadLock#enter
    */
   public void exit() {
-    if (this.statusStack.isEmpty()) {
+    if (this.depth == 0) {
       return;
     }
 
-    this.statusStack.pop();
+    if (this.globalLockDepth == this.depth) {
+      this.globalLockDepth = 0;
+    }
+
+    long mask = this.uniqueLockMask;
+    while (mask != 0) {
+      final int keyIndex = Long.numberOfTrailingZeros(mask);
+      if (this.uniqueLockDepths[keyIndex] == this.depth) {
+        this.uniqueLockMask &= ~(1L << keyIndex);
+      }
+      mask &= mask - 1;
+    }
+
+    this.depth--;
   }
 
   /**
@@ -131,17 +141,27 @@ public class ThreadLock {
    * @return {@code true} if the unique lock was acquired. Otherwise, {@code false}.
    */
   public boolean lockUnique(String key) {
-    if (this.statusStack.isEmpty()) {
+    return this.lockUnique(uniqueKeyIndex(key));
+  }
+
+  /**
+   * Attempts to acquire a lock on a unique key for the current execution context.
+   * @param keyIndex The index of the unique key, as returned by {@link ThreadLock#uniqueKeyIndex}
+   * @return {@code true} if the unique lock was acquired. Otherwise, {@code false}.
+   */
+  public boolean lockUnique(int keyIndex) {
+    if (this.depth == 0) {
       return false;
     }
 
-    for (ThreadLockStatus status : this.statusStack) {
-      if (status.contains(key)) {
-        return false;
-      }
+    final long keyBit = 1L << keyIndex;
+    if ((this.uniqueLockMask & keyBit) != 0) {
+      return false;
     }
 
-    return this.statusStack.peek().addUniqueKey(key);
+    this.uniqueLockMask |= keyBit;
+    this.uniqueLockDepths[keyIndex] = this.depth;
+    return true;
   }
 
   /**
@@ -153,11 +173,11 @@ public class ThreadLock {
       return false;
     }
 
-    if (this.statusStack.isEmpty()) {
+    if (this.depth == 0) {
       return false;
     }
 
-    this.statusStack.peek().setGlobalLock(true);
+    this.globalLockDepth = this.depth;
     return true;
   }
 
@@ -166,16 +186,11 @@ public class ThreadLock {
    * @return {@code true} if the lock was successfully released. Otherwise, {@code false}.
    */
   public boolean unlock() {
-    if (this.statusStack.isEmpty()) {
-      return false;
-    }
-
-    final ThreadLockStatus top = this.statusStack.peek();
-    if (!top.hasGlobalLock()) {
+    if (!this.hasLock()) {
       return false;
     }
 
-    top.setGlobalLock(false);
+    this.globalLockDepth = 0;
     return true;
   }
 }
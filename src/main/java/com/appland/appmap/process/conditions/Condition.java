@@ -2,6 +2,11 @@ package com.appland.appmap.process.conditions;
 
 import javassist.CtBehavior;
 
+/**
+ * Conditions are bound by {@link com.appland.appmap.transform.annotations.HookCondition}. An
+ * implementation declares a static {@code match(CtBehavior)}, and may declare a static
+ * {@code matchClass(CtClass)} to reject a whole class before its behaviors are checked.
+ */
 public interface Condition {
   public static Boolean match(CtBehavior behavior) {
     return false;
@@ -1,8 +1,8 @@
 package com.appland.appmap.process.conditions;
 
 import com.appland.appmap.config.AppMapConfig;
-import com.appland.appmap.util.StringUtil;
 import javassist.CtBehavior;
+import javassist.CtClass;
 
 import java.lang.reflect.Modifier;
 
@@ -18,6 +18,19 @@ public abstract class ConfigCondition implements Condition {
     AppMapConfig.get();
   }
 
+  /**
+   * Rejects classes none of whose behaviors can be included in the global {@link AppMapConfig}.
+   * @param ctClass A class being loaded
+   * @return {@code false} if no behavior of the class should be hooked
+   */
+  public static Boolean matchClass(CtClass ctClass) {
+    if (ctClass.getName().startsWith("java.lang")) {
+      return false;
+    }
+
+    return AppMapConfig.get().mayInclude(ctClass.getName());
+  }
+
   /**
    * Determines whether the given behavior should be hooked due to its inclusion in the global
    * {@link AppMapConfig}.
@@ -34,11 +47,17 @@ public abstract class ConfigCondition implements Condition {
       return false;
     }
 
+    if (!AppMapConfig.get().includes(behavior.getDeclaringClass().getName(),
+        Modifier.isStatic(behavior.getModifiers()),
+        behavior.getMethodInfo().getName())) {
+      return false;
+    }
+
     if (behavior.getMethodInfo().getLineNumber(0) < 0) {
       // likely a runtime generated method
       return false;
     }
 
-    return AppMapConfig.get().includes(StringUtil.canonicalName(behavior));
+    return true;
   }
 }
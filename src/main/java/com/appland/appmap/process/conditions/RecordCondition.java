@@ -3,6 +3,7 @@ package com.appland.appmap.process.conditions;
 import com.appland.appmap.config.AppMapConfig;
 import com.appland.appmap.config.Properties;
 import javassist.CtBehavior;
+import javassist.CtClass;
 
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
@@ -16,6 +17,24 @@ import com.appland.appmap.util.StringUtil;
  */
 public abstract class RecordCondition implements Condition {
 
+  /**
+   * Rejects every class while {@link Properties#Records} is empty, and classes none of whose
+   * behaviors can be included in the {@link AppMapConfig}.
+   * @param ctClass A class being loaded
+   * @return {@code false} if no behavior of the class should be recorded
+   */
+  public static Boolean matchClass(CtClass ctClass) {
+    if (Properties.getRecords().length == 0) {
+      return false;
+    }
+
+    if (ctClass.getName().startsWith("java.lang")) {
+      return false;
+    }
+
+    return AppMapConfig.get().mayInclude(ctClass.getName());
+  }
+
   /**
    * Determines whether the given behavior should be recorded due to its inclusion in the
    * {@link Properties#Records}.
@@ -24,6 +43,10 @@ public abstract class RecordCondition implements Condition {
    * @see Properties#Records
    */
   public static Boolean match(CtBehavior behavior) {
+    if (Properties.getRecords().length == 0) {
+      return false;
+    }
+
     if (behavior.getDeclaringClass().getName().startsWith("java.lang")) {
       return false;
     }
@@ -32,13 +55,18 @@ public abstract class RecordCondition implements Condition {
       return false;
     }
 
+    if (!AppMapConfig.get().includes(behavior.getDeclaringClass().getName(),
+        Modifier.isStatic(behavior.getModifiers()),
+        behavior.getMethodInfo().getName())) {
+      return false;
+    }
+
     if (behavior.getMethodInfo().getLineNumber(0) < 0) {
       // likely a runtime generated method
       return false;
     }
     final String canonicalName = StringUtil.canonicalName(behavior);
     return Arrays.stream(Properties.getRecords()).anyMatch(
-            record ->  record.equals(canonicalName)) &&
-          AppMapConfig.get().includes(canonicalName);
+            record ->  record.equals(canonicalName));
   }
 }
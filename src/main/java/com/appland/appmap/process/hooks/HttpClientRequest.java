@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
+@RequiresRecording
 @Unique("http_client_request")
 public class HttpClientRequest {
 
@@ -9,6 +9,7 @@ import com.appland.appmap.transform.annotations.CallbackOn;
 import com.appland.appmap.transform.annotations.ExcludeReceiver;
 import com.appland.appmap.transform.annotations.HookClass;
 import com.appland.appmap.transform.annotations.MethodEvent;
+import com.appland.appmap.transform.annotations.RequiresRecording;
 import com.appland.appmap.transform.annotations.Unique;
 
 import java.util.Map;
@@ -16,6 +17,7 @@ import java.util.Map;
 /**
  * Hooks to capture @{code http_server_request} and @{code http_server_response} data.
  */
+@RequiresRecording
 @Unique("http_server_request")
 public class HttpServerRequest {
   private static final Recorder recorder = Recorder.getInstance();
@@ -6,6 +6,7 @@ import com.appland.appmap.transform.annotations.CallbackOn;
 import com.appland.appmap.transform.annotations.ExcludeReceiver;
 import com.appland.appmap.transform.annotations.HookClass;
 import com.appland.appmap.transform.annotations.MethodEvent;
+import com.appland.appmap.transform.annotations.RequiresRecording;
 
 import java.util.Map;
 
@@ -19,6 +20,7 @@ public class Message {
   /**
    * Capture message params from Spring.
    */
+  @RequiresRecording
   @CallbackOn(MethodEvent.METHOD_RETURN)
   @ExcludeReceiver
   @HookClass("org.springframework.util.PathMatcher")
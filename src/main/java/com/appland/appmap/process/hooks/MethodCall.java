@@ -1,11 +1,11 @@
 package com.appland.appmap.process.hooks;
 
 import com.appland.appmap.output.v1.Event;
-import com.appland.appmap.output.v1.Value;
 import com.appland.appmap.process.conditions.ConfigCondition;
 import com.appland.appmap.record.Recorder;
-import com.appland.appmap.transform.annotations.ArgumentArray;
+import com.appland.appmap.transform.annotations.CaptureArguments;
 import com.appland.appmap.transform.annotations.HookCondition;
+import com.appland.appmap.transform.annotations.RequiresRecording;
 
 /**
  * Hooks to capture method invocations from classes included in configuration.
@@ -13,14 +13,10 @@ import com.appland.appmap.transform.annotations.HookCondition;
 public class MethodCall {
   private static final Recorder recorder = Recorder.getInstance();
 
-  @ArgumentArray
+  @RequiresRecording
+  @CaptureArguments
   @HookCondition(ConfigCondition.class)
-  public static void handle(Event event, Object self, Object[] args) {
-    for (int i = 0; i < args.length; i++) {
-      Value param = event.parameters.get(i);
-      param.set(args[i]);
-    }
-
+  public static void handle(Event event, Object self) {
     event.setReceiver(self);
 
     recorder.add(event);
@@ -3,10 +3,11 @@ package com.appland.appmap.process.hooks;
 import com.appland.appmap.output.v1.Event;
 import com.appland.appmap.process.conditions.ConfigCondition;
 import com.appland.appmap.record.Recorder;
-import com.appland.appmap.transform.annotations.ArgumentArray;
 import com.appland.appmap.transform.annotations.CallbackOn;
+import com.appland.appmap.transform.annotations.CaptureArguments;
 import com.appland.appmap.transform.annotations.HookCondition;
 import com.appland.appmap.transform.annotations.MethodEvent;
+import com.appland.appmap.transform.annotations.RequiresRecording;
 
 /**
  * Hooks to capture method exceptions from classes included in configuration.
@@ -14,10 +15,11 @@ import com.appland.appmap.transform.annotations.MethodEvent;
 public class MethodException {
   private static final Recorder recorder = Recorder.getInstance();
 
-  @ArgumentArray
+  @RequiresRecording
+  @CaptureArguments
   @CallbackOn(MethodEvent.METHOD_EXCEPTION)
   @HookCondition(ConfigCondition.class)
-  public static void handle(Event event, Object self, Exception exception, Object[] args) {
+  public static void handle(Event event, Object self, Exception exception) {
     event.setException(exception);
     recorder.add(event);
   }
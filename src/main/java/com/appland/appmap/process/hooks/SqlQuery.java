@@ -12,6 +12,7 @@ import com.appland.appmap.util.Logger;
 /**
  * Hooks to capture {@code sql_query} data from classes included in configuration.
  */
+@RequiresRecording
 @Unique("sql_query")
 public class SqlQuery {
   private static final Recorder recorder = Recorder.getInstance();
@@ -14,6 +14,7 @@ import com.appland.appmap.transform.annotations.*;
 import com.appland.appmap.util.Logger;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 
 import static com.appland.appmap.util.StringUtil.*;
@@ -32,6 +33,18 @@ public class ToggleRecord {
     }
 
     try {
+      if (acceptsGzip(req.getHeader("Accept-Encoding"))) {
+        byte[] gzip = recorder.stopGzip();
+        res.setContentType("application/json");
+        res.setHeader("Content-Encoding", "gzip");
+        res.setContentLength(gzip.length);
+
+        OutputStream out = res.getOutputStream();
+        out.write(gzip);
+        out.flush();
+        return;
+      }
+
       String json = recorder.stop();
       res.setContentType("application/json");
       res.setContentLength(json.length());
@@ -1,6 +1,8 @@
 package com.appland.appmap.record;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONWriter;
+import com.alibaba.fastjson.parser.Feature;
 import com.appland.appmap.config.AppMapConfig;
 import com.appland.appmap.output.v1.Event;
 import com.appland.appmap.record.IRecordingSession.Metadata;
@@ -32,11 +34,13 @@ public class AppMapSerializer {
   }
 
   private JSONWriter json;
+  private EventJsonWriter events;
   private SectionInfo currentSection = null;
   private HashSet<String> sectionsWritten = new HashSet<String>();
 
   AppMapSerializer(Writer writer) {
     this.json = new JSONWriter(writer);
+    this.events = new EventJsonWriter(writer);
     this.json.startObject();
   }
 
@@ -50,7 +54,8 @@ public class AppMapSerializer {
     }
 
     if (this.currentSection != null && this.currentSection.name != section) {
-      // close the current section before updating it
+      // close the current section before updating it, after any events written past this.json
+      this.events.flush();
       if (this.currentSection.type == "object") {
         this.json.endObject();
       } else if (this.currentSection.type == "array") {
@@ -70,6 +75,8 @@ public class AppMapSerializer {
     } else if (this.currentSection.type.equals("array")) {
       this.json.writeKey(section);
       this.json.startArray();
+      // Events are written straight to the writer, so the opening bracket must precede them
+      this.json.flush();
     }
   }
 
@@ -79,6 +86,22 @@ public class AppMapSerializer {
    * @throws IOException If a writer error occurs
    */
   public void write(Metadata metadata) throws IOException {
+    this.write(metadata,
+        AppMapConfig.get().name,
+        System.getProperty("java.vm.version"),
+        System.getProperty("java.vm.name"));
+  }
+
+  /**
+   * Writes the {@link Metadata} section of a recording made by another JVM.
+   * @param metadata {@link Metadata} to be serialized and written.
+   * @param appName The name of the recorded application
+   * @param vmVersion The version of the recording JVM
+   * @param vmName The name of the recording JVM
+   * @throws IOException If a writer error occurs
+   */
+  void write(Metadata metadata, String appName, String vmVersion, String vmName)
+      throws IOException {
     this.setCurrentSection(FileSections.Version, "");
     this.json.writeKey("version");
     this.json.writeValue("1.2");
@@ -93,7 +116,7 @@ public class AppMapSerializer {
       }
 
       this.json.writeKey("app");
-      this.json.writeValue(AppMapConfig.get().name);
+      this.json.writeValue(appName);
 
       if (metadata.feature != null && !metadata.feature.isEmpty()) {
         this.json.writeKey("feature");
@@ -111,9 +134,9 @@ public class AppMapSerializer {
         this.json.writeKey("name");
         this.json.writeValue("java");
         this.json.writeKey("version");
-        this.json.writeValue(System.getProperty("java.vm.version"));
+        this.json.writeValue(vmVersion);
         this.json.writeKey("engine");
-        this.json.writeValue(System.getProperty("java.vm.name"));
+        this.json.writeValue(vmName);
       }
       this.json.endObject();
 
@@ -179,6 +202,17 @@ public class AppMapSerializer {
     this.json.writeValue(codeObjects.toArray());
   }
 
+  /**
+   * Writes the ClassMap section from JSON, as serialized from a {@link CodeObjectTree}.
+   * @param classMap The class map, as JSON
+   * @throws IOException If a writer error occurs
+   */
+  void writeClassMap(String classMap) throws IOException {
+    this.setCurrentSection(FileSections.ClassMap, "");
+    this.json.writeKey("classMap");
+    this.json.writeValue(JSON.parse(classMap, Feature.OrderedField));
+  }
+
   /**
    * Writes a list of {@link Event}s to the "events" field. This method can be called more than once
    * to stream {@link Event}s to a writer.
@@ -189,9 +223,10 @@ public class AppMapSerializer {
     this.setCurrentSection(FileSections.Events, "array");
 
     for (Event event : events) {
-      this.json.writeObject(event);
+      this.events.write(event);
     }
 
+    this.events.flush();
     this.json.flush();
   }
 
@@ -203,7 +238,7 @@ public class AppMapSerializer {
    */
   public void write(Event event) throws IOException {
     this.setCurrentSection(FileSections.Events, "array");
-    this.json.writeObject(event);
+    this.events.write(event);
   }
 
   /**
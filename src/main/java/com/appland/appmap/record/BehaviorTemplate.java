@@ -0,0 +1,304 @@
+package com.appland.appmap.record;
+
+import com.appland.appmap.output.v1.CodeObject;
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.NoSourceAvailableException;
+import com.appland.appmap.output.v1.Parameters;
+import com.appland.appmap.output.v1.Value;
+
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.Modifier;
+import javassist.bytecode.MethodInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The metadata of a hooked behavior needed to build its {@link Event} template and
+ * {@link CodeObject}, captured when its class is transformed. Building them is deferred until a
+ * hook first fires for the behavior, as most hooked behaviors are never called while recording.
+ *
+ * <p>Only names and the method descriptor are kept, so parameter types are never looked up in a
+ * ClassPool, and the behavior's class can be detached.
+ */
+class BehaviorTemplate {
+  private static final Recorder recorder = Recorder.getInstance();
+
+  private final String behaviorKey;
+  private final String definedClass;
+  private final String packageName;
+  private final String className;
+  private final boolean classIsStatic;
+  private final String sourceFile;
+  private final String methodId;
+  private final boolean isStatic;
+  private final int lineNumber;
+  private final String descriptor;
+  private final String[] parameterNames;
+
+  private volatile Event event;
+  private volatile boolean isRegistered = false;
+  private volatile char[] callFields;
+  private volatile char[] returnFields;
+
+  // Guarded by the EventTemplateRegistry
+  private int owners = 0;
+  private boolean isPinned = false;
+
+  private BehaviorTemplate(String behaviorKey,
+                           String definedClass,
+                           String packageName,
+                           String className,
+                           boolean classIsStatic,
+                           String sourceFile,
+                           String methodId,
+                           boolean isStatic,
+                           int lineNumber,
+                           String descriptor,
+                           String[] parameterNames) {
+    this.behaviorKey = behaviorKey;
+    this.definedClass = definedClass;
+    this.packageName = packageName;
+    this.className = className;
+    this.classIsStatic = classIsStatic;
+    this.sourceFile = sourceFile;
+    this.methodId = methodId;
+    this.isStatic = isStatic;
+    this.lineNumber = lineNumber;
+    this.descriptor = descriptor;
+    this.parameterNames = parameterNames;
+  }
+
+  /**
+   * Wraps an event template built previously, such as one read back from the transform cache.
+   * @param behaviorKey Identifies the behavior, see {@link EventTemplateRegistry#getBehaviorKey}
+   * @param event The event template
+   * @param packageName The package of the declaring class, or {@code null}
+   * @param className The simple name of the declaring class
+   * @param classIsStatic Whether or not the declaring class is static
+   */
+  BehaviorTemplate(String behaviorKey,
+                   Event event,
+                   String packageName,
+                   String className,
+                   boolean classIsStatic) {
+    this(behaviorKey,
+        event.definedClass,
+        packageName,
+        className,
+        classIsStatic,
+        null,
+        event.methodId,
+        event.isStatic,
+        event.lineNumber,
+        null,
+        null);
+    this.event = event;
+  }
+
+  /**
+   * Captures the metadata of a behavior.
+   * @param behaviorKey Identifies the behavior, see {@link EventTemplateRegistry#getBehaviorKey}
+   * @param behavior The behavior
+   * @return The metadata
+   * @throws NoSourceAvailableException If the behavior has no code
+   */
+  static BehaviorTemplate from(String behaviorKey, CtBehavior behavior) {
+    final CtClass declaringClass = behavior.getDeclaringClass();
+    final MethodInfo methodInfo = behavior.getMethodInfo();
+    return new BehaviorTemplate(behaviorKey,
+        declaringClass.getName(),
+        declaringClass.getPackageName(),
+        declaringClass.getSimpleName(),
+        (declaringClass.getModifiers() & Modifier.STATIC) != 0,
+        declaringClass.getClassFile2().getSourceFile(),
+        behavior.getName(),
+        (behavior.getModifiers() & Modifier.STATIC) != 0,
+        methodInfo.getLineNumber(0),
+        methodInfo.getDescriptor(),
+        Parameters.getParameterNames(behavior));
+  }
+
+  String getBehaviorKey() {
+    return this.behaviorKey;
+  }
+
+  /**
+   * Adds a class loader defining the behavior. The template can be reclaimed once every owner has
+   * been unloaded.
+   */
+  void addOwner() {
+    this.owners++;
+  }
+
+  /**
+   * Keeps the template for the life of the JVM, such as when the behavior is defined by the
+   * bootstrap class loader.
+   */
+  void pin() {
+    this.isPinned = true;
+  }
+
+  /**
+   * Removes a class loader which has been unloaded.
+   * @return {@code true} if the template is no longer owned, and can be reclaimed
+   */
+  boolean removeOwner() {
+    this.owners--;
+    return this.owners <= 0 && !this.isPinned;
+  }
+
+  /**
+   * Checks whether an event template describes the same behavior.
+   */
+  boolean matches(Event event) {
+    return Objects.equals(this.definedClass, event.definedClass)
+        && Objects.equals(this.methodId, event.methodId)
+        && Objects.equals(this.lineNumber, event.lineNumber);
+  }
+
+  /**
+   * Gets the event template, building it on first use.
+   */
+  Event getEvent() {
+    Event event = this.event;
+    if (event == null) {
+      synchronized (this) {
+        event = this.event;
+        if (event == null) {
+          event = this.buildEvent();
+          this.event = event;
+        }
+      }
+    }
+    return event;
+  }
+
+  /**
+   * Gets the event template for an event about to be recorded. The first time, the
+   * {@link CodeObject} of the behavior is registered with the global {@link Recorder} instance, so
+   * that it's available to the class map of any recording referencing the behavior.
+   */
+  Event resolve() {
+    if (!this.isRegistered) {
+      synchronized (this) {
+        if (!this.isRegistered) {
+          recorder.register(CodeObject.createTree(this.getEvent(),
+              this.packageName,
+              this.className,
+              this.classIsStatic));
+          this.isRegistered = true;
+        }
+      }
+    }
+    return this.getEvent();
+  }
+
+  /**
+   * Gets the fields events cloned from the template share with it, pre-encoded as JSON. They're
+   * encoded on first use, once for each kind of event.
+   * @param eventAction The value of the {@code event} field
+   * @return The encoded fields, or {@code null} unless {@code eventAction} is {@code call} or
+   *         {@code return}
+   * @see Event#getStaticFields
+   */
+  char[] getStaticFields(String eventAction) {
+    // Encoding more than once is harmless, so there's no need to lock
+    switch (eventAction) {
+      case "call":
+        if (this.callFields == null) {
+          this.callFields = EventJsonWriter.encodeStaticFields(this.getEvent(), eventAction);
+        }
+        return this.callFields;
+      case "return":
+        if (this.returnFields == null) {
+          this.returnFields = EventJsonWriter.encodeStaticFields(this.getEvent(), eventAction);
+        }
+        return this.returnFields;
+      default:
+        return null;
+    }
+  }
+
+  private Event buildEvent() {
+    final String[] parameterTypes = getParameterTypeNames(this.descriptor);
+    final Parameters parameters = new Parameters();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      final String parameterName = this.parameterNames != null
+          ? this.parameterNames[i]
+          : "p" + i;
+      parameters.add(new Value()
+          .setClassType(parameterTypes[i])
+          .setName(parameterName)
+          .setKind("req"));
+    }
+
+    return new Event()
+        .setDefinedClass(this.definedClass)
+        .setMethodId(this.methodId)
+        .setStatic(this.isStatic)
+        .setPath(CodeObject.getSourceFilePath(this.definedClass, this.packageName, this.sourceFile))
+        .setLineNumber(this.lineNumber)
+        .setParameters(parameters);
+  }
+
+  /**
+   * Reads the parameter types of a method descriptor, named as {@link CtClass#getName} would name
+   * them, e.g. {@code int} or {@code java.lang.String[]}.
+   * @param descriptor The method descriptor, e.g. {@code (I[Ljava/lang/String;)V}
+   * @return The name of each parameter type
+   */
+  static String[] getParameterTypeNames(String descriptor) {
+    final List<String> typeNames = new ArrayList<String>();
+    int i = 1;
+    while (descriptor.charAt(i) != ')') {
+      int dimensions = 0;
+      while (descriptor.charAt(i) == '[') {
+        dimensions++;
+        i++;
+      }
+
+      final StringBuilder typeName = new StringBuilder();
+      final char c = descriptor.charAt(i);
+      if (c == 'L') {
+        final int end = descriptor.indexOf(';', i);
+        typeName.append(descriptor, i + 1, end);
+        i = end + 1;
+      } else {
+        typeName.append(getPrimitiveTypeName(c));
+        i++;
+      }
+
+      for (int j = 0; j < dimensions; j++) {
+        typeName.append("[]");
+      }
+      typeNames.add(typeName.toString().replace('/', '.'));
+    }
+    return typeNames.toArray(new String[0]);
+  }
+
+  private static String getPrimitiveTypeName(char descriptor) {
+    switch (descriptor) {
+      case 'Z':
+        return "boolean";
+      case 'B':
+        return "byte";
+      case 'C':
+        return "char";
+      case 'S':
+        return "short";
+      case 'I':
+        return "int";
+      case 'J':
+        return "long";
+      case 'F':
+        return "float";
+      case 'D':
+        return "double";
+      default:
+        throw new IllegalArgumentException("invalid descriptor " + descriptor);
+    }
+  }
+}
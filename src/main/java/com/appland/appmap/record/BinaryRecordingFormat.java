@@ -0,0 +1,70 @@
+package com.appland.appmap.record;
+
+/**
+ * Constants of the binary recording format, written by {@link BinaryRecordingWriter} and read by
+ * {@link BinaryRecordingReader}. A recording is laid out as follows:
+ *
+ * <pre>
+ * magic    "APPMAPB" followed by the format version, one byte
+ * metadata scenario name, recorder name, framework, framework version, recorded class,
+ *          recorded method, feature, feature group, app name, JVM version and JVM name, as text
+ * records  a tag byte followed by the record: {@link #EVENT} any number of times, then
+ *          {@link #CLASS_MAP} once, then {@link #END}
+ * </pre>
+ *
+ * <p>Integers are unsigned LEB128 varints, and signed integers are zigzag-encoded first. Nullable
+ * integers are written as their zigzag encoding plus one, with {@code 0} for null. Text is written
+ * as its UTF-8 length plus one followed by its bytes, with {@code 0} for null.
+ *
+ * <p>Names which repeat, such as classes, kinds and paths, are written as symbols, which refer to
+ * a string dictionary built up as the recording is written:
+ * {@code 0} is null, {@link #SYMBOL_DEFINE} is followed by the length and bytes of a string which
+ * is added to the dictionary, {@link #SYMBOL_INLINE} by one which isn't because the dictionary is
+ * full, and {@link #SYMBOL_REF} or more refers to the entry at that value less
+ * {@link #SYMBOL_REF}.
+ *
+ * <p>Each event refers to a template holding the fields it shares with other events of the same
+ * kind for the same behavior: {@code defined_class}, {@code event}, {@code lineno},
+ * {@code method_id}, {@code path} and {@code static}. {@code 0} defines the next template, which
+ * follows, and any other value refers to the template at that value less one. An event record
+ * then holds:
+ *
+ * <pre>
+ * flags     which of the fields below are present, see {@link #HAS_ID} and the following flags
+ * template  the template reference
+ * id        the difference from the previous event's ID
+ * thread_id the difference from the previous event's thread ID
+ * parent_id the difference between the event's ID and its parent's
+ * ...       the values, exceptions, HTTP messages and SQL query present, in the order of the flags
+ * </pre>
+ */
+final class BinaryRecordingFormat {
+  static final byte[] MAGIC = { 'A', 'P', 'P', 'M', 'A', 'P', 'B' };
+  static final int VERSION = 1;
+
+  static final int END = 0;
+  static final int EVENT = 1;
+  static final int CLASS_MAP = 2;
+
+  static final int SYMBOL_DEFINE = 1;
+  static final int SYMBOL_INLINE = 2;
+  static final int SYMBOL_REF = 3;
+  static final int MAX_SYMBOLS = 1 << 16;
+
+  static final int HAS_ID = 1;
+  static final int HAS_THREAD_ID = 1 << 1;
+  static final int HAS_PARENT_ID = 1 << 2;
+  static final int HAS_RECEIVER = 1 << 3;
+  static final int HAS_PARAMETERS = 1 << 4;
+  static final int HAS_RETURN_VALUE = 1 << 5;
+  static final int HAS_EXCEPTIONS = 1 << 6;
+  static final int HAS_HTTP_SERVER_REQUEST = 1 << 7;
+  static final int HAS_HTTP_SERVER_RESPONSE = 1 << 8;
+  static final int HAS_HTTP_CLIENT_REQUEST = 1 << 9;
+  static final int HAS_HTTP_CLIENT_RESPONSE = 1 << 10;
+  static final int HAS_MESSAGE = 1 << 11;
+  static final int HAS_SQL_QUERY = 1 << 12;
+
+  private BinaryRecordingFormat() {
+  }
+}
@@ -0,0 +1,415 @@
+package com.appland.appmap.record;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.ExceptionValue;
+import com.appland.appmap.output.v1.HttpClientRequest;
+import com.appland.appmap.output.v1.HttpClientResponse;
+import com.appland.appmap.output.v1.HttpServerRequest;
+import com.appland.appmap.output.v1.HttpServerResponse;
+import com.appland.appmap.output.v1.Parameters;
+import com.appland.appmap.output.v1.SqlQuery;
+import com.appland.appmap.output.v1.Value;
+import com.appland.appmap.record.IRecordingSession.Metadata;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.appland.appmap.record.BinaryRecordingFormat.*;
+
+/**
+ * Reads a recording in the binary format described by {@link BinaryRecordingFormat}, one event at
+ * a time, and converts it to AppMap JSON.
+ */
+public class BinaryRecordingReader {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_EVENTS = 32;
+
+  /**
+   * A template read from the recording, along with its encoded static fields.
+   */
+  private static class Template {
+    final Event event;
+    final char[] staticFields;
+
+    Template(Event event) {
+      this.event = event;
+      this.staticFields = EventJsonWriter.encodeStaticFields(event, event.event);
+    }
+  }
+
+  private final InputStream in;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position = 0;
+  private int limit = 0;
+
+  private final List<String> symbols = new ArrayList<String>();
+  private final List<Template> templates = new ArrayList<Template>();
+  private long lastId = 0;
+  private long lastThreadId = 0;
+  private int tag = -1;
+
+  private final Metadata metadata = new Metadata();
+  private String appName;
+  private String vmVersion;
+  private String vmName;
+
+  /**
+   * Reads from a stream, which is left open.
+   * @param in The stream
+   */
+  BinaryRecordingReader(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Converts a binary recording to AppMap JSON. Events are converted as they're read, so memory
+   * use doesn't grow with the number of events. It does grow with the number of distinct symbols
+   * and event templates, which are kept for the whole recording, and the class map is read and
+   * parsed in one piece.
+   * @param in The binary recording, which is left open
+   * @param out The writer of the JSON, which is flushed but left open
+   * @throws IOException If the recording is malformed, or a reader or writer error occurs
+   */
+  public static void convert(InputStream in, Writer out) throws IOException {
+    final BinaryRecordingReader reader = new BinaryRecordingReader(in);
+    final AppMapSerializer serializer = new AppMapSerializer(out);
+    reader.readHeader();
+    serializer.write(reader.metadata, reader.appName, reader.vmVersion, reader.vmName);
+
+    final List<Event> events = new ArrayList<Event>(MAX_EVENTS);
+    for (Event event = reader.readEvent(); event != null; event = reader.readEvent()) {
+      events.add(event);
+      if (events.size() >= MAX_EVENTS) {
+        serializer.write(events);
+        events.clear();
+      }
+    }
+    serializer.write(events);
+
+    serializer.writeClassMap(reader.readClassMap());
+    reader.readEnd();
+    serializer.finalize();
+    out.flush();
+  }
+
+  /**
+   * Reads the header of the recording. Must be called first.
+   * @return The recording metadata
+   * @throws IOException If the recording is malformed, or a reader error occurs
+   */
+  Metadata readHeader() throws IOException {
+    for (byte b : MAGIC) {
+      if (this.readByte() != b) {
+        throw new IOException("not an AppMap binary recording");
+      }
+    }
+    final int version = this.readByte();
+    if (version != VERSION) {
+      throw new IOException(String.format("unsupported binary recording version %d", version));
+    }
+
+    this.metadata.scenarioName = this.readText();
+    this.metadata.recorderName = this.readText();
+    this.metadata.framework = this.readText();
+    this.metadata.frameworkVersion = this.readText();
+    this.metadata.recordedClassName = this.readText();
+    this.metadata.recordedMethodName = this.readText();
+    this.metadata.feature = this.readText();
+    this.metadata.featureGroup = this.readText();
+    this.appName = this.readText();
+    this.vmVersion = this.readText();
+    this.vmName = this.readText();
+    return this.metadata;
+  }
+
+  /**
+   * Reads the next event.
+   * @return The event, or null if there are no more events
+   * @throws IOException If the recording is malformed, or a reader error occurs
+   */
+  Event readEvent() throws IOException {
+    if (this.readTag() != EVENT) {
+      return null;
+    }
+    this.tag = -1;
+
+    final int flags = (int) this.readVarint();
+    final Template template = this.readTemplate();
+    final Event event = new Event();
+    event.definedClass = template.event.definedClass;
+    event.event = template.event.event;
+    event.lineNumber = template.event.lineNumber;
+    event.methodId = template.event.methodId;
+    event.path = template.event.path;
+    event.isStatic = template.event.isStatic;
+    event.setStaticFields(template.staticFields);
+
+    if ((flags & HAS_ID) != 0) {
+      this.lastId += this.readSigned();
+      event.id = this.lastId;
+    }
+    if ((flags & HAS_THREAD_ID) != 0) {
+      this.lastThreadId += this.readSigned();
+      event.threadId = this.lastThreadId;
+    }
+    if ((flags & HAS_PARENT_ID) != 0) {
+      event.parentId = this.lastId - this.readSigned();
+    }
+
+    if ((flags & HAS_RECEIVER) != 0) {
+      event.receiver = this.readValue();
+    }
+    if ((flags & HAS_PARAMETERS) != 0) {
+      event.parameters = new Parameters();
+      for (Value value : this.readValues()) {
+        event.parameters.add(value);
+      }
+    }
+    if ((flags & HAS_RETURN_VALUE) != 0) {
+      event.returnValue = this.readValue();
+    }
+    if ((flags & HAS_EXCEPTIONS) != 0) {
+      event.exceptions = this.readExceptions();
+    }
+    if ((flags & HAS_HTTP_SERVER_REQUEST) != 0) {
+      event.httpServerRequest = this.readHttpServerRequest();
+    }
+    if ((flags & HAS_HTTP_SERVER_RESPONSE) != 0) {
+      event.httpServerResponse = this.readHttpServerResponse();
+    }
+    if ((flags & HAS_HTTP_CLIENT_REQUEST) != 0) {
+      event.httpClientRequest = this.readHttpClientRequest();
+    }
+    if ((flags & HAS_HTTP_CLIENT_RESPONSE) != 0) {
+      event.httpClientResponse = this.readHttpClientResponse();
+    }
+    if ((flags & HAS_MESSAGE) != 0) {
+      event.message = this.readValues();
+    }
+    if ((flags & HAS_SQL_QUERY) != 0) {
+      event.sqlQuery = this.readSqlQuery();
+    }
+
+    return event;
+  }
+
+  /**
+   * Reads the class map, which follows the events.
+   * @return The class map, as JSON
+   * @throws IOException If the recording is malformed, or a reader error occurs
+   */
+  String readClassMap() throws IOException {
+    if (this.readTag() != CLASS_MAP) {
+      throw new IOException(String.format("expected the class map, found record %d", this.tag));
+    }
+    this.tag = -1;
+    return this.readText();
+  }
+
+  private void readEnd() throws IOException {
+    if (this.readTag() != END) {
+      throw new IOException(String.format("expected the end of the recording, found record %d",
+          this.tag));
+    }
+  }
+
+  private int readTag() throws IOException {
+    if (this.tag == -1) {
+      this.tag = this.readByte();
+    }
+    return this.tag;
+  }
+
+  private Template readTemplate() throws IOException {
+    final int reference = (int) this.readVarint();
+    if (reference > 0) {
+      if (reference > this.templates.size()) {
+        throw new IOException(String.format("undefined template %d", reference - 1));
+      }
+      return this.templates.get(reference - 1);
+    }
+
+    final Event event = new Event();
+    event.definedClass = this.readSymbol();
+    event.event = this.readSymbol();
+    event.lineNumber = this.readNullableInteger();
+    event.methodId = this.readSymbol();
+    event.path = this.readSymbol();
+    event.isStatic = this.readNullableBoolean();
+
+    final Template template = new Template(event);
+    this.templates.add(template);
+    return template;
+  }
+
+  private Value readValue() throws IOException {
+    final Value value = new Value();
+    value.classType = this.readSymbol();
+    value.kind = this.readSymbol();
+    value.name = this.readSymbol();
+    value.objectId = this.readNullableInteger();
+    value.value = this.readText();
+    return value;
+  }
+
+  private ArrayList<Value> readValues() throws IOException {
+    final int size = (int) this.readVarint();
+    final ArrayList<Value> values = new ArrayList<Value>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(this.readByte() == 0 ? null : this.readValue());
+    }
+    return values;
+  }
+
+  private ArrayList<ExceptionValue> readExceptions() throws IOException {
+    final int size = (int) this.readVarint();
+    final ArrayList<ExceptionValue> exceptions = new ArrayList<ExceptionValue>(size);
+    for (int i = 0; i < size; i++) {
+      if (this.readByte() == 0) {
+        exceptions.add(null);
+        continue;
+      }
+
+      final ExceptionValue exception = new ExceptionValue();
+      exception.classType = this.readSymbol();
+      exception.lineNumber = (int) this.readSigned();
+      exception.message = this.readText();
+      exception.objectId = this.readNullableInteger();
+      exception.path = this.readSymbol();
+      exceptions.add(exception);
+    }
+    return exceptions;
+  }
+
+  private HttpServerRequest readHttpServerRequest() throws IOException {
+    final HttpServerRequest request = new HttpServerRequest();
+    request.method = this.readSymbol();
+    request.path = this.readText();
+    request.normalizedPath = this.readSymbol();
+    request.protocol = this.readSymbol();
+    return request;
+  }
+
+  private HttpServerResponse readHttpServerResponse() throws IOException {
+    final HttpServerResponse response = new HttpServerResponse();
+    response.status = this.readNullableInteger();
+    response.mimeType = this.readSymbol();
+    return response;
+  }
+
+  private HttpClientRequest readHttpClientRequest() throws IOException {
+    final HttpClientRequest request = new HttpClientRequest();
+    request.method = this.readSymbol();
+    request.path = this.readText();
+    request.normalizedPath = this.readSymbol();
+    request.protocol = this.readSymbol();
+    return request;
+  }
+
+  private HttpClientResponse readHttpClientResponse() throws IOException {
+    final HttpClientResponse response = new HttpClientResponse();
+    response.status = this.readNullableInteger();
+    response.mimeType = this.readSymbol();
+    return response;
+  }
+
+  private SqlQuery readSqlQuery() throws IOException {
+    final String databaseType = this.readSymbol();
+    final SqlQuery sqlQuery = new SqlQuery(databaseType, this.readText());
+    sqlQuery.explainSql = this.readText();
+    sqlQuery.serverVersion = this.readSymbol();
+    return sqlQuery;
+  }
+
+  private String readSymbol() throws IOException {
+    final long symbol = this.readVarint();
+    if (symbol == 0) {
+      return null;
+    } else if (symbol == SYMBOL_DEFINE) {
+      final String value = this.readString((int) this.readVarint());
+      this.symbols.add(value);
+      return value;
+    } else if (symbol == SYMBOL_INLINE) {
+      return this.readString((int) this.readVarint());
+    }
+
+    final long index = symbol - SYMBOL_REF;
+    if (index >= this.symbols.size()) {
+      throw new IOException(String.format("undefined symbol %d", index));
+    }
+    return this.symbols.get((int) index);
+  }
+
+  private String readText() throws IOException {
+    final long length = this.readVarint();
+    return length == 0 ? null : this.readString((int) (length - 1));
+  }
+
+  private String readString(int length) throws IOException {
+    if (length <= this.limit - this.position) {
+      final String value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+      this.position += length;
+      return value;
+    }
+
+    final byte[] bytes = new byte[length];
+    int n = this.limit - this.position;
+    System.arraycopy(this.buffer, this.position, bytes, 0, n);
+    this.position = this.limit;
+    while (n < length) {
+      final int read = this.in.read(bytes, n, length - n);
+      if (read == -1) {
+        throw new EOFException("unexpected end of binary recording");
+      }
+      n += read;
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private Integer readNullableInteger() throws IOException {
+    final long value = this.readVarint();
+    return value == 0 ? null : (int) unzigzag(value - 1);
+  }
+
+  private Boolean readNullableBoolean() throws IOException {
+    final int value = this.readByte();
+    return value == 0 ? null : value == 2;
+  }
+
+  private long readSigned() throws IOException {
+    return unzigzag(this.readVarint());
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private long readVarint() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = this.readByte();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("malformed varint in binary recording");
+  }
+
+  private int readByte() throws IOException {
+    if (this.position == this.limit) {
+      this.limit = this.in.read(this.buffer, 0, this.buffer.length);
+      this.position = 0;
+      if (this.limit <= 0) {
+        this.limit = 0;
+        throw new EOFException("unexpected end of binary recording");
+      }
+    }
+    return this.buffer[this.position++] & 0xff;
+  }
+}
@@ -0,0 +1,475 @@
+package com.appland.appmap.record;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.ExceptionValue;
+import com.appland.appmap.output.v1.HttpClientRequest;
+import com.appland.appmap.output.v1.HttpClientResponse;
+import com.appland.appmap.output.v1.HttpServerRequest;
+import com.appland.appmap.output.v1.HttpServerResponse;
+import com.appland.appmap.output.v1.SqlQuery;
+import com.appland.appmap.output.v1.Value;
+import com.appland.appmap.record.IRecordingSession.Metadata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static com.appland.appmap.record.BinaryRecordingFormat.*;
+
+/**
+ * Writes a recording in the binary format described by {@link BinaryRecordingFormat}. Events are
+ * encoded into a buffer, which is written out once it holds {@code bufferSize} bytes, or once
+ * {@code flushInterval} has passed since it was last written out.
+ */
+class BinaryRecordingWriter implements Closeable {
+  /**
+   * Identifies the template of an event which has no pre-encoded static fields.
+   */
+  private static class TemplateKey {
+    final String definedClass;
+    final String eventAction;
+    final Integer lineNumber;
+    final String methodId;
+    final String path;
+    final Boolean isStatic;
+
+    TemplateKey(Event event) {
+      this.definedClass = event.definedClass;
+      this.eventAction = event.event;
+      this.lineNumber = event.lineNumber;
+      this.methodId = event.methodId;
+      this.path = event.path;
+      this.isStatic = event.isStatic;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TemplateKey)) {
+        return false;
+      }
+      final TemplateKey other = (TemplateKey) obj;
+      return Objects.equals(this.definedClass, other.definedClass)
+          && Objects.equals(this.eventAction, other.eventAction)
+          && Objects.equals(this.lineNumber, other.lineNumber)
+          && Objects.equals(this.methodId, other.methodId)
+          && Objects.equals(this.path, other.path)
+          && Objects.equals(this.isStatic, other.isStatic);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.definedClass,
+          this.eventAction,
+          this.lineNumber,
+          this.methodId,
+          this.path,
+          this.isStatic);
+    }
+  }
+
+  private final WritableByteChannel channel;
+  private final int bufferSize;
+  private final long flushIntervalNanos;
+  private byte[] buffer;
+  private int count = 0;
+  private long lastWriteNanos = System.nanoTime();
+
+  private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+  private final Map<TemplateKey, Integer> templates = new HashMap<TemplateKey, Integer>();
+  // Events cloned from the same template share their static fields, so they're found by identity
+  private final Map<char[], Integer> templatesByStaticFields = new IdentityHashMap<char[], Integer>();
+  private long lastId = 0;
+  private long lastThreadId = 0;
+
+  /**
+   * Writes to a channel, which is closed along with the writer.
+   * @param channel The channel
+   * @param bufferSize The number of bytes buffered before they're written out
+   */
+  BinaryRecordingWriter(WritableByteChannel channel, int bufferSize) {
+    this(channel, bufferSize, 0);
+  }
+
+  /**
+   * Writes to a channel, which is closed along with the writer.
+   * @param channel The channel
+   * @param bufferSize The number of bytes buffered before they're written out
+   * @param flushInterval The time after which buffered bytes are written out as events are
+   *                      written, in milliseconds. If {@code 0}, time is not taken into account.
+   */
+  BinaryRecordingWriter(WritableByteChannel channel, int bufferSize, long flushInterval) {
+    this.channel = channel;
+    this.bufferSize = bufferSize;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+    this.buffer = new byte[bufferSize + 1024];
+  }
+
+  /**
+   * Writes the header of the recording. Must be called first.
+   * @param metadata The recording metadata
+   * @param appName The name of the application
+   * @param vmVersion The version of the JVM
+   * @param vmName The name of the JVM
+   * @throws IOException If a writer error occurs
+   */
+  void writeHeader(Metadata metadata, String appName, String vmVersion, String vmName)
+      throws IOException {
+    this.ensureCapacity(MAGIC.length + 1);
+    System.arraycopy(MAGIC, 0, this.buffer, this.count, MAGIC.length);
+    this.count += MAGIC.length;
+    this.buffer[this.count++] = VERSION;
+
+    this.writeText(metadata.scenarioName);
+    this.writeText(metadata.recorderName);
+    this.writeText(metadata.framework);
+    this.writeText(metadata.frameworkVersion);
+    this.writeText(metadata.recordedClassName);
+    this.writeText(metadata.recordedMethodName);
+    this.writeText(metadata.feature);
+    this.writeText(metadata.featureGroup);
+    this.writeText(appName);
+    this.writeText(vmVersion);
+    this.writeText(vmName);
+    this.flushIfDue();
+  }
+
+  /**
+   * Writes an event.
+   * @param event The event, which should be frozen
+   * @throws IOException If a writer error occurs
+   */
+  void write(Event event) throws IOException {
+    int flags = 0;
+    flags |= event.id != null ? HAS_ID : 0;
+    flags |= event.threadId != null ? HAS_THREAD_ID : 0;
+    flags |= event.parentId != null ? HAS_PARENT_ID : 0;
+    flags |= event.receiver != null ? HAS_RECEIVER : 0;
+    flags |= event.parameters != null ? HAS_PARAMETERS : 0;
+    flags |= event.returnValue != null ? HAS_RETURN_VALUE : 0;
+    flags |= event.exceptions != null ? HAS_EXCEPTIONS : 0;
+    flags |= event.httpServerRequest != null ? HAS_HTTP_SERVER_REQUEST : 0;
+    flags |= event.httpServerResponse != null ? HAS_HTTP_SERVER_RESPONSE : 0;
+    flags |= event.httpClientRequest != null ? HAS_HTTP_CLIENT_REQUEST : 0;
+    flags |= event.httpClientResponse != null ? HAS_HTTP_CLIENT_RESPONSE : 0;
+    flags |= event.message != null ? HAS_MESSAGE : 0;
+    flags |= event.sqlQuery != null ? HAS_SQL_QUERY : 0;
+
+    this.writeByte(EVENT);
+    this.writeVarint(flags);
+    this.writeTemplate(event);
+
+    if (event.id != null) {
+      this.writeSigned(event.id - this.lastId);
+      this.lastId = event.id;
+    }
+    if (event.threadId != null) {
+      this.writeSigned(event.threadId - this.lastThreadId);
+      this.lastThreadId = event.threadId;
+    }
+    if (event.parentId != null) {
+      this.writeSigned(this.lastId - event.parentId);
+    }
+
+    if (event.receiver != null) {
+      this.write(event.receiver);
+    }
+    if (event.parameters != null) {
+      this.writeValues(event.parameters, event.parameters.size());
+    }
+    if (event.returnValue != null) {
+      this.write(event.returnValue);
+    }
+    if (event.exceptions != null) {
+      this.writeExceptions(event.exceptions);
+    }
+    if (event.httpServerRequest != null) {
+      this.write(event.httpServerRequest);
+    }
+    if (event.httpServerResponse != null) {
+      this.write(event.httpServerResponse);
+    }
+    if (event.httpClientRequest != null) {
+      this.write(event.httpClientRequest);
+    }
+    if (event.httpClientResponse != null) {
+      this.write(event.httpClientResponse);
+    }
+    if (event.message != null) {
+      this.writeValues(event.message, event.message.size());
+    }
+    if (event.sqlQuery != null) {
+      this.write(event.sqlQuery);
+    }
+
+    this.flushIfDue();
+  }
+
+  /**
+   * Writes the class map, ending the recording's events.
+   * @param classMap The class map, as JSON
+   * @throws IOException If a writer error occurs
+   */
+  void writeClassMap(String classMap) throws IOException {
+    this.writeByte(CLASS_MAP);
+    this.writeText(classMap);
+    this.flushIfDue();
+  }
+
+  /**
+   * Ends the recording, writes out the buffer and closes the channel.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.writeByte(END);
+      this.drain();
+    } finally {
+      this.channel.close();
+    }
+  }
+
+  private void writeTemplate(Event event) {
+    final char[] staticFields = event.getStaticFields();
+    Integer ordinal = staticFields == null ? null : this.templatesByStaticFields.get(staticFields);
+    if (ordinal == null) {
+      final TemplateKey key = new TemplateKey(event);
+      ordinal = this.templates.get(key);
+      if (ordinal == null) {
+        this.writeVarint(0);
+        this.writeSymbol(key.definedClass);
+        this.writeSymbol(key.eventAction);
+        this.writeNullable(key.lineNumber);
+        this.writeSymbol(key.methodId);
+        this.writeSymbol(key.path);
+        this.writeNullable(key.isStatic);
+        this.templates.put(key, this.templates.size());
+        if (staticFields != null) {
+          this.templatesByStaticFields.put(staticFields, this.templates.size() - 1);
+        }
+        return;
+      }
+
+      if (staticFields != null) {
+        this.templatesByStaticFields.put(staticFields, ordinal);
+      }
+    }
+    this.writeVarint(ordinal + 1);
+  }
+
+  private void write(Value value) {
+    this.writeSymbol(value.classType);
+    this.writeSymbol(value.kind);
+    this.writeSymbol(value.name);
+    this.writeNullable(value.objectId);
+    this.writeText(value.value == null ? null : value.value.toString());
+  }
+
+  private void writeValues(Iterable<Value> values, int size) {
+    this.writeVarint(size);
+    for (Value value : values) {
+      if (value == null) {
+        this.writeByte(0);
+      } else {
+        this.writeByte(1);
+        this.write(value);
+      }
+    }
+  }
+
+  private void writeExceptions(List<ExceptionValue> exceptions) {
+    this.writeVarint(exceptions.size());
+    for (ExceptionValue exception : exceptions) {
+      if (exception == null) {
+        this.writeByte(0);
+        continue;
+      }
+
+      this.writeByte(1);
+      this.writeSymbol(exception.classType);
+      this.writeSigned(exception.lineNumber);
+      this.writeText(exception.message);
+      this.writeNullable(exception.objectId);
+      this.writeSymbol(exception.path);
+    }
+  }
+
+  private void write(HttpServerRequest request) {
+    this.writeSymbol(request.method);
+    this.writeText(request.path);
+    this.writeSymbol(request.normalizedPath);
+    this.writeSymbol(request.protocol);
+  }
+
+  private void write(HttpServerResponse response) {
+    this.writeNullable(response.status);
+    this.writeSymbol(response.mimeType);
+  }
+
+  private void write(HttpClientRequest request) {
+    this.writeSymbol(request.method);
+    this.writeText(request.path);
+    this.writeSymbol(request.normalizedPath);
+    this.writeSymbol(request.protocol);
+  }
+
+  private void write(HttpClientResponse response) {
+    this.writeNullable(response.status);
+    this.writeSymbol(response.mimeType);
+  }
+
+  private void write(SqlQuery sqlQuery) {
+    this.writeSymbol(sqlQuery.databaseType);
+    this.writeText(sqlQuery.sql);
+    this.writeText(sqlQuery.explainSql);
+    this.writeSymbol(sqlQuery.serverVersion);
+  }
+
+  private void writeSymbol(String value) {
+    if (value == null) {
+      this.writeVarint(0);
+      return;
+    }
+
+    final Integer index = this.symbols.get(value);
+    if (index != null) {
+      this.writeVarint(index + SYMBOL_REF);
+    } else if (this.symbols.size() < MAX_SYMBOLS) {
+      this.symbols.put(value, this.symbols.size());
+      this.writeVarint(SYMBOL_DEFINE);
+      this.writeString(value);
+    } else {
+      this.writeVarint(SYMBOL_INLINE);
+      this.writeString(value);
+    }
+  }
+
+  private void writeText(String value) {
+    if (value == null) {
+      this.writeVarint(0);
+    } else {
+      this.writeString(value, 1);
+    }
+  }
+
+  private void writeString(String value) {
+    this.writeString(value, 0);
+  }
+
+  /**
+   * Writes a string as its UTF-8 length, plus {@code lengthBias}, followed by its UTF-8 bytes.
+   * Unpaired surrogates are encoded as {@code ?}.
+   */
+  private void writeString(String value, int lengthBias) {
+    final int length = value.length();
+    int utf8Length = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        utf8Length++;
+      } else if (c < 0x800) {
+        utf8Length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        utf8Length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        utf8Length++;
+      } else {
+        utf8Length += 3;
+      }
+    }
+
+    this.writeVarint(utf8Length + lengthBias);
+    this.ensureCapacity(utf8Length);
+    final byte[] bytes = this.buffer;
+    int n = this.count;
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        bytes[n++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[n++] = (byte) (0xc0 | (c >> 6));
+        bytes[n++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        bytes[n++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[n++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        bytes[n++] = '?';
+      } else {
+        bytes[n++] = (byte) (0xe0 | (c >> 12));
+        bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[n++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    this.count = n;
+  }
+
+  private void writeNullable(Integer value) {
+    this.writeVarint(value == null ? 0 : zigzag(value) + 1);
+  }
+
+  private void writeNullable(Boolean value) {
+    this.writeByte(value == null ? 0 : value ? 2 : 1);
+  }
+
+  private void writeSigned(long value) {
+    this.writeVarint(zigzag(value));
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private void writeVarint(long value) {
+    this.ensureCapacity(10);
+    while ((value & ~0x7fL) != 0) {
+      this.buffer[this.count++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    this.buffer[this.count++] = (byte) value;
+  }
+
+  private void writeByte(int value) {
+    this.ensureCapacity(1);
+    this.buffer[this.count++] = (byte) value;
+  }
+
+  private void ensureCapacity(int length) {
+    final int required = this.count + length;
+    if (required > this.buffer.length) {
+      this.buffer = Arrays.copyOf(this.buffer, Math.max(required, this.buffer.length * 2));
+    }
+  }
+
+  private void flushIfDue() throws IOException {
+    if (this.count >= this.bufferSize
+        || (this.flushIntervalNanos > 0
+            && this.count > 0
+            && System.nanoTime() - this.lastWriteNanos >= this.flushIntervalNanos)) {
+      this.drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    final ByteBuffer bytes = ByteBuffer.wrap(this.buffer, 0, this.count);
+    while (bytes.hasRemaining()) {
+      this.channel.write(bytes);
+    }
+    this.count = 0;
+    this.lastWriteNanos = System.nanoTime();
+  }
+}
@@ -10,32 +10,30 @@ import java.util.List;
 /**
  * Utility class representing the root of a {@link CodeObject} tree. Contains methods to make tree
  * manipulation easier.
+ *
+ * <p>Children are found through the hashed index of each node rather than by scanning, and may be
+ * added by several threads at once.
  */
 public class CodeObjectTree {
-  private CodeObject root = new CodeObject();
+  private volatile CodeObject root = new CodeObject();
 
   public CodeObjectTree() {
 
   }
 
-  private void add(CodeObject rootObject, List<CodeObject> newObjects) {
-    for (CodeObject newObject : newObjects) {
-      this.add(rootObject, newObject);
+  private void add(CodeObject rootObject, CodeObject newObject) {
+    final CodeObject existing = rootObject.addChildIfAbsent(newObject);
+    if (existing == newObject) {
+      return;
     }
-  }
 
-  private void add(CodeObject rootObject, CodeObject newObject) {
-    for (CodeObject child : rootObject.safeGetChildren()) {
-      if (child.equals(newObject)) {
-        this.add(child, newObject.safeGetChildren());
-        return;
-      }
+    for (CodeObject child : newObject.safeGetChildren()) {
+      this.add(existing, child);
     }
-    rootObject.addChild(newObject);
   }
 
   /**
-   * Recursively add a {@link CodeObject} hierarchy to this tree.
+   * Recursively add a {@link CodeObject} hierarchy to this tree. Safe to call concurrently.
    * @param newObject The root of the tree to be added
    */
   public void add(CodeObject newObject) {
@@ -83,10 +81,8 @@ public class CodeObjectTree {
     
     CodeObject currentObject = this.root;
     int start = 0, end = 0;
-    String name;
-    // Avoid allocating a String[] by scanning definedClass again.
     while ((end = definedClass.indexOf('.', start)) > 0) {
-      CodeObject child = currentObject.findChildBySubstring(definedClass, start, end);
+      CodeObject child = currentObject.findChild("package", definedClass.substring(start, end));
       if (child == null) {
         return null;
       }
@@ -94,7 +90,7 @@ public class CodeObjectTree {
       codeObjects[idx++] = currentObject = child;
     }
     assert definedClass.length() - start > 0 : "Not enough tokens";  // Should be one more token
-    CodeObject child = currentObject.findChildBySubstring(definedClass, start, definedClass.length());
+    CodeObject child = currentObject.findChild("class", definedClass.substring(start));
     if (child == null) {
       return null;
     }
@@ -0,0 +1,452 @@
+package com.appland.appmap.record;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.ExceptionValue;
+import com.appland.appmap.output.v1.HttpClientRequest;
+import com.appland.appmap.output.v1.HttpClientResponse;
+import com.appland.appmap.output.v1.HttpServerRequest;
+import com.appland.appmap.output.v1.HttpServerResponse;
+import com.appland.appmap.output.v1.SqlQuery;
+import com.appland.appmap.output.v1.Value;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes {@link Event}s as the elements of a JSON array, without the bean introspection fastjson
+ * does for each object. Field names are encoded once, and null fields are skipped. The fields an
+ * event shares with its template come first, and are copied as is if they were encoded along with
+ * the template. The rest follow in the order fastjson sorts them.
+ *
+ * <p>Output is buffered until {@link EventJsonWriter#flush} is called or the buffer fills up.
+ */
+class EventJsonWriter {
+  private static final int FLUSH_THRESHOLD = 8192;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final char[] CLASS = name("class");
+  private static final char[] DATABASE_TYPE = name("database_type");
+  private static final char[] DEFINED_CLASS = name("defined_class");
+  private static final char[] EVENT = name("event");
+  private static final char[] EXCEPTIONS = name("exceptions");
+  private static final char[] EXPLAIN_SQL = name("explain_sql");
+  private static final char[] HTTP_CLIENT_REQUEST = name("http_client_request");
+  private static final char[] HTTP_CLIENT_RESPONSE = name("http_client_response");
+  private static final char[] HTTP_SERVER_REQUEST = name("http_server_request");
+  private static final char[] HTTP_SERVER_RESPONSE = name("http_server_response");
+  private static final char[] ID = name("id");
+  private static final char[] KIND = name("kind");
+  private static final char[] LINENO = name("lineno");
+  private static final char[] MESSAGE = name("message");
+  private static final char[] METHOD_ID = name("method_id");
+  private static final char[] MIME_TYPE = name("mime_type");
+  private static final char[] NAME = name("name");
+  private static final char[] NORMALIZED_PATH_INFO = name("normalized_path_info");
+  private static final char[] OBJECT_ID = name("object_id");
+  private static final char[] PARAMETERS = name("parameters");
+  private static final char[] PARENT_ID = name("parent_id");
+  private static final char[] PATH = name("path");
+  private static final char[] PATH_INFO = name("path_info");
+  private static final char[] PROTOCOL = name("protocol");
+  private static final char[] RECEIVER = name("receiver");
+  private static final char[] REQUEST_METHOD = name("request_method");
+  private static final char[] RETURN_VALUE = name("return_value");
+  private static final char[] SERVER_VERSION = name("server_version");
+  private static final char[] SQL = name("sql");
+  private static final char[] SQL_QUERY = name("sql_query");
+  private static final char[] STATIC = name("static");
+  private static final char[] STATUS = name("status");
+  private static final char[] THREAD_ID = name("thread_id");
+  private static final char[] VALUE = name("value");
+
+  private static final char[] NULL = "null".toCharArray();
+  private static final char[] TRUE = "true".toCharArray();
+  private static final char[] FALSE = "false".toCharArray();
+
+  private final Writer writer;
+  private char[] buffer;
+  private int count = 0;
+  private boolean isFirstEvent = true;
+
+  // Whether the object being written has no fields yet, one flag per level of nesting
+  private boolean[] isEmptyObject = new boolean[8];
+  private int depth = -1;
+
+  EventJsonWriter(Writer writer) {
+    this(writer, FLUSH_THRESHOLD * 2);
+  }
+
+  private EventJsonWriter(Writer writer, int bufferSize) {
+    this.writer = writer;
+    this.buffer = new char[bufferSize];
+  }
+
+  private static char[] name(String name) {
+    return ("\"" + name + "\":").toCharArray();
+  }
+
+  /**
+   * Encodes the fields every event cloned from a template shares with it, so that they can be
+   * written as is.
+   * @param template The event template
+   * @param eventAction The value of the {@code event} field
+   * @return The encoded fields, without the enclosing braces
+   * @see Event#getStaticFields
+   */
+  static char[] encodeStaticFields(Event template, String eventAction) {
+    final EventJsonWriter writer = new EventJsonWriter(null, 128);
+    writer.startObject();
+    writer.writeStaticFields(template.definedClass,
+        eventAction,
+        template.lineNumber,
+        template.methodId,
+        template.path,
+        template.isStatic);
+    return Arrays.copyOfRange(writer.buffer, 1, writer.count);
+  }
+
+  /**
+   * Writes an event as the next element of the array.
+   * @param event The event, which should be frozen
+   * @throws IOException If a writer error occurs
+   */
+  void write(Event event) throws IOException {
+    if (!this.isFirstEvent) {
+      this.append(',');
+    }
+    this.isFirstEvent = false;
+
+    this.startObject();
+    final char[] staticFields = event.getStaticFields();
+    if (staticFields != null) {
+      this.append(staticFields);
+      this.isEmptyObject[this.depth] = staticFields.length == 0;
+    } else {
+      this.writeStaticFields(event.definedClass,
+          event.event,
+          event.lineNumber,
+          event.methodId,
+          event.path,
+          event.isStatic);
+    }
+    this.writeDynamicFields(event);
+    this.endObject();
+
+    if (this.count >= FLUSH_THRESHOLD) {
+      this.flush();
+    }
+  }
+
+  private void writeStaticFields(String definedClass,
+                                 String eventAction,
+                                 Integer lineNumber,
+                                 String methodId,
+                                 String path,
+                                 Boolean isStatic) {
+    this.writeField(DEFINED_CLASS, definedClass);
+    this.writeField(EVENT, eventAction);
+    this.writeField(LINENO, lineNumber);
+    this.writeField(METHOD_ID, methodId);
+    this.writeField(PATH, path);
+    this.writeField(STATIC, isStatic);
+  }
+
+  private void writeDynamicFields(Event event) {
+    if (event.exceptions != null) {
+      this.startField(EXCEPTIONS);
+      this.writeExceptions(event.exceptions);
+    }
+    if (event.httpClientRequest != null) {
+      this.startField(HTTP_CLIENT_REQUEST);
+      this.write(event.httpClientRequest);
+    }
+    if (event.httpClientResponse != null) {
+      this.startField(HTTP_CLIENT_RESPONSE);
+      this.write(event.httpClientResponse);
+    }
+    if (event.httpServerRequest != null) {
+      this.startField(HTTP_SERVER_REQUEST);
+      this.write(event.httpServerRequest);
+    }
+    if (event.httpServerResponse != null) {
+      this.startField(HTTP_SERVER_RESPONSE);
+      this.write(event.httpServerResponse);
+    }
+    this.writeField(ID, event.id);
+    if (event.message != null) {
+      this.startField(MESSAGE);
+      this.writeValues(event.message);
+    }
+    if (event.parameters != null) {
+      this.startField(PARAMETERS);
+      this.writeValues(event.parameters);
+    }
+    this.writeField(PARENT_ID, event.parentId);
+    if (event.receiver != null) {
+      this.startField(RECEIVER);
+      this.write(event.receiver);
+    }
+    if (event.returnValue != null) {
+      this.startField(RETURN_VALUE);
+      this.write(event.returnValue);
+    }
+    if (event.sqlQuery != null) {
+      this.startField(SQL_QUERY);
+      this.write(event.sqlQuery);
+    }
+    this.writeField(THREAD_ID, event.threadId);
+  }
+
+  /**
+   * Writes out any buffered output. Doesn't flush the underlying writer.
+   * @throws IOException If a writer error occurs
+   */
+  void flush() throws IOException {
+    if (this.count > 0) {
+      this.writer.write(this.buffer, 0, this.count);
+      this.count = 0;
+    }
+  }
+
+  private void write(Value value) {
+    this.startObject();
+    this.writeField(CLASS, value.classType);
+    this.writeField(KIND, value.kind);
+    this.writeField(NAME, value.name);
+    this.writeField(OBJECT_ID, value.objectId);
+    if (value.value != null) {
+      this.writeField(VALUE, value.value.toString());
+    }
+    this.endObject();
+  }
+
+  private void writeValues(Iterable<Value> values) {
+    this.append('[');
+    boolean isFirst = true;
+    for (Value value : values) {
+      if (!isFirst) {
+        this.append(',');
+      }
+      isFirst = false;
+
+      if (value == null) {
+        this.append(NULL);
+      } else {
+        this.write(value);
+      }
+    }
+    this.append(']');
+  }
+
+  private void writeExceptions(List<ExceptionValue> exceptions) {
+    this.append('[');
+    for (int i = 0; i < exceptions.size(); i++) {
+      if (i > 0) {
+        this.append(',');
+      }
+
+      final ExceptionValue exception = exceptions.get(i);
+      if (exception == null) {
+        this.append(NULL);
+        continue;
+      }
+
+      this.startObject();
+      this.writeField(CLASS, exception.classType);
+      this.writeField(LINENO, exception.lineNumber);
+      this.writeField(MESSAGE, exception.message);
+      this.writeField(OBJECT_ID, exception.objectId);
+      this.writeField(PATH, exception.path);
+      this.endObject();
+    }
+    this.append(']');
+  }
+
+  private void write(HttpClientRequest request) {
+    this.startObject();
+    this.writeField(NORMALIZED_PATH_INFO, request.normalizedPath);
+    this.writeField(PATH_INFO, request.path);
+    this.writeField(PROTOCOL, request.protocol);
+    this.writeField(REQUEST_METHOD, request.method);
+    this.endObject();
+  }
+
+  private void write(HttpServerRequest request) {
+    this.startObject();
+    this.writeField(NORMALIZED_PATH_INFO, request.normalizedPath);
+    this.writeField(PATH_INFO, request.path);
+    this.writeField(PROTOCOL, request.protocol);
+    this.writeField(REQUEST_METHOD, request.method);
+    this.endObject();
+  }
+
+  private void write(HttpClientResponse response) {
+    this.startObject();
+    this.writeField(MIME_TYPE, response.mimeType);
+    this.writeField(STATUS, response.status);
+    this.endObject();
+  }
+
+  private void write(HttpServerResponse response) {
+    this.startObject();
+    this.writeField(MIME_TYPE, response.mimeType);
+    this.writeField(STATUS, response.status);
+    this.endObject();
+  }
+
+  private void write(SqlQuery sqlQuery) {
+    this.startObject();
+    this.writeField(DATABASE_TYPE, sqlQuery.databaseType);
+    this.writeField(EXPLAIN_SQL, sqlQuery.explainSql);
+    this.writeField(SERVER_VERSION, sqlQuery.serverVersion);
+    this.writeField(SQL, sqlQuery.sql);
+    this.endObject();
+  }
+
+  private void startObject() {
+    this.depth++;
+    if (this.depth == this.isEmptyObject.length) {
+      this.isEmptyObject = Arrays.copyOf(this.isEmptyObject, this.depth * 2);
+    }
+    this.isEmptyObject[this.depth] = true;
+    this.append('{');
+  }
+
+  private void endObject() {
+    this.depth--;
+    this.append('}');
+  }
+
+  private void startField(char[] name) {
+    if (this.isEmptyObject[this.depth]) {
+      this.isEmptyObject[this.depth] = false;
+    } else {
+      this.append(',');
+    }
+    this.append(name);
+  }
+
+  private void writeField(char[] name, String value) {
+    if (value != null) {
+      this.startField(name);
+      this.writeString(value);
+    }
+  }
+
+  private void writeField(char[] name, Integer value) {
+    if (value != null) {
+      this.startField(name);
+      this.writeNumber(value);
+    }
+  }
+
+  private void writeField(char[] name, Long value) {
+    if (value != null) {
+      this.startField(name);
+      this.writeNumber(value);
+    }
+  }
+
+  private void writeField(char[] name, long value) {
+    this.startField(name);
+    this.writeNumber(value);
+  }
+
+  private void writeField(char[] name, Boolean value) {
+    if (value != null) {
+      this.startField(name);
+      this.append(value ? TRUE : FALSE);
+    }
+  }
+
+  private void writeNumber(long value) {
+    if (value == Long.MIN_VALUE) {
+      this.append(Long.toString(value).toCharArray());
+      return;
+    }
+
+    this.ensureCapacity(20);
+    if (value < 0) {
+      this.buffer[this.count++] = '-';
+      value = -value;
+    }
+
+    int digits = 1;
+    for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+      digits++;
+    }
+
+    int i = this.count + digits;
+    this.count = i;
+    do {
+      this.buffer[--i] = (char) ('0' + (value % 10));
+      value /= 10;
+    } while (value > 0);
+  }
+
+  private void writeString(String value) {
+    final int length = value.length();
+    this.ensureCapacity(length + 2);
+    this.buffer[this.count++] = '"';
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+        this.buffer[this.count++] = c;
+        continue;
+      }
+
+      // Each escape takes up to six characters where one was reserved
+      this.ensureCapacity(length - i + 6);
+      this.buffer[this.count++] = '\\';
+      switch (c) {
+        case '"':
+        case '\\':
+          this.buffer[this.count++] = c;
+          break;
+        case '\b':
+          this.buffer[this.count++] = 'b';
+          break;
+        case '\f':
+          this.buffer[this.count++] = 'f';
+          break;
+        case '\n':
+          this.buffer[this.count++] = 'n';
+          break;
+        case '\r':
+          this.buffer[this.count++] = 'r';
+          break;
+        case '\t':
+          this.buffer[this.count++] = 't';
+          break;
+        default:
+          this.buffer[this.count++] = 'u';
+          this.buffer[this.count++] = HEX_DIGITS[(c >> 12) & 0xf];
+          this.buffer[this.count++] = HEX_DIGITS[(c >> 8) & 0xf];
+          this.buffer[this.count++] = HEX_DIGITS[(c >> 4) & 0xf];
+          this.buffer[this.count++] = HEX_DIGITS[c & 0xf];
+          break;
+      }
+    }
+    this.buffer[this.count++] = '"';
+  }
+
+  private void append(char c) {
+    this.ensureCapacity(1);
+    this.buffer[this.count++] = c;
+  }
+
+  private void append(char[] chars) {
+    this.ensureCapacity(chars.length);
+    System.arraycopy(chars, 0, this.buffer, this.count, chars.length);
+    this.count += chars.length;
+  }
+
+  private void ensureCapacity(int length) {
+    final int required = this.count + length;
+    if (required > this.buffer.length) {
+      this.buffer = Arrays.copyOf(this.buffer, Math.max(required, this.buffer.length * 2));
+    }
+  }
+}
@@ -9,19 +9,60 @@ import com.appland.appmap.util.Logger;
 
 import javassist.CtBehavior;
 
-import java.util.ArrayList;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Stores events as templates built from behaviors intended to be hooked. Hooks can then access and
  * clone these templates before storing runtime information to be recorded. This caches event data at Class load time
  * rather than grabbing it through reflection every time a hook is invoked. It has benefits for DRY as well as
  * for performance.
+ *
+ * <p>Only a compact {@link BehaviorTemplate} is captured when a behavior is registered. The event
+ * template and {@link CodeObject} are built when a hook first fires for the behavior.
+ *
+ * <p>Templates are kept in fixed-size chunks which are never moved once published, so hooks look
+ * them up by ordinal without locking while classes are registered concurrently. Each template
+ * is owned by the class loaders defining its behavior. Once they have all been unloaded, the
+ * template is reclaimed. Its ordinal is never issued again.
+ *
+ * <p>Behaviors are looked up by key within the class loader defining them, so that classes of the
+ * same name defined by different loaders are given templates of their own.
  */
 public class EventTemplateRegistry {
+  private static final int CHUNK_BITS = 10;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
   private static EventTemplateRegistry instance = new EventTemplateRegistry();
-  private static final Recorder recorder = Recorder.getInstance();
 
-  private ArrayList<Event> eventTemplates = new ArrayList<Event>();
+  // Replaced rather than modified when chunks are added, and written while holding this
+  private volatile AtomicReferenceArray<BehaviorTemplate>[] chunks = newChunks(0);
+  private volatile int ordinalCount = 0;
+
+  // The ordinals of behaviors defined by the bootstrap loader, by behavior key
+  private final HashMap<String, Integer> bootstrapOrdinals = new HashMap<String, Integer>();
+  private final Map<ClassLoader, LoaderReference> loaderReferences =
+      new WeakHashMap<ClassLoader, LoaderReference>();
+  private final ReferenceQueue<ClassLoader> unloadedLoaders = new ReferenceQueue<ClassLoader>();
+
+  /**
+   * Enqueued once its class loader is unloaded, holding the ordinals the loader owned.
+   */
+  private static class LoaderReference extends WeakReference<ClassLoader> {
+    private final BitSet ordinals = new BitSet();
+    private final HashMap<String, Integer> behaviorOrdinals = new HashMap<String, Integer>();
+
+    LoaderReference(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+      super(loader, queue);
+    }
+  }
 
   private EventTemplateRegistry() { }
 
@@ -30,45 +71,236 @@ public class EventTemplateRegistry {
   }
 
   /**
-   * Creates and stores an {@link Event} template built from a behavior. The behavior will also
-   * have a {@link CodeObject} registered with the global {@link Recorder} instance.
+   * Creates and stores an {@link Event} template for a behavior of the bootstrap class loader, or
+   * of any other loader which is never unloaded.
+   * @see EventTemplateRegistry#register(CtBehavior, ClassLoader)
+   */
+  public Integer register(CtBehavior behavior) {
+    return this.register(behavior, null);
+  }
+
+  /**
+   * Creates and stores an {@link Event} template for a behavior. The template, and the
+   * {@link CodeObject} registered with the global {@link Recorder} instance, are built the first
+   * time the template is cloned. A behavior registered again by the same loader, such as when its
+   * class is retransformed, reuses its existing template.
    * @param behavior The behavior to create a template from
+   * @param loader The class loader defining the behavior, or {@code null} for the bootstrap loader
    * @return A behavior ordinal (an index to the event template)
+   * @throws com.appland.appmap.output.v1.NoSourceAvailableException If the behavior has no code
    */
-  public Integer register(CtBehavior behavior) {
-    Event event = new Event(behavior);
-    return this.register(event, behavior);
+  public Integer register(CtBehavior behavior, ClassLoader loader) {
+    final String behaviorKey = getBehaviorKey(behavior);
+
+    synchronized (this) {
+      final Integer ordinal = this.getBehaviorOrdinals(loader).get(behaviorKey);
+      if (ordinal != null) {
+        return ordinal;
+      }
+    }
+
+    final BehaviorTemplate template = BehaviorTemplate.from(behaviorKey, behavior);
+    synchronized (this) {
+      this.expungeUnloaded();
+
+      final Map<String, Integer> behaviorOrdinals = this.getBehaviorOrdinals(loader);
+      Integer ordinal = behaviorOrdinals.get(behaviorKey);
+      if (ordinal == null) {
+        ordinal = this.add(template);
+        behaviorOrdinals.put(behaviorKey, ordinal);
+        this.addOwner(ordinal, loader);
+      }
+      return ordinal;
+    }
+  }
+
+  /**
+   * Reserves every ordinal below the one given, so that templates registered from now on are
+   * assigned ordinals at or above it. This keeps ordinals baked into cached bytecode available.
+   * @param ordinal The lowest ordinal to be assigned to new templates
+   */
+  public synchronized void reserveOrdinals(int ordinal) {
+    if (this.ordinalCount < ordinal) {
+      this.ensureCapacity(ordinal);
+      this.ordinalCount = ordinal;
+    }
+  }
+
+  /**
+   * Gets the number of ordinals issued or reserved.
+   * @return The lowest ordinal not yet issued
+   */
+  public int getOrdinalCount() {
+    return this.ordinalCount;
+  }
+
+  /**
+   * Checks whether a template can be stored at the given ordinal. This is the case if the ordinal
+   * is unused or reclaimed, or is already used by a template for the same behavior.
+   * @param ordinal The behavior ordinal
+   * @param event The {@link Event} template to be stored
+   * @return {@code true} if the template can be stored at the ordinal
+   */
+  public synchronized boolean isAvailable(int ordinal, Event event) {
+    final BehaviorTemplate existing = this.getBehaviorTemplate(ordinal);
+    return existing == null || existing.matches(event);
+  }
+
+  /**
+   * Stores an event template at a known ordinal, such as one read back from the transform cache.
+   * The {@link CodeObject} is registered with the global {@link Recorder} instance the first time
+   * the template is cloned.
+   * @param ordinal The behavior ordinal, which must be available
+   * @param behaviorKey Uniquely identifies the behavior, as its class, name and signature
+   * @param event The {@link Event} template to be stored
+   * @param packageName The package of the declaring class, or {@code null}
+   * @param className The simple name of the declaring class
+   * @param classIsStatic Whether or not the declaring class is static
+   * @param loader The class loader defining the behavior, or {@code null} for the bootstrap loader
+   * @see EventTemplateRegistry#isAvailable
+   */
+  public synchronized void register(int ordinal,
+                                    String behaviorKey,
+                                    Event event,
+                                    String packageName,
+                                    String className,
+                                    boolean classIsStatic,
+                                    ClassLoader loader) {
+    this.reserveOrdinals(ordinal + 1);
+    if (this.getBehaviorTemplate(ordinal) == null) {
+      this.getChunk(ordinal).set(ordinal & CHUNK_MASK,
+          new BehaviorTemplate(behaviorKey, event, packageName, className, classIsStatic));
+    }
+    this.getBehaviorOrdinals(loader).putIfAbsent(behaviorKey, ordinal);
+    this.addOwner(ordinal, loader);
+  }
+
+  /**
+   * Reclaims the templates owned only by class loaders which have since been unloaded. Called
+   * whenever a new template is registered.
+   * @return The number of templates reclaimed
+   */
+  synchronized int expungeUnloaded() {
+    int reclaimed = 0;
+    LoaderReference reference;
+    while ((reference = (LoaderReference) this.unloadedLoaders.poll()) != null) {
+      final BitSet ordinals = reference.ordinals;
+      for (int ordinal = ordinals.nextSetBit(0);
+           ordinal >= 0;
+           ordinal = ordinals.nextSetBit(ordinal + 1)) {
+        final BehaviorTemplate template = this.getBehaviorTemplate(ordinal);
+        if (template != null && template.removeOwner()) {
+          this.getChunk(ordinal).set(ordinal & CHUNK_MASK, null);
+          reclaimed++;
+        }
+      }
+    }
+
+    if (reclaimed > 0 && Properties.DebugHooks) {
+      Logger.printf("reclaimed %d event templates of unloaded class loaders\n", reclaimed);
+    }
+    return reclaimed;
+  }
+
+  private LoaderReference getLoaderReference(ClassLoader loader) {
+    LoaderReference reference = this.loaderReferences.get(loader);
+    if (reference == null) {
+      reference = new LoaderReference(loader, this.unloadedLoaders);
+      this.loaderReferences.put(loader, reference);
+    }
+    return reference;
+  }
+
+  private Map<String, Integer> getBehaviorOrdinals(ClassLoader loader) {
+    return loader == null
+        ? this.bootstrapOrdinals
+        : this.getLoaderReference(loader).behaviorOrdinals;
+  }
+
+  private void addOwner(int ordinal, ClassLoader loader) {
+    final BehaviorTemplate template = this.getBehaviorTemplate(ordinal);
+    if (loader == null) {
+      template.pin();
+      return;
+    }
+
+    final LoaderReference reference = this.getLoaderReference(loader);
+    if (!reference.ordinals.get(ordinal)) {
+      reference.ordinals.set(ordinal);
+      template.addOwner();
+    }
+  }
+
+  private int add(BehaviorTemplate template) {
+    final int ordinal = this.ordinalCount;
+    this.ensureCapacity(ordinal + 1);
+    this.getChunk(ordinal).set(ordinal & CHUNK_MASK, template);
+    // Publishes the template to hooks reading the ordinal count
+    this.ordinalCount = ordinal + 1;
+    return ordinal;
+  }
+
+  private void ensureCapacity(int ordinalCount) {
+    final AtomicReferenceArray<BehaviorTemplate>[] chunks = this.chunks;
+    final int chunkCount = (ordinalCount + CHUNK_MASK) >>> CHUNK_BITS;
+    if (chunkCount <= chunks.length) {
+      return;
+    }
+
+    final AtomicReferenceArray<BehaviorTemplate>[] grown = Arrays.copyOf(chunks, chunkCount);
+    for (int i = chunks.length; i < chunkCount; i++) {
+      grown[i] = new AtomicReferenceArray<BehaviorTemplate>(CHUNK_SIZE);
+    }
+    this.chunks = grown;
+  }
+
+  private AtomicReferenceArray<BehaviorTemplate> getChunk(int ordinal) {
+    return this.chunks[ordinal >>> CHUNK_BITS];
+  }
+
+  /**
+   * Looks up a template without locking.
+   * @return The template, or {@code null} if the ordinal is reserved, reclaimed or out of range
+   */
+  private BehaviorTemplate getBehaviorTemplate(int ordinal) {
+    if (ordinal < 0 || ordinal >= this.ordinalCount) {
+      return null;
+    }
+    return this.getChunk(ordinal).get(ordinal & CHUNK_MASK);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static AtomicReferenceArray<BehaviorTemplate>[] newChunks(int length) {
+    return (AtomicReferenceArray<BehaviorTemplate>[]) new AtomicReferenceArray[length];
   }
 
   /**
-   * Stores an event template built previously from a behavior. The behavior will also
-   * have a {@link CodeObject} registered with the global {@link Recorder} instance.
-   * @param event The {@link Event} template to be registered
-   * @param behavior The behavior used to create the {@link Event} template
-   * @returns The behavior ordinal (an index to the {@link Event} template)
+   * Builds the key identifying a behavior across transforms. It doesn't identify the class loader,
+   * which is kept alongside it.
+   * @param behavior The behavior
+   * @return The name of the declaring class, the behavior name and its signature
    */
-  public synchronized Integer register(Event event, CtBehavior behavior) {
-    recorder.register(CodeObject.createTree(behavior));
-    eventTemplates.add(event);
-    return eventTemplates.size() - 1;
+  public static String getBehaviorKey(CtBehavior behavior) {
+    return behavior.getDeclaringClass().getName()
+        + "."
+        + behavior.getName()
+        + behavior.getSignature();
   }
 
   /**
-   * Retrieve an {@link Event} template by ordinal.
+   * Retrieve an {@link Event} template by ordinal, building it if needed. Doesn't register the
+   * {@link CodeObject} of the behavior.
    * @param templateId The behavior ordinal returned when the template was registered
    * @return An {@link Event} template if one exists at the given index. Otherwise, null.
    */
   public Event getTemplate(Integer templateId) {
-    try {
-      return eventTemplates.get(templateId);
-    } catch (IndexOutOfBoundsException e) {
-      // fall through
-    }
-    return null;
+    final BehaviorTemplate template = this.getBehaviorTemplate(templateId);
+    return template == null ? null : template.getEvent();
   }
 
   /**
-   * Clones an {@link Event} template and sets the {@code event} field.
+   * Clones an {@link Event} template and sets the {@code event} field. The fields the clone shares
+   * with the template are pre-encoded for serialization.
    * @param templateId The behavior ordinal
    * @param eventAction The value of the {@code event} field ({@code call}, {@code return}, etc.)
    * @return A copy of the event template with the {@code event} field set
@@ -76,30 +308,29 @@ public class EventTemplateRegistry {
    */
   public Event cloneEventTemplate(int templateId, String eventAction)
       throws UnknownEventException {
-    Event event = null;
-
-    try {
-      Event eventTemplate = eventTemplates.get(templateId);
-      event = new Event(eventTemplate)
-          .setThreadId(Thread.currentThread().getId())
-          .setEvent(eventAction);
-
-      if (eventAction.equals("call")) {
-        for (Value param : eventTemplate.parameters) {
-          event.addParameter(param);
-        }
-      }
-    } catch (IndexOutOfBoundsException e) {
+    final BehaviorTemplate template = this.getBehaviorTemplate(templateId);
+    if (template == null) {
       final String msg = String.format("unknown template for ordinal %d - have we been loaded by a non-system class loader?", templateId);
 
       if (Properties.DebugHooks) {
         Logger.println(msg);
-        Logger.println(e);
       }
 
       throw new UnknownEventException(msg);
     }
-    
+
+    final Event eventTemplate = template.resolve();
+    final Event event = new Event(eventTemplate)
+        .setThreadId(Thread.currentThread().getId())
+        .setEvent(eventAction)
+        .setStaticFields(template.getStaticFields(eventAction));
+
+    if (eventAction.equals("call")) {
+      for (Value param : eventTemplate.parameters) {
+        event.addParameter(param);
+      }
+    }
+
     return event;
   }
 }
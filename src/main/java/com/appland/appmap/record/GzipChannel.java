@@ -0,0 +1,193 @@
+package com.appland.appmap.record;
+
+import com.appland.appmap.util.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips the bytes written to it on a background thread, so that the threads writing them don't
+ * pay for compression. Written bytes are copied into one of a few chunks, which the background
+ * thread deflates in order and hands back. Writers only wait when every chunk is in use, i.e.
+ * when they're producing bytes faster than they can be compressed.
+ *
+ * <p>If the compressed output can't be written, the error is thrown from the next write, or from
+ * {@link GzipChannel#close}.
+ */
+class GzipChannel implements WritableByteChannel {
+  private static final int CHUNKS = 3;
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+  private static class Chunk {
+    final byte[] bytes;
+    int length;
+
+    Chunk(int size) {
+      this.bytes = new byte[size];
+    }
+  }
+
+  private static final Chunk END = new Chunk(0);
+
+  private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(CHUNKS);
+  private final BlockingQueue<Chunk> pending = new ArrayBlockingQueue<Chunk>(CHUNKS + 1);
+  private final Thread compressor;
+  private volatile IOException failure;
+  private boolean isOpen = true;
+
+  /**
+   * Starts compressing.
+   * @param out Receives the gzipped bytes, and is closed along with the channel
+   * @param level The compression level, from {@code 0} to {@code 9}, or {@code -1} for the
+   *              default level
+   * @param chunkSize The size of each chunk, in bytes. Writes larger than this are split up.
+   */
+  GzipChannel(OutputStream out, int level, int chunkSize) {
+    if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      Logger.printf("invalid compression level %d, using the default\n", level);
+      level = Deflater.DEFAULT_COMPRESSION;
+    }
+    final int compressionLevel = level;
+
+    for (int i = 0; i < CHUNKS; i++) {
+      this.free.add(new Chunk(chunkSize));
+    }
+
+    this.compressor = new Thread(() -> this.compress(out, compressionLevel), "appmap-gzip");
+    this.compressor.setDaemon(true);
+    this.compressor.start();
+  }
+
+  @Override
+  public synchronized int write(ByteBuffer src) throws IOException {
+    if (!this.isOpen) {
+      throw new ClosedChannelException();
+    }
+    this.checkFailure();
+
+    final int written = src.remaining();
+    while (src.hasRemaining()) {
+      final Chunk chunk = take(this.free);
+      chunk.length = Math.min(src.remaining(), chunk.bytes.length);
+      src.get(chunk.bytes, 0, chunk.length);
+      put(this.pending, chunk);
+    }
+    return written;
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return this.isOpen;
+  }
+
+  /**
+   * Waits for every byte written to be compressed, then finishes the gzip stream and closes the
+   * output.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!this.isOpen) {
+      return;
+    }
+    this.isOpen = false;
+
+    put(this.pending, END);
+    boolean interrupted = false;
+    while (this.compressor.isAlive()) {
+      try {
+        this.compressor.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    this.checkFailure();
+  }
+
+  private void checkFailure() throws IOException {
+    final IOException failure = this.failure;
+    if (failure != null) {
+      throw new IOException("failed to write compressed output", failure);
+    }
+  }
+
+  private void compress(OutputStream out, int level) {
+    // Chunks keep being taken after a failure, so that writers never wait on a dead thread
+    Chunk chunk = null;
+    try (OutputStream gzip = new GZIPOutputStream(out, OUTPUT_BUFFER_SIZE) {
+      {
+        this.def.setLevel(level);
+      }
+    }) {
+      for (chunk = take(this.pending); chunk != END; chunk = take(this.pending)) {
+        try {
+          if (this.failure == null) {
+            gzip.write(chunk.bytes, 0, chunk.length);
+          }
+        } catch (IOException e) {
+          this.failure = e;
+        } catch (RuntimeException e) {
+          this.failure = new IOException(e);
+        } finally {
+          put(this.free, chunk);
+        }
+      }
+    } catch (IOException e) {
+      if (this.failure == null) {
+        this.failure = e;
+      }
+    }
+
+    while (chunk != END) {
+      chunk = take(this.pending);
+      if (chunk != END) {
+        put(this.free, chunk);
+      }
+    }
+  }
+
+  private static Chunk take(BlockingQueue<Chunk> queue) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return queue.take();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void put(BlockingQueue<Chunk> queue, Chunk chunk) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          queue.put(chunk);
+          return;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
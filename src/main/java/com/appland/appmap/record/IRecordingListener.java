@@ -0,0 +1,12 @@
+package com.appland.appmap.record;
+
+/**
+ * Receives notifications from the {@link Recorder} as recording sessions start and stop. Listeners
+ * are called on the thread starting or stopping the session, outside of any lock held by the
+ * Recorder.
+ */
+public interface IRecordingListener {
+  public void onStart();
+
+  public void onStop();
+}
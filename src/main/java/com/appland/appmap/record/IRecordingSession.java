@@ -20,4 +20,9 @@ public interface IRecordingSession {
   public void start() throws ActiveSessionException;
 
   public String stop() throws ActiveSessionException;
+
+  /**
+   * Stops the session, like {@link #stop}, returning its output gzipped.
+   */
+  public byte[] stopGzip() throws ActiveSessionException;
 }
@@ -1,16 +1,18 @@
 package com.appland.appmap.record;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Paths;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import com.appland.appmap.config.Properties;
 import com.appland.appmap.output.v1.CodeObject;
 import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.process.HookDispatch;
 import com.appland.appmap.record.IRecordingSession.Metadata;
 import com.appland.appmap.util.Logger;
 
@@ -22,9 +24,44 @@ public class Recorder {
   private static final String ERROR_SESSION_PRESENT = "an active recording session already exists";
   private static final String ERROR_NO_SESSION = "there is no active recording session";
 
-  private IRecordingSession activeSession = null;
+  /**
+   * The events of a single thread within a session. The thread stages its most recent event here,
+   * and writes the previously staged one as the next arrives. The monitor of a slot is only
+   * contended by a session being stopped, which waits for the thread to finish writing.
+   */
+  private static class Slot {
+    final Thread thread = Thread.currentThread();
+    // Events queued by the thread while it was writing, such as from hooks run by Event#freeze
+    final Queue<Event> reentrantEvents = new ArrayDeque<>();
+    Event stagedEvent;
+    boolean writing;
+    boolean closed;
+    // Only accessed by the thread
+    Event lastEvent;
+  }
+
+  /**
+   * The state of a single recording session. Each thread stages its most recent event in a slot of
+   * its own, so that queueing an event never contends with other threads. Every slot is also added
+   * to a registry, allowing the session to drain all slots once it's stopped.
+   */
+  private static class ActiveSession {
+    final IRecordingSession session;
+    final Queue<Slot> registry = new ConcurrentLinkedQueue<>();
+    final ThreadLocal<Slot> slots = ThreadLocal.withInitial(() -> {
+      final Slot slot = new Slot();
+      this.registry.add(slot);
+      return slot;
+    });
+
+    ActiveSession(IRecordingSession session) {
+      this.session = session;
+    }
+  }
+
+  private volatile ActiveSession activeSession = null;
   private CodeObjectTree globalCodeObjects = new CodeObjectTree();
-  private Map<Long, Event> queuedEvents = new HashMap<Long, Event>();
+  private final List<IRecordingListener> listeners = new CopyOnWriteArrayList<>();
 
   private static Recorder instance = new Recorder();
 
@@ -38,17 +75,21 @@ public class Recorder {
       throw new ActiveSessionException(ERROR_SESSION_PRESENT);
     }
 
-    this.activeSession = activeSession;
+    this.activeSession = new ActiveSession(activeSession);
+    HookDispatch.setRecording(true);
 
     try {
-      this.activeSession.start();
+      activeSession.start();
     } catch (ActiveSessionException e) {
       Logger.printf("failed to start recording", e.getMessage());
       Logger.println(e);
 
-      this.stop();
+      this.activeSession = null;
+      HookDispatch.setRecording(false);
       throw e;
     }
+
+    this.notifyStarted();
   }
 
   /**
@@ -59,32 +100,45 @@ public class Recorder {
     return Recorder.instance;
   }
 
+  /**
+   * Checks whether or not a recording session is active. This is called from hook-generated
+   * bytecode to skip building events while idle, so it's kept to a single volatile read.
+   * @return {@code true} If a session is in progress. Otherwise, {@code false}.
+   */
+  public static boolean isRecording() {
+    return Recorder.instance.activeSession != null;
+  }
+
   /**
    * Checks whether or not the Recorder has an active recording session.
    * @return {@code true} If a session is in progress. Otherwise, {@code false}.
    */
-  public synchronized Boolean hasActiveSession() {
+  public Boolean hasActiveSession() {
     return this.activeSession != null;
   }
 
-  public synchronized IRecordingSession getActiveSession()
+  public IRecordingSession getActiveSession()
       throws ActiveSessionException {
-    if (this.activeSession == null) {
+    final ActiveSession activeSession = this.activeSession;
+    if (activeSession == null) {
       throw new ActiveSessionException(ERROR_NO_SESSION);
     }
 
-    return this.activeSession;
+    return activeSession.session;
   }
 
   /**
-   * Start a recording session, writing the output to a file.
+   * Start a recording session, writing the output to a file. The file is in the binary format if
+   * {@link Properties#OutputFormat} is {@link Properties#OutputFormatBinary}.
    * @param fileName Destination file
    * @param metadata Recording metadata to be written
    * @throws ActiveSessionException If a session is already in progress
    */
-  public synchronized void start(String fileName, Metadata metadata)
+  public void start(String fileName, Metadata metadata)
       throws ActiveSessionException {
-    this.setActiveSession(new RecordingSessionFileStream(fileName, metadata));
+    this.setActiveSession(Properties.OutputFormatBinary.equals(Properties.OutputFormat)
+        ? new RecordingSessionBinary(fileName, metadata)
+        : new RecordingSessionFileStream(fileName, metadata));
   }
 
   /**
@@ -92,11 +146,33 @@ public class Recorder {
    * @param metadata Recording metadata to be written
    * @throws ActiveSessionException If a recording session is already in progress
    */
-  public synchronized void start(Metadata metadata)
+  public void start(Metadata metadata)
       throws ActiveSessionException {
     this.setActiveSession(new RecordingSessionMemory(metadata));
   }
 
+  /**
+   * Register a listener to be notified as recording sessions start and stop. Listeners are
+   * notified while holding the Recorder, so that they see sessions start and stop in the order
+   * they actually did. They must return quickly, and must not start or stop a session.
+   * @param listener The listener to be added
+   */
+  public void addListener(IRecordingListener listener) {
+    this.listeners.add(listener);
+  }
+
+  private void notifyStarted() {
+    for (IRecordingListener listener : this.listeners) {
+      listener.onStart();
+    }
+  }
+
+  private void notifyStopped() {
+    for (IRecordingListener listener : this.listeners) {
+      listener.onStop();
+    }
+  }
+
   /**
    * Freeze the event and write it to the active session. Do NOT call this
    * method from within a block locked by `this`. Freezing an event will step
@@ -111,48 +187,119 @@ public class Recorder {
   }
 
   /**
-   * Flush all queued events, writing them to the active session and clearing
-   * the queue.
+   * Flush all queued events, writing them to the session and closing each thread's slot. Another
+   * thread still writing its previous event is waited on, so that nothing is written to the
+   * session once this returns. If the session is stopped by a thread while it writes, the event
+   * being written is dropped.
    */
-  private void flush(IRecordingSession recordingSession) throws ActiveSessionException {
-    Collection<Event> events;
-
-    synchronized (this) {
-      events = new LinkedList<Event>(this.queuedEvents.values());
-      this.queuedEvents.clear();
-    }
+  private void flush(ActiveSession activeSession) throws ActiveSessionException {
+    for (Slot slot : activeSession.registry) {
+      final List<Event> events = new ArrayList<>();
+      synchronized (slot) {
+        while (slot.writing && slot.thread != Thread.currentThread()) {
+          try {
+            slot.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+
+        slot.closed = true;
+        if (slot.stagedEvent != null) {
+          events.add(slot.stagedEvent);
+          slot.stagedEvent = null;
+        }
+        events.addAll(slot.reentrantEvents);
+        slot.reentrantEvents.clear();
+      }
 
-    for (Event event : events) {
-      this.writeEvent(event, recordingSession);
+      // Written without holding the slot, since freezing an event steps into application code
+      for (Event event : events) {
+        this.writeEvent(event, activeSession.session);
+      }
     }
   }
 
+  /**
+   * Stage an event in the current thread's slot. The event previously staged by this thread, if
+   * any, is written to the session. Events queued while writing, such as by the hooks of methods
+   * called by {@link Event#freeze}, are staged in turn once the write completes. If the session
+   * has been stopped since it was read, the event is dropped.
+   */
   private void queueEvent(Event event) throws ActiveSessionException {
+    final ActiveSession activeSession = this.activeSession;
+    if (activeSession == null) {
+      return;
+    }
+
+    final Slot slot = activeSession.slots.get();
+    slot.lastEvent = event;
+
     Event pendingEvent;
-    IRecordingSession recordingSession;
+    synchronized (slot) {
+      if (slot.closed) {
+        return;
+      }
 
-    synchronized (this) {
-      if (this.activeSession == null) {
+      if (slot.writing) {
+        slot.reentrantEvents.add(event);
         return;
       }
 
-      recordingSession = this.activeSession;
-      pendingEvent = this.queuedEvents.get(event.threadId);
-      this.queuedEvents.put(event.threadId, event);
+      pendingEvent = slot.stagedEvent;
+      slot.stagedEvent = event;
+      if (pendingEvent == null) {
+        return;
+      }
+      slot.writing = true;
     }
 
-    if (pendingEvent != null) {
-      this.writeEvent(pendingEvent, recordingSession);
+    try {
+      while (pendingEvent != null) {
+        pendingEvent.freeze();
+
+        synchronized (slot) {
+          // This thread stopped the session while freezing the event
+          if (slot.closed) {
+            return;
+          }
+        }
+        activeSession.session.add(pendingEvent);
+
+        synchronized (slot) {
+          final Event reentrantEvent = slot.reentrantEvents.poll();
+          if (reentrantEvent == null) {
+            pendingEvent = null;
+          } else {
+            pendingEvent = slot.stagedEvent;
+            slot.stagedEvent = reentrantEvent;
+          }
+        }
+      }
+    } finally {
+      synchronized (slot) {
+        slot.writing = false;
+        slot.notifyAll();
+      }
     }
   }
 
-  private synchronized void forceStop() {
-    if (this.activeSession == null) {
-      return;
+  private void forceStop() {
+    final ActiveSession activeSession;
+
+    synchronized (this) {
+      activeSession = this.activeSession;
+      if (activeSession == null) {
+        return;
+      }
+
+      this.activeSession = null;
+      HookDispatch.setRecording(false);
+      this.notifyStopped();
     }
 
-    this.activeSession.stop();
-    this.activeSession = null;
+    activeSession.session.stop();
   }
 
   /**
@@ -162,20 +309,41 @@ public class Recorder {
    *                                stopped.
    */
   public String stop() throws ActiveSessionException {
-    IRecordingSession recordingSession;
+    return this.stop(IRecordingSession::stop, "");
+  }
+
+  /**
+   * Stops the active recording session, returning its output gzipped.
+   * @return Gzipped output from the current session. This will be empty unless recording to memory.
+   * @throws ActiveSessionException If no recording session is in progress or the session cannot be
+   *                                stopped.
+   */
+  public byte[] stopGzip() throws ActiveSessionException {
+    return this.stop(IRecordingSession::stopGzip, new byte[0]);
+  }
+
+  private <T> T stop(Function<IRecordingSession, T> stopSession, T fallback)
+      throws ActiveSessionException {
+    ActiveSession activeSession;
 
     synchronized (this) {
-      recordingSession = this.getActiveSession();
+      activeSession = this.activeSession;
+      if (activeSession == null) {
+        throw new ActiveSessionException(ERROR_NO_SESSION);
+      }
+
       this.activeSession = null;
+      HookDispatch.setRecording(false);
+      this.notifyStopped();
     }
 
     try {
-      this.flush(recordingSession);
-      return recordingSession.stop();
+      this.flush(activeSession);
+      return stopSession.apply(activeSession.session);
     } catch (ActiveSessionException e) {
       Logger.printf("failed to stop recording\n%s\n", e.getMessage());
       this.forceStop();
-      return "";
+      return fallback;
     }
   }
 
@@ -195,10 +363,10 @@ public class Recorder {
 
   /**
    * Register a {@link CodeObject}, allowing it to propagate to an output's Class Map if referenced
-   * in an event.
+   * in an event. Safe to call concurrently.
    * @param codeObject The code object to be registered
    */
-  public synchronized void register(CodeObject codeObject) {
+  public void register(CodeObject codeObject) {
     this.globalCodeObjects.add(codeObject);
   }
 
@@ -207,11 +375,15 @@ public class Recorder {
   }
   
   /**
-   * Retrieve the last event recorded.
+   * Retrieve the last event recorded by the current thread.
    */
-  public synchronized Event getLastEvent() {
-    final Long threadId = Thread.currentThread().getId();
-    return this.queuedEvents.get(threadId);
+  public Event getLastEvent() {
+    final ActiveSession activeSession = this.activeSession;
+    if (activeSession == null) {
+      return null;
+    }
+
+    return activeSession.slots.get().lastEvent;
   }
 
   /**
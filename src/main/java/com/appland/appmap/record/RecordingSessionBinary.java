@@ -0,0 +1,116 @@
+package com.appland.appmap.record;
+
+import com.alibaba.fastjson.JSON;
+import com.appland.appmap.config.AppMapConfig;
+import com.appland.appmap.config.Properties;
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.util.Logger;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Receives recording data and writes it to disk in the binary format described by
+ * {@link BinaryRecordingFormat}. The file is named {@code .appmap.bin} rather than
+ * {@code .appmap.json}, and is converted to AppMap JSON by {@link com.appland.appmap.Convert}. How
+ * often buffered data is written out is set by {@link Properties#OutputFlushBytes} and
+ * {@link Properties#OutputFlushInterval}. If {@link Properties#OutputGzip} is set, the file is
+ * gzipped, and {@code .gz} is appended to its name.
+ */
+public class RecordingSessionBinary extends RecordingSessionGeneric {
+  private static final Integer MAX_EVENTS = 32;
+  private static final String DEFAULT_FILENAME = "appmap.bin";
+
+  private BinaryRecordingWriter writer;
+  private final Metadata metadata;
+  private String fileName = DEFAULT_FILENAME;
+
+  /**
+   * Constructor. You typically shouldn't be creating this outside of the {@link Recorder}.
+   * @param fileName Output file name, with {@code .json} replaced by {@code .bin}
+   * @param metadata Recording metadata
+   */
+  public RecordingSessionBinary(String fileName, Metadata metadata) {
+    this.metadata = metadata;
+    if (fileName != null && !fileName.trim().isEmpty()) {
+      this.fileName = fileName.endsWith(".json")
+          ? fileName.substring(0, fileName.length() - ".json".length()) + ".bin"
+          : fileName;
+    }
+    if (Properties.OutputGzip && !this.fileName.endsWith(".gz")) {
+      this.fileName += ".gz";
+    }
+  }
+
+  private synchronized void flushEvents() {
+    try {
+      for (Event event : this.events) {
+        this.writer.write(event);
+      }
+    } catch (IOException e) {
+      throw new ActiveSessionException(
+        String.format("failed to write recording:\n%s\n", e.getMessage())
+      );
+    }
+
+    this.events.clear();
+  }
+
+  @Override
+  public synchronized void add(Event event) {
+    super.add(event);
+
+    if (this.events.size() >= MAX_EVENTS) {
+      this.flushEvents();
+    }
+  }
+
+  @Override
+  public void start() {
+    try {
+      final Path path = Paths.get(Properties.OutputDirectory, this.fileName);
+      final WritableByteChannel channel = Properties.OutputGzip
+          ? new GzipChannel(Files.newOutputStream(path),
+              Properties.OutputGzipLevel,
+              Properties.OutputBufferSize)
+          : Utf8ChannelWriter.open(path);
+      this.writer = new BinaryRecordingWriter(channel,
+          Properties.OutputFlushBytes,
+          Properties.OutputFlushInterval);
+      this.writer.writeHeader(this.metadata,
+          AppMapConfig.get().name,
+          System.getProperty("java.vm.version"),
+          System.getProperty("java.vm.name"));
+    } catch (IOException e) {
+      throw new ActiveSessionException(
+        String.format("failed to start recording session:\n%s\n", e.getMessage())
+      );
+    }
+  }
+
+  @Override
+  public synchronized String stop() {
+    if (this.writer == null) {
+      return "";
+    }
+
+    this.flushEvents();
+
+    try {
+      this.writer.writeClassMap(JSON.toJSONString(getClassMap().toArray()));
+      this.writer.close();
+    } catch (IOException e) {
+      throw new ActiveSessionException(
+        String.format("failed to finalize recording:\n%s\n", e.getMessage())
+      );
+    }
+    this.writer = null;
+
+    Logger.printf("wrote %s\n", this.fileName);
+
+    return "";
+  }
+}
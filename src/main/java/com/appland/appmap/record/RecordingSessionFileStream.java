@@ -4,18 +4,23 @@ import com.appland.appmap.config.Properties;
 import com.appland.appmap.output.v1.Event;
 import com.appland.appmap.util.Logger;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
- * Receives recording data and writes it to disk.
+ * Receives recording data and writes it to disk, encoded as UTF-8. How often buffered data is
+ * written out is set by {@link Properties#OutputFlushBytes} and
+ * {@link Properties#OutputFlushInterval}. If {@link Properties#OutputGzip} is set, the file is
+ * gzipped, and {@code .gz} is appended to its name.
  */
 public class RecordingSessionFileStream extends RecordingSessionGeneric {
   private static final Integer MAX_EVENTS = 32;
   private static final String DEFAULT_FILENAME = "appmap.json";
 
-  private FileWriter fileWriter;
+  private Utf8ChannelWriter fileWriter;
   private final Metadata metadata;
   private String fileName = DEFAULT_FILENAME;
   private AppMapSerializer serializer;
@@ -30,6 +35,9 @@ public class RecordingSessionFileStream extends RecordingSessionGeneric {
     if (fileName != null && !fileName.trim().isEmpty()) {
       this.fileName = fileName;
     }
+    if (Properties.OutputGzip && !this.fileName.endsWith(".gz")) {
+      this.fileName += ".gz";
+    }
   }
 
   private synchronized void flushEvents() {
@@ -56,8 +64,16 @@ public class RecordingSessionFileStream extends RecordingSessionGeneric {
   @Override
   public void start() {
     try {
-      String filePath = Paths.get(Properties.OutputDirectory, this.fileName).toString();
-      this.fileWriter = new FileWriter(filePath);
+      final Path path = Paths.get(Properties.OutputDirectory, this.fileName);
+      final WritableByteChannel channel = Properties.OutputGzip
+          ? new GzipChannel(Files.newOutputStream(path),
+              Properties.OutputGzipLevel,
+              Properties.OutputBufferSize)
+          : Utf8ChannelWriter.open(path);
+      this.fileWriter = new Utf8ChannelWriter(channel,
+          Properties.OutputBufferSize,
+          Properties.OutputFlushBytes,
+          Properties.OutputFlushInterval);
       this.serializer = new AppMapSerializer(this.fileWriter);
     } catch (IOException e) {
       throw new ActiveSessionException(
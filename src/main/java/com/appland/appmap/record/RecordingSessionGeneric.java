@@ -4,8 +4,13 @@ import com.appland.appmap.output.v1.CodeObject;
 import com.appland.appmap.output.v1.Event;
 import com.appland.appmap.util.Logger;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Vector;
 import java.util.HashSet;
+import java.util.zip.GZIPOutputStream;
 
 public class RecordingSessionGeneric implements IRecordingSession {
   protected Vector<Event> events = new Vector<Event>();
@@ -29,6 +34,19 @@ public class RecordingSessionGeneric implements IRecordingSession {
     throw new UnsupportedOperationException();
   }
 
+  public byte[] stopGzip() {
+    final String output = this.stop();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+      gzip.write(output.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new ActiveSessionException(
+        String.format("failed to compress recording:\n%s\n", e.getMessage())
+      );
+    }
+    return bytes.toByteArray();
+  }
+
   protected CodeObjectTree getClassMap() {
     CodeObjectTree registeredObjects = Recorder.getInstance().getRegisteredObjects();
     CodeObjectTree classMap = new CodeObjectTree();
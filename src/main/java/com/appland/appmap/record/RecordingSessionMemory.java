@@ -1,29 +1,100 @@
 package com.appland.appmap.record;
 
+import com.appland.appmap.config.Properties;
+import com.appland.appmap.output.v1.Event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 /**
- * Receives recording data and writes it to a buffer in memory.
+ * Receives recording data and writes it to a buffer in memory. If compressed, events are written
+ * as they're received, and only their gzipped output is kept.
  */
 public class RecordingSessionMemory extends RecordingSessionGeneric {
+  private static final Integer MAX_EVENTS = 32;
+
   private final Metadata metadata;
+  private final boolean compressed;
+  private ByteArrayOutputStream compressedOutput;
+  private Utf8ChannelWriter writer;
+  private AppMapSerializer serializer;
 
   /**
-   * Constructor. You typically shouldn't be creating this outside of the {@link Recorder}.
+   * Constructor. You typically shouldn't be creating this outside of the {@link Recorder}. The
+   * recording is compressed if {@link Properties#OutputGzip} is set.
    * @param metadata Recording metadata
    */
   public RecordingSessionMemory(Metadata metadata) {
+    this(metadata, Properties.OutputGzip);
+  }
+
+  /**
+   * Constructor.
+   * @param metadata Recording metadata
+   * @param compressed Whether or not to keep the recording gzipped
+   */
+  RecordingSessionMemory(Metadata metadata, boolean compressed) {
     this.metadata = metadata;
+    this.compressed = compressed;
+  }
+
+  private synchronized void flushEvents() {
+    try {
+      this.serializer.write(this.events);
+    } catch (IOException e) {
+      throw new ActiveSessionException(
+        String.format("failed to write recording:\n%s\n", e.getMessage())
+      );
+    }
+
+    this.events.clear();
+  }
+
+  @Override
+  public synchronized void add(Event event) {
+    super.add(event);
+
+    if (this.compressed && this.events.size() >= MAX_EVENTS) {
+      this.flushEvents();
+    }
   }
 
   @Override
   public void start() {
-    // do nothing
+    if (!this.compressed) {
+      return;
+    }
+
+    this.compressedOutput = new ByteArrayOutputStream();
+    final GzipChannel channel = new GzipChannel(this.compressedOutput,
+        Properties.OutputGzipLevel,
+        Properties.OutputBufferSize);
+    this.writer = new Utf8ChannelWriter(channel,
+        Properties.OutputBufferSize,
+        Properties.OutputBufferSize,
+        0);
+    this.serializer = new AppMapSerializer(this.writer);
+
+    try {
+      this.serializer.write(this.metadata);
+    } catch (IOException e) {
+      throw new ActiveSessionException(
+        String.format("failed to start recording session:\n%s\n", e.getMessage())
+      );
+    }
   }
 
   @Override
-  public String stop() {
+  public synchronized String stop() {
+    if (this.compressed) {
+      return gunzip(this.finish());
+    }
+
     StringWriter stringWriter = new StringWriter();
     AppMapSerializer serializer = new AppMapSerializer(stringWriter);
     String json;
@@ -44,4 +115,55 @@ public class RecordingSessionMemory extends RecordingSessionGeneric {
 
     return json;
   }
+
+  /**
+   * Stops the session. If compressed, its output is returned as is, without decompressing it.
+   */
+  @Override
+  public synchronized byte[] stopGzip() {
+    if (this.compressed) {
+      return this.finish();
+    }
+    return super.stopGzip();
+  }
+
+  /**
+   * Writes the remaining events and the class map, and waits for compression to finish.
+   * @return The gzipped recording
+   */
+  private byte[] finish() {
+    if (this.serializer == null) {
+      return this.compressedOutput.toByteArray();
+    }
+
+    this.flushEvents();
+
+    try {
+      this.serializer.write(getClassMap());
+      this.serializer.finalize();
+      this.writer.close();
+    } catch (IOException e) {
+      throw new ActiveSessionException(
+        String.format("failed to finalize recording:\n%s\n", e.getMessage())
+      );
+    }
+    this.serializer = null;
+
+    return this.compressedOutput.toByteArray();
+  }
+
+  private static String gunzip(byte[] compressed) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      final byte[] buffer = new byte[8192];
+      for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+        bytes.write(buffer, 0, n);
+      }
+    } catch (IOException e) {
+      throw new ActiveSessionException(
+        String.format("failed to decompress recording:\n%s\n", e.getMessage())
+      );
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
 }
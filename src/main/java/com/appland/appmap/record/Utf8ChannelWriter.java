@@ -0,0 +1,247 @@
+package com.appland.appmap.record;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes characters straight to UTF-8 into a direct {@link ByteBuffer}, and writes it to a
+ * channel, typically a {@link FileChannel}. Characters are encoded into a small array first, which
+ * is copied into the buffer in bulk. The buffer is reused for the life of the writer, and a file
+ * channel writes it without copying it out of the Java heap.
+ *
+ * <p>{@link Utf8ChannelWriter#flush} only writes the buffer out once it holds {@code flushBytes}
+ * bytes, or once {@code flushInterval} has passed since it was last written out. A full buffer is
+ * always written out, as is whatever remains when the writer is closed. Unpaired surrogates are
+ * encoded as {@code ?}.
+ */
+class Utf8ChannelWriter extends Writer {
+  private static final int STAGING_SIZE = 8192;
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer;
+  private final byte[] bytes;
+  private final int flushBytes;
+  private final long flushIntervalNanos;
+
+  private int count = 0;
+  private char highSurrogate = 0;
+  private long lastWriteNanos = System.nanoTime();
+  private long writeCount = 0;
+  private boolean isClosed = false;
+
+  /**
+   * Creates a file, or truncates it if it already exists.
+   * @param path The file
+   * @param bufferSize The size of the buffer, in bytes
+   * @param flushBytes The number of bytes buffered before a flush writes them out
+   * @param flushInterval The time after which a flush writes out any buffered bytes, in
+   *                      milliseconds. If {@code 0}, time is not taken into account.
+   * @throws IOException If the file can't be opened
+   */
+  Utf8ChannelWriter(Path path, int bufferSize, int flushBytes, long flushInterval)
+      throws IOException {
+    this(open(path), bufferSize, flushBytes, flushInterval);
+  }
+
+  /**
+   * Writes to a channel, which is closed along with the writer.
+   * @param channel The channel
+   * @param bufferSize The size of the buffer, in bytes
+   * @param flushBytes The number of bytes buffered before a flush writes them out
+   * @param flushInterval The time after which a flush writes out any buffered bytes, in
+   *                      milliseconds. If {@code 0}, time is not taken into account.
+   */
+  Utf8ChannelWriter(WritableByteChannel channel,
+                    int bufferSize,
+                    int flushBytes,
+                    long flushInterval) {
+    if (bufferSize < 4) {
+      throw new IllegalArgumentException("buffer size must be at least 4 bytes");
+    }
+
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.bytes = new byte[Math.min(bufferSize, STAGING_SIZE)];
+    this.flushBytes = Math.max(1, Math.min(flushBytes, bufferSize));
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+  }
+
+  /**
+   * Opens a file for writing, creating it or truncating it if it already exists.
+   */
+  static FileChannel open(Path path) throws IOException {
+    return FileChannel.open(path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    this.ensureOpen();
+    this.encode((char) c);
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    this.ensureOpen();
+    final int end = off + len;
+    int i = off;
+    while (i < end) {
+      // Copy runs of ASCII characters in a tight loop, leaving the rest to encode
+      if (this.highSurrogate == 0) {
+        final byte[] bytes = this.bytes;
+        final int limit = Math.min(end, i + bytes.length - this.count);
+        int n = this.count;
+        while (i < limit && cbuf[i] < 0x80) {
+          bytes[n++] = (byte) cbuf[i++];
+        }
+        this.count = n;
+        if (i == end) {
+          break;
+        }
+      }
+      this.encode(cbuf[i++]);
+    }
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    this.ensureOpen();
+    final int end = off + len;
+    int i = off;
+    while (i < end) {
+      if (this.highSurrogate == 0) {
+        final byte[] bytes = this.bytes;
+        final int limit = Math.min(end, i + bytes.length - this.count);
+        int n = this.count;
+        while (i < limit && str.charAt(i) < 0x80) {
+          bytes[n++] = (byte) str.charAt(i++);
+        }
+        this.count = n;
+        if (i == end) {
+          break;
+        }
+      }
+      this.encode(str.charAt(i++));
+    }
+  }
+
+  /**
+   * Writes out the buffer if it holds at least {@code flushBytes} bytes, or if {@code
+   * flushInterval} has passed since it was last written out.
+   */
+  @Override
+  public void flush() throws IOException {
+    this.ensureOpen();
+    final int buffered = this.buffer.position() + this.count;
+    if (buffered == 0) {
+      return;
+    }
+
+    if (buffered >= this.flushBytes
+        || (this.flushIntervalNanos > 0
+            && System.nanoTime() - this.lastWriteNanos >= this.flushIntervalNanos)) {
+      this.transfer();
+      this.drain();
+    }
+  }
+
+  /**
+   * Writes out the buffer, then closes the file. Closing the writer more than once has no effect.
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.isClosed) {
+      return;
+    }
+
+    try {
+      if (this.highSurrogate != 0) {
+        this.highSurrogate = 0;
+        this.bytes[this.count++] = '?';
+      }
+      this.transfer();
+      this.drain();
+    } finally {
+      this.isClosed = true;
+      this.channel.close();
+    }
+  }
+
+  /**
+   * @return The number of writes made to the file so far
+   */
+  long getWriteCount() {
+    return this.writeCount;
+  }
+
+  private void encode(char c) throws IOException {
+    if (this.count > this.bytes.length - 4) {
+      this.transfer();
+    }
+
+    final byte[] bytes = this.bytes;
+    if (this.highSurrogate != 0) {
+      final char high = this.highSurrogate;
+      this.highSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        final int codePoint = Character.toCodePoint(high, c);
+        bytes[this.count++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[this.count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[this.count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[this.count++] = (byte) (0x80 | (codePoint & 0x3f));
+        return;
+      }
+      bytes[this.count++] = '?';
+    }
+
+    if (c < 0x80) {
+      bytes[this.count++] = (byte) c;
+    } else if (c < 0x800) {
+      bytes[this.count++] = (byte) (0xc0 | (c >> 6));
+      bytes[this.count++] = (byte) (0x80 | (c & 0x3f));
+    } else if (Character.isHighSurrogate(c)) {
+      this.highSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      bytes[this.count++] = '?';
+    } else {
+      bytes[this.count++] = (byte) (0xe0 | (c >> 12));
+      bytes[this.count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+      bytes[this.count++] = (byte) (0x80 | (c & 0x3f));
+    }
+  }
+
+  /**
+   * Copies the encoded bytes into the buffer, writing the buffer out first if they don't fit.
+   */
+  private void transfer() throws IOException {
+    if (this.count > this.buffer.remaining()) {
+      this.drain();
+    }
+    this.buffer.put(this.bytes, 0, this.count);
+    this.count = 0;
+  }
+
+  private void drain() throws IOException {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      this.channel.write(this.buffer);
+      this.writeCount++;
+    }
+    this.buffer.clear();
+    this.lastWriteNanos = System.nanoTime();
+  }
+
+  private void ensureOpen() throws IOException {
+    if (this.isClosed) {
+      throw new IOException("writer closed");
+    }
+  }
+}
@@ -9,6 +9,7 @@ public class HttpServletRequest extends ReflectiveType {
   private Method fnGetRequestURI;
   private Method fnGetProtocol;
   private Method fnGetParameterMap;
+  private Method fnGetHeader;
 
   public HttpServletRequest(Object self) {
     super(self);
@@ -17,6 +18,7 @@ public class HttpServletRequest extends ReflectiveType {
     fnGetRequestURI = getMethod("getRequestURI");
     fnGetProtocol = getMethod("getProtocol");
     fnGetParameterMap = getMethod("getParameterMap");
+    fnGetHeader = getMethod("getHeader", String.class);
   }
 
   public String getMethod() {
@@ -37,6 +39,12 @@ public class HttpServletRequest extends ReflectiveType {
       : "";
   }
 
+  public String getHeader(String name) {
+    return fnGetHeader != null?
+      (String)invoke(fnGetHeader, name)
+      : null;
+  }
+
   public Map<String, String[]> getParameterMap() {
     return fnGetProtocol != null?
       (Map<String, String[]>)invoke(fnGetParameterMap)
@@ -1,5 +1,6 @@
 package com.appland.appmap.reflect;
 
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.IOException;
 import java.lang.reflect.Method;
@@ -13,6 +14,8 @@ public class HttpServletResponse extends ReflectiveType {
   private Method fnSetContentLength;
   private Method fnSetStatus;
   private Method fnGetWriter;
+  private Method fnGetOutputStream;
+  private Method fnSetHeader;
   private Method fnGetStatus;
   private Method fnGetContentType;
 
@@ -23,6 +26,8 @@ public class HttpServletResponse extends ReflectiveType {
     fnSetContentLength = getMethod("setContentLength", int.class);
     fnSetStatus = getMethod("setStatus", int.class);
     fnGetWriter = getMethod("getWriter");
+    fnGetOutputStream = getMethod("getOutputStream");
+    fnSetHeader = getMethod("setHeader", String.class, String.class);
     fnGetStatus = getMethod("getStatus");
     fnGetContentType = getMethod("getContentType");
   }
@@ -51,6 +56,18 @@ public class HttpServletResponse extends ReflectiveType {
       : null;
   }
 
+  public OutputStream getOutputStream() throws IOException {
+    return fnGetOutputStream != null?
+      (OutputStream)invoke(fnGetOutputStream)
+      : null;
+  }
+
+  public void setHeader(String name, String value) {
+    if (fnSetHeader != null) {
+      invoke(fnSetHeader, name, value);
+    }
+  }
+
   public int getStatus() {
     return fnGetStatus != null?
       (int)invoke(fnGetStatus)
@@ -1,18 +1,18 @@
 package com.appland.appmap.transform;
 
 import com.appland.appmap.output.v1.NoSourceAvailableException;
+import com.appland.appmap.process.ThreadLock;
+import com.appland.appmap.process.conditions.ConfigCondition;
 import com.appland.appmap.transform.annotations.Hook;
+import com.appland.appmap.transform.annotations.HookConditionSystem;
+import com.appland.appmap.transform.annotations.HookMethod;
 import com.appland.appmap.transform.annotations.HookSite;
 import com.appland.appmap.transform.annotations.HookValidationException;
+import com.appland.appmap.transform.annotations.SourceMethodSystem;
 import com.appland.appmap.util.Logger;
 import com.appland.appmap.config.Properties;
 
 import javassist.*;
-import org.reflections.Reflections;
-import org.reflections.scanners.SubTypesScanner;
-import org.reflections.util.ClasspathHelper;
-import org.reflections.util.ConfigurationBuilder;
-import org.reflections.util.FilterBuilder;
 
 import java.io.ByteArrayInputStream;
 import java.lang.instrument.IllegalClassFormatException;
@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -34,27 +36,94 @@ public class ClassFileTransformer implements java.lang.instrument.ClassFileTrans
   private static final List<Hook> unkeyedHooks = new ArrayList<Hook>();
   private static final HashMap<String, List<Hook>> keyedHooks = new HashMap<String, List<Hook>>();
 
+  private static final int PREFILTER_REPORT_INTERVAL = 1000;
+
+  private final LazyInstrumentation lazyInstrumentation;
+  private final TransformCache transformCache;
+  private final ClassPools classPools = new ClassPools();
+  private final ClassPrefilter prefilter;
+  private final AtomicLong prefilterClasses = new AtomicLong();
+  private final AtomicLong prefilterSkipped = new AtomicLong();
+  private final TrivialMethods trivialMethods;
+  private final boolean outline;
+  private final AtomicBoolean reportedRedefinedOutline = new AtomicBoolean();
+
   /**
    * Default constructor. Caches hooks for future class transforms.
    */
   public ClassFileTransformer() {
+    this(null, null, new TrivialMethods());
+  }
+
+  /**
+   * Caches hooks for future class transforms. Hooks requiring an active recording are deferred to
+   * the given {@link LazyInstrumentation}, if any.
+   * @param lazyInstrumentation Defers recording hooks until a recording starts, or {@code null}
+   *                            to apply every hook at load time
+   * @param transformCache Stores transformed classes across runs, or {@code null} to transform
+   *                       every class from scratch
+   * @param trivialMethods Elides trivial methods, counting those elided
+   */
+  public ClassFileTransformer(LazyInstrumentation lazyInstrumentation,
+                              TransformCache transformCache,
+                              TrivialMethods trivialMethods) {
     super();
+    this.lazyInstrumentation = lazyInstrumentation;
+    this.transformCache = transformCache;
+    this.trivialMethods = trivialMethods;
 
-    Reflections reflections = new Reflections(new ConfigurationBuilder()
-        .setUrls(ClasspathHelper.forPackage("com.appland.appmap.process"))
-        .setScanners(new SubTypesScanner(false))
-        .filterInputsBy(new FilterBuilder().includePackage("com.appland.appmap.process")));
-    ClassPool classPool = ClassPool.getDefault();
-    for (Class<? extends Object> classType : reflections.getSubTypesOf(Object.class)) {
-      try {
-        CtClass ctClass = classPool.get(classType.getName());
-        processClass(ctClass);
-        ctClass.detach();
-      } catch (NotFoundException e) {
-        Logger.printf("failed to find %s in class pool", classType.getName());
-        Logger.println(e);
+    // Retransforming a class can't add or remove methods, so a class loaded with outlined hooks
+    // could never be retransformed with a different set of them
+    this.outline = Properties.HookOutline && lazyInstrumentation == null;
+    if (Properties.HookOutline && !this.outline) {
+      Logger.println("appmap.hooks.outline is ignored with appmap.instrumentation.lazy, since "
+          + "methods can't be added to classes when they're retransformed");
+    }
+
+    for (HookMethod hookMethod : HookIndex.load()) {
+      processHookMethod(hookMethod);
+    }
+
+    // Intern unique keys in a stable order, so their indexes match those in cached bytecode
+    Stream.concat(unkeyedHooks.stream(), keyedHooks.values().stream().flatMap(List::stream))
+        .map(Hook::getUniqueKey)
+        .filter(uniqueKey -> !uniqueKey.isEmpty())
+        .sorted()
+        .forEach(ThreadLock::uniqueKeyIndex);
+
+    this.prefilter = new ClassPrefilter(Stream.concat(unkeyedHooks.stream(),
+        keyedHooks.values().stream().flatMap(List::stream))
+        .collect(Collectors.toList()));
+  }
+
+  /**
+   * Checks whether a hook records behaviors because they're included in appmap.yml.
+   */
+  private static boolean isConfigHook(Hook hook) {
+    final SourceMethodSystem sourceSystem = hook.getSourceSystem();
+    return sourceSystem instanceof HookConditionSystem
+        && ((HookConditionSystem) sourceSystem).getConditionClass() == ConfigCondition.class;
+  }
+
+  /**
+   * Checks the class against the {@link ClassPrefilter}, periodically logging how many classes it
+   * skipped when debugging.
+   */
+  private boolean isCandidate(String className, byte[] bytes) {
+    final boolean isCandidate = this.prefilter.isCandidate(className, bytes);
+    if (Properties.Debug) {
+      final long skipped = isCandidate
+          ? this.prefilterSkipped.get()
+          : this.prefilterSkipped.incrementAndGet();
+      final long classes = this.prefilterClasses.incrementAndGet();
+      if (classes % PREFILTER_REPORT_INTERVAL == 0) {
+        Logger.printf("prefilter skipped %d of %d classes (%.1f%%)\n",
+            skipped,
+            classes,
+            100.0 * skipped / classes);
       }
-    } 
+    }
+    return isCandidate;
   }
 
   private void addHook(Hook hook) {
@@ -79,54 +148,79 @@ public class ClassFileTransformer implements java.lang.instrument.ClassFileTrans
     }
   }
 
-  private List<Hook> getHooks(String methodId) {
+  /**
+   * Gets the hooks which could apply to a method.
+   * @param methodId The name of the method
+   * @param classHooks The unkeyed hooks which could apply to the declaring class
+   */
+  private List<Hook> getHooks(String methodId, List<Hook> classHooks) {
     List<Hook> matchingKeyedHooks = keyedHooks.get(methodId);
     if (matchingKeyedHooks == null || matchingKeyedHooks.isEmpty()) {
-      return unkeyedHooks;
+      return classHooks;
     }
 
-    return Stream.of(matchingKeyedHooks, unkeyedHooks)
+    return Stream.of(matchingKeyedHooks, classHooks)
         .flatMap(x -> x.stream())
         .collect(Collectors.toList());
   }
 
-  private void processClass(CtClass ctClass) {
-    for (CtBehavior behavior : ctClass.getDeclaredBehaviors()) {
-      Hook hook = Hook.from(behavior);
-      if (hook == null) {
-        continue;
-      }
-
-      ctClass.defrost();
+  private void processHookMethod(HookMethod hookMethod) {
+    Hook hook = Hook.from(hookMethod);
+    if (hook == null) {
+      return;
+    }
 
-      try {
-        hook.validate();
-      } catch (HookValidationException e) {
-        Logger.println("failed to validate hook");
-        Logger.println(e);
-        continue;
-      }
+    try {
+      hook.validate();
+    } catch (HookValidationException e) {
+      Logger.println("failed to validate hook");
+      Logger.println(e);
+      return;
+    }
 
-      this.addHook(hook);
+    this.addHook(hook);
 
-      if (Properties.DebugHooks)
-        Logger.printf("registered hook %s\n", hook.toString());
-    }
+    if (Properties.DebugHooks)
+      Logger.printf("registered hook %s\n", hook.toString());
   }
 
-  private void applyHooks(CtBehavior behavior) {
+  /**
+   * Applies matching hooks to a behavior.
+   * @param behavior The behavior to be hooked
+   * @param loader The class loader defining the behavior
+   * @param classHooks The unkeyed hooks which could apply to the declaring class
+   * @param deferRecordingHooks If {@code true}, hooks requiring an active recording are left out
+   * @param outline Whether to compile the hook code into helper methods, see {@link Hook#apply}
+   * @param appliedSites Receives the hook sites applied
+   * @return {@code true} if any matching hook requires an active recording
+   */
+  private boolean applyHooks(CtBehavior behavior,
+                             ClassLoader loader,
+                             List<Hook> classHooks,
+                             boolean deferRecordingHooks,
+                             boolean outline,
+                             List<HookSite> appliedSites) {
     try {
-      final List<HookSite> hookSites = this.getHooks(behavior.getName())
+      List<HookSite> hookSites = this.getHooks(behavior.getName(), classHooks)
           .stream()
-          .map(hook -> hook.prepare(behavior))
+          .map(hook -> hook.prepare(behavior, loader))
           .filter(Objects::nonNull)
           .collect(Collectors.toList());
 
+      final boolean requiresRecording = hookSites.stream().anyMatch(HookSite::requiresRecording);
+      if (deferRecordingHooks && requiresRecording) {
+        hookSites = hookSites
+            .stream()
+            .filter(hookSite -> !hookSite.requiresRecording())
+            .collect(Collectors.toList());
+      }
+
       if (hookSites.size() < 1) {
-        return;
+        return requiresRecording;
       }
 
-      Hook.apply(behavior, hookSites);
+      Hook.apply(behavior, hookSites, outline);
+      appliedSites.addAll(hookSites);
 
       if (Properties.DebugHooks) {
         for (HookSite hookSite : hookSites) {
@@ -139,9 +233,11 @@ public class ClassFileTransformer implements java.lang.instrument.ClassFileTrans
                         hook);
         }
       }
+
+      return requiresRecording;
     } catch (NoSourceAvailableException e) {
       Logger.println(e);
-      return;
+      return false;
     }
   }
 
@@ -151,47 +247,143 @@ public class ClassFileTransformer implements java.lang.instrument.ClassFileTrans
                           Class redefiningClass,
                           ProtectionDomain domain,
                           byte[] bytes) throws IllegalClassFormatException {
-    ClassPool classPool = new ClassPool();
-    classPool.appendClassPath(new LoaderClassPath(loader));
+    if (!this.isCandidate(className, bytes)) {
+      return null;
+    }
 
-    try {
-      CtClass ctClass = null;
+    final boolean deferRecordingHooks = this.lazyInstrumentation != null
+        && !this.lazyInstrumentation.isInstrumenting();
 
-      try {
-        ctClass = classPool.makeClass(new ByteArrayInputStream(bytes));
-      } catch (RuntimeException e) {
-        // The class is frozen
-        // We can defrost it and apply our changes, though in practice I've observed this to be
-        // unstable. Particularly, exceptions thrown from the Groovy runtime due to missing methods.
-        // There's likely a way to do this safely, but further investigation is needed.
-        //
-        // ctClass = classPool.get(className.replace('/', '.'));
-        // ctClass.defrost();
-        //
-        // For now, just skip this class
-        Logger.printf("Skipping class %s, failed making a new one: %s\n", className, e.getMessage());
-        return bytes;
+    // Classes loaded before the agent was attached are redefined, and can't gain helper methods
+    final boolean outline = this.outline && redefiningClass == null;
+    if (this.outline && !outline) {
+      if (this.reportedRedefinedOutline.compareAndSet(false, true)) {
+        Logger.println("hooks of classes loaded before the agent was attached aren't outlined");
       }
-
-      if (ctClass.isInterface()) {
-        return bytes;
+      if (Properties.DebugHooks) {
+        Logger.printf("not outlining hooks of redefined class %s\n", className);
       }
+    }
 
-      for (CtBehavior behavior : ctClass.getDeclaredBehaviors()) {
-        if (behavior instanceof CtConstructor) {
-          continue;
+    // One pool is shared by every class defined by the loader, and isn't safe for concurrent use
+    final ClassPool classPool = this.classPools.get(loader);
+    synchronized (classPool) {
+      CtClass ctClass = null;
+      try {
+        try {
+          ctClass = classPool.makeClass(new ByteArrayInputStream(bytes));
+        } catch (RuntimeException e) {
+          // The class is frozen
+          // We can defrost it and apply our changes, though in practice I've observed this to
+          // be unstable. Particularly, exceptions thrown from the Groovy runtime due to missing
+          // methods. There's likely a way to do this safely, but further investigation is
+          // needed.
+          //
+          // ctClass = classPool.get(className.replace('/', '.'));
+          // ctClass.defrost();
+          //
+          // For now, just skip this class
+          Logger.printf("Skipping class %s, failed making a new one: %s\n",
+              className,
+              e.getMessage());
+          return bytes;
         }
 
-        this.applyHooks(behavior);
-      }
+        if (ctClass.isInterface()) {
+          return bytes;
+        }
+
+        String cacheKey = null;
+        if (this.transformCache != null) {
+          cacheKey = this.transformCache.getKey(bytes,
+              TransformCache.getSupertypes(ctClass),
+              deferRecordingHooks,
+              outline);
+          if (this.transformCache.isUnmodified(cacheKey)) {
+            return bytes;
+          }
+
+          final TransformCache.Entry entry = this.transformCache.get(cacheKey);
+          if (entry != null && this.transformCache.restore(entry, loader)) {
+            this.trivialMethods.add(loader, ctClass.getName(), entry.getElisions());
+            if (entry.requiresRecording() && this.lazyInstrumentation != null) {
+              this.lazyInstrumentation.register(loader, ctClass.getName());
+            }
+
+            return entry.getBytes() != null ? entry.getBytes() : bytes;
+          }
+        }
 
-      return ctClass.toBytecode();
-    } catch (Exception e) {
-      // Don't allow this exception to propagate out of this method, because it will be swallowed
-      // by sun.instrument.TransformerManager.
-      Logger.println("An error occurred transforming class " + className);
-      Logger.println(e.getClass() + ": " + e.getMessage());
-      e.printStackTrace(System.err);
+        // Unkeyed hooks apply to every behavior, so rule out those which can't apply to the class
+        final CtClass targetClass = ctClass;
+        final List<Hook> classHooks = unkeyedHooks
+            .stream()
+            .filter(hook -> hook.matchClass(targetClass))
+            .collect(Collectors.toList());
+        // Trivial methods elided by appmap.yml keep only the hooks that aren't from appmap.yml
+        List<Hook> elidedHooks = null;
+        final TrivialMethods.Elisions elisions = new TrivialMethods.Elisions();
+
+        final List<HookSite> appliedSites = new ArrayList<HookSite>();
+        boolean requiresRecording = false;
+        for (CtBehavior behavior : ctClass.getDeclaredBehaviors()) {
+          if (behavior instanceof CtConstructor) {
+            continue;
+          }
+
+          List<Hook> behaviorHooks = classHooks;
+          if (this.trivialMethods.elide(behavior, elisions)) {
+            if (elidedHooks == null) {
+              elidedHooks = classHooks
+                  .stream()
+                  .filter(hook -> !isConfigHook(hook))
+                  .collect(Collectors.toList());
+            }
+            behaviorHooks = elidedHooks;
+          }
+
+          requiresRecording |= this.applyHooks(behavior,
+              loader,
+              behaviorHooks,
+              deferRecordingHooks,
+              outline,
+              appliedSites);
+        }
+
+        if (requiresRecording && this.lazyInstrumentation != null) {
+          this.lazyInstrumentation.register(loader, ctClass.getName());
+        }
+
+        this.trivialMethods.add(loader, ctClass.getName(), elisions);
+
+        final byte[] transformedBytes = ctClass.isModified() ? ctClass.toBytecode() : null;
+        if (cacheKey != null) {
+          if (transformedBytes == null && !requiresRecording && elisions.isEmpty()) {
+            this.transformCache.putUnmodified(cacheKey);
+          } else {
+            this.transformCache.put(cacheKey,
+                ctClass,
+                appliedSites,
+                requiresRecording,
+                elisions,
+                transformedBytes);
+          }
+        }
+
+        return transformedBytes != null ? transformedBytes : bytes;
+      } catch (Exception e) {
+        // Don't allow this exception to propagate out of this method, because it will be
+        // swallowed by sun.instrument.TransformerManager.
+        Logger.println("An error occurred transforming class " + className);
+        Logger.println(e.getClass() + ": " + e.getMessage());
+        e.printStackTrace(System.err);
+      } finally {
+        // Transformed classes are frozen, and only the original bytecode should be visible to
+        // lookups from other classes
+        if (ctClass != null && ctClass.isModified()) {
+          ctClass.detach();
+        }
+      }
     }
 
     return bytes;
@@ -0,0 +1,113 @@
+package com.appland.appmap.transform;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Holds one {@link ClassPool} per class loader. Superclasses and interfaces looked up while
+ * matching hooks are then parsed once per loader, rather than once for every class transformed.
+ *
+ * <p>Pools are keyed weakly by their loader, and {@link LoaderClassPath} only holds its loader
+ * weakly, so an application server can still unload a webapp. Each pool keeps a bounded number of
+ * classes, evicting the least recently used.
+ *
+ * <p>A ClassPool isn't safe for concurrent modification. Callers transforming classes should hold
+ * the pool's monitor while doing so.
+ */
+class ClassPools {
+  static final int DEFAULT_CAPACITY = 4096;
+
+  private final int capacity;
+  private final Map<ClassLoader, ClassPool> pools = new WeakHashMap<ClassLoader, ClassPool>();
+
+  ClassPools() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  ClassPools(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Gets the pool for a class loader, creating it if needed.
+   * @param loader The class loader, or {@code null} for the bootstrap loader
+   * @return The pool resolving classes through {@code loader}
+   */
+  synchronized ClassPool get(ClassLoader loader) {
+    ClassPool classPool = this.pools.get(loader);
+    if (classPool == null) {
+      classPool = new BoundedClassPool(this.capacity);
+      classPool.appendClassPath(new LoaderClassPath(loader));
+      this.pools.put(loader, classPool);
+    }
+    return classPool;
+  }
+
+  /**
+   * A ClassPool evicting its least recently used classes once it holds more than its capacity.
+   */
+  static class BoundedClassPool extends ClassPool {
+    private final int capacity;
+    private final LinkedHashMap<String, Boolean> classNames =
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+
+    BoundedClassPool(int capacity) {
+      super();
+      this.capacity = capacity;
+    }
+
+    /**
+     * @return The number of classes currently held by the pool
+     */
+    int size() {
+      synchronized (this.classNames) {
+        return this.classNames.size();
+      }
+    }
+
+    @Override
+    protected CtClass getCached(String className) {
+      final CtClass ctClass = super.getCached(className);
+      if (ctClass != null) {
+        synchronized (this.classNames) {
+          // Marks the class as recently used
+          this.classNames.get(className);
+        }
+      }
+      return ctClass;
+    }
+
+    @Override
+    protected void cacheCtClass(String className, CtClass ctClass, boolean dynamic) {
+      super.cacheCtClass(className, ctClass, dynamic);
+
+      String eldest = null;
+      synchronized (this.classNames) {
+        this.classNames.put(className, Boolean.TRUE);
+        if (this.classNames.size() > this.capacity) {
+          final Iterator<String> iterator = this.classNames.keySet().iterator();
+          eldest = iterator.next();
+          iterator.remove();
+        }
+      }
+
+      if (eldest != null) {
+        super.removeCached(eldest);
+      }
+    }
+
+    @Override
+    protected CtClass removeCached(String className) {
+      synchronized (this.classNames) {
+        this.classNames.remove(className);
+      }
+      return super.removeCached(className);
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package com.appland.appmap.transform;
+
+import com.appland.appmap.config.AppMapConfig;
+import com.appland.appmap.config.AppMapPackage;
+import com.appland.appmap.process.conditions.ConfigCondition;
+import com.appland.appmap.process.conditions.RecordCondition;
+import com.appland.appmap.transform.annotations.Hook;
+import com.appland.appmap.transform.annotations.HookAnnotatedSystem;
+import com.appland.appmap.transform.annotations.HookClassSystem;
+import com.appland.appmap.transform.annotations.HookConditionSystem;
+import com.appland.appmap.transform.annotations.SourceMethodSystem;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides whether any hook could apply to a class, given only its name and raw bytes. This lets
+ * {@link ClassFileTransformer} skip building a ClassPool for most classes loaded by the JVM.
+ *
+ * <p>A class is a candidate if any of the following holds:
+ * <ul>
+ *   <li>Its constant pool holds the name of a method hooked by {@link HookClassSystem}. Every
+ *       class declaring the method has its name in the pool, whether it extends the hooked
+ *       type directly or not.</li>
+ *   <li>Its constant pool holds the descriptor of an annotation hooked by
+ *       {@link HookAnnotatedSystem}.</li>
+ *   <li>Its name falls under a package in {@link AppMapConfig}, as required by
+ *       {@link ConfigCondition} and {@link RecordCondition}.</li>
+ * </ul>
+ *
+ * <p>The check is conservative: a class which can't be parsed, or a hook condition which can't be
+ * predicted, makes every class a candidate.
+ */
+class ClassPrefilter {
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_INTERFACE_METHODREF = 11;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_DYNAMIC = 17;
+  private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  // Constant pool strings to search for, indexed by their length in bytes
+  private final byte[][][] needlesByLength;
+  private final boolean matchesConfig;
+  private final boolean matchesAll;
+
+  ClassPrefilter(List<Hook> hooks) {
+    final Set<String> needles = new HashSet<String>();
+    boolean matchesConfig = false;
+    boolean matchesAll = false;
+
+    for (Hook hook : hooks) {
+      final SourceMethodSystem sourceSystem = hook.getSourceSystem();
+      if (sourceSystem instanceof HookClassSystem) {
+        needles.add(((HookClassSystem) sourceSystem).getTargetMethod());
+      } else if (sourceSystem instanceof HookAnnotatedSystem) {
+        final String annotationClass = ((HookAnnotatedSystem) sourceSystem).getAnnotationClass();
+        needles.add("L" + annotationClass.replace('.', '/') + ";");
+      } else if (sourceSystem instanceof HookConditionSystem) {
+        final Class<?> conditionClass = ((HookConditionSystem) sourceSystem).getConditionClass();
+        if (conditionClass == ConfigCondition.class || conditionClass == RecordCondition.class) {
+          matchesConfig = true;
+        } else {
+          matchesAll = true;
+        }
+      } else {
+        matchesAll = true;
+      }
+    }
+
+    int maxLength = 0;
+    final List<byte[]> encodedNeedles = new ArrayList<byte[]>();
+    for (String needle : needles) {
+      final byte[] encodedNeedle = needle.getBytes(StandardCharsets.UTF_8);
+      encodedNeedles.add(encodedNeedle);
+      maxLength = Math.max(maxLength, encodedNeedle.length);
+    }
+
+    this.needlesByLength = new byte[maxLength + 1][][];
+    for (byte[] encodedNeedle : encodedNeedles) {
+      final byte[][] sameLength = this.needlesByLength[encodedNeedle.length];
+      final int count = sameLength == null ? 0 : sameLength.length;
+      final byte[][] grown = new byte[count + 1][];
+      if (sameLength != null) {
+        System.arraycopy(sameLength, 0, grown, 0, count);
+      }
+      grown[count] = encodedNeedle;
+      this.needlesByLength[encodedNeedle.length] = grown;
+    }
+
+    this.matchesConfig = matchesConfig;
+    this.matchesAll = matchesAll;
+  }
+
+  /**
+   * Checks whether any hook could apply to a class. Does not allocate.
+   * @param className The internal name of the class, e.g. {@code java/lang/String}, or
+   *                  {@code null} if unknown
+   * @param bytes The class file
+   * @return {@code false} if no hook can apply to the class
+   */
+  boolean isCandidate(String className, byte[] bytes) {
+    if (this.matchesAll) {
+      return true;
+    }
+
+    if (this.matchesConfig && (className == null || this.isIncluded(className))) {
+      return true;
+    }
+
+    return this.scanConstantPool(bytes);
+  }
+
+  /**
+   * Checks whether any configured package could include a class, treating {@code '/'} in the
+   * internal name as {@code '.'}. A package may name a class or method, so a package path
+   * starting with the class name is a match as well.
+   */
+  private boolean isIncluded(String className) {
+    final AppMapPackage[] packages = AppMapConfig.get().packages;
+    if (packages == null) {
+      return false;
+    }
+
+    for (AppMapPackage pkg : packages) {
+      final String path = pkg.path;
+      if (path == null) {
+        continue;
+      }
+
+      final int length = Math.min(path.length(), className.length());
+      int i = 0;
+      while (i < length) {
+        final char c = className.charAt(i);
+        if ((c == '/' ? '.' : c) != path.charAt(i)) {
+          break;
+        }
+        i++;
+      }
+
+      if (i == length) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private boolean scanConstantPool(byte[] bytes) {
+    if (bytes.length < 10 || readInt(bytes, 0) != MAGIC) {
+      return true;
+    }
+
+    final int count = readUnsignedShort(bytes, 8);
+    int offset = 10;
+    for (int i = 1; i < count; i++) {
+      // a valid class file has more than nine bytes following any constant
+      if (offset + 9 > bytes.length) {
+        return true;
+      }
+
+      final int tag = bytes[offset];
+      switch (tag) {
+        case CONSTANT_UTF8: {
+          final int length = readUnsignedShort(bytes, offset + 1);
+          if (this.matchesNeedle(bytes, offset + 3, length)) {
+            return true;
+          }
+          offset += 3 + length;
+          break;
+        }
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+        case CONSTANT_MODULE:
+        case CONSTANT_PACKAGE:
+          offset += 3;
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          offset += 4;
+          break;
+        case CONSTANT_INTEGER:
+        case CONSTANT_FLOAT:
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE:
+        case CONSTANT_DYNAMIC:
+        case CONSTANT_INVOKE_DYNAMIC:
+          offset += 5;
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          // eight byte constants take up two entries
+          offset += 9;
+          i++;
+          break;
+        default:
+          return true;
+      }
+    }
+
+    return false;
+  }
+
+  private boolean matchesNeedle(byte[] bytes, int offset, int length) {
+    if (length >= this.needlesByLength.length || this.needlesByLength[length] == null) {
+      return false;
+    }
+
+    if (offset + length > bytes.length) {
+      return true;
+    }
+
+    for (byte[] needle : this.needlesByLength[length]) {
+      int i = 0;
+      while (i < length && bytes[offset + i] == needle[i]) {
+        i++;
+      }
+
+      if (i == length) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static int readUnsignedShort(byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+  }
+
+  private static int readInt(byte[] bytes, int offset) {
+    return (readUnsignedShort(bytes, offset) << 16) | readUnsignedShort(bytes, offset + 2);
+  }
+}
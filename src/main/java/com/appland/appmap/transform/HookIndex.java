@@ -0,0 +1,109 @@
+package com.appland.appmap.transform;
+
+import com.appland.appmap.transform.annotations.HookMethod;
+import com.appland.appmap.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the hook methods shipped with the agent, along with their annotations, so that hooks can
+ * be built without loading the hook classes. The index is generated at build time by the
+ * {@code generateHookIndex} task, which reads the compiled classes in
+ * {@code com.appland.appmap.process}.
+ *
+ * <p>Each line holds a class name, a method name and a method descriptor, followed by a field for
+ * each hook annotation, separated by tabs. An annotation is written as its simple name, followed
+ * by the members set explicitly, if any, e.g. {@code HookClass(value=java.sql.Statement)}.
+ * Annotations of the declaring class are included.
+ */
+class HookIndex {
+  static final String RESOURCE = "/META-INF/appmap/hooks.idx";
+
+  private HookIndex() {
+  }
+
+  /**
+   * Reads the index bundled with the agent.
+   * @return The indexed hook methods, or an empty list if the index is missing
+   */
+  static List<HookMethod> load() {
+    try (InputStream stream = HookIndex.class.getResourceAsStream(RESOURCE)) {
+      if (stream == null) {
+        Logger.printf("hook index %s not found, no hooks will be applied\n", RESOURCE);
+        return Collections.emptyList();
+      }
+      return read(new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+    } catch (IOException e) {
+      Logger.printf("failed to read hook index %s\n", RESOURCE);
+      Logger.println(e);
+      return Collections.emptyList();
+    }
+  }
+
+  static List<HookMethod> read(BufferedReader reader) throws IOException {
+    final List<HookMethod> hookMethods = new ArrayList<HookMethod>();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+
+      final String[] fields = line.split("\t");
+      if (fields.length < 3) {
+        Logger.printf("invalid hook index entry: %s\n", line);
+        continue;
+      }
+
+      final Map<String, Map<String, String>> annotations =
+          new HashMap<String, Map<String, String>>();
+      for (int i = 3; i < fields.length; i++) {
+        if (!readAnnotation(fields[i], annotations)) {
+          Logger.printf("invalid annotation %s in hook index entry: %s\n", fields[i], line);
+        }
+      }
+
+      hookMethods.add(new HookMethod(fields[0], fields[1], fields[2], annotations));
+    }
+    return hookMethods;
+  }
+
+  /**
+   * Reads an annotation field, such as {@code HookClass(value=javax.servlet.Filter,method=doFilter)}.
+   * @return {@code false} if the field is malformed
+   */
+  private static boolean readAnnotation(String field,
+                                        Map<String, Map<String, String>> annotations) {
+    final Map<String, String> members = new HashMap<String, String>();
+    final int open = field.indexOf('(');
+    if (open == -1) {
+      annotations.put(field, members);
+      return true;
+    }
+
+    if (!field.endsWith(")")) {
+      return false;
+    }
+
+    final String memberList = field.substring(open + 1, field.length() - 1);
+    if (!memberList.isEmpty()) {
+      for (String member : memberList.split(",")) {
+        final int equals = member.indexOf('=');
+        if (equals == -1) {
+          return false;
+        }
+        members.put(member.substring(0, equals), member.substring(equals + 1));
+      }
+    }
+    annotations.put(field.substring(0, open), members);
+    return true;
+  }
+}
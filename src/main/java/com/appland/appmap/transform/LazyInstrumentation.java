@@ -0,0 +1,84 @@
+package com.appland.appmap.transform;
+
+import com.appland.appmap.record.IRecordingListener;
+
+import java.lang.instrument.Instrumentation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Defers hooks requiring an active recording until a recording starts. While idle, classes are
+ * loaded with those hooks left out and are only indexed by name and class loader. Other hooks are
+ * still applied as classes are loaded. Starting a recording retransforms the indexed classes,
+ * this time with every hook applied. Stopping it retransforms them again, restoring their idle
+ * bytecode. Classes are retransformed on a background thread, so that starting or stopping a
+ * recording doesn't wait for them.
+ *
+ * @see ClassFileTransformer
+ */
+public class LazyInstrumentation implements IRecordingListener {
+  private final Instrumentation instrumentation;
+  private final Retransformer retransformer;
+  private final Map<ClassLoader, Set<String>> index =
+      Collections.synchronizedMap(new WeakHashMap<ClassLoader, Set<String>>());
+  private volatile boolean instrumenting = false;
+
+  public LazyInstrumentation(Instrumentation instrumentation) {
+    this.instrumentation = instrumentation;
+    this.retransformer = new Retransformer(instrumentation);
+  }
+
+  /**
+   * Checks whether classes should currently be transformed with every hook applied.
+   * @return {@code true} while a recording is active. Otherwise, {@code false}.
+   */
+  public boolean isInstrumenting() {
+    return this.instrumenting;
+  }
+
+  /**
+   * Indexes a class with hooks requiring an active recording, so that it's retransformed as
+   * recordings start and stop.
+   * @param loader The class loader defining the class, or {@code null} for the bootstrap loader
+   * @param className The binary name of the class
+   */
+  void register(ClassLoader loader, String className) {
+    this.index
+        .computeIfAbsent(loader, k -> ConcurrentHashMap.newKeySet())
+        .add(className);
+  }
+
+  private boolean isIndexed(Class<?> classType) {
+    final Set<String> classNames = this.index.get(classType.getClassLoader());
+    return classNames != null && classNames.contains(classType.getName());
+  }
+
+  /**
+   * Lists the loaded classes which have been indexed.
+   */
+  private List<Class<?>> getIndexedClasses() {
+    final Class<?>[] loadedClasses = this.instrumentation.getAllLoadedClasses();
+    return Arrays.stream(loadedClasses)
+        .filter(this::isIndexed)
+        .filter(this.instrumentation::isModifiableClass)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public void onStart() {
+    this.instrumenting = true;
+    this.retransformer.retransformInBackground(this::getIndexedClasses);
+  }
+
+  @Override
+  public void onStop() {
+    this.instrumenting = false;
+    this.retransformer.retransformInBackground(this::getIndexedClasses);
+  }
+}
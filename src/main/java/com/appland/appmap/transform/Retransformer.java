@@ -0,0 +1,134 @@
+package com.appland.appmap.transform;
+
+import com.appland.appmap.config.Properties;
+import com.appland.appmap.util.Logger;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Retransforms loaded classes in batches. A batch suspends the application for as long as it takes
+ * to transform and redefine its classes, so batches are kept small.
+ */
+public class Retransformer {
+  private static final int DEFAULT_BATCH_SIZE = 64;
+  private static final int MAX_BATCH_SIZE = 1024;
+
+  private final Instrumentation instrumentation;
+  private ExecutorService background;
+  // Scheduled to run in the background, but not yet started
+  private FutureTask<Void> queued;
+
+  public Retransformer(Instrumentation instrumentation) {
+    this.instrumentation = instrumentation;
+  }
+
+  /**
+   * Retransforms classes as quickly as possible, running batches in parallel. Returns once every
+   * class has been retransformed.
+   * @param classes The classes to be retransformed
+   */
+  public void retransform(List<Class<?>> classes) {
+    final int batches = (classes.size() + DEFAULT_BATCH_SIZE - 1) / DEFAULT_BATCH_SIZE;
+    IntStream.range(0, batches)
+        .parallel()
+        .forEach(batch -> this.retransformBatch(classes.subList(batch * DEFAULT_BATCH_SIZE,
+            Math.min(classes.size(), (batch + 1) * DEFAULT_BATCH_SIZE))));
+  }
+
+  /**
+   * Retransforms classes on a background thread, returning immediately. The classes are listed
+   * once the thread gets to them, so if it's still busy, scheduling again has no further effect:
+   * the retransformation already queued will find the latest classes.
+   * @param classes Lists the classes to be retransformed
+   * @return Completes once the classes have been retransformed
+   */
+  public synchronized Future<?> retransformInBackground(Supplier<List<Class<?>>> classes) {
+    if (this.queued != null) {
+      return this.queued;
+    }
+
+    if (this.background == null) {
+      this.background = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "appmap-retransform");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+
+    this.queued = new FutureTask<Void>(() -> {
+      synchronized (this) {
+        this.queued = null;
+      }
+
+      final long startTime = System.currentTimeMillis();
+      final List<Class<?>> classList = classes.get();
+      this.retransform(classList);
+
+      if (Properties.Debug) {
+        Logger.printf("retransformed %d classes in %d ms\n",
+            classList.size(),
+            System.currentTimeMillis() - startTime);
+      }
+    }, null);
+    this.background.execute(this.queued);
+    return this.queued;
+  }
+
+  /**
+   * Retransforms classes one batch at a time, sizing each batch to take about {@code budgetMillis}
+   * and pausing between batches for as long as the previous one took. This bounds the latency added
+   * to any request running on the application at the same time, and leaves it at least half of the
+   * time overall.
+   * @param classes The classes to be retransformed
+   * @param budgetMillis The target duration of a single batch
+   * @throws InterruptedException If interrupted while pausing between batches
+   */
+  public void retransform(List<Class<?>> classes, long budgetMillis) throws InterruptedException {
+    int batchSize = 1;
+    int start = 0;
+    while (start < classes.size()) {
+      final int end = Math.min(classes.size(), start + batchSize);
+      final long startTime = System.nanoTime();
+      this.retransformBatch(classes.subList(start, end));
+      final long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+      start = end;
+
+      if (elapsedMillis > budgetMillis) {
+        batchSize = Math.max(1, batchSize / 2);
+      } else if (elapsedMillis < budgetMillis / 2) {
+        batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
+      }
+
+      if (start < classes.size()) {
+        Thread.sleep(Math.max(1, elapsedMillis));
+      }
+    }
+  }
+
+  private void retransformBatch(List<Class<?>> batch) {
+    try {
+      this.instrumentation.retransformClasses(batch.toArray(new Class<?>[0]));
+      return;
+    } catch (UnmodifiableClassException | RuntimeException | LinkageError e) {
+      if (batch.size() == 1) {
+        Logger.printf("failed to retransform %s\n", batch.get(0).getName());
+        Logger.println(e);
+        return;
+      }
+    }
+
+    // A batch is rejected as a whole, so retry its classes one at a time to isolate the failure
+    for (Class<?> classType : batch) {
+      this.retransformBatch(Collections.<Class<?>>singletonList(classType));
+    }
+  }
+}
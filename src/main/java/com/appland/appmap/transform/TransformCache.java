@@ -0,0 +1,538 @@
+package com.appland.appmap.transform;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.Parameters;
+import com.appland.appmap.output.v1.Value;
+import com.appland.appmap.process.ThreadLock;
+import com.appland.appmap.record.EventTemplateRegistry;
+import com.appland.appmap.transform.annotations.HookSite;
+import com.appland.appmap.util.Logger;
+
+import javassist.CtClass;
+import javassist.NotFoundException;
+import javassist.bytecode.ClassFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the results of {@link ClassFileTransformer#transform} on disk, so that unchanged classes
+ * are parsed but not instrumented again on the next startup.
+ *
+ * <p>Each class is keyed by a hash of its original bytes and the names of all its supertypes, since
+ * hooks may match a class by what it extends. The cache directory itself is keyed by the
+ * agent version, the hook dispatch mode and the contents of {@code appmap.yml}, so changing any of
+ * them starts from an empty cache. Along with the instrumented bytes, an entry holds the
+ * {@link Event} templates and unique lock keys referenced by the instrumented code. Since template
+ * ordinals are compiled into the bytecode, the highest ordinal issued is persisted as well, and new
+ * ordinals are issued above it.
+ *
+ * <p>Classes with no matching hooks are recorded in a single index rather than an entry of their
+ * own.
+ */
+public class TransformCache {
+  private static final int FORMAT_VERSION = 2;
+  private static final String UNMODIFIED_INDEX = "unmodified";
+  private static final String ORDINALS = "ordinals";
+  private static final EventTemplateRegistry eventTemplateRegistry = EventTemplateRegistry.get();
+
+  private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  });
+
+  /**
+   * A transformed class read back from the cache.
+   */
+  static class Entry {
+    private static class Template {
+      int ordinal;
+      String behaviorKey;
+      Event event;
+    }
+
+    private boolean requiresRecording;
+    private final Map<String, Integer> uniqueKeys = new LinkedHashMap<String, Integer>();
+    private String packageName;
+    private String className;
+    private boolean classIsStatic;
+    private Template[] templates;
+    private TrivialMethods.Elisions elisions;
+    private byte[] bytes;
+
+    /**
+     * @return {@code true} if the class has hooks requiring an active recording
+     */
+    boolean requiresRecording() {
+      return this.requiresRecording;
+    }
+
+    /**
+     * @return The trivial methods elided from the class
+     */
+    TrivialMethods.Elisions getElisions() {
+      return this.elisions;
+    }
+
+    /**
+     * @return The instrumented class bytes, or {@code null} if the class was not modified
+     */
+    byte[] getBytes() {
+      return this.bytes;
+    }
+  }
+
+  private final File directory;
+  private final Set<String> unmodifiedClasses = ConcurrentHashMap.newKeySet();
+  private Writer unmodifiedIndex;
+  private int persistedOrdinals;
+
+  private TransformCache(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Opens the transform cache, creating it if it doesn't exist.
+   * @param parentDirectory The directory holding caches for every configuration
+   * @param configFile The {@code appmap.yml} file in use
+   * @param variant Any other setting affecting the transform output
+   * @return The transform cache, or {@code null} if it could not be opened
+   */
+  public static TransformCache open(File parentDirectory, File configFile, String variant) {
+    try {
+      final MessageDigest digest = digests.get();
+      digest.update(getAgentVersion().getBytes(StandardCharsets.UTF_8));
+      digest.update(variant.getBytes(StandardCharsets.UTF_8));
+      digest.update(Files.readAllBytes(configFile.toPath()));
+
+      final File directory = new File(parentDirectory, toHex(digest.digest()));
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        Logger.println("failed to create transform cache directory " + directory);
+        return null;
+      }
+
+      final TransformCache cache = new TransformCache(directory);
+      cache.load();
+      return cache;
+    } catch (IOException e) {
+      Logger.println("failed to open transform cache");
+      Logger.println(e);
+      return null;
+    }
+  }
+
+  /**
+   * Identifies the agent build, so that a new build never reads entries written by another. Falls
+   * back to the modification time of the agent jar when built without a version.
+   */
+  private static String getAgentVersion() {
+    final String version = TransformCache.class.getPackage().getImplementationVersion();
+    if (version != null) {
+      return version;
+    }
+
+    try {
+      final File agentJar = new File(TransformCache.class
+          .getProtectionDomain()
+          .getCodeSource()
+          .getLocation()
+          .toURI());
+      return String.valueOf(agentJar.lastModified());
+    } catch (Exception e) {
+      return "unknown";
+    }
+  }
+
+  private void load() throws IOException {
+    final File ordinals = new File(this.directory, ORDINALS);
+    if (ordinals.exists()) {
+      final byte[] value = Files.readAllBytes(ordinals.toPath());
+      try {
+        this.persistedOrdinals = Integer.parseInt(new String(value, StandardCharsets.UTF_8).trim());
+        eventTemplateRegistry.reserveOrdinals(this.persistedOrdinals);
+      } catch (NumberFormatException e) {
+        Logger.println("ignoring invalid ordinal count in transform cache");
+      }
+    }
+
+    final File unmodifiedIndex = new File(this.directory, UNMODIFIED_INDEX);
+    if (unmodifiedIndex.exists()) {
+      for (String key : Files.readAllLines(unmodifiedIndex.toPath(), StandardCharsets.UTF_8)) {
+        this.unmodifiedClasses.add(key);
+      }
+    }
+
+    this.unmodifiedIndex = new OutputStreamWriter(
+        new FileOutputStream(unmodifiedIndex, true),
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Builds the key of a class.
+   * @param bytes The original class bytes
+   * @param supertypes The names of the supertypes of the class, see {@link #getSupertypes}
+   * @param deferRecordingHooks Whether hooks requiring an active recording are left out
+   * @param outline Whether hooks are compiled into helper methods
+   * @return The cache key
+   */
+  String getKey(byte[] bytes,
+                List<String> supertypes,
+                boolean deferRecordingHooks,
+                boolean outline) {
+    final MessageDigest digest = digests.get();
+    digest.update(bytes);
+    for (String supertype : supertypes) {
+      digest.update((byte) 0);
+      digest.update(supertype.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String key = toHex(digest.digest());
+    if (deferRecordingHooks) {
+      key += "-deferred";
+    }
+    if (outline) {
+      key += "-outlined";
+    }
+    return key;
+  }
+
+  /**
+   * Resolves the superclasses and interfaces of a class, directly or indirectly. A supertype which
+   * can't be found is named, but its own supertypes are left out.
+   * @param ctClass The class
+   * @return The names of the supertypes, in the order they're found
+   */
+  static List<String> getSupertypes(CtClass ctClass) {
+    final Set<String> supertypes = new LinkedHashSet<String>();
+    final Deque<CtClass> pending = new ArrayDeque<CtClass>();
+    pending.add(ctClass);
+    while (!pending.isEmpty()) {
+      final ClassFile classFile = pending.remove().getClassFile2();
+      final List<String> names = new ArrayList<String>();
+      if (classFile.getSuperclass() != null && !classFile.isInterface()) {
+        names.add(classFile.getSuperclass());
+      }
+      names.addAll(Arrays.asList(classFile.getInterfaces()));
+
+      for (String name : names) {
+        if (!supertypes.add(name)) {
+          continue;
+        }
+
+        try {
+          pending.add(ctClass.getClassPool().get(name));
+        } catch (NotFoundException e) {
+          // The name alone is part of the key
+        }
+      }
+    }
+    return new ArrayList<String>(supertypes);
+  }
+
+  /**
+   * Checks whether a class was previously found to have no matching hooks.
+   * @param key The cache key of the class
+   * @return {@code true} if the class can be loaded untouched
+   */
+  boolean isUnmodified(String key) {
+    return this.unmodifiedClasses.contains(key);
+  }
+
+  /**
+   * Reads a cache entry.
+   * @param key The cache key of the class
+   * @return The cache entry, or {@code null} if the class is not cached
+   */
+  Entry get(String key) {
+    final File file = new File(this.directory, key);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return readEntry(in);
+    } catch (IOException e) {
+      Logger.printf("failed to read transform cache entry %s\n", key);
+      Logger.println(e);
+      return null;
+    }
+  }
+
+  /**
+   * Restores the state referenced by a cached class. Fails if the unique keys or template ordinals
+   * it was compiled with are not available in this JVM, in which case the class must be transformed
+   * again.
+   * @param entry The cache entry
+   * @param loader The class loader defining the class
+   * @return {@code true} if the entry was restored
+   */
+  boolean restore(Entry entry, ClassLoader loader) {
+    for (Map.Entry<String, Integer> uniqueKey : entry.uniqueKeys.entrySet()) {
+      if (ThreadLock.uniqueKeyIndex(uniqueKey.getKey()) != uniqueKey.getValue()) {
+        return false;
+      }
+    }
+
+    synchronized (eventTemplateRegistry) {
+      for (Entry.Template template : entry.templates) {
+        if (!eventTemplateRegistry.isAvailable(template.ordinal, template.event)) {
+          return false;
+        }
+      }
+
+      for (Entry.Template template : entry.templates) {
+        eventTemplateRegistry.register(template.ordinal,
+            template.behaviorKey,
+            template.event,
+            entry.packageName,
+            entry.className,
+            entry.classIsStatic,
+            loader);
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Records that a class has no matching hooks.
+   * @param key The cache key of the class
+   */
+  synchronized void putUnmodified(String key) {
+    if (!this.unmodifiedClasses.add(key)) {
+      return;
+    }
+
+    try {
+      this.unmodifiedIndex.write(key);
+      this.unmodifiedIndex.write('\n');
+      this.unmodifiedIndex.flush();
+    } catch (IOException e) {
+      Logger.println("failed to update transform cache index");
+      Logger.println(e);
+    }
+  }
+
+  /**
+   * Writes a cache entry for a transformed class.
+   * @param key The cache key of the class
+   * @param ctClass The transformed class
+   * @param hookSites The hook sites applied to the class
+   * @param requiresRecording Whether the class has hooks requiring an active recording
+   * @param bytes The instrumented class bytes, or {@code null} if the class was not modified
+   */
+  void put(String key,
+           CtClass ctClass,
+           List<HookSite> hookSites,
+           boolean requiresRecording,
+           TrivialMethods.Elisions elisions,
+           byte[] bytes) {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(buffer)) {
+      writeEntry(out, ctClass, hookSites, requiresRecording, elisions, bytes);
+    } catch (IOException e) {
+      Logger.printf("failed to serialize transform cache entry for %s\n", ctClass.getName());
+      Logger.println(e);
+      return;
+    }
+
+    try {
+      this.writeAtomically(key, buffer.toByteArray());
+      this.persistOrdinals();
+    } catch (IOException e) {
+      Logger.printf("failed to write transform cache entry for %s\n", ctClass.getName());
+      Logger.println(e);
+    }
+  }
+
+  private synchronized void persistOrdinals() throws IOException {
+    final int ordinals = eventTemplateRegistry.getOrdinalCount();
+    if (ordinals <= this.persistedOrdinals) {
+      return;
+    }
+
+    this.writeAtomically(ORDINALS, String.valueOf(ordinals).getBytes(StandardCharsets.UTF_8));
+    this.persistedOrdinals = ordinals;
+  }
+
+  /**
+   * Writes a file so that concurrent readers, possibly in another JVM, never see it partially
+   * written.
+   */
+  private void writeAtomically(String name, byte[] contents) throws IOException {
+    final File tempFile = File.createTempFile(name, ".tmp", this.directory);
+    try (OutputStream out = new FileOutputStream(tempFile)) {
+      out.write(contents);
+    }
+
+    Files.move(tempFile.toPath(),
+        new File(this.directory, name).toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeEntry(DataOutputStream out,
+                                 CtClass ctClass,
+                                 List<HookSite> hookSites,
+                                 boolean requiresRecording,
+                                 TrivialMethods.Elisions elisions,
+                                 byte[] bytes) throws IOException {
+    final Map<String, Integer> uniqueKeys = new LinkedHashMap<String, Integer>();
+    final Map<Integer, Event> templates = new LinkedHashMap<Integer, Event>();
+    final Map<Integer, String> behaviorKeys = new LinkedHashMap<Integer, String>();
+    for (HookSite hookSite : hookSites) {
+      final String uniqueKey = hookSite.getUniqueKey();
+      if (!uniqueKey.isEmpty()) {
+        uniqueKeys.put(uniqueKey, ThreadLock.uniqueKeyIndex(uniqueKey));
+      }
+
+      final Integer ordinal = hookSite.getBehaviorOrdinal();
+      templates.put(ordinal, eventTemplateRegistry.getTemplate(ordinal));
+      behaviorKeys.put(ordinal, hookSite.getBehaviorKey());
+    }
+
+    out.writeInt(FORMAT_VERSION);
+    out.writeBoolean(requiresRecording);
+
+    out.writeInt(uniqueKeys.size());
+    for (Map.Entry<String, Integer> uniqueKey : uniqueKeys.entrySet()) {
+      out.writeUTF(uniqueKey.getKey());
+      out.writeInt(uniqueKey.getValue());
+    }
+
+    writeString(out, ctClass.getPackageName());
+    out.writeUTF(ctClass.getSimpleName());
+    out.writeBoolean((ctClass.getModifiers() & Modifier.STATIC) != 0);
+
+    out.writeInt(templates.size());
+    for (Map.Entry<Integer, Event> template : templates.entrySet()) {
+      final Event event = template.getValue();
+      out.writeInt(template.getKey());
+      out.writeUTF(behaviorKeys.get(template.getKey()));
+      writeString(out, event.definedClass);
+      writeString(out, event.methodId);
+      out.writeBoolean(event.isStatic);
+      writeString(out, event.path);
+      out.writeInt(event.lineNumber);
+
+      final Parameters parameters = event.parameters;
+      out.writeInt(parameters == null ? -1 : parameters.size());
+      if (parameters != null) {
+        for (Value parameter : parameters) {
+          writeString(out, parameter.name);
+          writeString(out, parameter.classType);
+          writeString(out, parameter.kind);
+        }
+      }
+    }
+
+    elisions.write(out);
+
+    out.writeInt(bytes == null ? -1 : bytes.length);
+    if (bytes != null) {
+      out.write(bytes);
+    }
+  }
+
+  private static Entry readEntry(DataInputStream in) throws IOException {
+    if (in.readInt() != FORMAT_VERSION) {
+      return null;
+    }
+
+    final Entry entry = new Entry();
+    entry.requiresRecording = in.readBoolean();
+
+    final int uniqueKeyCount = in.readInt();
+    for (int i = 0; i < uniqueKeyCount; i++) {
+      entry.uniqueKeys.put(in.readUTF(), in.readInt());
+    }
+
+    entry.packageName = readString(in);
+    entry.className = in.readUTF();
+    entry.classIsStatic = in.readBoolean();
+
+    entry.templates = new Entry.Template[in.readInt()];
+    for (int i = 0; i < entry.templates.length; i++) {
+      final Entry.Template template = new Entry.Template();
+      template.ordinal = in.readInt();
+      template.behaviorKey = in.readUTF();
+      template.event = new Event()
+          .setDefinedClass(readString(in))
+          .setMethodId(readString(in))
+          .setStatic(in.readBoolean())
+          .setPath(readString(in))
+          .setLineNumber(in.readInt());
+
+      final int parameterCount = in.readInt();
+      if (parameterCount >= 0) {
+        final Parameters parameters = new Parameters();
+        for (int j = 0; j < parameterCount; j++) {
+          parameters.add(new Value()
+              .setName(readString(in))
+              .setClassType(readString(in))
+              .setKind(readString(in)));
+        }
+        template.event.setParameters(parameters);
+      }
+
+      entry.templates[i] = template;
+    }
+
+    entry.elisions = TrivialMethods.Elisions.read(in);
+
+    final int length = in.readInt();
+    if (length >= 0) {
+      entry.bytes = new byte[length];
+      in.readFully(entry.bytes);
+    }
+
+    return entry;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static String toHex(byte[] bytes) {
+    final StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+      builder.append(Character.forDigit(b & 0xf, 16));
+    }
+    return builder.toString();
+  }
+}
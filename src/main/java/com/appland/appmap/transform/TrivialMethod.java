@@ -0,0 +1,174 @@
+package com.appland.appmap.transform;
+
+import javassist.CtBehavior;
+import javassist.Modifier;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Categories of methods too trivial to be worth an event of their own, recognized from their
+ * bytecode. Whether each is recorded, counted or skipped is set by
+ * {@link com.appland.appmap.config.AppMapTrivialMethods}.
+ */
+enum TrivialMethod {
+  /** Returns a field, e.g. {@code return this.name;} */
+  GETTER("getters"),
+
+  /** Assigns its only parameter to a field, e.g. {@code this.name = name;} */
+  SETTER("setters"),
+
+  /** Returns the result of a single call on its parameters, fields and constants */
+  DELEGATE("delegates"),
+
+  /** {@code equals}, {@code hashCode} or {@code toString} */
+  BOILERPLATE("boilerplate");
+
+  // Longer methods aren't one-liners, and needn't be decoded
+  private static final int MAX_CODE_LENGTH = 32;
+
+  private final String key;
+
+  TrivialMethod(String key) {
+    this.key = key;
+  }
+
+  /**
+   * @return The name of the category in appmap.yml
+   */
+  String getKey() {
+    return this.key;
+  }
+
+  /**
+   * Classifies a method by its name and bytecode.
+   * @param behavior The method
+   * @return The category of the method, or {@code null} if it isn't trivial
+   */
+  static TrivialMethod classify(CtBehavior behavior) {
+    final MethodInfo methodInfo = behavior.getMethodInfo();
+    final boolean isStatic = Modifier.isStatic(behavior.getModifiers());
+    if (!isStatic && isBoilerplate(methodInfo.getName(), methodInfo.getDescriptor())) {
+      return BOILERPLATE;
+    }
+
+    final CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+    if (codeAttribute == null
+        || codeAttribute.getCodeLength() > MAX_CODE_LENGTH
+        || codeAttribute.getExceptionTable().size() > 0) {
+      return null;
+    }
+
+    final List<Integer> opcodes = new ArrayList<Integer>();
+    try {
+      final CodeIterator iterator = codeAttribute.iterator();
+      while (iterator.hasNext()) {
+        opcodes.add(iterator.byteAt(iterator.next()));
+      }
+    } catch (BadBytecode e) {
+      return null;
+    }
+
+    if (isGetter(opcodes, isStatic)) {
+      return GETTER;
+    }
+
+    if (isSetter(opcodes, isStatic)) {
+      return SETTER;
+    }
+
+    if (isDelegate(opcodes)) {
+      return DELEGATE;
+    }
+
+    return null;
+  }
+
+  private static boolean isBoilerplate(String name, String descriptor) {
+    switch (name) {
+      case "equals":
+        return descriptor.equals("(Ljava/lang/Object;)Z");
+      case "hashCode":
+        return descriptor.equals("()I");
+      case "toString":
+        return descriptor.equals("()Ljava/lang/String;");
+      default:
+        return false;
+    }
+  }
+
+  // aload_0; getfield; xreturn, or getstatic; xreturn
+  private static boolean isGetter(List<Integer> opcodes, boolean isStatic) {
+    if (isStatic) {
+      return opcodes.size() == 2
+          && opcodes.get(0) == Opcode.GETSTATIC
+          && isValueReturn(opcodes.get(1));
+    }
+
+    return opcodes.size() == 3
+        && opcodes.get(0) == Opcode.ALOAD_0
+        && opcodes.get(1) == Opcode.GETFIELD
+        && isValueReturn(opcodes.get(2));
+  }
+
+  // aload_0; xload_1; putfield; return, or xload_0; putstatic; return
+  private static boolean isSetter(List<Integer> opcodes, boolean isStatic) {
+    if (isStatic) {
+      return opcodes.size() == 3
+          && isLoad(opcodes.get(0))
+          && opcodes.get(1) == Opcode.PUTSTATIC
+          && opcodes.get(2) == Opcode.RETURN;
+    }
+
+    return opcodes.size() == 4
+        && opcodes.get(0) == Opcode.ALOAD_0
+        && isLoad(opcodes.get(1))
+        && opcodes.get(2) == Opcode.PUTFIELD
+        && opcodes.get(3) == Opcode.RETURN;
+  }
+
+  // Loads of locals, fields and constants, then a single invocation and a return
+  private static boolean isDelegate(List<Integer> opcodes) {
+    final int size = opcodes.size();
+    if (size < 2 || !isInvoke(opcodes.get(size - 2)) || !isReturn(opcodes.get(size - 1))) {
+      return false;
+    }
+
+    for (int i = 0; i < size - 2; i++) {
+      final int opcode = opcodes.get(i);
+      if (!isLoad(opcode)
+          && !isConstant(opcode)
+          && opcode != Opcode.GETFIELD
+          && opcode != Opcode.GETSTATIC) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean isLoad(int opcode) {
+    return opcode >= Opcode.ILOAD && opcode <= Opcode.ALOAD_3;
+  }
+
+  private static boolean isConstant(int opcode) {
+    return opcode >= Opcode.ACONST_NULL && opcode <= Opcode.LDC2_W;
+  }
+
+  private static boolean isInvoke(int opcode) {
+    return opcode >= Opcode.INVOKEVIRTUAL && opcode <= Opcode.INVOKEINTERFACE;
+  }
+
+  private static boolean isValueReturn(int opcode) {
+    return opcode >= Opcode.IRETURN && opcode <= Opcode.ARETURN;
+  }
+
+  private static boolean isReturn(int opcode) {
+    return opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN;
+  }
+}
@@ -0,0 +1,187 @@
+package com.appland.appmap.transform;
+
+import com.appland.appmap.config.AppMapConfig;
+import com.appland.appmap.config.AppMapTrivialMethods;
+import com.appland.appmap.config.AppMapTrivialMethods.Policy;
+import com.appland.appmap.config.Properties;
+import com.appland.appmap.process.CallCounter;
+import com.appland.appmap.process.conditions.ConfigCondition;
+import com.appland.appmap.record.IRecordingListener;
+import com.appland.appmap.util.Logger;
+import com.appland.appmap.util.StringUtil;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Elides {@link TrivialMethod}s which {@link ConfigCondition} would otherwise record, as set by
+ * the {@code trivial} section of appmap.yml. A counted method is instrumented to count its calls
+ * while recording, instead of recording them.
+ *
+ * <p>When debugging, the number of methods elided in each category and the calls counted are
+ * logged as each recording stops. A single instance is registered with the
+ * {@link com.appland.appmap.record.Recorder} by the agent.
+ */
+public class TrivialMethods implements IRecordingListener {
+  private static final int REPORT_LIMIT = 20;
+
+  private final Map<TrivialMethod, AtomicLong> skipped =
+      new EnumMap<TrivialMethod, AtomicLong>(TrivialMethod.class);
+  private final Map<TrivialMethod, AtomicLong> counted =
+      new EnumMap<TrivialMethod, AtomicLong>(TrivialMethod.class);
+  // The classes added to the totals, by class loader. Classes are retransformed each time a lazy
+  // recording starts or stops, but only count once.
+  private final Map<ClassLoader, Set<String>> classes =
+      Collections.synchronizedMap(new WeakHashMap<ClassLoader, Set<String>>());
+
+  /**
+   * The number of methods elided from a single class in each category, kept so that they can be
+   * added again when the class is read back from the transform cache.
+   */
+  static class Elisions {
+    private final int[] skipped = new int[TrivialMethod.values().length];
+    private final int[] counted = new int[TrivialMethod.values().length];
+
+    boolean isEmpty() {
+      for (int i = 0; i < this.skipped.length; i++) {
+        if (this.skipped[i] != 0 || this.counted[i] != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(this.skipped.length);
+      for (int i = 0; i < this.skipped.length; i++) {
+        out.writeInt(this.skipped[i]);
+        out.writeInt(this.counted[i]);
+      }
+    }
+
+    static Elisions read(DataInputStream in) throws IOException {
+      final Elisions elisions = new Elisions();
+      final int length = in.readInt();
+      if (length != elisions.skipped.length) {
+        throw new IOException("unexpected number of trivial method categories: " + length);
+      }
+
+      for (int i = 0; i < length; i++) {
+        elisions.skipped[i] = in.readInt();
+        elisions.counted[i] = in.readInt();
+      }
+      return elisions;
+    }
+  }
+
+  public TrivialMethods() {
+    for (TrivialMethod trivialMethod : TrivialMethod.values()) {
+      this.skipped.put(trivialMethod, new AtomicLong());
+      this.counted.put(trivialMethod, new AtomicLong());
+    }
+  }
+
+  /**
+   * Adds the methods elided from a class to the totals reported, unless the class has been added
+   * before.
+   * @param loader The class loader defining the class, or {@code null} for the bootstrap loader
+   * @param className The name of the class
+   * @param elisions The methods elided from the class
+   */
+  void add(ClassLoader loader, String className, Elisions elisions) {
+    if (elisions.isEmpty()) {
+      return;
+    }
+
+    final boolean added = this.classes
+        .computeIfAbsent(loader, k -> ConcurrentHashMap.newKeySet())
+        .add(className);
+    if (!added) {
+      return;
+    }
+
+    for (TrivialMethod trivialMethod : TrivialMethod.values()) {
+      this.skipped.get(trivialMethod).addAndGet(elisions.skipped[trivialMethod.ordinal()]);
+      this.counted.get(trivialMethod).addAndGet(elisions.counted[trivialMethod.ordinal()]);
+    }
+  }
+
+  /**
+   * Checks whether a method should be elided, instrumenting it to count its calls if needed.
+   * @param behavior A method being transformed
+   * @param elisions Updated with the method, if elided
+   * @return {@code true} if hooks recording the method from its inclusion in appmap.yml must not
+   *         be applied
+   */
+  boolean elide(CtBehavior behavior, Elisions elisions) {
+    final AppMapTrivialMethods policies = AppMapConfig.get().trivial;
+    if (policies == null || policies.recordsAll()) {
+      return false;
+    }
+
+    final TrivialMethod trivialMethod = TrivialMethod.classify(behavior);
+    if (trivialMethod == null) {
+      return false;
+    }
+
+    final Policy policy = policies.getPolicy(trivialMethod.getKey());
+    if (policy == Policy.RECORD || !ConfigCondition.match(behavior)) {
+      return false;
+    }
+
+    if (policy == Policy.COUNT) {
+      try {
+        behavior.insertBefore("if (com.appland.appmap.record.Recorder.isRecording()) {"
+            + "com.appland.appmap.process.CallCounter.count(\""
+            + StringUtil.canonicalName(behavior)
+            + "\");"
+            + "}");
+      } catch (CannotCompileException e) {
+        Logger.printf("failed to count calls to %s\n", behavior.getLongName());
+        Logger.println(e);
+      }
+      elisions.counted[trivialMethod.ordinal()]++;
+    } else {
+      elisions.skipped[trivialMethod.ordinal()]++;
+    }
+
+    return true;
+  }
+
+  @Override
+  public void onStart() {
+  }
+
+  @Override
+  public void onStop() {
+    final Map<String, Long> calls = CallCounter.drain();
+    if (!Properties.Debug) {
+      return;
+    }
+
+    for (TrivialMethod trivialMethod : TrivialMethod.values()) {
+      Logger.printf("trivial %s: %d methods skipped, %d counted\n",
+          trivialMethod.getKey(),
+          this.skipped.get(trivialMethod).get(),
+          this.counted.get(trivialMethod).get());
+    }
+
+    calls.entrySet()
+        .stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+        .limit(REPORT_LIMIT)
+        .forEach(entry -> Logger.printf("%d calls to %s\n", entry.getValue(), entry.getKey()));
+  }
+}
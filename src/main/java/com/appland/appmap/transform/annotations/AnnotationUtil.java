@@ -1,40 +1,61 @@
 package com.appland.appmap.transform.annotations;
 
-import javassist.CtBehavior;
-
 import java.lang.reflect.Method;
+import java.util.Map;
 
 /**
- * Utility classes for accessing runtime Annotation information.
+ * Utility classes for accessing the annotations of a {@link HookMethod}.
  */
 class AnnotationUtil {
   /**
    * Obtains the default {@code value()} from an Annotation.
-   * @param behavior The declaring behavior
+   * @param hookMethod The hook method
    * @param annotationClass The annotation class
    * @param defaultValue A default value to use if an error occurs
    * @return The resulting value of the Annotations {@code value()} method or the default value
    *         supplied.
    */
-  public static Object getValue(CtBehavior behavior,
+  public static Object getValue(HookMethod hookMethod,
                                 Class<?> annotationClass,
                                 Object defaultValue) {
-    try {
-      Object annotation = behavior.getAnnotation(annotationClass);
-      if (annotation == null) {
-        annotation = behavior.getDeclaringClass().getAnnotation(annotationClass);
-      }
+    return getValue(hookMethod, annotationClass, "value", defaultValue);
+  }
 
+  /**
+   * Obtains the value of a member of an Annotation. A member which isn't set explicitly has the
+   * default value declared by the annotation.
+   * @param hookMethod The hook method
+   * @param annotationClass The annotation class
+   * @param memberName The name of the member
+   * @param defaultValue A default value to use if the annotation is missing, or an error occurs
+   * @return The value of the member, converted to its declared type, or the default value supplied
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static Object getValue(HookMethod hookMethod,
+                                Class<?> annotationClass,
+                                String memberName,
+                                Object defaultValue) {
+    try {
+      final Map<String, String> annotation = hookMethod.getAnnotation(annotationClass);
       if (annotation == null) {
         return defaultValue;
       }
 
-      Method valueMethod = annotationClass.getMethod("value");
-      if (valueMethod == null) {
-        return defaultValue;
+      final Method member = annotationClass.getMethod(memberName);
+      final String value = annotation.get(memberName);
+      if (value == null) {
+        return member.getDefaultValue();
       }
 
-      return valueMethod.invoke(annotation);
+      final Class<?> type = member.getReturnType();
+      if (type == boolean.class) {
+        return Boolean.valueOf(value);
+      } else if (type.isEnum()) {
+        return Enum.valueOf((Class<? extends Enum>) type, value);
+      } else if (type == Class.class) {
+        return Class.forName(value, false, annotationClass.getClassLoader());
+      }
+      return value;
     } catch (Exception e) {
       return defaultValue;
     }
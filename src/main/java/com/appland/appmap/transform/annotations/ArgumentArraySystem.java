@@ -2,7 +2,7 @@ package com.appland.appmap.transform.annotations;
 
 import com.appland.appmap.output.v1.Parameters;
 import com.appland.appmap.output.v1.Value;
-import javassist.CtBehavior;
+import javassist.bytecode.Descriptor;
 
 import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
@@ -12,38 +12,52 @@ public class ArgumentArraySystem extends BaseSystem {
   private static final Boolean DEFAULT_VALUE = false;
 
   private Boolean wantsArgumentArray;
+  private Boolean capturesArguments;
 
-  private ArgumentArraySystem(CtBehavior hookBehavior, Boolean wantsArgumentArray) {
-    super(hookBehavior);
+  private ArgumentArraySystem(HookMethod hookMethod,
+                              Boolean wantsArgumentArray,
+                              Boolean capturesArguments) {
+    super(hookMethod);
     this.wantsArgumentArray = wantsArgumentArray;
+    this.capturesArguments = capturesArguments;
   }
 
   /**
    * Factory method. Reads any relevant annotation information and caches it.
-   * @param hookBehavior The hook behavior
+   * @param hookMethod The hook method
    * @return A new ArgumentArraySystem
    */
-  public static ISystem from(CtBehavior hookBehavior) {
-    final Boolean wantsArgumentArray = (Boolean) AnnotationUtil.getValue(hookBehavior,
+  public static ISystem from(HookMethod hookMethod) {
+    final Boolean wantsArgumentArray = (Boolean) AnnotationUtil.getValue(hookMethod,
         ArgumentArray.class,
         DEFAULT_VALUE);
-    return new ArgumentArraySystem(hookBehavior, wantsArgumentArray);
+    final Boolean capturesArguments = (Boolean) AnnotationUtil.getValue(hookMethod,
+        CaptureArguments.class,
+        DEFAULT_VALUE);
+    return new ArgumentArraySystem(hookMethod, wantsArgumentArray, capturesArguments);
   }
 
   @Override
   public void mutateRuntimeParameters(HookBinding binding, Parameters runtimeParameters) {
+    if (this.capturesArguments) {
+      if (binding.getHook().getMethodEvent() == MethodEvent.METHOD_INVOCATION) {
+        captureArguments(getArgumentCount(binding), runtimeParameters.get(0));
+      }
+      return;
+    }
+
     if (!this.wantsArgumentArray) {
       runtimeParameters.add(new Value().setName("$$"));
       return;
     }
 
-    final Parameters targetParameters = binding.getTargetParameters();
+    final int argumentCount = getArgumentCount(binding);
     Value argArray = new Value();
-    if (targetParameters.size() == 0) {
+    if (argumentCount == 0) {
       argArray.setName("new Object[0]");
     } else {
       final String args = IntStream
-          .range(1, targetParameters.size() + 1)
+          .range(1, argumentCount + 1)
           .mapToObj(i -> {
             return String.format("com.appland.appmap.process.RuntimeUtil.boxValue($%d)", i);
           })
@@ -53,6 +67,28 @@ public class ArgumentArraySystem extends BaseSystem {
     runtimeParameters.add(argArray);
   }
 
+  /**
+   * Counts the arguments of the target behavior from its descriptor, without resolving their types.
+   */
+  private static int getArgumentCount(HookBinding binding) {
+    return Descriptor.numOfParameters(binding.getTargetBehavior().getSignature());
+  }
+
+  /**
+   * Wraps the event passed to the hook in a call storing each argument into its parameters.
+   */
+  private static void captureArguments(int argumentCount, Value event) {
+    String capture = event.name;
+    for (int i = 0; i < argumentCount; i++) {
+      capture = String.format(
+          "com.appland.appmap.process.RuntimeUtil.captureArgument(%s, %d, $%d)",
+          capture,
+          i,
+          i + 1);
+    }
+    event.setName(capture);
+  }
+
   @Override
   public Integer getParameterPriority() {
     return 300;
@@ -61,6 +97,9 @@ public class ArgumentArraySystem extends BaseSystem {
   @Override
   public Boolean validate(Hook hook) {
     final Parameters hookParameters = hook.getParameters();
+    if (this.capturesArguments) {
+      return !this.wantsArgumentArray;
+    }
     if (this.wantsArgumentArray) {
       return hookParameters.validate(hookParameters.size() - 1, "java.lang.Object[]");
     }
@@ -69,7 +108,7 @@ public class ArgumentArraySystem extends BaseSystem {
 
   @Override
   public Boolean validate(HookBinding binding) {
-    if (this.wantsArgumentArray) {
+    if (this.wantsArgumentArray || this.capturesArguments) {
       return true;
     }
 
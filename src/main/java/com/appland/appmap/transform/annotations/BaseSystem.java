@@ -4,17 +4,17 @@ import com.appland.appmap.output.v1.Parameters;
 import javassist.CtBehavior;
 
 public abstract class BaseSystem implements ISystem {
-  private final CtBehavior hookBehavior;
+  private final HookMethod hookMethod;
 
-  public BaseSystem(CtBehavior hookBehavior) {
-    this.hookBehavior = hookBehavior;
+  public BaseSystem(HookMethod hookMethod) {
+    this.hookMethod = hookMethod;
   }
 
   public Boolean match(CtBehavior behavior) {
     return false;
   }
 
-  public void mutateStaticParameters(CtBehavior behavior, Parameters params) {
+  public void mutateStaticParameters(HookMethod hookMethod, Parameters params) {
 
   }
 
@@ -22,8 +22,8 @@ public abstract class BaseSystem implements ISystem {
 
   }
 
-  protected CtBehavior getHookBehavior() {
-    return this.hookBehavior;
+  protected HookMethod getHookMethod() {
+    return this.hookMethod;
   }
 
   public Integer getParameterPriority() {
@@ -13,22 +13,29 @@ public class CallbackOnSystem extends BaseSystem {
   private static final MethodEvent DEFAULT_VALUE = MethodEvent.METHOD_INVOCATION;
 
   private MethodEvent methodEvent;
+  private Boolean capturesReturnValue;
 
-  private CallbackOnSystem(CtBehavior hookBehavior, MethodEvent methodEvent) {
-    super(hookBehavior);
+  private CallbackOnSystem(HookMethod hookMethod,
+                           MethodEvent methodEvent,
+                           Boolean capturesReturnValue) {
+    super(hookMethod);
     this.methodEvent = methodEvent;
+    this.capturesReturnValue = capturesReturnValue;
   }
 
   /**
    * Factory method. Reads any relevant annotation information and caches it.
-   * @param behavior The hook behavior
+   * @param hookMethod The hook method
    * @return A new CallbackOnSystem
    */
-  public static ISystem from(CtBehavior behavior) {
-    MethodEvent methodEvent = (MethodEvent) AnnotationUtil.getValue(behavior,
+  public static ISystem from(HookMethod hookMethod) {
+    MethodEvent methodEvent = (MethodEvent) AnnotationUtil.getValue(hookMethod,
         CallbackOn.class,
         DEFAULT_VALUE);
-    return new CallbackOnSystem(behavior, methodEvent);
+    Boolean capturesReturnValue = (Boolean) AnnotationUtil.getValue(hookMethod,
+        CaptureArguments.class,
+        false);
+    return new CallbackOnSystem(hookMethod, methodEvent, capturesReturnValue);
   }
 
   public MethodEvent getMethodEvent() {
@@ -43,6 +50,17 @@ public class CallbackOnSystem extends BaseSystem {
         try {
           CtMethod method = (CtMethod) targetBehavior;
           CtClass returnType = method.getReturnType();
+          if (this.capturesReturnValue) {
+            // Stored into the event passed to the hook, rather than passed separately
+            if (returnType != CtClass.voidType) {
+              Value event = runtimeParameters.get(0);
+              event.setName("com.appland.appmap.process.RuntimeUtil.captureReturnValue("
+                  + event.name
+                  + ", $_)");
+            }
+            return;
+          }
+
           Value returnValue = new Value();
 
           if (returnType == CtClass.voidType) {
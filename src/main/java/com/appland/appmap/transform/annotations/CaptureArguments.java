@@ -0,0 +1,27 @@
+package com.appland.appmap.transform.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Instructs the hooking mechanism to record the arguments of the hooked method straight into the
+ * parameters of a call event, and its return value into a return event, rather than passing them
+ * to the hook function. Primitive values are stored without being boxed, and no array is built.
+ * For example, suppose there is an instance method <code>public int getCount(String name)</code>
+ * on <code>MyClass</code>. With the CaptureArguments annotation, a hook for this method should
+ * have the signature <code>public static void myHook(Event e, MyClass receiver)</code>, whether
+ * it's called on invocation or on return.
+ *
+ * @see ArgumentArray
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface CaptureArguments {
+  /**
+   * Flags whether or not arguments and return values are recorded into the event.
+   * @return {@code true} if they are recorded. Otherwise, {@code false}.
+   */
+  public boolean value() default true;
+}
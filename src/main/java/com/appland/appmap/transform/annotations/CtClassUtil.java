@@ -6,10 +6,24 @@ import com.appland.appmap.util.Logger;
 import javassist.CtClass;
 import javassist.NotFoundException;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
 /**
  * Utility methods for working with CtClass and related types.
  */
 class CtClassUtil {
+  // Supertypes resolved so far, keyed by CtClass identity. A ClassPool hands out the same instance
+  // for as long as it caches a class, so lookups are shared by every class resolved through the
+  // same pool, and entries go away along with the classes evicted from it.
+  private static final Map<CtClass, Set<String>> supertypes =
+      Collections.synchronizedMap(new WeakHashMap<CtClass, Set<String>>());
+  private static final Map<CtClass, Set<String>> superclasses =
+      Collections.synchronizedMap(new WeakHashMap<CtClass, Set<String>>());
+
   /**
    * Checks whether or not two types are equal or related via class hierarchy or interface
    * implementation.
@@ -19,35 +33,65 @@ class CtClassUtil {
    *         Otherwise, {@code false}.
    */
   public static Boolean isChildOf(CtClass candidateChildClass, String parentClassName) {
+    if (candidateChildClass.getName().equals(parentClassName)) {
+      return true;
+    }
+
+    return getSupertypes(candidateChildClass).contains(parentClassName);
+  }
+
+  /**
+   * Resolves the names of the interfaces a class implements, directly or through other interfaces,
+   * and of the classes it extends.
+   */
+  static Set<String> getSupertypes(CtClass ctClass) {
+    Set<String> result = supertypes.get(ctClass);
+    if (result != null) {
+      return result;
+    }
+
+    result = new HashSet<String>();
     try {
-      if (candidateChildClass.getName().equals(parentClassName)) {
-        return true;
+      for (CtClass superType : ctClass.getInterfaces()) {
+        result.add(superType.getName());
+        result.addAll(getSupertypes(superType));
       }
+    } catch (NotFoundException e) {
+      logResolutionFailure(e);
+    }
+    result.addAll(getSuperclasses(ctClass));
 
-      for (CtClass superType : candidateChildClass.getInterfaces()) {
-        if (superType.getName().equals(parentClassName)) {
-          return true;
-        } else {
-          if (isChildOf(superType, parentClassName)) {
-            return true;
-          }
-        }
-      }
+    result = Collections.unmodifiableSet(result);
+    supertypes.put(ctClass, result);
+    return result;
+  }
+
+  private static Set<String> getSuperclasses(CtClass ctClass) {
+    Set<String> result = superclasses.get(ctClass);
+    if (result != null) {
+      return result;
+    }
 
-      CtClass superClass = candidateChildClass.getSuperclass();
-      while (superClass != null) {
-        if (superClass.getName().equals(parentClassName)) {
-          return true;
-        }
-        superClass = superClass.getSuperclass();
+    result = new HashSet<String>();
+    try {
+      CtClass superClass = ctClass.getSuperclass();
+      if (superClass != null) {
+        result.add(superClass.getName());
+        result.addAll(getSuperclasses(superClass));
       }
     } catch (NotFoundException e) {
-      if (Properties.DebugHooks) {
-        Logger.println("could not resolve class hierarchy");
-        Logger.println(e);
-      }
+      logResolutionFailure(e);
     }
 
-    return false;
+    result = Collections.unmodifiableSet(result);
+    superclasses.put(ctClass, result);
+    return result;
+  }
+
+  private static void logResolutionFailure(NotFoundException e) {
+    if (Properties.DebugHooks) {
+      Logger.println("could not resolve class hierarchy");
+      Logger.println(e);
+    }
   }
 }
@@ -2,7 +2,6 @@ package com.appland.appmap.transform.annotations;
 
 import com.appland.appmap.output.v1.Parameters;
 import com.appland.appmap.output.v1.Value;
-import javassist.CtBehavior;
 
 import java.lang.reflect.Modifier;
 import java.util.NoSuchElementException;
@@ -12,21 +11,21 @@ public class ExcludeReceiverSystem extends BaseSystem {
 
   private Boolean excludeReceiver;
 
-  private ExcludeReceiverSystem(CtBehavior hookBehavior, Boolean excludeReceiver) {
-    super(hookBehavior);
+  private ExcludeReceiverSystem(HookMethod hookMethod, Boolean excludeReceiver) {
+    super(hookMethod);
     this.excludeReceiver = excludeReceiver;
   }
 
   /**
    * Factory method. Reads any relevant annotation information and caches it.
-   * @param behavior The hook behavior
+   * @param hookMethod The hook method
    * @return A new ExcludeReceiverSystem
    */
-  public static ISystem from(CtBehavior behavior) {
-    Boolean doesExcludeReceiver = (Boolean) AnnotationUtil.getValue(behavior,
+  public static ISystem from(HookMethod hookMethod) {
+    Boolean doesExcludeReceiver = (Boolean) AnnotationUtil.getValue(hookMethod,
         ExcludeReceiver.class,
         DEFAULT_VALUE);
-    return new ExcludeReceiverSystem(behavior, doesExcludeReceiver);
+    return new ExcludeReceiverSystem(hookMethod, doesExcludeReceiver);
   }
 
   @Override
@@ -2,9 +2,12 @@ package com.appland.appmap.transform.annotations;
 
 import com.appland.appmap.config.Properties;
 import com.appland.appmap.output.v1.Parameters;
+import com.appland.appmap.output.v1.Value;
+import com.appland.appmap.process.ThreadLock;
 import com.appland.appmap.record.EventTemplateRegistry;
 import com.appland.appmap.util.Logger;
 import javassist.*;
+import javassist.bytecode.BadBytecode;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -17,15 +20,15 @@ import java.util.stream.Collectors;
 public class Hook {
   private static final EventTemplateRegistry eventTemplateRegistry = EventTemplateRegistry.get();
 
-  private final static List<Function<CtBehavior, ISystem>> requiredHookSystemFactories =
-  new ArrayList<Function<CtBehavior, ISystem>>() {{
+  private final static List<Function<HookMethod, ISystem>> requiredHookSystemFactories =
+  new ArrayList<Function<HookMethod, ISystem>>() {{
       add(HookAnnotatedSystem::from);
       add(HookClassSystem::from);
       add(HookConditionSystem::from);
   }};
 
-  private final static List<Function<CtBehavior, ISystem>> optionalSystemFactories =
-      new ArrayList<Function<CtBehavior, ISystem>>() {{
+  private final static List<Function<HookMethod, ISystem>> optionalSystemFactories =
+      new ArrayList<Function<HookMethod, ISystem>>() {{
           add(CallbackOnSystem::from);
           add(ExcludeReceiverSystem::from);
           add(ArgumentArraySystem::from);
@@ -35,17 +38,25 @@ public class Hook {
   private List<ISystem> optionalSystems;
   private Parameters staticParameters = new Parameters();
   private Parameters hookParameters;
-  private CtBehavior hookBehavior;
+  private HookMethod hookMethod;
   private String uniqueKey = "";
 
   private Hook( SourceMethodSystem sourceSystem,
                 List<ISystem> optionalSystems,
-                CtBehavior hookBehavior) {
+                HookMethod hookMethod) {
     this.sourceSystem = sourceSystem;
     this.optionalSystems = optionalSystems;
-    this.hookBehavior = hookBehavior;
-    this.hookParameters = new Parameters(hookBehavior);
-    this.uniqueKey = (String) AnnotationUtil.getValue(hookBehavior, Unique.class, "");
+    this.hookMethod = hookMethod;
+    this.hookParameters = new Parameters();
+    this.uniqueKey = (String) AnnotationUtil.getValue(hookMethod, Unique.class, "");
+
+    final List<String> parameterTypes = hookMethod.getParameterTypes();
+    for (int i = 0; i < parameterTypes.size(); ++i) {
+      this.hookParameters.add(new Value()
+          .setClassType(parameterTypes.get(i))
+          .setName("p" + i)
+          .setKind("req"));
+    }
 
     this.buildParameters();
   }
@@ -56,9 +67,18 @@ public class Hook {
    * @return If hookBehavior is a valid hook, return a new Hook object. Otherwise, null.
    */
   public static Hook from(CtBehavior hookBehavior) {
+    return from(HookMethod.from(hookBehavior));
+  }
+
+  /**
+   * Creates a Hook from a hook method, such as one read from the hook index.
+   *
+   * @return If hookMethod is a valid hook, return a new Hook object. Otherwise, null.
+   */
+  public static Hook from(HookMethod hookMethod) {
     SourceMethodSystem sourceSystem = null;
-    for (Function<CtBehavior, ISystem> factoryFn : requiredHookSystemFactories) {
-      sourceSystem = (SourceMethodSystem) factoryFn.apply(hookBehavior);
+    for (Function<HookMethod, ISystem> factoryFn : requiredHookSystemFactories) {
+      sourceSystem = (SourceMethodSystem) factoryFn.apply(hookMethod);
       if (sourceSystem != null) {
         break;
       }
@@ -70,11 +90,11 @@ public class Hook {
 
     List<ISystem> optionalSystems = optionalSystemFactories
         .stream()
-        .map(factoryFn -> factoryFn.apply(hookBehavior))
+        .map(factoryFn -> factoryFn.apply(hookMethod))
         .filter(Objects::nonNull)
         .collect(Collectors.toList());
 
-    Hook hook = new Hook(sourceSystem, optionalSystems, hookBehavior);
+    Hook hook = new Hook(sourceSystem, optionalSystems, hookMethod);
     for (ISystem optionalSystem : optionalSystems) {
       if (!optionalSystem.validate(hook)) {
         Logger.println("hook "
@@ -89,11 +109,11 @@ public class Hook {
   }
 
   public void buildParameters() {
-    this.sourceSystem.mutateStaticParameters(this.hookBehavior, this.staticParameters);
+    this.sourceSystem.mutateStaticParameters(this.hookMethod, this.staticParameters);
     this.optionalSystems
         .stream()
         .sorted(Comparator.comparingInt(ISystem::getParameterPriority))
-        .forEach(system -> system.mutateStaticParameters(this.hookBehavior, this.staticParameters));
+        .forEach(system -> system.mutateStaticParameters(this.hookMethod, this.staticParameters));
   }
 
   public Parameters getRuntimeParameters(HookBinding binding) {
@@ -108,7 +128,7 @@ public class Hook {
     return runtimeParameters;
   }
 
-  public HookSite prepare(CtBehavior targetBehavior) {
+  public HookSite prepare(CtBehavior targetBehavior, ClassLoader loader) {
     if (targetBehavior instanceof CtConstructor) {
       return null;
     }
@@ -117,13 +137,12 @@ public class Hook {
       return null;
     }
 
-    Integer behaviorOrdinal = eventTemplateRegistry.register(targetBehavior);
+    Integer behaviorOrdinal = eventTemplateRegistry.register(targetBehavior, loader);
     if (behaviorOrdinal < 0) {
       return null;
     }
 
     HookBinding binding = new HookBinding(this, targetBehavior, behaviorOrdinal);
-    Parameters behaviorParameters = new Parameters(targetBehavior);
     for (ISystem system : this.optionalSystems) {
       if (!system.validate(binding)) {
         return null;
@@ -132,10 +151,21 @@ public class Hook {
 
     Parameters runtimeParameters = this.getRuntimeParameters(binding);
 
-    return new HookSite(this, behaviorOrdinal, runtimeParameters);
+    return new HookSite(this,
+        behaviorOrdinal,
+        EventTemplateRegistry.getBehaviorKey(targetBehavior),
+        runtimeParameters);
   }
 
-  public static void apply(CtBehavior targetBehavior, List<HookSite> hookSites) {
+  /**
+   * Compiles hook sites into a behavior.
+   * @param targetBehavior The behavior to be hooked
+   * @param hookSites The hook sites to be applied
+   * @param outline Whether to compile the hook code into helper methods of the declaring class, see
+   *                {@link HookOutliner}. Must be {@code false} if the class is being redefined,
+   *                since methods can't be added to a loaded class.
+   */
+  public static void apply(CtBehavior targetBehavior, List<HookSite> hookSites, boolean outline) {
     final CtClass returnType = getReturnType(targetBehavior);
     final Boolean returnsVoid = (returnType == CtClass.voidType);
 
@@ -155,18 +185,26 @@ public class Hook {
           .map(hs -> hs.getUniqueKey())
           .distinct()
           .map(uniqueKey -> (""
-            + "com.appland.appmap.process.ThreadLock.current().lockUnique(\""
-            + uniqueKey
-            + "\");"))
+            + "com.appland.appmap.process.ThreadLock.current().lockUnique("
+            + ThreadLock.uniqueKeyIndex(uniqueKey)
+            + ");"))
           .collect(Collectors.joining("\n"));
 
     try {
-      targetBehavior.insertBefore(
-          beforeSrcBlock(uniqueLocks,
-            invocations[MethodEvent.METHOD_INVOCATION.getIndex()]));
-
-      targetBehavior.insertAfter(
-          afterSrcBlock(invocations[MethodEvent.METHOD_RETURN.getIndex()]));
+      final CtClass exceptionType = ClassPool.getDefault().get("java.lang.Exception");
+      final String beforeSrc = beforeSrcBlock(uniqueLocks,
+          invocations[MethodEvent.METHOD_INVOCATION.getIndex()]);
+      final String afterSrc = afterSrcBlock(invocations[MethodEvent.METHOD_RETURN.getIndex()]);
+
+      HookOutliner outliner = null;
+      if (outline) {
+        outliner = new HookOutliner(targetBehavior);
+        outliner.insertBefore(beforeSrc);
+        outliner.insertAfter(afterSrc, returnType);
+      } else {
+        targetBehavior.insertBefore(beforeSrc);
+        targetBehavior.insertAfter(afterSrc);
+      }
 
       if (returnsVoid) {
         targetBehavior.addCatch("{"
@@ -184,10 +222,25 @@ public class Hook {
             ClassPool.getDefault().get("com.appland.appmap.process.ExitEarly"));
       }
 
-      targetBehavior.addCatch(
-          catchSrcBlock(invocations[MethodEvent.METHOD_EXCEPTION.getIndex()]),
-          ClassPool.getDefault().get("java.lang.Exception"));
-      
+      if (outliner != null) {
+        outliner.addCatch(exceptionSrcBlock(invocations[MethodEvent.METHOD_EXCEPTION.getIndex()]),
+            exceptionType);
+      } else {
+        targetBehavior.addCatch(
+            catchSrcBlock(invocations[MethodEvent.METHOD_EXCEPTION.getIndex()]),
+            exceptionType);
+      }
+
+      if (Properties.HookDispatch.equals(Properties.DispatchInvokeDynamic)
+          && InvokeDynamicRewriter.supports(targetBehavior.getDeclaringClass())) {
+        if (outliner != null) {
+          for (CtBehavior helper : outliner.getHelpers()) {
+            InvokeDynamicRewriter.rewrite(helper, hookSites);
+          }
+        } else {
+          InvokeDynamicRewriter.rewrite(targetBehavior, hookSites);
+        }
+      }
     } catch (CannotCompileException e) {
       if (Properties.DebugHooks) {
         Logger.println("failed to compile");
@@ -202,6 +255,9 @@ public class Hook {
     } catch (NotFoundException e) {
       Logger.println("failed to find class\n");
       Logger.println(e);
+    } catch (BadBytecode e) {
+      Logger.println("failed to rewrite hooks as invokedynamic");
+      Logger.println(e);
     }
   }
 
@@ -230,6 +286,14 @@ public class Hook {
         + "}";
   }
 
+  private static String exceptionSrcBlock(String... invocations) {
+    final String allInvocations = safeConcatStrings(invocations);
+    return "{"
+        + allInvocations
+        + "com.appland.appmap.process.ThreadLock.current().exit();"
+        + "}";
+  }
+
   private static String catchSrcBlock(String... invocations) {
     final String allInvocations = safeConcatStrings(invocations);
     return "{"
@@ -243,6 +307,15 @@ public class Hook {
     return this.sourceSystem.getKey();
   }
 
+  /**
+   * Checks whether this hook could apply to any behavior of a class.
+   * @param ctClass The class being transformed
+   * @return {@code false} if the hook can't apply to the class. Otherwise, {@code true}.
+   */
+  public Boolean matchClass(CtClass ctClass) {
+    return this.sourceSystem.matchClass(ctClass);
+  }
+
   public String toString() {
     return String.format("%s(%s)", this.sourceSystem.toString(), this.hookParameters.toString());
   }
@@ -255,8 +328,8 @@ public class Hook {
     return this.hookParameters;
   }
 
-  public CtBehavior getBehavior() {
-    return this.hookBehavior;
+  public HookMethod getHookMethod() {
+    return this.hookMethod;
   }
   
   public void validate() throws HookValidationException {
@@ -3,37 +3,46 @@ package com.appland.appmap.transform.annotations;
 import java.lang.reflect.Modifier;
 
 import com.appland.appmap.config.AppMapConfig;
-import com.appland.appmap.util.StringUtil;
 
 import javassist.CtBehavior;
 
 public class HookAnnotatedSystem extends SourceMethodSystem {
   private String annotationClass;
 
-  private HookAnnotatedSystem(CtBehavior behavior, String annotationClass) {
-    super(behavior);
+  private HookAnnotatedSystem(HookMethod hookMethod, String annotationClass) {
+    super(hookMethod);
 
     this.annotationClass = annotationClass;
   }
 
   /**
    * Factory method. Reads any relevant annotation information and caches it.
-   * @param behavior The hook behavior
+   * @param hookMethod The hook method
    * @return A new {@code HookAnnotatedSystem} if {@link HookAnnotated} is found. Otherwise,
    *         {@code null}.
    */
-  public static ISystem from(CtBehavior behavior) {
-    String annotatedClass = (String) AnnotationUtil.getValue(behavior, HookAnnotated.class, null);
+  public static ISystem from(HookMethod hookMethod) {
+    String annotatedClass = (String) AnnotationUtil.getValue(hookMethod,
+        HookAnnotated.class,
+        null);
     if (annotatedClass == null) {
       return null;
     }
-    return new HookAnnotatedSystem(behavior, annotatedClass);
+    return new HookAnnotatedSystem(hookMethod, annotatedClass);
+  }
+
+  public String getAnnotationClass() {
+    return this.annotationClass;
   }
 
   @Override
   public Boolean match(CtBehavior behavior) {
-    final Boolean isExplicitlyExcluded = AppMapConfig.get().excludes(StringUtil.canonicalName(behavior));
+    if (!behavior.hasAnnotation(this.annotationClass)) {
+      return false;
+    }
 
-    return behavior.hasAnnotation(this.annotationClass) && !isExplicitlyExcluded;
+    return !AppMapConfig.get().excludes(behavior.getDeclaringClass().getName(),
+        Modifier.isStatic(behavior.getModifiers()),
+        behavior.getMethodInfo().getName());
   }
 }
@@ -9,13 +9,13 @@ import javassist.CtBehavior;
 public class HookBinding {
   private final Hook hook;
   private final CtBehavior targetBehavior;
-  private final Parameters targetParameters;
+  // Looked up on first use, as it requires resolving the type of each parameter
+  private Parameters targetParameters;
   private final Integer behaviorOrdinal;
 
   public HookBinding(Hook hook, CtBehavior targetBehavior, Integer behaviorOrdinal) {
     this.hook = hook;
     this.targetBehavior = targetBehavior;
-    this.targetParameters = new Parameters(this.targetBehavior);
     this.behaviorOrdinal = behaviorOrdinal;
   }
 
@@ -28,6 +28,9 @@ public class HookBinding {
   } 
 
   public Parameters getTargetParameters() {
+    if (this.targetParameters == null) {
+      this.targetParameters = new Parameters(this.targetBehavior);
+    }
     return this.targetParameters;
   }
 }
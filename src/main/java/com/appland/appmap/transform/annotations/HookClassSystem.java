@@ -11,40 +11,37 @@ public class HookClassSystem extends SourceMethodSystem {
   private String targetMethod = null;
   private Boolean ignoresChildren = IGNORE_CHILDREN_DEFAULT;
 
-  private HookClassSystem(CtBehavior behavior) {
-    super(behavior);
+  private HookClassSystem(HookMethod hookMethod) {
+    super(hookMethod);
   }
 
   /**
    * Factory method. Reads any relevant annotation information and caches it.
-   * @param behavior The hook behavior
+   * @param hookMethod The hook method
    * @return A new {@code HookClassSystem} if {@link HookClass} is found. Otherwise, {@code null}.
    */
-  public static ISystem from(CtBehavior behavior) {
+  public static ISystem from(HookMethod hookMethod) {
     try {
-      HookClass hookClass = (HookClass) behavior.getAnnotation(HookClass.class);
-      if (hookClass == null) {
-        hookClass = (HookClass) behavior.getDeclaringClass().getAnnotation(HookClass.class);
-      }
-
-      if (hookClass == null) {
+      String targetClass = (String) AnnotationUtil.getValue(hookMethod, HookClass.class, null);
+      if (targetClass == null) {
         return null;
       }
 
-      if (hookClass.value() == null) {
-        return null;
-      }
+      String targetMethod = (String) AnnotationUtil.getValue(hookMethod,
+          HookClass.class,
+          "method",
+          null);
 
-      Boolean ignoresChildren = (Boolean) AnnotationUtil.getValue(behavior,
+      Boolean ignoresChildren = (Boolean) AnnotationUtil.getValue(hookMethod,
           IgnoreChildren.class,
           IGNORE_CHILDREN_DEFAULT);
 
-      HookClassSystem system = new HookClassSystem(behavior);
+      HookClassSystem system = new HookClassSystem(hookMethod);
       system.ignoresChildren = ignoresChildren;
-      system.targetClass = hookClass.value();
-      system.targetMethod = hookClass.method() == null || hookClass.method().isEmpty() 
-          ? behavior.getName()
-          : hookClass.method();
+      system.targetClass = targetClass;
+      system.targetMethod = targetMethod == null || targetMethod.isEmpty()
+          ? hookMethod.getName()
+          : targetMethod;
 
       return system;
     } catch (Exception e) {
@@ -74,4 +71,8 @@ public class HookClassSystem extends SourceMethodSystem {
   public String getKey() {
     return this.targetMethod;
   }
+
+  public String getTargetMethod() {
+    return this.targetMethod;
+  }
 }
@@ -4,57 +4,108 @@ import com.appland.appmap.process.conditions.Condition;
 import com.appland.appmap.util.Logger;
 
 import javassist.CtBehavior;
+import javassist.CtClass;
 
-import java.lang.reflect.Method;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Predicate;
 
 public class HookConditionSystem extends SourceMethodSystem {
-  private Method conditionMethod = null;
+  private final Class<?> conditionClass;
+  private final Predicate<CtBehavior> condition;
+  private final Predicate<CtClass> classCondition;
 
-  private HookConditionSystem(CtBehavior behavior, Method conditionMethod) {
-    super(behavior);
+  private HookConditionSystem(HookMethod hookMethod,
+                              Class<?> conditionClass,
+                              Predicate<CtBehavior> condition,
+                              Predicate<CtClass> classCondition) {
+    super(hookMethod);
 
-    this.conditionMethod = conditionMethod;
+    this.conditionClass = conditionClass;
+    this.condition = condition;
+    this.classCondition = classCondition;
   }
 
   /**
    * Factory method. Reads any relevant annotation information and caches it.
-   * @param behavior The hook behavior
+   * @param hookMethod The hook method
    * @return A new {@code HookConditionSystem} if {@link HookCondition} is found. Otherwise,
    *         {@code null}.
    */
-  public static ISystem from(CtBehavior behavior) {
+  public static ISystem from(HookMethod hookMethod) {
     try {
-      HookCondition hookCondition = (HookCondition) behavior.getAnnotation(HookCondition.class);
-      if (hookCondition == null) {
-        hookCondition = (HookCondition) behavior
-            .getDeclaringClass()
-            .getAnnotation(HookCondition.class);
-      }
-
-      if (hookCondition == null) {
+      Class<?> conditionValue = (Class<?>) AnnotationUtil.getValue(hookMethod,
+          HookCondition.class,
+          null);
+      if (conditionValue == null) {
         return null;
       }
 
-      Class<? extends Condition> conditionClass = hookCondition.value();
-      if (conditionClass == null) {
-        return null;
-      }
+      Class<? extends Condition> conditionClass = conditionValue.asSubclass(Condition.class);
 
-      Method conditionMethod = conditionClass.getMethod("match", CtBehavior.class);
-      if (conditionMethod == null) {
-        return null;
+      Predicate<CtBehavior> condition = bind(conditionClass, "match", CtBehavior.class);
+
+      Predicate<CtClass> classCondition = null;
+      try {
+        conditionClass.getMethod("matchClass", CtClass.class);
+        classCondition = bind(conditionClass, "matchClass", CtClass.class);
+      } catch (NoSuchMethodException e) {
+        // The condition can't reject a class as a whole
       }
 
-      return new HookConditionSystem(behavior, conditionMethod);
-    } catch (Exception e) {
+      return new HookConditionSystem(hookMethod, conditionClass, condition, classCondition);
+    } catch (Throwable e) {
       return null;
     }
   }
 
+  /**
+   * Binds a static {@code Boolean} method of a condition to a {@link Predicate}, so that it's
+   * called directly rather than through reflection.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> Predicate<T> bind(Class<?> conditionClass,
+                                       String methodName,
+                                       Class<T> parameterType) throws Throwable {
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    final MethodHandle method = lookup.findStatic(conditionClass,
+        methodName,
+        MethodType.methodType(Boolean.class, parameterType));
+    final CallSite callSite = LambdaMetafactory.metafactory(lookup,
+        "test",
+        MethodType.methodType(Predicate.class),
+        MethodType.methodType(boolean.class, Object.class),
+        method,
+        MethodType.methodType(boolean.class, parameterType));
+    return (Predicate<T>) callSite.getTarget().invoke();
+  }
+
+  public Class<?> getConditionClass() {
+    return this.conditionClass;
+  }
+
+  @Override
+  public Boolean matchClass(CtClass ctClass) {
+    if (this.classCondition == null) {
+      return true;
+    }
+
+    try {
+      return this.classCondition.test(ctClass);
+    } catch (Exception e) {
+      Logger.printf("class match failed due to %s exception\n", e.getClass().getName());
+      Logger.println(e);
+      return true;
+    }
+  }
+
   @Override
   public Boolean match(CtBehavior behavior) {
     try {
-      return (Boolean) this.conditionMethod.invoke(null, behavior);
+      return this.condition.test(behavior);
     } catch (Exception e) {
       Logger.printf("match failed due to %s exception\n", e.getClass().getName());
       Logger.println(e);
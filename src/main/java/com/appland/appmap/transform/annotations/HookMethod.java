@@ -0,0 +1,163 @@
+package com.appland.appmap.transform.annotations;
+
+import javassist.CtBehavior;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.BooleanMemberValue;
+import javassist.bytecode.annotation.ClassMemberValue;
+import javassist.bytecode.annotation.EnumMemberValue;
+import javassist.bytecode.annotation.MemberValue;
+import javassist.bytecode.annotation.StringMemberValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hook method, along with the hook annotations configuring it. Annotations are keyed by their
+ * simple name, and hold the values of the members set explicitly. An annotation on the declaring
+ * class applies to the method, unless the method carries the same annotation.
+ *
+ * <p>Hook methods are read from the hook index generated at build time, so that the agent doesn't
+ * need to load the hook classes to find their annotations.
+ */
+public class HookMethod {
+  static final String ANNOTATION_PACKAGE = HookMethod.class.getPackage().getName() + ".";
+
+  private final String className;
+  private final String methodName;
+  private final String descriptor;
+  private final Map<String, Map<String, String>> annotations;
+
+  /**
+   * @param className The name of the class declaring the hook method
+   * @param methodName The name of the hook method
+   * @param descriptor The descriptor of the hook method
+   * @param annotations The members set for each hook annotation, keyed by its simple name
+   */
+  public HookMethod(String className,
+                    String methodName,
+                    String descriptor,
+                    Map<String, Map<String, String>> annotations) {
+    this.className = className;
+    this.methodName = methodName;
+    this.descriptor = descriptor;
+    this.annotations = annotations;
+  }
+
+  /**
+   * Reads a hook method and its annotations from a behavior.
+   * @param behavior The hook behavior
+   * @return A new HookMethod
+   */
+  public static HookMethod from(CtBehavior behavior) {
+    final Map<String, Map<String, String>> annotations =
+        new HashMap<String, Map<String, String>>();
+    readAnnotations((AnnotationsAttribute) behavior
+        .getDeclaringClass()
+        .getClassFile2()
+        .getAttribute(AnnotationsAttribute.visibleTag), annotations);
+    readAnnotations((AnnotationsAttribute) behavior
+        .getMethodInfo2()
+        .getAttribute(AnnotationsAttribute.visibleTag), annotations);
+
+    return new HookMethod(behavior.getDeclaringClass().getName(),
+        behavior.getMethodInfo2().getName(),
+        behavior.getSignature(),
+        annotations);
+  }
+
+  private static void readAnnotations(AnnotationsAttribute attribute,
+                                      Map<String, Map<String, String>> annotations) {
+    if (attribute == null) {
+      return;
+    }
+
+    for (Annotation annotation : attribute.getAnnotations()) {
+      final String typeName = annotation.getTypeName();
+      if (!typeName.startsWith(ANNOTATION_PACKAGE)) {
+        continue;
+      }
+
+      final Map<String, String> members = new HashMap<String, String>();
+      if (annotation.getMemberNames() != null) {
+        for (Object memberName : annotation.getMemberNames()) {
+          final MemberValue value = annotation.getMemberValue((String) memberName);
+          members.put((String) memberName, toString(value));
+        }
+      }
+      annotations.put(typeName.substring(ANNOTATION_PACKAGE.length()), members);
+    }
+  }
+
+  private static String toString(MemberValue value) {
+    if (value instanceof StringMemberValue) {
+      return ((StringMemberValue) value).getValue();
+    } else if (value instanceof BooleanMemberValue) {
+      return String.valueOf(((BooleanMemberValue) value).getValue());
+    } else if (value instanceof EnumMemberValue) {
+      return ((EnumMemberValue) value).getValue();
+    } else if (value instanceof ClassMemberValue) {
+      return ((ClassMemberValue) value).getValue();
+    }
+    return value.toString();
+  }
+
+  public String getClassName() {
+    return this.className;
+  }
+
+  public String getName() {
+    return this.methodName;
+  }
+
+  public String getDescriptor() {
+    return this.descriptor;
+  }
+
+  /**
+   * @param annotationClass A hook annotation
+   * @return The members set explicitly for the annotation, or {@code null} if the hook method
+   *         doesn't carry it
+   */
+  Map<String, String> getAnnotation(Class<?> annotationClass) {
+    return this.annotations.get(annotationClass.getSimpleName());
+  }
+
+  /**
+   * @return The members set for each hook annotation, keyed by its simple name
+   */
+  public Map<String, Map<String, String>> getAnnotations() {
+    return Collections.unmodifiableMap(this.annotations);
+  }
+
+  /**
+   * Lists the types of the hook method's parameters, read from its descriptor.
+   * @return The Java name of each parameter type, e.g. {@code java.lang.Object[]}
+   */
+  public List<String> getParameterTypes() {
+    final List<String> parameterTypes = new ArrayList<String>();
+    int index = 1;
+    while (this.descriptor.charAt(index) != ')') {
+      int end = index;
+      while (this.descriptor.charAt(end) == '[') {
+        end++;
+      }
+      end = this.descriptor.charAt(end) == 'L'
+          ? this.descriptor.indexOf(';', end) + 1
+          : end + 1;
+
+      parameterTypes.add(Descriptor.toClassName(this.descriptor.substring(index, end)));
+      index = end;
+    }
+    return parameterTypes;
+  }
+
+  @Override
+  public String toString() {
+    return this.className + "." + this.methodName + this.descriptor;
+  }
+}
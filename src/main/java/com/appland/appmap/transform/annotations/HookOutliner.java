@@ -0,0 +1,175 @@
+package com.appland.appmap.transform.annotations;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.MethodInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compiles the hook code of a behavior into synthetic helper methods declared by the same class,
+ * leaving the behavior itself with a single call for each of its entry, return and exception
+ * blocks. This keeps small instrumented methods under the JIT's inlining thresholds.
+ *
+ * <p>A helper takes the same parameters as the behavior, and is an instance method if the behavior
+ * is, so that {@code this} and {@code $1}..{@code $n} mean the same thing in the hook code. The
+ * return value or exception, if needed, is passed as an extra trailing parameter.
+ *
+ * <p>Helpers are named after the behavior and numbered within the class, so that transforming the
+ * same class again, in another run or another loader, gives them the same names.
+ */
+class HookOutliner {
+  private static final String HELPER_PREFIX = "appmap$";
+  private static final Pattern ARGUMENTS = Pattern.compile("(,\\s*)?(?<![\\w$])\\$\\$");
+  private static final Pattern RESULT = Pattern.compile("(?<![\\w$])\\$(_|e)(?![\\w$])");
+
+  private final CtBehavior targetBehavior;
+  private final CtClass[] parameterTypes;
+  private final List<CtMethod> helpers = new ArrayList<CtMethod>();
+
+  HookOutliner(CtBehavior targetBehavior) throws NotFoundException {
+    this.targetBehavior = targetBehavior;
+    this.parameterTypes = targetBehavior.getParameterTypes();
+  }
+
+  /**
+   * @return The helper methods added so far
+   */
+  List<CtMethod> getHelpers() {
+    return this.helpers;
+  }
+
+  /**
+   * Compiles code to be run on entry to the behavior.
+   * @param src The hook code
+   */
+  void insertBefore(String src) throws CannotCompileException {
+    final CtMethod helper = this.addHelper("before", src, null);
+    this.targetBehavior.insertBefore(helper.getName() + "($$);");
+  }
+
+  /**
+   * Compiles code to be run when the behavior returns normally.
+   * @param src The hook code, which may refer to the return value as {@code $_}
+   * @param returnType The return type of the behavior
+   */
+  void insertAfter(String src, CtClass returnType) throws CannotCompileException {
+    if (returnType == CtClass.voidType) {
+      final CtMethod helper = this.addHelper("after", src, null);
+      this.targetBehavior.insertAfter(helper.getName() + "($$);");
+    } else {
+      final CtMethod helper = this.addHelper("after", src, returnType);
+      this.targetBehavior.insertAfter(helper.getName() + "($$, $_);");
+    }
+  }
+
+  /**
+   * Compiles code to be run when the behavior throws. The exception is rethrown afterwards.
+   * @param src The hook code, which may refer to the exception as {@code $e}
+   * @param exceptionType The type of exception caught
+   */
+  void addCatch(String src, CtClass exceptionType) throws CannotCompileException {
+    final CtMethod helper = this.addHelper("exception", src, exceptionType);
+    this.targetBehavior.addCatch("{" + helper.getName() + "($$, $e); throw $e;}", exceptionType);
+  }
+
+  private CtMethod addHelper(String name, String src, CtClass resultType)
+      throws CannotCompileException {
+    final CtClass declaringClass = this.targetBehavior.getDeclaringClass();
+    final int parameterCount = this.parameterTypes.length;
+
+    CtClass[] helperParameterTypes = this.parameterTypes;
+    String body = src;
+    if (resultType != null) {
+      helperParameterTypes = new CtClass[parameterCount + 1];
+      System.arraycopy(this.parameterTypes, 0, helperParameterTypes, 0, parameterCount);
+      helperParameterTypes[parameterCount] = resultType;
+      body = rewriteResultReferences(src, parameterCount);
+    }
+
+    int modifiers = Modifier.PRIVATE;
+    if (Modifier.isStatic(this.targetBehavior.getModifiers())) {
+      modifiers |= Modifier.STATIC;
+    }
+
+    final CtMethod helper = CtNewMethod.make(modifiers,
+        CtClass.voidType,
+        this.helperName(name),
+        helperParameterTypes,
+        new CtClass[0],
+        body,
+        declaringClass);
+    final MethodInfo methodInfo = helper.getMethodInfo();
+    methodInfo.setAccessFlags(methodInfo.getAccessFlags() | AccessFlag.SYNTHETIC);
+    declaringClass.addMethod(helper);
+
+    this.helpers.add(helper);
+    return helper;
+  }
+
+  /**
+   * Names a helper after the behavior and the kind of hook, followed by the first number not
+   * already taken in the declaring class. Overloads of the behavior get successive numbers.
+   */
+  private String helperName(String kind) {
+    final CtClass declaringClass = this.targetBehavior.getDeclaringClass();
+    final MethodInfo methodInfo = this.targetBehavior.getMethodInfo();
+    String behaviorName = this.targetBehavior.getName();
+    if (methodInfo.isConstructor()) {
+      behaviorName = "init";
+    } else if (methodInfo.isStaticInitializer()) {
+      behaviorName = "clinit";
+    }
+    final String prefix = HELPER_PREFIX + behaviorName + "$" + kind + "$";
+
+    int index = 0;
+    while (hasDeclaredMethod(declaringClass, prefix + index)) {
+      index++;
+    }
+    return prefix + index;
+  }
+
+  private static boolean hasDeclaredMethod(CtClass declaringClass, String name) {
+    try {
+      declaringClass.getDeclaredMethod(name);
+      return true;
+    } catch (NotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Rewrites hook code for a helper taking the result as parameter {@code parameterCount + 1}.
+   * {@code $$} would include the result as well, so it's spelled out as the behavior's parameters.
+   */
+  static String rewriteResultReferences(String src, int parameterCount) {
+    final String arguments = IntStream.rangeClosed(1, parameterCount)
+        .mapToObj(i -> "$" + i)
+        .collect(Collectors.joining(", "));
+
+    final StringBuffer buffer = new StringBuffer();
+    final Matcher argumentsMatcher = ARGUMENTS.matcher(src);
+    while (argumentsMatcher.find()) {
+      final String separator = argumentsMatcher.group(1);
+      final String replacement = parameterCount == 0
+          ? ""
+          : (separator == null ? "" : separator) + arguments;
+      argumentsMatcher.appendReplacement(buffer, Matcher.quoteReplacement(replacement));
+    }
+    argumentsMatcher.appendTail(buffer);
+
+    return RESULT.matcher(buffer.toString())
+        .replaceAll(Matcher.quoteReplacement("$" + (parameterCount + 1)));
+  }
+}
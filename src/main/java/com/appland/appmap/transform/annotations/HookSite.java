@@ -1,6 +1,8 @@
 package com.appland.appmap.transform.annotations;
 
 import com.appland.appmap.output.v1.Parameters;
+import com.appland.appmap.process.ThreadLock;
+import com.appland.appmap.record.EventTemplateRegistry;
 
 import java.util.stream.Collectors;
 
@@ -10,22 +12,32 @@ import java.util.stream.Collectors;
  */
 public class HookSite {
   private final Hook hook;
+  private final Integer behaviorOrdinal;
+  private final String behaviorKey;
   private final String hookInvocation;
   private final MethodEvent methodEvent;
   private final Boolean ignoresGlobalLock;
+  private final Boolean requiresRecording;
 
   /**
    * @param behaviorOrdinal Used to obtain a template for the event from the event template registry.
+   * @param behaviorKey Identifies the hooked behavior, see {@link EventTemplateRegistry#getBehaviorKey}
    * @param parameters Parameters that will be reported in the AppMap.
    * @see com.appland.appmap.record.EventTemplateRegistry
    */
-  HookSite(Hook hook, Integer behaviorOrdinal, Parameters parameters) {
+  HookSite(Hook hook, Integer behaviorOrdinal, String behaviorKey, Parameters parameters) {
     this.methodEvent = hook.getMethodEvent();
     this.hook = hook;
+    this.behaviorOrdinal = behaviorOrdinal;
+    this.behaviorKey = behaviorKey;
     this.ignoresGlobalLock = (Boolean) AnnotationUtil.getValue(
-      hook.getBehavior(),
+      hook.getHookMethod(),
       ContinueHooking.class,
       false);
+    this.requiresRecording = (Boolean) AnnotationUtil.getValue(
+      hook.getHookMethod(),
+      RequiresRecording.class,
+      false);
 
     final String event = String.format("%s.get().cloneEventTemplate(%d, \"%s\")",
         "com.appland.appmap.record.EventTemplateRegistry",
@@ -45,27 +57,42 @@ public class HookSite {
     String invocation = hook.getSourceSystem().toString() + "(" + args + ");";
 
     if (!this.getUniqueKey().isEmpty()) {
-      invocation = "if (com.appland.appmap.process.ThreadLock.current().hasUniqueLock(\""
-          + this.getUniqueKey()
-          + "\")) {"
+      invocation = "if (com.appland.appmap.process.ThreadLock.current().hasUniqueLock("
+          + ThreadLock.uniqueKeyIndex(this.getUniqueKey())
+          + ")) {"
           + invocation
           + "}";
     }
 
-    if (this.ignoresGlobalLock()) {
-      this.hookInvocation = invocation;
-    } else {
-      this.hookInvocation = "if (com.appland.appmap.process.ThreadLock.current().lock()) {"
+    if (!this.ignoresGlobalLock()) {
+      invocation = "if (com.appland.appmap.process.ThreadLock.current().lock()) {"
         + invocation
         + "com.appland.appmap.process.ThreadLock.current().unlock();"
         + "}";
     }
+
+    if (this.requiresRecording()) {
+      // Checked first, so that nothing else is evaluated while idle
+      invocation = "if (com.appland.appmap.record.Recorder.isRecording()) {"
+        + invocation
+        + "}";
+    }
+
+    this.hookInvocation = invocation;
   }
 
   public String getHookInvocation() {
     return this.hookInvocation;
   }
 
+  public Integer getBehaviorOrdinal() {
+    return this.behaviorOrdinal;
+  }
+
+  public String getBehaviorKey() {
+    return this.behaviorKey;
+  }
+
   public MethodEvent getMethodEvent() {
     return this.methodEvent;
   }
@@ -81,4 +108,8 @@ public class HookSite {
   public Boolean ignoresGlobalLock() {
     return this.ignoresGlobalLock;
   }
+
+  public Boolean requiresRecording() {
+    return this.requiresRecording;
+  }
 }
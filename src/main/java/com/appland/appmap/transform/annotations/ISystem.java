@@ -15,13 +15,13 @@ import javassist.CtBehavior;
  * @see ArgumentArray
  */
 public interface ISystem {
-  public static ISystem from(CtBehavior behavior) {
+  public static ISystem from(HookMethod hookMethod) {
     return null;
   }
 
   public Boolean match(CtBehavior behavior);
 
-  public void mutateStaticParameters(CtBehavior behavior, Parameters params);
+  public void mutateStaticParameters(HookMethod hookMethod, Parameters params);
 
   public void mutateRuntimeParameters(HookBinding binding, Parameters runtimeParameters);
 
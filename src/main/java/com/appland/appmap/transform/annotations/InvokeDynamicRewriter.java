@@ -0,0 +1,179 @@
+package com.appland.appmap.transform.annotations;
+
+import com.appland.appmap.config.Properties;
+import com.appland.appmap.util.Logger;
+
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.BootstrapMethodsAttribute;
+import javassist.bytecode.BootstrapMethodsAttribute.BootstrapMethod;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites the hook invocations compiled by {@link Hook#apply} into {@code invokedynamic}
+ * instructions bootstrapped by {@link com.appland.appmap.process.HookDispatch}. Javassist can't
+ * compile {@code invokedynamic} from source, so the hooks are compiled as static calls first and
+ * then patched in place.
+ *
+ * <p>Only hook sites marked {@link RequiresRecording} are rewritten, along with their
+ * {@code Recorder.isRecording()} guard. Other hooks, such as those starting a recording, must
+ * always run and remain static calls.
+ */
+class InvokeDynamicRewriter {
+  private static final String DISPATCH_CLASS = "com.appland.appmap.process.HookDispatch";
+  private static final String RECORDER_CLASS = "com.appland.appmap.record.Recorder";
+  private static final String GUARD_METHOD = "isRecording";
+  private static final String GUARD_DESCRIPTOR = "()Z";
+  private static final String BOOTSTRAP_RECORDING_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;"
+      + "Ljava/lang/String;"
+      + "Ljava/lang/invoke/MethodType;)"
+      + "Ljava/lang/invoke/CallSite;";
+  private static final String BOOTSTRAP_HOOK_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;"
+      + "Ljava/lang/String;"
+      + "Ljava/lang/invoke/MethodType;"
+      + "Ljava/lang/invoke/MethodHandle;)"
+      + "Ljava/lang/invoke/CallSite;";
+
+  // invokestatic is three bytes long, invokedynamic is five
+  private static final int INVOKESTATIC_LENGTH = 3;
+  private static final int INVOKEDYNAMIC_LENGTH = 5;
+
+  private InvokeDynamicRewriter() { }
+
+  /**
+   * Checks whether hooks in the given class can be dispatched through {@code invokedynamic}.
+   * @param ctClass The class being transformed
+   * @return {@code true} if the class file version supports {@code invokedynamic}
+   */
+  static Boolean supports(CtClass ctClass) {
+    return ctClass.getClassFile2().getMajorVersion() >= ClassFile.JAVA_7;
+  }
+
+  /**
+   * Rewrites the hook invocations of an instrumented behavior.
+   * @param targetBehavior A behavior which has already had the hook sites applied
+   * @param hookSites The hook sites applied
+   * @throws BadBytecode If the method body can't be rewritten
+   */
+  static void rewrite(CtBehavior targetBehavior, List<HookSite> hookSites) throws BadBytecode {
+    final Set<String> hookMethods = new HashSet<String>();
+    for (HookSite hookSite : hookSites) {
+      if (!hookSite.requiresRecording()) {
+        continue;
+      }
+
+      final HookMethod hookMethod = hookSite.getHook().getHookMethod();
+      hookMethods.add(hookMethod.getClassName()
+          + "."
+          + hookMethod.getName()
+          + hookMethod.getDescriptor());
+    }
+
+    if (hookMethods.isEmpty()) {
+      return;
+    }
+
+    final CtClass declaringClass = targetBehavior.getDeclaringClass();
+    final ClassFile classFile = declaringClass.getClassFile();
+    final MethodInfo methodInfo = targetBehavior.getMethodInfo();
+    final ConstPool constPool = methodInfo.getConstPool();
+    final CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+    final List<BootstrapMethod> bootstrapMethods = getBootstrapMethods(classFile);
+    final int existingBootstrapMethods = bootstrapMethods.size();
+
+    int recordingBootstrapIndex = -1;
+    int rewritten = 0;
+    final CodeIterator iterator = codeAttribute.iterator();
+    while (iterator.hasNext()) {
+      final int pos = iterator.next();
+      if (iterator.byteAt(pos) != Opcode.INVOKESTATIC) {
+        continue;
+      }
+
+      final int methodRef = iterator.u16bitAt(pos + 1);
+      final String className = constPool.getMethodrefClassName(methodRef);
+      final String methodName = constPool.getMethodrefName(methodRef);
+      final String descriptor = constPool.getMethodrefType(methodRef);
+
+      int bootstrapIndex;
+      if (RECORDER_CLASS.equals(className)
+          && GUARD_METHOD.equals(methodName)
+          && GUARD_DESCRIPTOR.equals(descriptor)) {
+        if (recordingBootstrapIndex < 0) {
+          recordingBootstrapIndex = bootstrapMethods.size();
+          bootstrapMethods.add(new BootstrapMethod(
+              bootstrapMethodHandle(constPool, "bootstrapRecording", BOOTSTRAP_RECORDING_DESCRIPTOR),
+              new int[0]));
+        }
+        bootstrapIndex = recordingBootstrapIndex;
+      } else if (hookMethods.contains(className + "." + methodName + descriptor)) {
+        // the hook method itself is passed as a static argument
+        bootstrapIndex = bootstrapMethods.size();
+        bootstrapMethods.add(new BootstrapMethod(
+            bootstrapMethodHandle(constPool, "bootstrapHook", BOOTSTRAP_HOOK_DESCRIPTOR),
+            new int[] { constPool.addMethodHandleInfo(ConstPool.REF_invokeStatic, methodRef) }));
+      } else {
+        continue;
+      }
+
+      final int nameAndType = constPool.addNameAndTypeInfo(methodName, descriptor);
+      final int invokeDynamic = constPool.addInvokeDynamicInfo(bootstrapIndex, nameAndType);
+
+      // Branches to pos now land at the start of the gap. The gap may be padded beyond the length
+      // requested, so the instruction is written at its end, leaving any padding as leading NOPs.
+      final CodeIterator.Gap gap = iterator.insertGapAt(pos,
+          INVOKEDYNAMIC_LENGTH - INVOKESTATIC_LENGTH,
+          false);
+      final int instructionPos = gap.position + gap.length
+          - (INVOKEDYNAMIC_LENGTH - INVOKESTATIC_LENGTH);
+      iterator.writeByte(Opcode.INVOKEDYNAMIC, instructionPos);
+      iterator.write16bit(invokeDynamic, instructionPos + 1);
+      iterator.write16bit(0, instructionPos + 3);
+      rewritten++;
+    }
+
+    if (bootstrapMethods.size() > existingBootstrapMethods) {
+      classFile.addAttribute(new BootstrapMethodsAttribute(constPool,
+          bootstrapMethods.toArray(new BootstrapMethod[0])));
+    }
+
+    if (rewritten > 0) {
+      methodInfo.rebuildStackMapIf6(declaringClass.getClassPool(), classFile);
+    }
+
+    if (Properties.DebugHooks) {
+      Logger.printf("rewrote %d hook invocations in %s.%s as invokedynamic\n",
+          rewritten,
+          declaringClass.getName(),
+          targetBehavior.getName());
+    }
+  }
+
+  private static List<BootstrapMethod> getBootstrapMethods(ClassFile classFile) {
+    final BootstrapMethodsAttribute attribute =
+        (BootstrapMethodsAttribute) classFile.getAttribute(BootstrapMethodsAttribute.tag);
+    if (attribute == null) {
+      return new ArrayList<BootstrapMethod>();
+    }
+
+    return new ArrayList<BootstrapMethod>(Arrays.asList(attribute.getMethods()));
+  }
+
+  private static int bootstrapMethodHandle(ConstPool constPool, String name, String descriptor) {
+    final int dispatchClass = constPool.addClassInfo(DISPATCH_CLASS);
+    final int methodRef = constPool.addMethodrefInfo(dispatchClass, name, descriptor);
+    return constPool.addMethodHandleInfo(ConstPool.REF_invokeStatic, methodRef);
+  }
+}
@@ -0,0 +1,21 @@
+package com.appland.appmap.transform.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates a hook only has an effect while a recording session is active. The hooked method will
+ * skip the hook entirely, including building its {@link com.appland.appmap.output.v1.Event} and
+ * arguments, when nothing is being recorded.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface RequiresRecording {
+  /**
+   * @return {@code true} if the hook should be skipped while not recording. Otherwise,
+   *         {@code false}.
+   */
+  public boolean value() default true;
+}
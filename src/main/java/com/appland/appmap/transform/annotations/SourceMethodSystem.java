@@ -3,6 +3,7 @@ package com.appland.appmap.transform.annotations;
 import com.appland.appmap.output.v1.Parameters;
 import com.appland.appmap.output.v1.Value;
 import javassist.CtBehavior;
+import javassist.CtClass;
 
 public abstract class SourceMethodSystem extends BaseSystem {
   public static final String EVENT_TOKEN = "$evt";
@@ -10,10 +11,20 @@ public abstract class SourceMethodSystem extends BaseSystem {
   private String hookClass;
   private String hookMethod;
 
-  protected SourceMethodSystem(CtBehavior behavior) {
-    super(behavior);
-    this.hookClass = behavior.getDeclaringClass().getName();
-    this.hookMethod = behavior.getName();
+  protected SourceMethodSystem(HookMethod hookMethod) {
+    super(hookMethod);
+    this.hookClass = hookMethod.getClassName();
+    this.hookMethod = hookMethod.getName();
+  }
+
+  /**
+   * Checks whether this hook could match any behavior of a class, before its behaviors are
+   * enumerated.
+   * @param ctClass The class being transformed
+   * @return {@code false} if no behavior of the class can match. Otherwise, {@code true}.
+   */
+  public Boolean matchClass(CtClass ctClass) {
+    return true;
   }
 
   public Boolean match(CtBehavior behavior) {
@@ -30,7 +41,7 @@ public abstract class SourceMethodSystem extends BaseSystem {
   }
 
   @Override
-  public void mutateStaticParameters(CtBehavior hookBehavior, Parameters hookParameters) {
+  public void mutateStaticParameters(HookMethod hookMethod, Parameters hookParameters) {
     hookParameters.add(new Value().setName(EVENT_TOKEN));
   }
 
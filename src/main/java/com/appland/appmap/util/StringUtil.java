@@ -89,5 +89,49 @@ public class StringUtil {
                          Modifier.isStatic(behavior.getModifiers()) ,
                          behavior.getMethodInfo().getName());
   }
+
+  /**
+   * Checks whether an {@code Accept-Encoding} header allows gzip, i.e. lists {@code gzip} with a
+   * quality value above zero. If {@code gzip} isn't listed, {@code *} applies to it instead.
+   * @param acceptEncoding the value of the header, or {@code null}
+   * @return {@code true} if the response can be gzipped
+   */
+  public static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+
+    Boolean wildcard = null;
+    for (String coding : acceptEncoding.split(",")) {
+      final String[] parts = coding.split(";");
+      final String name = parts[0].trim();
+      if (name.equalsIgnoreCase("gzip")) {
+        return isAccepted(parts);
+      }
+      if (name.equals("*")) {
+        wildcard = isAccepted(parts);
+      }
+    }
+    return wildcard != null && wildcard;
+  }
+
+  /**
+   * Checks whether a coding of an {@code Accept-Encoding} header has a quality value above zero.
+   * @param parts the coding, followed by its parameters
+   */
+  private static boolean isAccepted(String[] parts) {
+    boolean accepted = true;
+    for (int i = 1; i < parts.length; i++) {
+      final String param = parts[i].trim();
+      if (param.startsWith("q=")) {
+        try {
+          accepted = Double.parseDouble(param.substring(2)) > 0;
+        } catch (NumberFormatException e) {
+          accepted = false;
+        }
+      }
+    }
+    return accepted;
+  }
 }
                                            
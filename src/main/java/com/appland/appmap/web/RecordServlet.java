@@ -11,8 +11,11 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 
+import static com.appland.appmap.util.StringUtil.acceptsGzip;
+
 @WebServlet(name = "RecordServlet", urlPatterns = {"/_appmap/record"}, loadOnStartup = 1) 
 public class RecordServlet extends HttpServlet {
   private static final Recorder recorder = Recorder.getInstance();
@@ -25,6 +28,18 @@ public class RecordServlet extends HttpServlet {
     }
 
     try {
+      if (acceptsGzip(req.getHeader("Accept-Encoding"))) {
+        byte[] gzip = recorder.stopGzip();
+        res.setContentType("application/json");
+        res.setHeader("Content-Encoding", "gzip");
+        res.setContentLength(gzip.length);
+
+        OutputStream out = res.getOutputStream();
+        out.write(gzip);
+        out.flush();
+        return;
+      }
+
       String json = recorder.stop();
       res.setContentType("application/json");
       res.setContentLength(json.length());
@@ -0,0 +1,37 @@
+package com.appland.appmap.config;
+
+import com.appland.appmap.config.AppMapTrivialMethods.Policy;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AppMapTrivialMethodsTest {
+  @Test
+  public void testRecordsByDefault() {
+    final AppMapTrivialMethods trivial = new AppMapTrivialMethods();
+    assertTrue(trivial.recordsAll());
+    assertEquals(Policy.RECORD, trivial.getPolicy("getters"));
+    assertEquals(Policy.RECORD, trivial.getPolicy("boilerplate"));
+  }
+
+  @Test
+  public void testPolicies() {
+    final AppMapTrivialMethods trivial = new AppMapTrivialMethods();
+    trivial.getters = "skip";
+    trivial.delegates = "count";
+    assertFalse(trivial.recordsAll());
+    assertEquals(Policy.SKIP, trivial.getPolicy("getters"));
+    assertEquals(Policy.RECORD, trivial.getPolicy("setters"));
+    assertEquals(Policy.COUNT, trivial.getPolicy("delegates"));
+  }
+
+  @Test
+  public void testUnknownPolicyRecords() {
+    final AppMapTrivialMethods trivial = new AppMapTrivialMethods();
+    trivial.setters = "ignore";
+    assertEquals(Policy.RECORD, trivial.getPolicy("setters"));
+    assertEquals(Policy.RECORD, trivial.getPolicy("constructors"));
+  }
+}
@@ -0,0 +1,80 @@
+package com.appland.appmap.config;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PackageMatcherTest {
+  private static AppMapPackage pkg(String path, String... exclude) {
+    AppMapPackage pkg = new AppMapPackage();
+    pkg.path = path;
+    pkg.exclude = exclude;
+    return pkg;
+  }
+
+  private final PackageMatcher matcher = new PackageMatcher(new AppMapPackage[] {
+      pkg("com.example.app", "com.example.app.internal", "com.example.app.Service#secret"),
+      pkg("com.example.app.internal.Exported"),
+      pkg("org.vendor"),
+  });
+
+  @Test
+  public void testMatchesLikePackages() {
+    final String[] names = new String[] {
+        "com.example.app.Controller#index",
+        "com.example.app.internal.Helper#run",
+        "com.example.app.internal.Exported#run",
+        "com.example.app.Service#secret",
+        "com.example.app.Service#public",
+        "com.example.application.Main.main",
+        "org.vendor.Library#call",
+        "org.other.Library#call",
+        "",
+    };
+
+    for (String name : names) {
+      boolean includes = false;
+      boolean excludes = false;
+      for (AppMapPackage pkg : this.matcher.getPackages()) {
+        includes |= pkg.includes(name);
+        excludes |= pkg.excludes(name);
+      }
+
+      assertEquals(name, includes, this.matcher.includes(name));
+      assertEquals(name, excludes, this.matcher.excludes(name));
+    }
+  }
+
+  @Test
+  public void testClassIncluded() {
+    PackageMatcher.ClassMatch classMatch = this.matcher.matchClass("com.example.app.Controller");
+    assertTrue(classMatch.includes);
+    assertFalse(classMatch.excludes);
+  }
+
+  @Test
+  public void testClassExcluded() {
+    PackageMatcher.ClassMatch classMatch =
+        this.matcher.matchClass("com.example.app.internal.Helper");
+    assertFalse(classMatch.includes);
+    assertTrue(classMatch.excludes);
+
+    classMatch = this.matcher.matchClass("org.other.Library");
+    assertFalse(classMatch.includes);
+    assertFalse(classMatch.excludes);
+  }
+
+  @Test
+  public void testClassDecidedPerMethod() {
+    PackageMatcher.ClassMatch classMatch = this.matcher.matchClass("com.example.app.Service");
+    assertNull(classMatch.includes);
+    assertNull(classMatch.excludes);
+
+    classMatch = this.matcher.matchClass("com.example.app.internal.Exported");
+    assertTrue(classMatch.includes);
+    assertTrue(classMatch.excludes);
+  }
+}
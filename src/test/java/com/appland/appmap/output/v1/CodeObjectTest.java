@@ -88,4 +88,26 @@ public class CodeObjectTest {
       CtClass testCtClass = ClassPool.getDefault().get("com.appland.appmap.output.v1.testclasses.Anonymous$1");
       assertEquals("com/appland/appmap/output/v1/testclasses/Anonymous.java", CodeObject.getSourceFilePath(testCtClass));
   }
+
+  @Test
+  public void testIterateChildrenWhileAdding() throws InterruptedException {
+    final CodeObject parent = new CodeObject().setType("package").setName("com");
+    final int childCount = 10000;
+    final Thread writer = new Thread(() -> {
+      for (int i = 0; i < childCount; i++) {
+        parent.addChildIfAbsent(new CodeObject().setType("class").setName("Class" + i));
+      }
+    });
+    writer.start();
+
+    // Iterating must never see a list being modified
+    while (writer.isAlive()) {
+      for (CodeObject child : parent.safeGetChildren()) {
+        assertTrue(child != null);
+      }
+    }
+    writer.join();
+
+    assertEquals(childCount, parent.getChildren().size());
+  }
 }
@@ -0,0 +1,49 @@
+package com.appland.appmap.output.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class EventIdAllocatorTest {
+  @Test
+  public void testIdsIncreaseWithinThread() {
+    final EventIdAllocator allocator = new EventIdAllocator(4);
+    long previousId = 0;
+    for (int i = 0; i < 20; i++) {
+      final long id = allocator.next();
+      assertTrue(id > previousId);
+      previousId = id;
+    }
+  }
+
+  @Test
+  public void testIdsUniqueAcrossThreads() throws InterruptedException {
+    final EventIdAllocator allocator = new EventIdAllocator(16);
+    final Set<Long> ids = ConcurrentHashMap.newKeySet();
+    final int numThreads = 8;
+    final int idsPerThread = 1000;
+    final List<Thread> threads = new ArrayList<Thread>();
+
+    for (int i = 0; i < numThreads; i++) {
+      final Thread t = new Thread(() -> {
+        for (int j = 0; j < idsPerThread; j++) {
+          ids.add(allocator.next());
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(numThreads * idsPerThread, ids.size());
+  }
+}
@@ -0,0 +1,77 @@
+package com.appland.appmap.output.v1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ValueTest {
+  @Test
+  public void testPrimitivesRenderLikeBoxedValues() {
+    final Value intValue = new Value();
+    intValue.set(-42);
+    assertEquals(Integer.toString(-42), intValue.freeze().value);
+
+    final Value longValue = new Value();
+    longValue.set(Long.MIN_VALUE);
+    assertEquals(Long.toString(Long.MIN_VALUE), longValue.freeze().value);
+
+    final Value doubleValue = new Value();
+    doubleValue.set(-0.1);
+    assertEquals(Double.toString(-0.1), doubleValue.freeze().value);
+
+    final Value floatValue = new Value();
+    floatValue.set(Float.NaN);
+    assertEquals(Float.toString(Float.NaN), floatValue.freeze().value);
+
+    final Value booleanValue = new Value();
+    booleanValue.set(true);
+    assertEquals(Boolean.toString(true), booleanValue.freeze().value);
+
+    final Value charValue = new Value();
+    charValue.set('\u00e9');
+    assertEquals(Character.toString('\u00e9'), charValue.freeze().value);
+
+    final Value shortValue = new Value();
+    shortValue.set((short) -1);
+    assertEquals(Short.toString((short) -1), shortValue.freeze().value);
+
+    final Value byteValue = new Value();
+    byteValue.set(Byte.MIN_VALUE);
+    assertEquals(Byte.toString(Byte.MIN_VALUE), byteValue.freeze().value);
+  }
+
+  @Test
+  public void testPrimitiveClassType() {
+    final Value value = new Value();
+    value.set(7L);
+    assertEquals("java.lang.Long", value.classType);
+  }
+
+  @Test
+  public void testPrimitiveObjectIdMatchesBoxedValue() {
+    // Small values are cached by valueOf, so the boxed path gives them a stable object ID
+    final Value primitive = new Value();
+    primitive.set(7);
+    primitive.freeze();
+
+    final Value boxed = new Value();
+    boxed.set((Object) 7);
+    boxed.freeze();
+
+    assertNotNull(primitive.objectId);
+    assertEquals(boxed.objectId, primitive.objectId);
+    assertEquals("java.lang.Integer", primitive.classType);
+    assertEquals(boxed.value, primitive.value);
+  }
+
+  @Test
+  public void testObjectReplacesPrimitive() {
+    final Value value = new Value();
+    value.set(7);
+    value.set("seven");
+    value.freeze();
+    assertEquals("seven", value.value);
+    assertEquals("java.lang.String", value.classType);
+  }
+}
@@ -0,0 +1,65 @@
+package com.appland.appmap.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HookDispatchTest {
+  private static final AtomicInteger hookCalls = new AtomicInteger();
+
+  public static void hook(int increment) {
+    hookCalls.addAndGet(increment);
+  }
+
+  @After
+  public void stopRecording() {
+    HookDispatch.setRecording(false);
+  }
+
+  @Test
+  public void testRecordingCallSiteFollowsState() throws Throwable {
+    final MethodHandle isRecording = HookDispatch.bootstrapRecording(MethodHandles.lookup(),
+        "isRecording",
+        MethodType.methodType(boolean.class)).dynamicInvoker();
+
+    assertFalse((boolean) isRecording.invokeExact());
+
+    HookDispatch.setRecording(true);
+    assertTrue((boolean) isRecording.invokeExact());
+
+    HookDispatch.setRecording(false);
+    assertFalse((boolean) isRecording.invokeExact());
+  }
+
+  @Test
+  public void testHookCallSiteSkipsHookWhileIdle() throws Throwable {
+    final MethodType type = MethodType.methodType(void.class, int.class);
+    final MethodHandle hook = MethodHandles.lookup().findStatic(HookDispatchTest.class,
+        "hook",
+        type);
+    final MethodHandle callSite = HookDispatch.bootstrapHook(MethodHandles.lookup(),
+        "hook",
+        type,
+        hook).dynamicInvoker();
+
+    hookCalls.set(0);
+    callSite.invokeExact(1);
+    assertEquals(0, hookCalls.get());
+
+    HookDispatch.setRecording(true);
+    callSite.invokeExact(1);
+    assertEquals(1, hookCalls.get());
+
+    HookDispatch.setRecording(false);
+    callSite.invokeExact(1);
+    assertEquals(1, hookCalls.get());
+  }
+}
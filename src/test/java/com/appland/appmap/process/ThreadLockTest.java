@@ -0,0 +1,66 @@
+package com.appland.appmap.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ThreadLockTest {
+  private final ThreadLock lock = ThreadLock.current();
+
+  @Test
+  public void testGlobalLockHeldByOneContext() {
+    assertFalse(this.lock.lock());
+
+    this.lock.enter();
+    assertTrue(this.lock.lock());
+    assertTrue(this.lock.hasLock());
+
+    this.lock.enter();
+    assertTrue(this.lock.isLocked());
+    assertFalse(this.lock.hasLock());
+    assertFalse(this.lock.lock());
+    assertFalse(this.lock.unlock());
+    this.lock.exit();
+
+    assertTrue(this.lock.unlock());
+    assertFalse(this.lock.isLocked());
+    this.lock.exit();
+  }
+
+  @Test
+  public void testExitReleasesLocks() {
+    final int keyIndex = ThreadLock.uniqueKeyIndex("ThreadLockTest");
+
+    this.lock.enter();
+    assertTrue(this.lock.lock());
+    assertTrue(this.lock.lockUnique(keyIndex));
+    assertTrue(this.lock.hasUniqueLock("ThreadLockTest"));
+    this.lock.exit();
+
+    assertFalse(this.lock.isLocked());
+    assertFalse(this.lock.hasUniqueLock(keyIndex));
+
+    this.lock.enter();
+    assertTrue(this.lock.lockUnique(keyIndex));
+    this.lock.exit();
+  }
+
+  @Test
+  public void testUniqueLockHeldByOneContext() {
+    final int keyIndex = ThreadLock.uniqueKeyIndex("ThreadLockTest");
+    assertEquals(keyIndex, ThreadLock.uniqueKeyIndex("ThreadLockTest"));
+
+    this.lock.enter();
+    assertTrue(this.lock.lockUnique(keyIndex));
+
+    this.lock.enter();
+    assertFalse(this.lock.hasUniqueLock(keyIndex));
+    assertFalse(this.lock.lockUnique(keyIndex));
+    this.lock.exit();
+
+    assertTrue(this.lock.hasUniqueLock(keyIndex));
+    this.lock.exit();
+  }
+}
@@ -0,0 +1,41 @@
+package com.appland.appmap.record;
+
+import com.appland.appmap.output.v1.Event;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BehaviorTemplateTest {
+  @Test
+  public void testParameterTypeNames() {
+    assertArrayEquals(new String[0], BehaviorTemplate.getParameterTypeNames("()V"));
+    assertArrayEquals(new String[]{ "int", "long", "boolean" },
+        BehaviorTemplate.getParameterTypeNames("(IJZ)V"));
+    assertArrayEquals(new String[]{ "java.lang.String", "java.util.Map$Entry" },
+        BehaviorTemplate.getParameterTypeNames("(Ljava/lang/String;Ljava/util/Map$Entry;)I"));
+    assertArrayEquals(new String[]{ "byte[]", "java.lang.Object[][]", "double" },
+        BehaviorTemplate.getParameterTypeNames("([B[[Ljava/lang/Object;D)[I"));
+  }
+
+  @Test
+  public void testStaticFieldsEncodedOncePerEventKind() {
+    final Event event = new Event()
+        .setDefinedClass("com.example.SomeClass")
+        .setMethodId("someMethod")
+        .setStatic(false)
+        .setLineNumber(315);
+    final BehaviorTemplate template = new BehaviorTemplate("com.example.SomeClass.someMethod()V",
+        event,
+        "com.example",
+        "SomeClass",
+        false);
+
+    assertSame(template.getStaticFields("call"), template.getStaticFields("call"));
+    assertNotSame(template.getStaticFields("call"), template.getStaticFields("return"));
+    assertNull(template.getStaticFields("other"));
+  }
+}
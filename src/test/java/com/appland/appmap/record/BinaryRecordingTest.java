@@ -0,0 +1,208 @@
+package com.appland.appmap.record;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.record.IRecordingSession.Metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryRecordingTest {
+  private static List<Event> newEvents() {
+    final List<Event> events = new ArrayList<Event>();
+    final Event template = new Event()
+        .setDefinedClass("com.example.SomeClass")
+        .setMethodId("someMethod")
+        .setPath("com/example/SomeClass.java")
+        .setLineNumber(315)
+        .setStatic(false);
+    final char[] callFields = EventJsonWriter.encodeStaticFields(template, "call");
+    final char[] returnFields = EventJsonWriter.encodeStaticFields(template, "return");
+
+    for (int i = 0; i < 100; i++) {
+      final Event call = new Event(template)
+          .setEvent("call")
+          .setThreadId((long) (i % 3 + 1))
+          .setStaticFields(callFields)
+          .setReceiver(new Object())
+          .addParameter("caf\u00e9 \u2603 \ud83d\ude00", "name")
+          .addParameter(null, "nothing");
+      call.freeze();
+      events.add(call);
+
+      final Event ret = new Event(template)
+          .setEvent("return")
+          .setThreadId(call.threadId)
+          .setParentId(call.id)
+          .setStaticFields(returnFields)
+          .setReturnValue(i);
+      if (i % 10 == 0) {
+        ret.setException(new IllegalStateException("failed", new RuntimeException()));
+      }
+      ret.freeze();
+      events.add(ret);
+    }
+
+    final Event request = new Event()
+        .setEvent("call")
+        .setThreadId(7L)
+        .setHttpServerRequest("GET", "/owners/1", "HTTP/1.1")
+        .addMessageParam("id", "1");
+    request.httpServerRequest.setNormalizedPath("/owners/{id}");
+    request.freeze();
+    events.add(request);
+
+    final Event response = new Event()
+        .setEvent("return")
+        .setThreadId(7L)
+        .setParentId(request.id)
+        .setHttpServerResponse(200, "text/html");
+    response.freeze();
+    events.add(response);
+
+    final Event client = new Event()
+        .setEvent("call")
+        .setHttpClientRequest("POST", "http://example.com/api", "HTTP/1.1");
+    client.freeze();
+    events.add(client);
+
+    final Event clientResponse = new Event()
+        .setEvent("return")
+        .setHttpClientResponse(404, null);
+    clientResponse.freeze();
+    events.add(clientResponse);
+
+    final char[] longValue = new char[100 * 1024];
+    Arrays.fill(longValue, '\u00e9');
+    final Event query = new Event()
+        .setEvent("call")
+        .setSqlQuery("h2", new String(longValue));
+    query.freeze();
+    events.add(query);
+
+    return events;
+  }
+
+  private static Metadata newMetadata() {
+    final Metadata metadata = new Metadata();
+    metadata.scenarioName = "some scenario";
+    metadata.recorderName = "some recorder";
+    metadata.feature = "some feature";
+    return metadata;
+  }
+
+  private static byte[] record(Metadata metadata, List<Event> events, int bufferSize)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final BinaryRecordingWriter writer =
+        new BinaryRecordingWriter(Channels.newChannel(bytes), bufferSize);
+    writer.writeHeader(metadata, "app", "1.8", "vm");
+    for (Event event : events) {
+      writer.write(event);
+    }
+    writer.writeClassMap("[]");
+    writer.close();
+    return bytes.toByteArray();
+  }
+
+  private static String write(List<Event> events) throws IOException {
+    final StringWriter stringWriter = new StringWriter();
+    final EventJsonWriter writer = new EventJsonWriter(stringWriter);
+    for (Event event : events) {
+      writer.write(event);
+    }
+    writer.flush();
+    return stringWriter.toString();
+  }
+
+  @Test
+  public void testEventsRoundTrip() throws IOException {
+    final List<Event> events = newEvents();
+    final Metadata metadata = newMetadata();
+
+    for (int bufferSize : new int[] { 16, 64 * 1024 }) {
+      final BinaryRecordingReader reader = new BinaryRecordingReader(
+          new ByteArrayInputStream(record(metadata, events, bufferSize)));
+      final Metadata actualMetadata = reader.readHeader();
+      assertEquals(metadata.scenarioName, actualMetadata.scenarioName);
+      assertEquals(metadata.recorderName, actualMetadata.recorderName);
+      assertEquals(metadata.feature, actualMetadata.feature);
+      assertNull(actualMetadata.featureGroup);
+
+      final List<Event> actual = new ArrayList<Event>();
+      for (Event event = reader.readEvent(); event != null; event = reader.readEvent()) {
+        actual.add(event);
+      }
+      assertEquals(write(events), write(actual));
+      assertEquals("[]", reader.readClassMap());
+    }
+  }
+
+  @Test
+  public void testSymbolsBeyondDictionary() throws IOException {
+    final List<Event> events = new ArrayList<Event>();
+    final int symbolCount = 70000;
+    for (int i = 0; i < symbolCount + 10; i++) {
+      // Symbols past the dictionary's capacity are written inline, while those already in it are
+      // still referenced
+      final String name = "param" + (i < symbolCount ? i : i - symbolCount);
+      final Event event = new Event()
+          .setEvent("call")
+          .setDefinedClass("com.example.SomeClass")
+          .setMethodId("someMethod")
+          .addParameter(i, name);
+      event.freeze();
+      events.add(event);
+    }
+
+    final BinaryRecordingReader reader = new BinaryRecordingReader(
+        new ByteArrayInputStream(record(newMetadata(), events, 64 * 1024)));
+    reader.readHeader();
+    final List<Event> actual = new ArrayList<Event>();
+    for (Event event = reader.readEvent(); event != null; event = reader.readEvent()) {
+      actual.add(event);
+    }
+    assertEquals(events.size(), actual.size());
+    assertEquals(write(events), write(actual));
+  }
+
+  @Test
+  public void testConvert() throws IOException {
+    final List<Event> events = newEvents();
+    final Metadata metadata = newMetadata();
+
+    final StringWriter expected = new StringWriter();
+    final AppMapSerializer serializer = new AppMapSerializer(expected);
+    serializer.write(metadata, "app", "1.8", "vm");
+    serializer.write(events);
+    serializer.writeClassMap("[]");
+    serializer.finalize();
+
+    final StringWriter actual = new StringWriter();
+    BinaryRecordingReader.convert(
+        new ByteArrayInputStream(record(metadata, events, 1024)), actual);
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  @Test
+  public void testConvertRejectsOtherFormats() {
+    try {
+      BinaryRecordingReader.convert(
+          new ByteArrayInputStream("{\"events\":[]}".getBytes()), new StringWriter());
+      fail("expected an IOException");
+    } catch (IOException e) {
+      assertEquals("not an AppMap binary recording", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.appland.appmap.record;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.appland.appmap.output.v1.CodeObject;
+import com.appland.appmap.output.v1.Event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CodeObjectTreeTest {
+  private static CodeObject createTree(String className, String methodId, int lineNumber) {
+    final Event template = new Event()
+        .setDefinedClass("com.example." + className)
+        .setMethodId(methodId)
+        .setStatic(false)
+        .setPath("com/example/" + className + ".java")
+        .setLineNumber(lineNumber);
+    return CodeObject.createTree(template, "com.example", className, false);
+  }
+
+  @Test
+  public void testAddMergesBranches() {
+    final CodeObjectTree tree = new CodeObjectTree();
+    tree.add(createTree("SomeClass", "someMethod", 315));
+    tree.add(createTree("SomeClass", "someMethod", 315));
+    tree.add(createTree("SomeClass", "otherMethod", 320));
+    tree.add(createTree("OtherClass", "someMethod", 315));
+
+    final CodeObject[] roots = tree.toArray();
+    assertEquals(1, roots.length);
+
+    final CodeObject example = roots[0].findChild("package", "example");
+    assertEquals(2, example.safeGetChildren().size());
+    assertEquals(2, example.findChild("class", "SomeClass").safeGetChildren().size());
+
+    assertNotNull(tree.getMethodBranch("com.example.SomeClass", "otherMethod", false, 320));
+    assertNull(tree.getMethodBranch("com.example.SomeClass", "otherMethod", true, 320));
+    assertNull(tree.getMethodBranch("com.example.SomeClass", "otherMethod", false, 321));
+    assertNull(tree.getMethodBranch("com.example.MissingClass", "someMethod", false, 315));
+  }
+
+  @Test
+  public void testConcurrentAdd() throws InterruptedException {
+    final CodeObjectTree tree = new CodeObjectTree();
+    final int numThreads = 4;
+    final int methodsPerThread = 200;
+    final List<Thread> threads = new ArrayList<Thread>();
+
+    for (int i = 0; i < numThreads; i++) {
+      final Thread thread = new Thread(() -> {
+        for (int j = 0; j < methodsPerThread; j++) {
+          tree.add(createTree("Class" + (j % 10), "method" + j, j));
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    final CodeObject example = tree.toArray()[0].findChild("package", "example");
+    assertEquals(10, example.safeGetChildren().size());
+    for (int j = 0; j < methodsPerThread; j++) {
+      final String definedClass = "com.example.Class" + (j % 10);
+      assertNotNull(tree.getMethodBranch(definedClass, "method" + j, false, j));
+    }
+    assertEquals(methodsPerThread / 10, example.findChild("class", "Class0").safeGetChildren().size());
+  }
+}
@@ -0,0 +1,147 @@
+package com.appland.appmap.record;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.alibaba.fastjson.JSON;
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.Value;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EventJsonWriterTest {
+  private static String write(List<Event> events) throws IOException {
+    final StringWriter stringWriter = new StringWriter();
+    final EventJsonWriter writer = new EventJsonWriter(stringWriter);
+    for (Event event : events) {
+      writer.write(event);
+    }
+    writer.flush();
+    return "[" + stringWriter.toString() + "]";
+  }
+
+  private static void assertSameAsFastjson(Event... events) throws IOException {
+    final List<Event> eventList = Arrays.asList(events);
+    final String expected = JSON.toJSONString(eventList);
+    final String actual = write(eventList);
+    assertEquals(JSON.parse(expected), JSON.parse(actual));
+  }
+
+  @Test
+  public void testCallAndReturn() throws IOException {
+    final Event call = new Event()
+        .setEvent("call")
+        .setDefinedClass("com.example.SomeClass")
+        .setMethodId("someMethod")
+        .setPath("com/example/SomeClass.java")
+        .setLineNumber(315)
+        .setStatic(false)
+        .setThreadId(1L)
+        .setReceiver(new Object())
+        .addParameter("value", "name")
+        .addParameter(null, "nothing");
+    call.addParameter(new Value().setClassType("int").setName("count").setKind("req"));
+    call.freeze();
+
+    final Event ret = new Event(call)
+        .setEvent("return")
+        .setThreadId(1L)
+        .setParentId(call.id)
+        .setReturnValue(42)
+        .setException(new IllegalStateException("failed", new RuntimeException()));
+    ret.freeze();
+
+    assertSameAsFastjson(call, ret);
+  }
+
+  @Test
+  public void testHttpAndSql() throws IOException {
+    final Event request = new Event()
+        .setEvent("call")
+        .setThreadId(2L)
+        .setHttpServerRequest("GET", "/owners/1", "HTTP/1.1")
+        .addMessageParam("id", "1");
+    request.httpServerRequest.setNormalizedPath("/owners/{id}");
+    request.freeze();
+
+    final Event response = new Event()
+        .setEvent("return")
+        .setThreadId(2L)
+        .setParentId(request.id)
+        .setHttpServerResponse(200, "text/html");
+
+    final Event client = new Event()
+        .setEvent("call")
+        .setHttpClientRequest("POST", "http://example.com/api", "HTTP/1.1");
+
+    final Event clientResponse = new Event()
+        .setEvent("return")
+        .setHttpClientResponse(404, null);
+
+    final Event query = new Event()
+        .setEvent("call")
+        .setSqlQuery("h2", "SELECT * FROM owners WHERE name = 'O''Brien'");
+
+    assertSameAsFastjson(request, response, client, clientResponse, query);
+  }
+
+  @Test
+  public void testEscapes() throws IOException {
+    final Event event = new Event()
+        .setEvent("call")
+        .setPath("quote \" backslash \\ tab \t newline \n control \u0001 \u00e9 \u2603");
+
+    final String json = write(Arrays.asList(event));
+    assertEquals(event.path, JSON.parseArray(json).getJSONObject(0).getString("path"));
+  }
+
+  @Test
+  public void testStaticFields() throws IOException {
+    final Event template = new Event()
+        .setDefinedClass("com.example.SomeClass")
+        .setMethodId("someMethod")
+        .setPath("com/example/SomeClass.java")
+        .setLineNumber(315)
+        .setStatic(true);
+    final char[] staticFields = EventJsonWriter.encodeStaticFields(template, "call");
+
+    final Event encoded = new Event(template)
+        .setEvent("call")
+        .setThreadId(1L)
+        .setStaticFields(staticFields)
+        .addParameter("value", "name");
+    encoded.freeze();
+
+    final Event unencoded = new Event(template)
+        .setEvent("call")
+        .setThreadId(1L)
+        .addParameter("value", "name");
+    unencoded.freeze();
+    unencoded.id = encoded.id;
+    unencoded.parameters.get(0).objectId = encoded.parameters.get(0).objectId;
+
+    assertEquals(JSON.parse(write(Arrays.asList(unencoded))),
+        JSON.parse(write(Arrays.asList(encoded))));
+    assertSameAsFastjson(encoded);
+  }
+
+  @Test
+  public void testSettingStaticFieldDiscardsEncoding() {
+    final Event template = new Event()
+        .setDefinedClass("com.example.SomeClass")
+        .setMethodId("someMethod");
+    final Event event = new Event(template)
+        .setEvent("return")
+        .setStaticFields(EventJsonWriter.encodeStaticFields(template, "return"));
+    assertNotNull(event.getStaticFields());
+
+    event.setLineNumber(12);
+    assertNull(event.getStaticFields());
+  }
+}
@@ -3,6 +3,7 @@
  */
 package com.appland.appmap.record;
 
+import com.appland.appmap.output.v1.Event;
 import com.appland.appmap.record.EventTemplateRegistry;
 import com.appland.appmap.record.UnknownEventException;
 import com.appland.appmap.test.util.ClassBuilder;
@@ -16,8 +17,14 @@ import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.ExpectedException;
 
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class EventTemplateRegistryTest {
@@ -42,6 +49,18 @@ public class EventTemplateRegistryTest {
     }
   }
 
+  @Test
+  public void testRegisterSameBehaviorTwice() throws Exception {
+    CtClass myClass = new ClassBuilder("testRegisterSameBehaviorTwiceClass")
+        .beginMethod()
+          .setName("registeredMethod")
+        .endMethod()
+        .ctClass();
+
+    CtMethod method = myClass.getDeclaredMethod("registeredMethod");
+    assertEquals(registry.register(method), registry.register(method));
+  }
+
   @Test
   public void testCloneEventTemplate() throws UnknownEventException, Exception {
     CtClass myClass = new ClassBuilder("testCloneEventTemplateClass")
@@ -56,4 +75,95 @@ public class EventTemplateRegistryTest {
     thrown.expect(UnknownEventException.class);
     registry.cloneEventTemplate(Integer.MAX_VALUE, "");
   }
+
+  @Test
+  public void testCodeObjectRegisteredOnFirstClone() throws Exception {
+    CtClass myClass = new ClassBuilder("testCodeObjectRegisteredOnFirstCloneClass")
+        .beginMethod()
+          .setName("registeredMethod")
+        .endMethod()
+        .ctClass();
+
+    Integer index = registry.register(myClass.getDeclaredMethod("registeredMethod"));
+    Event template = registry.getTemplate(index);
+    CodeObjectTree registeredObjects = Recorder.getInstance().getRegisteredObjects();
+    assertNull(registeredObjects.getMethodBranch(template.definedClass,
+        template.methodId,
+        template.isStatic,
+        template.lineNumber));
+
+    registry.cloneEventTemplate(index, "call");
+    assertNotNull(registeredObjects.getMethodBranch(template.definedClass,
+        template.methodId,
+        template.isStatic,
+        template.lineNumber));
+  }
+
+  @Test
+  public void testReclaimTemplatesOfUnloadedLoader() throws Exception {
+    CtClass myClass = new ClassBuilder("testReclaimTemplatesOfUnloadedLoaderClass")
+        .beginMethod()
+          .setName("reclaimedMethod")
+        .endMethod()
+        .ctClass();
+    CtMethod method = myClass.getDeclaredMethod("reclaimedMethod");
+
+    ClassLoader loader = new URLClassLoader(new URL[0]);
+    Integer index = registry.register(method, loader);
+    assertNotNull(registry.getTemplate(index));
+
+    loader = null;
+    for (int i = 0; i < 100 && registry.getTemplate(index) != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+      registry.expungeUnloaded();
+    }
+    assertNull(registry.getTemplate(index));
+
+    thrown.expect(UnknownEventException.class);
+    registry.cloneEventTemplate(index, "call");
+  }
+
+  @Test
+  public void testKeepTemplatesOwnedByLiveLoader() throws Exception {
+    CtClass myClass = new ClassBuilder("testKeepTemplatesOwnedByLiveLoaderClass")
+        .beginMethod()
+          .setName("sharedMethod")
+        .endMethod()
+        .ctClass();
+    CtMethod method = myClass.getDeclaredMethod("sharedMethod");
+
+    ClassLoader unloaded = new URLClassLoader(new URL[0]);
+    final ClassLoader live = new URLClassLoader(new URL[0]);
+    Integer index = registry.register(method, unloaded);
+    Event template = registry.getTemplate(index);
+    String behaviorKey = EventTemplateRegistry.getBehaviorKey(method);
+    assertTrue(registry.isAvailable(index, template));
+    registry.register(index, behaviorKey, template, null, template.definedClass, false, live);
+
+    unloaded = null;
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      registry.expungeUnloaded();
+    }
+    assertNotNull(registry.getTemplate(index));
+    assertEquals(index, registry.register(method, live));
+  }
+
+  @Test
+  public void testSeparateTemplatesPerLoader() throws Exception {
+    CtClass myClass = new ClassBuilder("testSeparateTemplatesPerLoaderClass")
+        .beginMethod()
+          .setName("someMethod")
+        .endMethod()
+        .ctClass();
+    CtMethod method = myClass.getDeclaredMethod("someMethod");
+
+    final ClassLoader first = new URLClassLoader(new URL[0]);
+    final ClassLoader second = new URLClassLoader(new URL[0]);
+    Integer index = registry.register(method, first);
+    assertEquals(index, registry.register(method, first));
+    assertNotEquals(index, registry.register(method, second));
+    assertNotEquals(index, registry.register(method));
+  }
 }
@@ -0,0 +1,96 @@
+package com.appland.appmap.record;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GzipChannelTest {
+  private static byte[] gunzip(byte[] compressed) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      final byte[] buffer = new byte[1024];
+      for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+        bytes.write(buffer, 0, n);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testCompressesWrites() throws IOException {
+    final byte[] data = new byte[100000];
+    new Random(0).nextBytes(data);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final GzipChannel channel = new GzipChannel(out, 1, 4096);
+    for (int offset = 0; offset < data.length; offset += 3000) {
+      final int length = Math.min(3000, data.length - offset);
+      assertEquals(length, channel.write(ByteBuffer.wrap(data, offset, length)));
+    }
+    channel.close();
+
+    assertFalse(channel.isOpen());
+    assertArrayEquals(data, gunzip(out.toByteArray()));
+  }
+
+  @Test
+  public void testCompressesRepetitiveOutput() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final Utf8ChannelWriter writer =
+        new Utf8ChannelWriter(new GzipChannel(out, 6, 1024), 1024, 1024, 0);
+    final StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      final String event = "{\"event\":\"call\",\"id\":" + i + ",\"thread_id\":1},";
+      writer.write(event);
+      expected.append(event);
+    }
+    writer.close();
+
+    final byte[] compressed = out.toByteArray();
+    assertTrue(compressed.length < expected.length() / 5);
+    assertEquals(expected.toString(), new String(gunzip(compressed), "UTF-8"));
+  }
+
+  @Test
+  public void testInvalidLevelFallsBackToDefault() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final GzipChannel channel = new GzipChannel(out, 42, 16);
+    channel.write(ByteBuffer.wrap("level".getBytes("UTF-8")));
+    channel.close();
+
+    assertEquals("level", new String(gunzip(out.toByteArray()), "UTF-8"));
+  }
+
+  @Test
+  public void testOutputFailureIsThrown() throws IOException {
+    final OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("disk full");
+      }
+    };
+    final GzipChannel channel = new GzipChannel(failing, 6, 16);
+    try {
+      for (int i = 0; i < 1000; i++) {
+        channel.write(ByteBuffer.wrap(new byte[16]));
+      }
+      channel.close();
+      fail("expected the failure to be thrown");
+    } catch (IOException e) {
+      assertEquals("disk full", e.getCause().getMessage());
+    }
+  }
+}
@@ -1,9 +1,19 @@
 package com.appland.appmap.record;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
 import com.appland.appmap.output.v1.Event;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -46,4 +56,154 @@ public class RecorderTest {
     final int numMatches = StringUtils.countMatches(appmapJson, expectedJson);
     assertEquals(numMatches, events.length);
   }
+
+  @Test
+  public void testAllEventsWrittenFromMultipleThreads() throws InterruptedException {
+    final Recorder recorder = Recorder.getInstance();
+    final int numThreads = 4;
+    final int eventsPerThread = 50;
+    final List<Thread> threads = new ArrayList<Thread>();
+
+    for (int i = 0; i < numThreads; i++) {
+      final Thread t = new Thread(() -> {
+        final Long threadId = Thread.currentThread().getId();
+        for (int j = 0; j < eventsPerThread; j++) {
+          final Event event = new Event()
+              .setDefinedClass("SomeClass")
+              .setMethodId("SomeMethod")
+              .setStatic(false)
+              .setLineNumber(315)
+              .setThreadId(threadId);
+
+          recorder.add(event);
+          assertEquals(event, recorder.getLastEvent());
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    final String appmapJson = recorder.stop();
+    final int numMatches = StringUtils.countMatches(appmapJson, "\"thread_id\":");
+    assertEquals(numThreads * eventsPerThread, numMatches);
+  }
+
+  @Test
+  public void testEventsQueuedWhileWriting() {
+    final Recorder recorder = Recorder.getInstance();
+    final Event reentrantEvent = new Event()
+        .setDefinedClass("SomeClass")
+        .setMethodId("toString")
+        .setStatic(false)
+        .setLineNumber(2);
+    // Freezing the first event calls toString, which records another event
+    final Object value = new Object() {
+      @Override
+      public String toString() {
+        recorder.add(reentrantEvent);
+        return "value";
+      }
+    };
+    final Event firstEvent = new Event()
+        .setDefinedClass("SomeClass")
+        .setMethodId("SomeMethod")
+        .setStatic(false)
+        .setLineNumber(0)
+        .addParameter(value, "value");
+    final Event secondEvent = new Event()
+        .setDefinedClass("SomeClass")
+        .setMethodId("SomeMethod")
+        .setStatic(false)
+        .setLineNumber(1);
+
+    recorder.add(firstEvent);
+    recorder.add(secondEvent);
+    assertEquals(reentrantEvent, recorder.getLastEvent());
+
+    final JSONArray events = JSON.parseObject(recorder.stop()).getJSONArray("events");
+    assertEquals(3, events.size());
+    for (int i = 0; i < events.size(); i++) {
+      assertEquals(i, (int) events.getJSONObject(i).getInteger("lineno"));
+    }
+  }
+
+  @Test
+  public void testStopWhileWriting() {
+    final Recorder recorder = Recorder.getInstance();
+    // Freezing the first event stops the session from the thread writing it
+    final Object value = new Object() {
+      @Override
+      public String toString() {
+        recorder.stop();
+        return "value";
+      }
+    };
+
+    recorder.add(new Event()
+        .setDefinedClass("SomeClass")
+        .setMethodId("SomeMethod")
+        .setStatic(false)
+        .setLineNumber(0)
+        .addParameter(value, "value"));
+    recorder.add(new Event()
+        .setDefinedClass("SomeClass")
+        .setMethodId("SomeMethod")
+        .setStatic(false)
+        .setLineNumber(1));
+    assertFalse(recorder.hasActiveSession());
+  }
+
+  @Test
+  public void testStopWhileRecording() throws Exception {
+    final Recorder recorder = Recorder.getInstance();
+    final int numThreads = 4;
+
+    for (int round = 0; round < 20; round++) {
+      if (round > 0) {
+        recorder.start(new IRecordingSession.Metadata());
+      }
+
+      final AtomicBoolean done = new AtomicBoolean(false);
+      final List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < numThreads; i++) {
+        final Thread t = new Thread(() -> {
+          final Long threadId = Thread.currentThread().getId();
+          for (int j = 0; !done.get(); j++) {
+            recorder.add(new Event()
+                .setDefinedClass("SomeClass")
+                .setMethodId("SomeMethod")
+                .setStatic(false)
+                .setLineNumber(j)
+                .setThreadId(threadId));
+          }
+        });
+        threads.add(t);
+        t.start();
+      }
+
+      Thread.sleep(5);
+      final String appmapJson = recorder.stop();
+      done.set(true);
+      for (Thread t : threads) {
+        t.join();
+      }
+
+      // Each thread's events are written in order, so once stopped, a thread's recording must be
+      // a prefix of the events it queued. A gap means an event was written after the session
+      // stopped.
+      final Map<Long, Integer> eventCounts = new HashMap<Long, Integer>();
+      final JSONArray events = JSON.parseObject(appmapJson).getJSONArray("events");
+      for (int i = 0; i < events.size(); i++) {
+        final JSONObject event = events.getJSONObject(i);
+        final Long threadId = event.getLong("thread_id");
+        final int count = eventCounts.getOrDefault(threadId, 0);
+        assertEquals(count, (int) event.getInteger("lineno"));
+        eventCounts.put(threadId, count + 1);
+      }
+    }
+  }
 }
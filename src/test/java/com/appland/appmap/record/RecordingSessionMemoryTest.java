@@ -0,0 +1,78 @@
+package com.appland.appmap.record;
+
+import com.appland.appmap.output.v1.Event;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecordingSessionMemoryTest {
+  private static List<Event> newEvents() {
+    final List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < 100; i++) {
+      final Event event = new Event()
+          .setEvent(i % 2 == 0 ? "call" : "return")
+          .setDefinedClass("SomeClass")
+          .setMethodId("someMethod")
+          .setStatic(false)
+          .setLineNumber(42)
+          .setThreadId(1L);
+      event.freeze();
+      events.add(event);
+    }
+    return events;
+  }
+
+  private static String record(RecordingSessionMemory session, List<Event> events) {
+    session.start();
+    for (Event event : events) {
+      session.add(event);
+    }
+    return session.stop();
+  }
+
+  private static String gunzip(byte[] compressed) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      final byte[] buffer = new byte[1024];
+      for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+        bytes.write(buffer, 0, n);
+      }
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testCompressedOutputMatches() {
+    final List<Event> events = newEvents();
+    final IRecordingSession.Metadata metadata = new IRecordingSession.Metadata();
+
+    final String expected = record(new RecordingSessionMemory(metadata, false), events);
+    assertEquals(expected, record(new RecordingSessionMemory(metadata, true), events));
+  }
+
+  @Test
+  public void testStopGzip() throws IOException {
+    final List<Event> events = newEvents();
+    final IRecordingSession.Metadata metadata = new IRecordingSession.Metadata();
+    final String expected = record(new RecordingSessionMemory(metadata, false), events);
+
+    for (boolean compressed : new boolean[] { false, true }) {
+      final RecordingSessionMemory session = new RecordingSessionMemory(metadata, compressed);
+      session.start();
+      for (Event event : events) {
+        session.add(event);
+      }
+      assertEquals(expected, gunzip(session.stopGzip()));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.appland.appmap.record;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Utf8ChannelWriterTest {
+  private Path path;
+
+  @Before
+  public void before() throws IOException {
+    this.path = Files.createTempFile("appmap", ".json");
+  }
+
+  @After
+  public void after() throws IOException {
+    Files.deleteIfExists(this.path);
+  }
+
+  private String read() throws IOException {
+    return new String(Files.readAllBytes(this.path), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testEncodesUtf8() throws IOException {
+    final String text = "ascii \u00e9 \u2603 \ud83d\ude00 end";
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(this.path, 4, 4, 0);
+    writer.write(text);
+    writer.close();
+
+    assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(this.path));
+  }
+
+  @Test
+  public void testEncodesAcrossBufferBoundaries() throws IOException {
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      text.append("abc \u00e9\ud83d\ude00");
+    }
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(this.path, 100, 100, 0);
+    writer.write(text.toString());
+    writer.write(text.toString().toCharArray());
+    writer.close();
+
+    assertEquals(text.toString() + text.toString(), this.read());
+  }
+
+  @Test
+  public void testSurrogatePairSplitAcrossWrites() throws IOException {
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(this.path, 64, 64, 0);
+    writer.write("a\ud83d");
+    writer.write("\ude00b");
+    writer.close();
+
+    assertEquals("a\ud83d\ude00b", this.read());
+  }
+
+  @Test
+  public void testUnpairedSurrogates() throws IOException {
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(this.path, 64, 64, 0);
+    writer.write("a\ud83db\ude00c\ud83d");
+    writer.close();
+
+    assertEquals("a?b?c?", this.read());
+  }
+
+  @Test
+  public void testFlushBySize() throws IOException {
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(this.path, 64, 8, 0);
+    writer.write("1234");
+    writer.flush();
+    assertEquals(0, writer.getWriteCount());
+    assertEquals("", this.read());
+
+    writer.write("5678");
+    writer.flush();
+    assertEquals(1, writer.getWriteCount());
+    assertEquals("12345678", this.read());
+
+    writer.close();
+  }
+
+  @Test
+  public void testFlushByTime() throws Exception {
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(this.path, 64, 64, 1);
+    writer.write("1234");
+    Thread.sleep(10);
+    writer.flush();
+    assertEquals(1, writer.getWriteCount());
+    assertEquals("1234", this.read());
+
+    writer.close();
+  }
+
+  @Test
+  public void testFullBufferWrittenOut() throws IOException {
+    final Utf8ChannelWriter writer = new Utf8ChannelWriter(this.path, 16, 16, 0);
+    for (int i = 0; i < 10; i++) {
+      writer.write("0123456789");
+    }
+    assertTrue(writer.getWriteCount() > 1);
+    assertTrue(this.read().startsWith("0123456789"));
+
+    writer.close();
+    assertEquals(100, this.read().length());
+  }
+}
@@ -0,0 +1,26 @@
+package com.appland.appmap.test.util;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+
+import java.io.IOException;
+
+/**
+ * Loads instrumented copies of classes, alongside the originals loaded by its parent. Every other
+ * class is loaded by the parent, so that the copies share hooks and their state with the test.
+ */
+public class IsolatedClassLoader extends ClassLoader {
+  public IsolatedClassLoader() {
+    super(IsolatedClassLoader.class.getClassLoader());
+  }
+
+  /**
+   * Defines a class from its current bytecode. The class is frozen afterwards.
+   * @param ctClass The class to be defined
+   * @return The class defined
+   */
+  public Class<?> define(CtClass ctClass) throws IOException, CannotCompileException {
+    final byte[] bytes = ctClass.toBytecode();
+    return this.defineClass(ctClass.getName(), bytes, 0, bytes.length);
+  }
+}
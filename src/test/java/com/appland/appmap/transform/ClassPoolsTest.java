@@ -0,0 +1,46 @@
+package com.appland.appmap.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.Test;
+
+public class ClassPoolsTest {
+  @Test
+  public void testPoolPerLoader() {
+    final ClassPools classPools = new ClassPools();
+    final ClassLoader loader = new URLClassLoader(new URL[0]);
+
+    assertSame(classPools.get(loader), classPools.get(loader));
+    assertNotSame(classPools.get(loader), classPools.get(this.getClass().getClassLoader()));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() {
+    final ClassPools.BoundedClassPool classPool = new ClassPools.BoundedClassPool(2);
+    classPool.makeClass("ClassPoolsTest.First");
+    classPool.makeClass("ClassPoolsTest.Second");
+    assertNotNull(classPool.getOrNull("ClassPoolsTest.First"));
+
+    classPool.makeClass("ClassPoolsTest.Third");
+
+    assertEquals(2, classPool.size());
+    assertNotNull(classPool.getOrNull("ClassPoolsTest.First"));
+    assertNull(classPool.getOrNull("ClassPoolsTest.Second"));
+    assertNotNull(classPool.getOrNull("ClassPoolsTest.Third"));
+  }
+
+  @Test
+  public void testDetachedClassReleased() {
+    final ClassPools.BoundedClassPool classPool = new ClassPools.BoundedClassPool(2);
+    classPool.makeClass("ClassPoolsTest.Detached").detach();
+
+    assertEquals(0, classPool.size());
+  }
+}
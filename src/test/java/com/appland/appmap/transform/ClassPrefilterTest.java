@@ -0,0 +1,57 @@
+package com.appland.appmap.transform;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.appland.appmap.process.hooks.SqlQuery;
+import com.appland.appmap.test.util.ClassBuilder;
+import com.appland.appmap.transform.annotations.Hook;
+
+import java.util.Collections;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassPrefilterTest {
+  private ClassPrefilter prefilter;
+
+  @Before
+  public void before() throws Exception {
+    final CtClass hookClass = ClassPool.getDefault().get(SqlQuery.class.getName());
+    final Hook hook = Hook.from(hookClass.getDeclaredMethod("nativeSQL"));
+    this.prefilter = new ClassPrefilter(Collections.singletonList(hook));
+  }
+
+  @Test
+  public void testDeclaringClassIsCandidate() throws Exception {
+    final byte[] bytes = new ClassBuilder("ClassPrefilterTest.DeclaringClass")
+        .beginMethod()
+          .setName("nativeSQL")
+        .endMethod()
+        .ctClass()
+        .toBytecode();
+
+    assertTrue(this.prefilter.isCandidate("ClassPrefilterTest/DeclaringClass", bytes));
+  }
+
+  @Test
+  public void testUnrelatedClassIsSkipped() throws Exception {
+    final byte[] bytes = new ClassBuilder("ClassPrefilterTest.UnrelatedClass")
+        .beginMethod()
+          .setName("unrelatedMethod")
+        .endMethod()
+        .ctClass()
+        .toBytecode();
+
+    assertFalse(this.prefilter.isCandidate("ClassPrefilterTest/UnrelatedClass", bytes));
+  }
+
+  @Test
+  public void testMalformedClassIsCandidate() {
+    final byte[] bytes = new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE };
+    assertTrue(this.prefilter.isCandidate("ClassPrefilterTest/MalformedClass", bytes));
+  }
+}
@@ -0,0 +1,87 @@
+package com.appland.appmap.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.transform.annotations.CallbackOn;
+import com.appland.appmap.transform.annotations.CaptureArguments;
+import com.appland.appmap.transform.annotations.Hook;
+import com.appland.appmap.transform.annotations.HookClass;
+import com.appland.appmap.transform.annotations.HookMethod;
+import com.appland.appmap.transform.annotations.MethodEvent;
+import com.appland.appmap.transform.annotations.RequiresRecording;
+import com.appland.appmap.transform.annotations.Unique;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtMethod;
+
+import org.junit.Test;
+
+public class HookIndexTest {
+  @Unique("sample")
+  public static class SampleHooks {
+    @HookClass(value = "java.lang.Object", method = "toString")
+    @CallbackOn(MethodEvent.METHOD_RETURN)
+    @CaptureArguments
+    @RequiresRecording
+    public static void ret(Event event, Object self) {
+    }
+  }
+
+  private static final String SAMPLE_ENTRY =
+      "com.appland.appmap.transform.HookIndexTest$SampleHooks\tret\t"
+      + "(Lcom/appland/appmap/output/v1/Event;Ljava/lang/Object;)V\t"
+      + "Unique(value=sample)\t"
+      + "HookClass(value=java.lang.Object,method=toString)\t"
+      + "CallbackOn(value=METHOD_RETURN)\t"
+      + "CaptureArguments\t"
+      + "RequiresRecording\n";
+
+  @Test
+  public void testRead() throws Exception {
+    final String index = "# class\tmethod\tdescriptor\tannotations\n"
+        + "\n"
+        + "com.example.Hooks\tcall\t(Lcom/appland/appmap/output/v1/Event;[I)V\tExcludeReceiver\n"
+        + "com.example.Hooks\tinvalid\n";
+
+    final List<HookMethod> hookMethods =
+        HookIndex.read(new BufferedReader(new StringReader(index)));
+
+    assertEquals(1, hookMethods.size());
+    final HookMethod hookMethod = hookMethods.get(0);
+    assertEquals("com.example.Hooks", hookMethod.getClassName());
+    assertEquals("com.example.Hooks.call(Lcom/appland/appmap/output/v1/Event;[I)V",
+        hookMethod.toString());
+    assertEquals(Arrays.asList("com.appland.appmap.output.v1.Event", "int[]"),
+        hookMethod.getParameterTypes());
+    assertEquals(Collections.singletonMap("ExcludeReceiver", Collections.emptyMap()),
+        hookMethod.getAnnotations());
+  }
+
+  @Test
+  public void testHookFromIndex() throws Exception {
+    final List<HookMethod> hookMethods =
+        HookIndex.read(new BufferedReader(new StringReader(SAMPLE_ENTRY)));
+    final Hook indexed = Hook.from(hookMethods.get(0));
+    assertNotNull(indexed);
+
+    final CtMethod behavior = new ClassPool(true)
+        .get(SampleHooks.class.getName())
+        .getDeclaredMethod("ret");
+    final Hook expected = Hook.from(behavior);
+
+    assertEquals(expected.getHookMethod().getAnnotations(),
+        indexed.getHookMethod().getAnnotations());
+    assertEquals(expected.toString(), indexed.toString());
+    assertEquals("toString", indexed.getKey());
+    assertEquals("sample", indexed.getUniqueKey());
+    assertEquals(MethodEvent.METHOD_RETURN, indexed.getMethodEvent());
+  }
+}
@@ -0,0 +1,92 @@
+package com.appland.appmap.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RetransformerTest {
+  private static final List<Class<?>> classes = Arrays.asList(
+      String.class,
+      Integer.class,
+      Long.class,
+      Double.class,
+      Float.class,
+      Short.class,
+      Byte.class,
+      Character.class,
+      Boolean.class);
+
+  /**
+   * Builds an Instrumentation which records every batch retransformed, rejecting any batch
+   * containing {@code rejectedClass}.
+   */
+  private static Instrumentation instrumentation(List<List<Class<?>>> batches,
+                                                 Class<?> rejectedClass) {
+    return (Instrumentation) Proxy.newProxyInstance(RetransformerTest.class.getClassLoader(),
+        new Class<?>[] { Instrumentation.class },
+        (proxy, method, args) -> {
+          if (!method.getName().equals("retransformClasses")) {
+            throw new UnsupportedOperationException(method.getName());
+          }
+
+          final List<Class<?>> batch = Arrays.asList((Class<?>[]) args[0]);
+          if (batch.contains(rejectedClass)) {
+            throw new UnmodifiableClassException();
+          }
+
+          batches.add(batch);
+          return null;
+        });
+  }
+
+  private static List<Class<?>> flatten(List<List<Class<?>>> batches) {
+    final List<Class<?>> result = new ArrayList<Class<?>>();
+    batches.forEach(result::addAll);
+    return result;
+  }
+
+  @Test
+  public void testRetransformWithinBudget() throws InterruptedException {
+    final List<List<Class<?>>> batches = Collections.synchronizedList(new ArrayList<>());
+    new Retransformer(instrumentation(batches, null)).retransform(classes, 10);
+
+    assertEquals(classes, flatten(batches));
+    assertEquals(1, batches.get(0).size());
+    assertTrue(batches.size() < classes.size());
+  }
+
+  @Test
+  public void testRejectedBatchIsRetriedPerClass() {
+    final List<List<Class<?>>> batches = Collections.synchronizedList(new ArrayList<>());
+    new Retransformer(instrumentation(batches, Long.class)).retransform(classes);
+
+    final List<Class<?>> retransformed = flatten(batches);
+    assertEquals(classes.size() - 1, retransformed.size());
+    for (Class<?> classType : classes) {
+      assertEquals(classType != Long.class, retransformed.contains(classType));
+    }
+  }
+
+  @Test
+  public void testRetransformInBackground() throws Exception {
+    final List<List<Class<?>>> batches = Collections.synchronizedList(new ArrayList<>());
+    final Thread caller = Thread.currentThread();
+    new Retransformer(instrumentation(batches, null))
+        .retransformInBackground(() -> {
+          assertTrue(Thread.currentThread() != caller);
+          return classes;
+        })
+        .get();
+
+    assertEquals(classes, flatten(batches));
+  }
+}
@@ -0,0 +1,117 @@
+package com.appland.appmap.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.appland.appmap.test.util.ClassBuilder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransformCacheTest {
+  private static final byte[] originalBytes = new byte[] { 1, 2, 3 };
+  private static final byte[] transformedBytes = new byte[] { 4, 5, 6, 7 };
+  private static final List<String> NO_SUPERTYPES = Collections.emptyList();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File cacheDirectory;
+  private File configFile;
+
+  @Before
+  public void before() throws Exception {
+    this.cacheDirectory = this.folder.newFolder("cache");
+    this.configFile = this.folder.newFile("appmap.yml");
+    Files.write(this.configFile.toPath(), "name: test\n".getBytes(StandardCharsets.UTF_8));
+  }
+
+  private TransformCache open() {
+    return TransformCache.open(this.cacheDirectory, this.configFile, "static");
+  }
+
+  @Test
+  public void testEntryReadBack() {
+    final CtClass ctClass = new ClassBuilder("testEntryReadBackClass").ctClass();
+    final TransformCache cache = this.open();
+    final String key = cache.getKey(originalBytes, NO_SUPERTYPES, false, false);
+    assertNull(cache.get(key));
+
+    cache.put(key,
+        ctClass,
+        Collections.emptyList(),
+        true,
+        new TrivialMethods.Elisions(),
+        transformedBytes);
+
+    final TransformCache.Entry entry = this.open().get(key);
+    assertTrue(entry.requiresRecording());
+    assertArrayEquals(transformedBytes, entry.getBytes());
+    assertTrue(entry.getElisions().isEmpty());
+    assertTrue(cache.restore(entry, null));
+  }
+
+  @Test
+  public void testUnmodifiedClassesPersisted() {
+    final TransformCache cache = this.open();
+    final String key = cache.getKey(originalBytes, NO_SUPERTYPES, false, false);
+    assertFalse(cache.isUnmodified(key));
+
+    cache.putUnmodified(key);
+    assertTrue(this.open().isUnmodified(key));
+  }
+
+  @Test
+  public void testKeyDependsOnDeferral() {
+    final TransformCache cache = this.open();
+    final String key = cache.getKey(originalBytes, NO_SUPERTYPES, false, false);
+    assertEquals(key, cache.getKey(originalBytes, NO_SUPERTYPES, false, false));
+    assertNotEquals(key, cache.getKey(originalBytes, NO_SUPERTYPES, true, false));
+  }
+
+  @Test
+  public void testKeyDependsOnOutlining() {
+    final TransformCache cache = this.open();
+    assertNotEquals(cache.getKey(originalBytes, NO_SUPERTYPES, false, false),
+        cache.getKey(originalBytes, NO_SUPERTYPES, false, true));
+  }
+
+  @Test
+  public void testKeyDependsOnSupertypes() {
+    final TransformCache cache = this.open();
+    assertNotEquals(cache.getKey(originalBytes, NO_SUPERTYPES, false, false),
+        cache.getKey(originalBytes, Arrays.asList("com.example.Base"), false, false));
+  }
+
+  @Test
+  public void testGetSupertypes() throws Exception {
+    final List<String> supertypes =
+        TransformCache.getSupertypes(ClassPool.getDefault().get("java.util.ArrayList"));
+    assertEquals("java.util.AbstractList", supertypes.get(0));
+    assertTrue(supertypes.contains("java.util.AbstractCollection"));
+    assertTrue(supertypes.contains("java.util.Collection"));
+    assertTrue(supertypes.contains("java.lang.Object"));
+    assertEquals(supertypes.size(), supertypes.stream().distinct().count());
+  }
+
+  @Test
+  public void testMissingEntry() {
+    assertNull(this.open().get("missing"));
+  }
+}
@@ -0,0 +1,105 @@
+package com.appland.appmap.transform;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TrivialMethodTest {
+  @SuppressWarnings("unused")
+  public static class Sample {
+    private static String label;
+    private final List<String> items;
+    private int count;
+
+    public Sample(List<String> items) {
+      this.items = items;
+    }
+
+    public int getCount() {
+      return this.count;
+    }
+
+    public static String getLabel() {
+      return label;
+    }
+
+    public void setCount(int count) {
+      this.count = count;
+    }
+
+    public static void setLabel(String value) {
+      label = value;
+    }
+
+    public boolean contains(String item) {
+      return this.items.contains(item);
+    }
+
+    public int increment() {
+      return ++this.count;
+    }
+
+    public void reset() {
+      this.count = 0;
+    }
+
+    public int sum(int base) {
+      int sum = base;
+      for (String item : this.items) {
+        sum += item.length();
+      }
+      return sum;
+    }
+
+    @Override
+    public String toString() {
+      return "Sample(" + this.count + ")";
+    }
+  }
+
+  private static CtClass sampleClass;
+
+  @BeforeClass
+  public static void loadSampleClass() throws Exception {
+    sampleClass = ClassPool.getDefault().get(Sample.class.getName());
+  }
+
+  private static TrivialMethod classify(String methodName) throws Exception {
+    return TrivialMethod.classify(sampleClass.getDeclaredMethod(methodName));
+  }
+
+  @Test
+  public void testGetters() throws Exception {
+    assertEquals(TrivialMethod.GETTER, classify("getCount"));
+    assertEquals(TrivialMethod.GETTER, classify("getLabel"));
+  }
+
+  @Test
+  public void testSetters() throws Exception {
+    assertEquals(TrivialMethod.SETTER, classify("setCount"));
+    assertEquals(TrivialMethod.SETTER, classify("setLabel"));
+  }
+
+  @Test
+  public void testDelegate() throws Exception {
+    assertEquals(TrivialMethod.DELEGATE, classify("contains"));
+  }
+
+  @Test
+  public void testBoilerplate() throws Exception {
+    assertEquals(TrivialMethod.BOILERPLATE, classify("toString"));
+  }
+
+  @Test
+  public void testNonTrivialMethods() throws Exception {
+    assertNull(classify("increment"));
+    assertNull(classify("reset"));
+    assertNull(classify("sum"));
+  }
+}
@@ -1,6 +1,7 @@
 package com.appland.appmap.transform.annotations;
 
 import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.output.v1.Parameters;
 import com.appland.appmap.test.util.ClassBuilder;
 import javassist.CtBehavior;
 import javassist.CtClass;
@@ -121,4 +122,35 @@ public class ArgumentArraySystemTest {
     CtMethod invalidHookMethod = hookClass.getDeclaredMethods()[0];
     assertNull(Hook.from(invalidHookMethod));
   }
+
+  @Test
+  public void testCaptureArgumentsNestsCapturesAroundTheEvent() throws Exception {
+    CtClass hookClass = new ClassBuilder(HookClassName + "Capture")
+        .beginMethod()
+          .setName("methodManyArgs")
+          .addParameter(Event.class.getName(), "event")
+          .addParameter("java.lang.Object", "self")
+          .beginAnnotation()
+            .setType(HookClass.class.getName())
+            .setMember("value", TargetClassName)
+          .endAnnotation()
+          .addAnnotation(CaptureArguments.class.getName())
+        .endMethod()
+        .ctClass();
+
+    Hook hook = Hook.from(hookClass.getDeclaredMethods()[0]);
+    assertNotNull(hook);
+
+    CtMethod targetBehavior = targetClass.getDeclaredMethod("methodManyArgs");
+    HookBinding binding = new HookBinding(hook, targetBehavior, UNUSED_PARAMETER);
+    assertTrue(hook.getSystem(ArgumentArraySystem.class).validate(binding));
+
+    Parameters runtimeParameters = hook.getRuntimeParameters(binding);
+    assertEquals(2, runtimeParameters.size());
+    assertEquals("com.appland.appmap.process.RuntimeUtil.captureArgument("
+        + "com.appland.appmap.process.RuntimeUtil.captureArgument("
+        + SourceMethodSystem.EVENT_TOKEN + ", 0, $1), 1, $2)",
+        runtimeParameters.get(0).name);
+    assertEquals("this", runtimeParameters.get(1).name);
+  }
 }
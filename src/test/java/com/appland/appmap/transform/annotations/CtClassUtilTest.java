@@ -5,7 +5,10 @@ import javassist.CtClass;
 import javassist.NotFoundException;
 import org.junit.Test;
 
+import java.util.Set;
+
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class CtClassUtilTest {
@@ -32,4 +35,15 @@ public class CtClassUtilTest {
     CtClass candidateChildClass = ClassPool.getDefault().get("java.lang.Throwable");
     assertTrue(CtClassUtil.isChildOf(candidateChildClass, "java.io.Serializable"));
   }
+
+  @Test
+  public void testSupertypesMemoized() throws NotFoundException {
+    CtClass candidateChildClass = ClassPool.getDefault().get("java.lang.Integer");
+    Set<String> supertypes = CtClassUtil.getSupertypes(candidateChildClass);
+    assertTrue(supertypes.contains("java.lang.Number"));
+    assertTrue(supertypes.contains("java.lang.Object"));
+    assertTrue(supertypes.contains("java.lang.Comparable"));
+    assertFalse(supertypes.contains("java.lang.Integer"));
+    assertSame(supertypes, CtClassUtil.getSupertypes(candidateChildClass));
+  }
 }
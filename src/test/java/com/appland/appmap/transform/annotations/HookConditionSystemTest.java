@@ -1,6 +1,7 @@
 package com.appland.appmap.transform.annotations;
 
 import com.appland.appmap.config.AppMapConfig;
+import com.appland.appmap.config.AppMapPackage;
 import com.appland.appmap.output.v1.Event;
 import com.appland.appmap.process.conditions.ConfigCondition;
 import static com.appland.appmap.util.StringUtil.canonicalName;
@@ -173,4 +174,32 @@ public class HookConditionSystemTest {
       assertFalse(isValid);
     }
   }
+
+  @Test
+  public void testMatchClass() throws Exception {
+    CtClass hookClass = new ClassBuilder(HookClassName + "ForClass")
+        .beginMethod()
+          .setName("methodNoArgs")
+          .addParameter(Event.class.getName(), "event")
+          .addParameter(TargetClassNameGood, "receiver")
+          .beginAnnotation(HookCondition.class.getName())
+            .setMember("value", ConfigCondition.class)
+          .endAnnotation()
+        .endMethod()
+        .ctClass();
+
+    Hook hook = Hook.from(hookClass.getDeclaredMethods()[0]);
+    assertNotNull(hook);
+
+    AppMapPackage pkg = new AppMapPackage();
+    pkg.path = "HookConditionSystemTest.Good";
+    AppMapPackage[] packages = AppMapConfig.get().packages;
+    AppMapConfig.get().packages = new AppMapPackage[] { pkg };
+    try {
+      assertTrue(hook.matchClass(targetClassGood));
+      assertFalse(hook.matchClass(targetClassBad));
+    } finally {
+      AppMapConfig.get().packages = packages;
+    }
+  }
 }
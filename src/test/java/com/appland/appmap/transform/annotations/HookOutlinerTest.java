@@ -0,0 +1,162 @@
+package com.appland.appmap.transform.annotations;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.test.util.IsolatedClassLoader;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HookOutlinerTest {
+  private static final String SAMPLE_CLASS =
+      "com.appland.appmap.transform.annotations.HookOutlinerTest$Sample";
+
+  public static class Sample {
+    public int add(int a, int b) {
+      return a + b;
+    }
+
+    public void fail() {
+      throw new IllegalStateException("failed");
+    }
+  }
+
+  public static class SampleHooks {
+    static final List<Event> events = new ArrayList<Event>();
+
+    @HookClass(value = SAMPLE_CLASS, method = "add")
+    @CaptureArguments
+    public static void call(Event event, Object self) {
+      events.add(event);
+    }
+
+    @HookClass(value = SAMPLE_CLASS, method = "add")
+    @CaptureArguments
+    @CallbackOn(MethodEvent.METHOD_RETURN)
+    public static void ret(Event event, Object self) {
+      events.add(event);
+    }
+
+    @HookClass(value = SAMPLE_CLASS, method = "fail")
+    @CallbackOn(MethodEvent.METHOD_EXCEPTION)
+    public static void exception(Event event, Object self, Exception exception) {
+      event.setException(exception);
+      events.add(event);
+    }
+  }
+
+  @Test
+  public void testRewriteReturnValue() {
+    assertEquals("hook(evt, this, box($3), $1, $2);",
+        HookOutliner.rewriteResultReferences("hook(evt, this, box($_), $$);", 2));
+  }
+
+  @Test
+  public void testRewriteException() {
+    assertEquals("hook(evt, null, (java.lang.Exception) $2, $1);",
+        HookOutliner.rewriteResultReferences("hook(evt, null, (java.lang.Exception) $e, $$);", 1));
+  }
+
+  @Test
+  public void testRewriteWithoutParameters() {
+    assertEquals("hook(evt, this, box($1));",
+        HookOutliner.rewriteResultReferences("hook(evt, this, box($_), $$);", 0));
+  }
+
+  @Test
+  public void testNestedClassNamesUnchanged() {
+    assertEquals("hook(evt, (a.Outer$e) this, (a.B$$Lambda) $2);",
+        HookOutliner.rewriteResultReferences("hook(evt, (a.Outer$e) this, (a.B$$Lambda) $_);", 1));
+  }
+
+  private static Class<?> instrumentSample() throws Exception {
+    final ClassPool classPool = new ClassPool(true);
+    final List<Hook> hooks = Arrays.stream(
+        classPool.get(SampleHooks.class.getName()).getDeclaredMethods())
+        .map(Hook::from)
+        .collect(Collectors.toList());
+    final IsolatedClassLoader loader = new IsolatedClassLoader();
+
+    final CtClass sampleClass = classPool.get(SAMPLE_CLASS);
+    for (CtMethod method : sampleClass.getDeclaredMethods()) {
+      final List<HookSite> hookSites = hooks
+          .stream()
+          .map(hook -> hook.prepare(method, loader))
+          .filter(Objects::nonNull)
+          .collect(Collectors.toList());
+      Hook.apply(method, hookSites, true);
+    }
+
+    return loader.define(sampleClass);
+  }
+
+  private static List<String> helperNames(Class<?> instrumentedClass) {
+    return Arrays.stream(instrumentedClass.getDeclaredMethods())
+        .filter(Method::isSynthetic)
+        .map(Method::getName)
+        .filter(name -> name.startsWith("appmap$"))
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testHelperNamesAreStable() throws Exception {
+    final List<String> expected = Arrays.asList(
+        "appmap$add$after$0",
+        "appmap$add$before$0",
+        "appmap$add$exception$0",
+        "appmap$fail$after$0",
+        "appmap$fail$before$0",
+        "appmap$fail$exception$0");
+
+    // Each instrumentation registers the behaviors with a new loader, so their ordinals differ
+    assertEquals(expected, helperNames(instrumentSample()));
+    assertEquals(expected, helperNames(instrumentSample()));
+  }
+
+  @Test
+  public void testOutlinedHooksFire() throws Exception {
+    final Class<?> instrumentedClass = instrumentSample();
+    assertEquals(6, helperNames(instrumentedClass).size());
+
+    final Object sample = instrumentedClass.getConstructor().newInstance();
+    SampleHooks.events.clear();
+    assertEquals(3, instrumentedClass.getMethod("add", int.class, int.class).invoke(sample, 1, 2));
+    try {
+      instrumentedClass.getMethod("fail").invoke(sample);
+      fail("expected the exception to be rethrown");
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    final List<Event> events = SampleHooks.events;
+    assertEquals(3, events.size());
+    events.forEach(Event::freeze);
+
+    assertEquals("call", events.get(0).event);
+    assertEquals("add", events.get(0).methodId);
+    assertEquals(2, events.get(0).parameters.size());
+    assertEquals("2", events.get(0).parameters.get(1).value);
+
+    assertEquals("return", events.get(1).event);
+    assertEquals("3", events.get(1).returnValue.value);
+
+    assertEquals("return", events.get(2).event);
+    assertEquals("fail", events.get(2).methodId);
+    assertEquals(IllegalStateException.class.getName(), events.get(2).exceptions.get(0).classType);
+  }
+}
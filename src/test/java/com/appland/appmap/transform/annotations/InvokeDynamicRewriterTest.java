@@ -0,0 +1,102 @@
+package com.appland.appmap.transform.annotations;
+
+import com.appland.appmap.output.v1.Event;
+import com.appland.appmap.record.IRecordingSession.Metadata;
+import com.appland.appmap.record.Recorder;
+import com.appland.appmap.test.util.IsolatedClassLoader;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.bytecode.BootstrapMethodsAttribute;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class InvokeDynamicRewriterTest {
+  private static final String SAMPLE_CLASS =
+      "com.appland.appmap.transform.annotations.InvokeDynamicRewriterTest$Sample";
+
+  public static class Sample {
+    public int add(int a, int b) {
+      return a + b;
+    }
+  }
+
+  public static class SampleHooks {
+    static final List<Event> events = new ArrayList<Event>();
+
+    @HookClass(value = SAMPLE_CLASS, method = "add")
+    @CaptureArguments
+    @RequiresRecording
+    public static void call(Event event, Object self) {
+      events.add(event);
+    }
+
+    @HookClass(value = SAMPLE_CLASS, method = "add")
+    @CaptureArguments
+    @RequiresRecording
+    @CallbackOn(MethodEvent.METHOD_RETURN)
+    public static void ret(Event event, Object self) {
+      events.add(event);
+    }
+  }
+
+  @After
+  public void after() {
+    if (Recorder.getInstance().hasActiveSession()) {
+      Recorder.getInstance().stop();
+    }
+  }
+
+  @Test
+  public void testHooksDispatchedWhileRecording() throws Exception {
+    final ClassPool classPool = new ClassPool(true);
+    final List<Hook> hooks = Arrays.stream(
+        classPool.get(SampleHooks.class.getName()).getDeclaredMethods())
+        .map(Hook::from)
+        .collect(Collectors.toList());
+
+    final IsolatedClassLoader loader = new IsolatedClassLoader();
+    final CtClass sampleClass = classPool.get(SAMPLE_CLASS);
+    final CtMethod add = sampleClass.getDeclaredMethod("add");
+    final List<HookSite> hookSites = hooks
+        .stream()
+        .map(hook -> hook.prepare(add, loader))
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+
+    // Hook.apply rewrites the hooks this way when appmap.hooks.dispatch is indy
+    Hook.apply(add, hookSites, false);
+    InvokeDynamicRewriter.rewrite(add, hookSites);
+    assertNotNull(sampleClass.getClassFile().getAttribute(BootstrapMethodsAttribute.tag));
+
+    final Class<?> instrumentedClass = loader.define(sampleClass);
+    final Object sample = instrumentedClass.getConstructor().newInstance();
+    final Method addMethod = instrumentedClass.getMethod("add", int.class, int.class);
+    SampleHooks.events.clear();
+
+    assertEquals(3, addMethod.invoke(sample, 1, 2));
+    assertEquals(0, SampleHooks.events.size());
+
+    Recorder.getInstance().start(new Metadata());
+    assertEquals(5, addMethod.invoke(sample, 2, 3));
+    assertEquals(2, SampleHooks.events.size());
+    assertEquals("call", SampleHooks.events.get(0).event);
+    assertEquals("return", SampleHooks.events.get(1).event);
+
+    Recorder.getInstance().stop();
+    assertEquals(7, addMethod.invoke(sample, 3, 4));
+    assertEquals(2, SampleHooks.events.size());
+  }
+}
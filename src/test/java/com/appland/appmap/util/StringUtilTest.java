@@ -1,7 +1,10 @@
 package com.appland.appmap.util;
 
+import static com.appland.appmap.util.StringUtil.acceptsGzip;
 import static com.appland.appmap.util.StringUtil.identifierToSentence;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -22,4 +25,19 @@ public class StringUtilTest {
       assertEquals(identifierToSentence(entry.getKey()), entry.getValue());
     }
   }
+
+  @Test
+  public void testAcceptsGzip() throws Exception {
+    assertTrue(acceptsGzip("gzip"));
+    assertTrue(acceptsGzip("deflate, GZIP;q=0.5, br"));
+    assertTrue(acceptsGzip("*"));
+    assertFalse(acceptsGzip(null));
+    assertFalse(acceptsGzip("identity"));
+    assertFalse(acceptsGzip("gzip;q=0"));
+    assertFalse(acceptsGzip("x-gzip"));
+    assertFalse(acceptsGzip("*;q=0.5, gzip;q=0"));
+    assertTrue(acceptsGzip("*;q=0, gzip"));
+    assertTrue(acceptsGzip("identity, *;q=0.5"));
+    assertFalse(acceptsGzip("identity, *;q=0"));
+  }
 }